@@ -7,12 +7,16 @@ import com.sixsense.model.commands.ICommand;
 import com.sixsense.model.commands.Operation;
 import com.sixsense.model.commands.ParallelWorkflow;
 import com.sixsense.model.devices.Credentials;
+import com.sixsense.model.logging.TerminalRecord;
 import com.sixsense.model.logic.*;
 import com.sixsense.model.retention.OperationResult;
 import com.sixsense.model.retention.ResultRetention;
 import com.sixsense.model.retention.RetentionMode;
 import com.sixsense.model.threading.MonitoredThreadState;
+import com.sixsense.services.LatencyManager;
+import com.sixsense.services.LoggingManager;
 import com.sixsense.services.SessionEngine;
+import com.sixsense.services.TerminalRecorder;
 import com.sixsense.threading.ThreadingManager;
 import com.sixsense.utillity.CommandUtils;
 import com.sixsense.utillity.FieldGlossary;
@@ -35,15 +39,21 @@ public class DiagnosticController extends ApiDebuggingAware {
     private static final Logger logger = LogManager.getLogger(DiagnosticController.class);
     private final SessionEngine sessionEngine;
     private final ThreadingManager threadingManager;
+    private final LatencyManager latencyManager;
+    private final LoggingManager loggingManager;
+    private final TerminalRecorder terminalRecorder;
     private final CachingConnectionFactory amqpConnectionFactory;
 
     private static final double toSecondCoefficient = Math.pow(10, -9);
 
     @Autowired
-    public DiagnosticController(SessionEngine sessionEngine, ThreadingManager threadingManager, CachingConnectionFactory amqpConnectionFactory) {
+    public DiagnosticController(SessionEngine sessionEngine, ThreadingManager threadingManager, LatencyManager latencyManager, LoggingManager loggingManager, TerminalRecorder terminalRecorder, CachingConnectionFactory amqpConnectionFactory) {
         super();
         this.sessionEngine = sessionEngine;
         this.threadingManager = threadingManager;
+        this.latencyManager = latencyManager;
+        this.loggingManager = loggingManager;
+        this.terminalRecorder = terminalRecorder;
         this.amqpConnectionFactory = amqpConnectionFactory;
     }
 
@@ -85,10 +95,44 @@ public class DiagnosticController extends ApiDebuggingAware {
         return amqpConnectionFactory.getCacheProperties();
     }
 
-    /*@GetMapping("/logs/{sessionId}")
-    public Map<String, String> getSessionLogs() {
+    @GetMapping("/ssh/connections")
+    public Map<String, Map<String, Integer>> getSSHConnectionPoolStatus(){
+        return sessionEngine.getConnectionPoolStatus();
+    }
+
+    @GetMapping("/sessions/pool")
+    public Map<String, Map<String, Long>> getSessionPoolStatus(){
+        return sessionEngine.getSessionPoolStatus();
+    }
 
-    }*/
+    //Learned command latencies in milliseconds (key: device host, value: latency percentiles by command template)
+    @GetMapping("/latency/devices")
+    public Map<String, Map<String, Map<String, Long>>> getDeviceLatencies(){
+        return latencyManager.getDeviceLatencies();
+    }
+
+    //Learned command latencies in milliseconds (key: vendor, product and version, value: latency percentiles by command template)
+    @GetMapping("/latency/vpv")
+    public Map<String, Map<String, Map<String, Long>>> getVpvLatencies(){
+        return latencyManager.getVpvLatencies();
+    }
+
+    @DeleteMapping("/latency")
+    public void clearLatencies(){
+        latencyManager.clearLatencies();
+    }
+
+    //Session trails by log (key: session, command or terminal, value: the lines logged for the session). Sessions are identified by their short session id
+    @GetMapping("/logs/{sessionId}")
+    public Map<String, String> getSessionLogs(@PathVariable String sessionId) {
+        return loggingManager.getSessionLogs(sessionId);
+    }
+
+    //Raw terminal output of a session, chunk by chunk and in the order it was read (empty if terminals are not recorded)
+    @GetMapping("/recordings/{sessionId}")
+    public List<TerminalRecord> getTerminalRecording(@PathVariable String sessionId) {
+        return terminalRecorder.replay(sessionId);
+    }
 
     @GetMapping("/debugMethod")
     public void debugMethod(){
@@ -123,6 +167,7 @@ public class DiagnosticController extends ApiDebuggingAware {
         List<OperationResult> operationResults = Collections.synchronizedList(new ArrayList<>());
 
         CountDownLatch counter = new CountDownLatch(totalOperations);
+        loggingManager.resetLoggingStatistics();
         Instant batchStart = Instant.now();
 
         logger.info(" "); //new line without breaking log format
@@ -202,6 +247,7 @@ public class DiagnosticController extends ApiDebuggingAware {
         List<OperationResult> operationResults = Collections.synchronizedList(new ArrayList<>());
 
         CountDownLatch counter = new CountDownLatch(operationCount);
+        loggingManager.resetLoggingStatistics();
         Instant batchStart = Instant.now();
 
         logger.info(" "); //new line without breaking log format
@@ -256,6 +302,12 @@ public class DiagnosticController extends ApiDebuggingAware {
         logger.info("The median running time for all operations was " + medianTime + " seconds");
         logger.info("The average running time of an operations was " + averageTime + " seconds");
 
+        //Compare against a batch ran with sixsense.threads.events.asynchronous-logging set to false, to see how much logging costs the session threads
+        Map<String, Long> loggingStatistics = loggingManager.getLoggingStatistics();
+        long loggedEvents = loggingStatistics.get("events");
+        long loggingNanos = loggingStatistics.get("sessionThreadNanos");
+        logger.info("Session threads spent " + loggingNanos / 1000000 + " ms logging " + loggedEvents + " engine events (" + (loggedEvents > 0 ? loggingNanos / loggedEvents : 0) + " ns per event)");
+
         List<ResultStatus> results = operationResults.stream().map(result -> result.getExpressionResult().getOutcome()).collect(Collectors.toList());
         List<String> errors = operationResults.stream().map(result -> result.getExpressionResult().getMessage()).collect(Collectors.toList());
 
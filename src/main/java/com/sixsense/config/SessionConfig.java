@@ -1,8 +1,15 @@
 package com.sixsense.config;
 
+import com.sixsense.model.threading.ExecutionMode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.convert.DataSizeUnit;
+import org.springframework.boot.convert.DurationUnit;
+import org.springframework.util.unit.DataSize;
+import org.springframework.util.unit.DataUnit;
 
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
 import java.util.Map;
 
 @ConstructorBinding
@@ -10,10 +17,128 @@ import java.util.Map;
 public class SessionConfig {
     private final Map<String, String> prompt;
     private final String version;
+    private final int maximumChannelsPerConnection;
+    private final SessionPoolProperties pool;
+    private final ExecutionMode executionMode;
+    private final LatencyProperties latency;
+    private final RecordingProperties recording;
 
-    public SessionConfig(Map<String, String> prompt, String version) {
+    public SessionConfig(Map<String, String> prompt, String version, int maximumChannelsPerConnection, SessionPoolProperties pool, ExecutionMode executionMode, LatencyProperties latency, RecordingProperties recording) {
         this.prompt = prompt;
         this.version = version;
+        this.maximumChannelsPerConnection = maximumChannelsPerConnection;
+        this.pool = pool;
+        this.executionMode = executionMode != null ? executionMode : ExecutionMode.Blocking;
+        this.latency = latency != null ? latency : new LatencyProperties(0, 0, 0, null, null);
+        this.recording = recording != null ? recording : new RecordingProperties(null, null, null, 0);
+    }
+
+    public static class SessionPoolProperties {
+        private final boolean enabled;
+        private final int minimumIdleSessions;
+        private final int maximumIdleSessions;
+        @DurationUnit(ChronoUnit.SECONDS)
+        private final Duration promptTimeout;
+        private final String resetCommand;
+
+        /*The default reset command replaces the shell with a fresh login shell in the home directory, with an environment holding only the login variables
+        * (so the working directory, exports, aliases and shell variables of the previous lease are all discarded)*/
+        public SessionPoolProperties(boolean enabled, int minimumIdleSessions, int maximumIdleSessions, Duration promptTimeout, String resetCommand) {
+            this.enabled = enabled;
+            this.minimumIdleSessions = minimumIdleSessions;
+            this.maximumIdleSessions = maximumIdleSessions;
+            this.promptTimeout = promptTimeout;
+            this.resetCommand = resetCommand != null && !resetCommand.isBlank() ? resetCommand : "cd ~ && exec env -i HOME=\"$HOME\" USER=\"$USER\" LOGNAME=\"$LOGNAME\" SHELL=\"$SHELL\" TERM=\"$TERM\" /bin/bash -l";
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getMinimumIdleSessions() {
+            return minimumIdleSessions;
+        }
+
+        public int getMaximumIdleSessions() {
+            return maximumIdleSessions;
+        }
+
+        public Duration getPromptTimeout() {
+            return promptTimeout;
+        }
+
+        public String getResetCommand() {
+            return resetCommand;
+        }
+    }
+
+    public static class LatencyProperties {
+        private final double safetyFactor;
+        private final int minimumSamples;
+        private final int maximumSamples;
+        @DurationUnit(ChronoUnit.MILLIS)
+        private final Duration minimumTimeout;
+        @DurationUnit(ChronoUnit.MILLIS)
+        private final Duration maximumTimeout;
+
+        public LatencyProperties(double safetyFactor, int minimumSamples, int maximumSamples, Duration minimumTimeout, Duration maximumTimeout) {
+            this.safetyFactor = safetyFactor > 0 ? safetyFactor : 3;
+            this.minimumSamples = minimumSamples > 0 ? minimumSamples : 20;
+            this.maximumSamples = maximumSamples > 0 ? maximumSamples : 10000;
+            this.minimumTimeout = minimumTimeout != null ? minimumTimeout : Duration.ofSeconds(1);
+            this.maximumTimeout = maximumTimeout != null ? maximumTimeout : Duration.ofMinutes(10);
+        }
+
+        public double getSafetyFactor() {
+            return safetyFactor;
+        }
+
+        public int getMinimumSamples() {
+            return minimumSamples;
+        }
+
+        public int getMaximumSamples() {
+            return maximumSamples;
+        }
+
+        public Duration getMinimumTimeout() {
+            return minimumTimeout;
+        }
+
+        public Duration getMaximumTimeout() {
+            return maximumTimeout;
+        }
+    }
+
+    public static class RecordingProperties {
+        private final boolean enabled; //Whether the raw output of all terminals is recorded (defaults to true)
+        private final String directory; //Where the recording segments are kept (defaults to /sixsense/logs/recordings)
+        @DataSizeUnit(DataUnit.MEGABYTES)
+        private final DataSize segmentSize; //Size of each memory mapped segment (defaults to 64MB)
+        private final int maximumSegments; //Older segments are deleted once there are more segments (defaults to 32)
+
+        public RecordingProperties(Boolean enabled, String directory, DataSize segmentSize, int maximumSegments) {
+            this.enabled = enabled != null ? enabled : true;
+            this.directory = directory != null && !directory.isBlank() ? directory : "/sixsense/logs/recordings";
+            this.segmentSize = segmentSize != null && segmentSize.toBytes() > 0 ? segmentSize : DataSize.ofMegabytes(64);
+            this.maximumSegments = maximumSegments > 0 ? maximumSegments : 32;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public int getMaximumSegments() {
+            return maximumSegments;
+        }
     }
 
     public Map<String, String> getPrompt() {
@@ -23,4 +148,24 @@ public class SessionConfig {
     public String getVersion() {
         return version;
     }
+
+    public int getMaximumChannelsPerConnection() {
+        return maximumChannelsPerConnection;
+    }
+
+    public SessionPoolProperties getPool() {
+        return pool;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public LatencyProperties getLatency() {
+        return latency;
+    }
+
+    public RecordingProperties getRecording() {
+        return recording;
+    }
 }
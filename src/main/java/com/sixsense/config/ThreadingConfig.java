@@ -1,5 +1,7 @@
 package com.sixsense.config;
 
+import com.sixsense.model.threading.BackPressurePolicy;
+import com.sixsense.model.threading.ThreadMode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.ConstructorBinding;
 import org.springframework.boot.convert.DurationUnit;
@@ -10,14 +12,16 @@ import java.time.temporal.ChronoUnit;
 @ConstructorBinding
 @ConfigurationProperties(prefix = "sixsense.threads")
 public class ThreadingConfig {
-    private final ThreadingProperties engine;
+    private final EngineThreadingProperties engine;
     private final ThreadingProperties http;
     private final AMQPThreadingProperties amqp;
+    private final EventProperties events;
 
-    public ThreadingConfig(ThreadingProperties engine, ThreadingProperties http, AMQPThreadingProperties amqp) {
+    public ThreadingConfig(EngineThreadingProperties engine, ThreadingProperties http, AMQPThreadingProperties amqp, EventProperties events) {
         this.engine = engine;
         this.http = http;
         this.amqp = amqp;
+        this.events = events != null ? events : new EventProperties(0, 0, null, null);
     }
 
     public static class ThreadingProperties {
@@ -51,6 +55,38 @@ public class ThreadingConfig {
         }
     }
 
+    public static class EngineThreadingProperties extends ThreadingProperties{
+        private final ThreadMode threadMode; //In virtual mode, the thread limits and idle time do not apply
+        private final int driverThreads; //Fixed amount of threads driving event driven sessions (defaults to the amount of available processors)
+        @DurationUnit(ChronoUnit.MILLIS)
+        private final Duration timerTick; //Resolution of the engine timer (defaults to 1ms)
+        private final int timerWheelSize; //Amount of ticks in a single turn of the engine timer (defaults to 512)
+
+        public EngineThreadingProperties(Duration allowedIdleTime, int maximumThreads, int minimumThreads, String threadNamePrefix, ThreadMode threadMode, int driverThreads, Duration timerTick, int timerWheelSize) {
+            super(allowedIdleTime, maximumThreads, minimumThreads, threadNamePrefix);
+            this.threadMode = threadMode != null ? threadMode : ThreadMode.Platform;
+            this.driverThreads = driverThreads > 0 ? driverThreads : Runtime.getRuntime().availableProcessors();
+            this.timerTick = timerTick != null && !timerTick.isNegative() && !timerTick.isZero() ? timerTick : Duration.ofMillis(1);
+            this.timerWheelSize = timerWheelSize > 0 ? timerWheelSize : 512;
+        }
+
+        public ThreadMode getThreadMode() {
+            return threadMode;
+        }
+
+        public int getDriverThreads() {
+            return driverThreads;
+        }
+
+        public Duration getTimerTick() {
+            return timerTick;
+        }
+
+        public int getTimerWheelSize() {
+            return timerWheelSize;
+        }
+    }
+
     public static class AMQPThreadingProperties extends ThreadingProperties{
         private final int maximumConsumeRetries;
         private final int maximumProduceRetries;
@@ -82,7 +118,37 @@ public class ThreadingConfig {
         }
     }
 
-    public ThreadingProperties getEngine() {
+    public static class EventProperties {
+        private final int ringSize; //Slots in the ring buffer of engine events (rounded up to a power of two, defaults to 8192)
+        private final int maximumBatchSize; //Events dispatched to the handlers at once (defaults to 256)
+        private final BackPressurePolicy backPressure; //What emitting threads do while the ring buffer is full (defaults to blocking)
+        private final boolean asynchronousLogging; //Whether engine events are logged by a dedicated thread, instead of the session thread emitting them (defaults to true)
+
+        public EventProperties(int ringSize, int maximumBatchSize, BackPressurePolicy backPressure, Boolean asynchronousLogging) {
+            this.ringSize = ringSize > 0 ? ringSize : 8192;
+            this.maximumBatchSize = maximumBatchSize > 0 ? maximumBatchSize : 256;
+            this.backPressure = backPressure != null ? backPressure : BackPressurePolicy.Block;
+            this.asynchronousLogging = asynchronousLogging != null ? asynchronousLogging : true;
+        }
+
+        public int getRingSize() {
+            return ringSize;
+        }
+
+        public int getMaximumBatchSize() {
+            return maximumBatchSize;
+        }
+
+        public BackPressurePolicy getBackPressure() {
+            return backPressure;
+        }
+
+        public boolean isAsynchronousLogging() {
+            return asynchronousLogging;
+        }
+    }
+
+    public EngineThreadingProperties getEngine() {
         return engine;
     }
 
@@ -93,4 +159,8 @@ public class ThreadingConfig {
     public AMQPThreadingProperties getAmqp() {
         return amqp;
     }
+
+    public EventProperties getEvents() {
+        return events;
+    }
 }
@@ -0,0 +1,254 @@
+package com.sixsense.io;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*Line store for the output of a single shell channel
+ * Lines are kept in a growable ring buffer, so trimming lines from the head is done by advancing the head index (instead of shifting every remaining line, as ArrayList.remove(0) does)
+ * Each line also has an absolute offset: the amount of lines appended to the buffer before it (including lines that were already trimmed)
+ * Absolute offsets remain valid while the buffer is trimmed, so the session keeps cursors to the start and end of the current command's output instead of copying it
+ *
+ * Like the ArrayList it replaces, this class is not thread safe. Callers synchronize on the buffer instance itself
+ * The only exception is the process stream wrapper, which publishes new chunks into an inbox without locking (see publish()).
+ * Published chunks become lines once a caller holding the monitor drains the inbox, so callers drain it before reading the lines*/
+public class ChannelOutputBuffer extends AbstractList<String> implements RandomAccess {
+    private static final int InitialCapacity = 64; //Must be a power of two
+    private static final int InboxCapacity = 256; //Must be a power of two
+
+    private String[] lines;
+    private int head = 0; //physical index of the first line
+    private int size = 0;
+    private long headOffset = 0; //absolute offset of the first line
+
+    //Per command cursors (absolute offsets)
+    private long commandStart = 0;
+    private long commandEnd = -1; //-1 as long as the command is still writing output
+
+    //Hand over from the process stream wrapper
+    private final ChunkInbox inbox = new ChunkInbox(InboxCapacity);
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    private volatile long lastChunkAt = 0; //System.nanoTime() when the latest chunk was published
+
+    public ChannelOutputBuffer() {
+        this.lines = new String[InitialCapacity];
+    }
+
+    @Override
+    public String get(int index) {
+        checkIndex(index);
+        return lines[physicalIndex(index)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(String line) {
+        ensureCapacity(size + 1);
+        lines[physicalIndex(size)] = line;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public String set(int index, String line) {
+        checkIndex(index);
+        int physicalIndex = physicalIndex(index);
+        String previousLine = lines[physicalIndex];
+        lines[physicalIndex] = line;
+        return previousLine;
+    }
+
+    /*Removing from the middle of the buffer shifts whichever side of the removed line is shorter (like ArrayDeque)
+     * Removing the first line is therefore a constant time operation. The absolute offsets of the lines on the shifted side change by one*/
+    @Override
+    public String remove(int index) {
+        checkIndex(index);
+        String removedLine = lines[physicalIndex(index)];
+        if(index < size / 2){
+            for(int lineIdx = index; lineIdx > 0; lineIdx--){
+                lines[physicalIndex(lineIdx)] = lines[physicalIndex(lineIdx - 1)];
+            }
+            lines[head] = null;
+            head = (head + 1) & (lines.length - 1);
+            headOffset++;
+        }else{
+            for(int lineIdx = index; lineIdx < size - 1; lineIdx++){
+                lines[physicalIndex(lineIdx)] = lines[physicalIndex(lineIdx + 1)];
+            }
+            lines[physicalIndex(size - 1)] = null;
+        }
+
+        size--;
+        modCount++;
+        return removedLine;
+    }
+
+    @Override
+    public void clear() {
+        trimHead(size);
+    }
+
+    //Drops the first {lineCount} lines of the buffer. Trimmed lines are released without moving any of the remaining lines
+    public void trimHead(int lineCount){
+        int linesToTrim = Math.min(Math.max(lineCount, 0), size);
+        for(int lineIdx = 0; lineIdx < linesToTrim; lineIdx++){
+            lines[physicalIndex(lineIdx)] = null; //release the reference so the trimmed line can be collected
+        }
+
+        head = (head + linesToTrim) & (lines.length - 1);
+        size -= linesToTrim;
+        headOffset += linesToTrim;
+        if(linesToTrim > 0) {
+            modCount++;
+        }
+    }
+
+    //Drops every line before the given absolute offset
+    public void trimBefore(long absoluteOffset){
+        trimHead((int)Math.min(absoluteOffset - headOffset, size));
+    }
+
+    //Absolute offset of the first line currently in the buffer
+    public long getHeadOffset() {
+        return headOffset;
+    }
+
+    //Absolute offset one past the last line currently in the buffer
+    public long getTailOffset() {
+        return headOffset + size;
+    }
+
+    public int toIndex(long absoluteOffset){
+        return (int)(Math.min(Math.max(absoluteOffset, headOffset), headOffset + size) - headOffset);
+    }
+
+    //A live view of all lines from the given absolute offset until the end of the buffer
+    public List<String> viewFrom(long absoluteOffset){
+        return subList(toIndex(absoluteOffset), size);
+    }
+
+    public long getCommandStart() {
+        return commandStart;
+    }
+
+    public long getCommandEnd() {
+        return commandEnd;
+    }
+
+    //Marks the line at the given absolute offset as the first line of the current command's output, and the command as still running
+    public void markCommandStart(long absoluteOffset){
+        this.commandStart = Math.max(absoluteOffset, headOffset);
+        this.commandEnd = -1;
+    }
+
+    //Marks the current command as finished. The line at the given absolute offset is the first line not belonging to the command's output
+    public void markCommandEnd(long absoluteOffset){
+        this.commandEnd = Math.max(absoluteOffset, this.commandStart);
+    }
+
+    /*A live view of the current command's output
+     * If the command has not finished yet, the view extends until the end of the buffer*/
+    public List<String> commandOutput(){
+        int fromIndex = toIndex(commandStart);
+        int toIndex = commandEnd < 0 ? size : toIndex(commandEnd);
+        return subList(fromIndex, Math.max(fromIndex, toIndex));
+    }
+
+    /*Called by the process stream wrapper only, without synchronizing on the buffer
+     * If the inbox is full (i.e. nobody has drained it for a while, e.g. while the session is idle) the wrapper drains it itself, so the chunks are never dropped and the reader never blocks on the consumers*/
+    public void publish(String chunk){
+        this.lastChunkAt = System.nanoTime();
+        if(!inbox.offer(chunk)){
+            synchronized (this){
+                drainInbox();
+                appendChunk(chunk);
+            }
+        }
+    }
+
+    /*Returns true if the caller should wake up the consumers of this buffer, or false if a wakeup is already pending (so the new chunk is coalesced into it)
+     * The pending wakeup is consumed when the inbox is drained, so chunks published after that wake the consumers up again*/
+    public boolean claimWakeup(){
+        return wakeupPending.compareAndSet(false, true);
+    }
+
+    /*This method assumes we are holding the synchronized block for the buffer
+     * Appends every chunk published since the previous drain. Consecutive chunks are joined first, so a line split across many chunks is only concatenated once*/
+    public void drainInbox(){
+        wakeupPending.set(false);
+        String firstChunk = inbox.poll();
+        if(firstChunk == null){
+            return;
+        }
+
+        String nextChunk = inbox.poll();
+        if(nextChunk == null){
+            appendChunk(firstChunk);
+            return;
+        }
+
+        StringBuilder joinedChunks = new StringBuilder(firstChunk);
+        for(; nextChunk != null; nextChunk = inbox.poll()){
+            joinedChunks.append(nextChunk);
+        }
+        appendChunk(joinedChunks.toString());
+    }
+
+    public long getLastChunkAt() {
+        return lastChunkAt;
+    }
+
+    //The text before the first line break continues the last line, and every line break starts a new line
+    private void appendChunk(String chunk){
+        int lineStart = 0;
+        int lineEnd = chunk.indexOf('\n');
+        if(isEmpty()){
+            add(lineEnd < 0 ? chunk : chunk.substring(0, lineEnd));
+        }else if(lineEnd != 0 && !chunk.isEmpty()){
+            int lastIndex = size - 1;
+            set(lastIndex, get(lastIndex).concat(lineEnd < 0 ? chunk : chunk.substring(0, lineEnd)));
+        }
+
+        while(lineEnd >= 0){
+            lineStart = lineEnd + 1;
+            lineEnd = chunk.indexOf('\n', lineStart);
+            add(lineEnd < 0 ? chunk.substring(lineStart) : chunk.substring(lineStart, lineEnd));
+        }
+    }
+
+    private int physicalIndex(int index){
+        return (head + index) & (lines.length - 1);
+    }
+
+    private void checkIndex(int index){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for output buffer of size " + size);
+        }
+    }
+
+    //Capacity is always a power of two, so wrapping an index around the buffer is a bitwise AND instead of a modulo
+    private void ensureCapacity(int requiredCapacity){
+        if(requiredCapacity <= lines.length){
+            return;
+        }
+
+        int newCapacity = lines.length << 1;
+        while(newCapacity < requiredCapacity){
+            newCapacity <<= 1;
+        }
+
+        String[] newLines = new String[newCapacity];
+        int linesUntilWrap = Math.min(size, lines.length - head);
+        System.arraycopy(lines, head, newLines, 0, linesUntilWrap);
+        System.arraycopy(lines, 0, newLines, linesUntilWrap, size - linesUntilWrap);
+
+        this.lines = newLines;
+        this.head = 0;
+    }
+}
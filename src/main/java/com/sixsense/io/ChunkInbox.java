@@ -0,0 +1,50 @@
+package com.sixsense.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*Bounded single producer, single consumer queue of normalized chunks, through which a process stream wrapper hands it's output over to the channel output buffer
+ * Neither side ever locks. Each side owns one index, and moves it with a lazy (release) write only after it has written or cleared the slot,
+ * so the other side never sees an index move before the slot it covers
+ * The producer is the reader thread of the wrapper. The consumer is whichever thread currently holds the monitor of the output buffer, so there is a single consumer at any given time*/
+final class ChunkInbox {
+    private final String[] chunks;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(0); //next chunk to poll (written by the consumer)
+    private final AtomicLong tail = new AtomicLong(0); //next slot to offer into (written by the producer)
+    private long cachedHead = 0; //the producer's latest read of head, so it reads the consumer's index only when the inbox seems full
+
+    //Capacity must be a power of two
+    ChunkInbox(int capacity) {
+        this.chunks = new String[capacity];
+        this.mask = capacity - 1;
+    }
+
+    //Producer side. Returns false if the inbox is full
+    boolean offer(String chunk){
+        long currentTail = this.tail.get();
+        if(currentTail - this.cachedHead == this.chunks.length){
+            this.cachedHead = this.head.get();
+            if(currentTail - this.cachedHead == this.chunks.length){
+                return false;
+            }
+        }
+
+        this.chunks[(int)currentTail & this.mask] = chunk;
+        this.tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    //Consumer side. Returns null if the inbox is empty
+    String poll(){
+        long currentHead = this.head.get();
+        if(currentHead == this.tail.get()){
+            return null;
+        }
+
+        int slotIdx = (int)currentHead & this.mask;
+        String chunk = this.chunks[slotIdx];
+        this.chunks[slotIdx] = null; //release the reference so the chunk can be collected
+        this.head.lazySet(currentHead + 1);
+        return chunk;
+    }
+}
@@ -0,0 +1,158 @@
+package com.sixsense.io;
+
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.commands.ICommand;
+import com.sixsense.model.logic.BinaryRelation;
+import com.sixsense.model.logic.CompletionMode;
+import com.sixsense.model.logic.ExpectedOutcome;
+import com.sixsense.model.logic.ExpressionResult;
+import com.sixsense.model.logic.LogicalExpression;
+import com.sixsense.utillity.CommandUtils;
+import com.sixsense.utillity.Literals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*Several independent commands, written to the same channel at once (see Session.executeBatch())
+ * The commands are chained into a single command line, executed by a carrier command in sentinel mode. A numbered marker is printed before each command,
+ * followed by the exit code of the command before it (e.g. __SXB_1a2b3c4d_7_2_0__), and the sentinel of the carrier follows the last command:
+ *     printf '\n__SXB_1a2b3c4d_7_0_%d__\n' $?; first command; printf '\n__SXB_1a2b3c4d_7_1_%d__\n' $?; second command; printf '\n__SX_1a2b3c4d_7_%d__\n' $?
+ *
+ * Once the carrier has returned, the output between each pair of markers belongs to a single command. Anything before the first marker is the echo of the command line,
+ * so the output is split correctly even if a long command line wraps (the echo itself never matches a marker, as it contains the printf format instead of the exit code)
+ * A batch is executed once, by a single session*/
+public class CommandBatch {
+    //The carrier never resolves an outcome of it's own, so it waits until it's sentinel is printed (or until it times out)
+    /*Command texts which cannot be followed by "; " and the next marker on the same command line:
+     * a trailing & or | (e.g. 'cmd &; printf' is a syntax error), a comment (which would swallow the rest of the command line), a heredoc (which would read the rest of the command line as it's input, unlike a here-string),
+     * or a command spanning several lines (including line continuations)*/
+    private static final Pattern UnchainableText = Pattern.compile("[&|\\\\]\\s*$|(^|[\\s;&|()])#|(?<!<)<<(?!<)|[\\r\\n]");
+    private static final LogicalExpression<ExpectedOutcome> AwaitSentinel = new LogicalExpression<ExpectedOutcome>().addResolvable(
+        new ExpectedOutcome()
+            .withBinaryRelation(BinaryRelation.NOT_CONTAINS)
+            .withExpectedValue("")
+    );
+
+    private final List<Command> commands;
+    private final Command carrier;
+    private final Pattern markerPattern;
+    private final ExpressionResult[] results;
+
+    public CommandBatch(List<Command> commands, String markerPrefix) {
+        this.commands = commands;
+        this.markerPattern = Pattern.compile(Pattern.quote(markerPrefix) + "(\\d+)_(\\d+)__");
+        this.results = new ExpressionResult[commands.size()];
+
+        StringBuilder commandLine = new StringBuilder();
+        Duration timeToTimeout = Duration.ZERO;
+        for(int commandIdx = 0; commandIdx < commands.size(); commandIdx++){
+            Command command = commands.get(commandIdx);
+            if(commandIdx > 0){
+                commandLine.append("; ");
+            }
+            commandLine.append("printf '\\n").append(markerPrefix).append(commandIdx).append("_%d__\\n' $?; ")
+                .append(stripTrailingSeparator(command.getCommandText()));
+            timeToTimeout = timeToTimeout.plus(command.getTimeToTimeout());
+        }
+
+        this.carrier = (Command) new Command()
+            .withChannelName(commands.get(0).getChannelName())
+            .withCommandText(commandLine.toString())
+            .withTimeToTimeout(timeToTimeout)
+            .withCompletionMode(CompletionMode.Sentinel)
+            .withUseRawOutput(true)
+            .withExpectedOutcome(AwaitSentinel);
+    }
+
+    /*A command may join a batch on the given channel (or start a new batch, if the channel is null) unless it is internal (internal commands are never written),
+     * declares dynamic fields of it's own (the fields of all commands in a batch would have to be loaded at once), or it's text cannot be chained to the next command*/
+    public static boolean isBatchable(ICommand command, String channelName){
+        return command instanceof Command &&
+            !Session.isInternal((Command)command) &&
+            command.getDynamicFields().isEmpty() &&
+            (channelName == null || ((Command)command).getChannelName().equals(channelName)) &&
+            isChainable(((Command)command).getCommandText());
+    }
+
+    public List<Command> getCommands() {
+        return commands;
+    }
+
+    public Command getCarrier() {
+        return carrier;
+    }
+
+    public void setResult(int commandIdx, ExpressionResult result){
+        this.results[commandIdx] = result;
+    }
+
+    //Commands which were never resolved (e.g. if the carrier failed to be written) share the result of the carrier
+    public List<ExpressionResult> getResults(ExpressionResult carrierResult){
+        List<ExpressionResult> batchResults = new ArrayList<>(this.results.length);
+        for(ExpressionResult result : this.results){
+            batchResults.add(result != null ? result : carrierResult);
+        }
+        return batchResults;
+    }
+
+    /*Splits the output of the carrier into the output lines of each command. Commands the shell has not started by the time the carrier returned have no output (null)
+     * The exit code of each command which has returned is kept in exitCodes (the exit code of the last command is printed by the carrier's sentinel, and is not part of it's output)*/
+    public List<List<String>> split(String carrierOutput, String[] exitCodes){
+        List<List<String>> commandOutputs = new ArrayList<>(Collections.nCopies(this.commands.size(), null));
+        List<String> currentOutput = null;
+        int currentIdx = -1;
+
+        for(String line : carrierOutput.split(Literals.LineBreak, -1)){
+            Matcher markerMatcher = this.markerPattern.matcher(line);
+            if(markerMatcher.matches() && Integer.parseInt(markerMatcher.group(1)) == currentIdx + 1){
+                if(currentOutput != null){
+                    removePrintedLineBreak(currentOutput);
+                    exitCodes[currentIdx] = markerMatcher.group(2);
+                }
+
+                currentIdx++;
+                currentOutput = new ArrayList<>();
+                commandOutputs.set(currentIdx, currentOutput);
+            }else if(currentOutput != null){
+                currentOutput.add(line);
+            }
+        }
+        return commandOutputs;
+    }
+
+    //The marker is printed on a new line, so if the command output already ended with a line break an empty line precedes it
+    private void removePrintedLineBreak(List<String> commandOutput){
+        if(!commandOutput.isEmpty() && commandOutput.get(commandOutput.size() - 1).isEmpty()){
+            commandOutput.remove(commandOutput.size() - 1);
+        }
+    }
+
+    private static boolean isChainable(String commandText){
+        if(commandText == null){
+            return false;
+        }
+
+        String strippedText = stripTrailingSeparator(commandText);
+        return !strippedText.isEmpty() && !UnchainableText.matcher(strippedText).find();
+    }
+
+    //A trailing separator would leave an empty command between the semicolons of the command line
+    private static String stripTrailingSeparator(String commandText){
+        String strippedText = commandText.strip();
+        while (strippedText.endsWith(";")){
+            strippedText = strippedText.substring(0, strippedText.length() - 1).strip();
+        }
+        return strippedText;
+    }
+
+    /*Parses the output lines of a single command with CommandOutputParser.parseLines() (the session's current command must be the parsed command, for it's pipes to apply)
+     * The echo of the command line precedes the first marker, so only the prompt is cleared from the output of each command*/
+    public static String parse(Session session, Command command, List<String> outputLines, String prompt){
+        List<String> pipedLines = command.getOutputPipes().isEmpty() ? outputLines : CommandUtils.pipeCommandOutput(session, outputLines);
+        return CommandOutputParser.parseLines(pipedLines, command.isUseRawOutput(), "", prompt);
+    }
+}
@@ -0,0 +1,215 @@
+package com.sixsense.io;
+
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.logic.ExpressionResult;
+import com.sixsense.threading.HashedWheelTimer;
+import com.sixsense.utillity.StreamingOutcomeMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*State machine of a single command, executed by an event driven session (see ExecutionMode.EventDriven)
+ * No thread waits for the command to finish. Instead, events are fired by the process stream wrappers (new chunks), by the scheduled timers of the command and by closing the session,
+ * and each event schedules the session to advance the command on a driver thread (parse the new output, attempt to resolve the outcome, and complete the command if it has finished)
+ *
+ * Events may be fired concurrently, but the command is advanced by a single driver thread at a time:
+ * events fired while the command is being advanced are coalesced into one additional advance, which starts once the current one returns
+ *
+ * Driver threads never block. Once the command has finished, it's result is retained (which may write files or publish to the broker) on a worker thread instead,
+ * and the result completes there - so whatever continues the execution (e.g. writing the next command) runs on the worker thread as well*/
+public class CommandExecution {
+    public enum State {
+        AwaitingMinimalResponse, //The command was written, new chunks are ignored until the minimal time to response has elapsed
+        AwaitingOutput, //Every new chunk advances the command
+        Completed
+    }
+
+    private final Command command;
+    private final ShellChannel channel;
+    private final Executor driver;
+    private final Executor worker;
+    private final Consumer<CommandExecution> advance;
+    private final CompletableFuture<ExpressionResult> result;
+    private final AtomicReference<State> state;
+    private final AtomicInteger pendingEvents; //events fired since the command was last advanced
+    private final List<HashedWheelTimer.Timeout> timers;
+    private volatile boolean deadlineReached = false;
+    private volatile boolean interrupted = false;
+
+    //Parsing state, only accessed while advancing the command
+    private CommandOutputParser outputParser;
+    private StreamingOutcomeMatcher outcomeMatcher;
+    private String parsedOutput = "";
+    private boolean commandEndReached = false;
+    private ExpressionResult resolvedOutcome = ExpressionResult.defaultOutcome();
+
+    public CommandExecution(Command command, ShellChannel channel, Executor driver, Executor worker, Consumer<CommandExecution> advance) {
+        this.command = command;
+        this.channel = channel;
+        this.driver = driver;
+        this.worker = worker;
+        this.advance = advance;
+        this.result = new CompletableFuture<>();
+        this.state = new AtomicReference<>(State.AwaitingMinimalResponse);
+        this.pendingEvents = new AtomicInteger(0);
+        this.timers = new ArrayList<>();
+    }
+
+    /*Events*/
+    public void onMinimalResponseElapsed(){
+        this.state.compareAndSet(State.AwaitingMinimalResponse, State.AwaitingOutput);
+        fire();
+    }
+
+    public void onNewChunk(){
+        if(this.state.get() == State.AwaitingOutput) {
+            fire();
+        }
+    }
+
+    public void onDeadlineReached(){
+        this.deadlineReached = true;
+        this.state.compareAndSet(State.AwaitingMinimalResponse, State.AwaitingOutput);
+        fire();
+    }
+
+    public void onInterrupt(){
+        this.interrupted = true;
+        this.state.compareAndSet(State.AwaitingMinimalResponse, State.AwaitingOutput);
+        fire();
+    }
+
+    private void fire(){
+        if(this.pendingEvents.getAndIncrement() == 0){
+            try {
+                this.driver.execute(this::drainEvents);
+            }catch (RejectedExecutionException e){
+                fail(e);
+            }
+        }
+    }
+
+    private void drainEvents(){
+        int handledEvents;
+        do {
+            handledEvents = this.pendingEvents.get();
+            if(this.state.get() == State.AwaitingOutput) {
+                this.advance.accept(this);
+            }
+        } while (this.pendingEvents.addAndGet(-handledEvents) != 0);
+    }
+
+    /*Transitions to the completed state (only invoked by the advancing driver thread), and finishes the command on a worker thread
+     * If the worker rejects the command, it is finished on the driver thread instead (a late result is better than none)*/
+    public void complete(Supplier<ExpressionResult> finisher){
+        this.state.set(State.Completed);
+        cancelTimers();
+        try {
+            this.worker.execute(() -> finish(finisher));
+        }catch (RejectedExecutionException | IllegalStateException e){
+            finish(finisher);
+        }
+    }
+
+    private void finish(Supplier<ExpressionResult> finisher){
+        try {
+            this.result.complete(finisher.get());
+        }catch (RuntimeException e){
+            this.result.completeExceptionally(e);
+        }
+    }
+
+    public void fail(Throwable cause){
+        this.state.set(State.Completed);
+        cancelTimers();
+        this.result.completeExceptionally(cause);
+    }
+
+    //Timers registered after the command has completed are cancelled immediately
+    void addTimer(HashedWheelTimer.Timeout timer){
+        synchronized (this.timers) {
+            this.timers.add(timer);
+        }
+        if(this.state.get() == State.Completed){
+            cancelTimers();
+        }
+    }
+
+    private void cancelTimers(){
+        synchronized (this.timers) {
+            for (HashedWheelTimer.Timeout timer : this.timers) {
+                timer.cancel();
+            }
+            this.timers.clear();
+        }
+    }
+
+    /*Getters and setters*/
+    public Command getCommand() {
+        return command;
+    }
+
+    ShellChannel getChannel() {
+        return channel;
+    }
+
+    public CompletableFuture<ExpressionResult> getResult() {
+        return result;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isDeadlineReached() {
+        return deadlineReached;
+    }
+
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    CommandOutputParser getOutputParser() {
+        return outputParser;
+    }
+
+    StreamingOutcomeMatcher getOutcomeMatcher() {
+        return outcomeMatcher;
+    }
+
+    void startParsing(CommandOutputParser outputParser, StreamingOutcomeMatcher outcomeMatcher){
+        this.outputParser = outputParser;
+        this.outcomeMatcher = outcomeMatcher;
+    }
+
+    String getParsedOutput() {
+        return parsedOutput;
+    }
+
+    void setParsedOutput(String parsedOutput) {
+        this.parsedOutput = parsedOutput;
+    }
+
+    boolean isCommandEndReached() {
+        return commandEndReached;
+    }
+
+    void setCommandEndReached(boolean commandEndReached) {
+        this.commandEndReached = commandEndReached;
+    }
+
+    ExpressionResult getResolvedOutcome() {
+        return resolvedOutcome;
+    }
+
+    void setResolvedOutcome(ExpressionResult resolvedOutcome) {
+        this.resolvedOutcome = resolvedOutcome;
+    }
+}
@@ -0,0 +1,365 @@
+package com.sixsense.io;
+
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.pipes.AbstractOutputPipe;
+import com.sixsense.utillity.CommandUtils;
+import com.sixsense.utillity.Literals;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*Parses the output of the command currently executed by a session, as the output keeps arriving
+ * Each time the session wakes up, only lines that were added to the channel output since the previous wakeup are scanned, filtered and piped
+ * (the process stream wrapper only ever appends to the last line of the output, so every line but the last is final once we've seen it)
+ * Prompt positions and the filtered output of all complete lines are kept between wakeups, so the total work for a command is linear in the size of it's output
+ *
+ * Pipes which do not treat every line independently (e.g. first/last line pipes, or draining pipes which remove lines from the channel output)
+ * need to see the whole command output every time, so for commands using them we fall back to parsing the entire output on each wakeup
+ *
+ * Commands completed by a sentinel have certainly finished once the sentinel line is printed (regardless of the prompts around them),
+ * and their output ends right before it. The exit code printed in the sentinel line is kept by the parser
+ *
+ * A parser is created per command execution, and is not thread safe. Callers synchronize on the channel output buffer before invoking parse()*/
+public class CommandOutputParser {
+    private final Session session;
+    private final ChannelOutputBuffer output;
+    private final String prompt;
+    private final String evaluatedCommand;
+    private final String firstLineOfCommand;
+    private final boolean useRawOutput;
+    private final boolean hasPipes;
+    private final boolean isIncremental;
+    private final int maximalClearedLength; //length of the longest string cleared from the filtered output
+    private final String sentinel; //empty, unless the command is completed by a sentinel
+    private final Pattern sentinelPattern;
+
+    //Prompt detection state (all offsets are absolute channel output offsets)
+    private long scannedOffset = 0; //first complete line not yet scanned for prompts
+    private long latestPrompt = -1; //most recent complete line starting with the prompt
+    private boolean latestPromptHasCommand = false;
+    private long previousPrompt = -1; //the complete prompt line before it
+    private boolean previousPromptHasCommand = false;
+    private boolean commandEndReached = false;
+    private long sentinelOffset = -1; //the line printed by the sentinel, once found
+    private String exitCode = null;
+
+    //Parsing state
+    private long parsedStart = -1; //command start cursor the parsed lines were accumulated from
+    private long parsedOffset = 0; //first complete line not yet parsed
+    private ParsedText parsedLines = new ParsedText(0);
+    private long outputRevision = 0; //incremented whenever previously parsed output is discarded
+    private int stableLength = 0; //leading characters of the parsed output which will not change until the next revision
+
+    CommandOutputParser(Session session, ChannelOutputBuffer output) {
+        this(session, output, session.getCurrentCommand(), session.getCurrentPrompt(), session.getCurrentEvaluatedCommand(), session.getCurrentSentinel());
+    }
+
+    //The session is only used by the pipes of the command, so commands without pipes may be parsed without one
+    public CommandOutputParser(Session session, ChannelOutputBuffer output, Command command, String prompt, String evaluatedCommand, String sentinel) {
+        this.session = session;
+        this.output = output;
+        this.prompt = prompt;
+        this.evaluatedCommand = evaluatedCommand;
+        if(this.evaluatedCommand.contains("\n")){
+            this.firstLineOfCommand = this.evaluatedCommand.substring(0, this.evaluatedCommand.indexOf('\n')+1); //if the command contains multiple lines, only search for the first line in the output
+        }else{
+            this.firstLineOfCommand = this.evaluatedCommand;
+        }
+
+        this.useRawOutput = command.isUseRawOutput();
+        this.hasPipes = !command.getOutputPipes().isEmpty();
+        this.isIncremental = command.getOutputPipes().stream().allMatch(AbstractOutputPipe::isLineIndependent);
+        this.maximalClearedLength = Math.max(1, Math.max(this.evaluatedCommand.length(), this.prompt.length()));
+        this.sentinel = sentinel;
+        this.sentinelPattern = this.sentinel.isEmpty() ? null : Pattern.compile(Pattern.quote(this.sentinel) + "(\\d+)__");
+    }
+
+    /*This method assumes we are holding the synchronized block for the output buffer
+     * Moves the command cursors past data left over from previous commands (trimming that data) and returns the parsed command output*/
+    public String parse(){
+        output.drainInbox(); //chunks published since the last wakeup
+        if(!this.isIncremental){
+            //Draining pipes may have removed lines (and shifted offsets) since the last wakeup, so every wakeup starts from scratch
+            this.scannedOffset = 0;
+            this.latestPrompt = -1;
+            this.previousPrompt = -1;
+            this.sentinelOffset = -1;
+        }
+
+        this.commandEndReached = detectCommandBoundaries();
+        if(this.isIncremental){
+            return parseNewLines();
+        }else{
+            return parseEntireOutput();
+        }
+    }
+
+    /*Consumers of the parsed output (e.g. the outcome matcher) only need to process the parsed output once up to the stable length
+     * unless the revision has changed since they last processed it*/
+    public long getOutputRevision() {
+        return outputRevision;
+    }
+
+    public int getStableLength() {
+        return stableLength;
+    }
+
+    //true only if the command has certainly finished writing it's output (if true, then certainly finished. if false, may be either way)
+    public boolean isCommandEndReached() {
+        return commandEndReached;
+    }
+
+    //The exit code printed by the sentinel, or null if the command is not completed by a sentinel (or has not finished yet)
+    public String getExitCode() {
+        return exitCode;
+    }
+
+    /*We keep track of the two most recent lines starting with the current prompt, and move the command start cursor to the latest chunk satisfying either of the following conditions:
+     * 1) The chunk lies between the two most recent occurrences of the current prompt
+     *       (in which case, the process stream has read the full output of the command)
+     * 2) The chunk is preceded by the current command, which is in turn preceeded by the current prompt
+     *       (in which case, the process stream has either read part of the command, or the command is not followed by the current prompt
+     *
+     * Complete lines are scanned only once, while the last line is examined on every wakeup as it may still be written to.
+     * Then we trim all outdated chunks (without shifting the remaining lines), and return if the current chunk lies between two occurrences of the current prompt*/
+    private boolean detectCommandBoundaries(){
+        if(output.isEmpty()){
+            return false;
+        }
+
+        long lastLineOffset = output.getTailOffset() - 1;
+        for(long lineOffset = Math.max(this.scannedOffset, output.getHeadOffset()); lineOffset < lastLineOffset; lineOffset++){
+            String currentLine = output.get(output.toIndex(lineOffset));
+            if(currentLine.startsWith(this.prompt)){
+                this.previousPrompt = this.latestPrompt;
+                this.previousPromptHasCommand = this.latestPromptHasCommand;
+                this.latestPrompt = lineOffset;
+                this.latestPromptHasCommand = currentLine.contains(this.firstLineOfCommand);
+            }else if(this.sentinelOffset < 0 && this.sentinelPattern != null && currentLine.startsWith(this.sentinel)){
+                Matcher sentinelMatcher = this.sentinelPattern.matcher(currentLine);
+                if(sentinelMatcher.matches()){
+                    this.sentinelOffset = lineOffset;
+                    this.exitCode = sentinelMatcher.group(1);
+                }
+            }
+        }
+        this.scannedOffset = Math.max(this.scannedOffset, lastLineOffset);
+
+        long newestPrompt = this.latestPrompt;
+        boolean newestHasCommand = this.latestPromptHasCommand;
+        long olderPrompt = this.previousPrompt;
+        boolean olderHasCommand = this.previousPromptHasCommand;
+
+        String lastLine = output.get(output.size() - 1);
+        if(lastLine.startsWith(this.prompt)){
+            olderPrompt = newestPrompt;
+            olderHasCommand = newestHasCommand;
+            newestPrompt = lastLineOffset;
+            newestHasCommand = lastLine.contains(this.firstLineOfCommand);
+        }
+
+        long commandStart;
+        boolean endReached = false;
+        if(newestPrompt < 0){
+            commandStart = output.getHeadOffset(); //No prompt yet, so nothing can be safely trimmed
+        }else if(newestHasCommand || olderPrompt < 0){
+            commandStart = newestPrompt;
+        }else{
+            commandStart = olderPrompt;
+            endReached = olderHasCommand; //We assume that if the prompt appears twice, and the command appears once, than case 1) is met
+        }
+
+        output.markCommandStart(commandStart);
+        output.trimBefore(output.getCommandStart());
+        if(this.sentinelOffset >= 0){
+            //The sentinel is printed on a new line, so if the output already ended with a line break an empty line precedes it
+            long commandEnd = this.sentinelOffset;
+            if(commandEnd > output.getCommandStart() && output.get(output.toIndex(commandEnd - 1)).isEmpty()){
+                commandEnd--;
+            }
+            output.markCommandEnd(commandEnd);
+            endReached = true;
+        }else if(endReached){
+            output.markCommandEnd(output.getTailOffset());
+        }
+        return endReached;
+    }
+
+    /*Parses complete lines which arrived since the last wakeup into the accumulated text, and returns it together with the (possibly partial) last line
+     * The last line is parsed into a copy, since it will most likely grow until the next wakeup*/
+    private String parseNewLines(){
+        long commandStart = output.getCommandStart();
+        if(commandStart != this.parsedStart){
+            //The command start moved, so lines we have already parsed may not belong to the command output
+            this.parsedStart = commandStart;
+            this.parsedOffset = commandStart;
+            this.parsedLines = new ParsedText(this.parsedLines.text.capacity());
+            this.outputRevision++;
+        }
+
+        long tailOffset = output.getTailOffset();
+        if(tailOffset <= commandStart){
+            this.stableLength = 0;
+            return this.parsedLines.text.toString();
+        }
+
+        if(this.sentinelOffset >= 0){
+            //The output is complete, and ends before the sentinel
+            for(; this.parsedOffset < output.getCommandEnd(); this.parsedOffset++){
+                appendLine(this.parsedLines, output.get(output.toIndex(this.parsedOffset)));
+            }
+            this.stableLength = this.parsedLines.text.length();
+            return this.parsedLines.text.toString();
+        }
+
+        for(; this.parsedOffset < tailOffset - 1; this.parsedOffset++){
+            appendLine(this.parsedLines, output.get(output.toIndex(this.parsedOffset)));
+        }
+
+        //Clearing the command or prompt from the filtered output may remove characters near the end of the parsed lines, once the next line is appended
+        int parsedLength = this.parsedLines.text.length();
+        this.stableLength = this.useRawOutput ? parsedLength : Math.max(0, parsedLength - this.maximalClearedLength + 1);
+
+        String lastLine = output.get(output.size() - 1);
+        ParsedText parsedOutput = this.parsedLines.copy(lastLine.length() + 1);
+        appendLine(parsedOutput, lastLine);
+        return parsedOutput.text.toString();
+    }
+
+    //Used when at least one of the command's pipes needs the entire output of the command
+    private String parseEntireOutput(){
+        this.outputRevision++;
+        this.stableLength = 0;
+        ParsedText parsedOutput = new ParsedText(0);
+        for(String pipedLine : CommandUtils.pipeCommandOutput(this.session, output.commandOutput())){
+            appendPipedLine(parsedOutput, pipedLine, this.useRawOutput, this.evaluatedCommand, this.prompt);
+        }
+        return parsedOutput.text.toString();
+    }
+
+    private void appendLine(ParsedText target, String line){
+        if(this.hasPipes){
+            for(String pipedLine : CommandUtils.pipeCommandOutput(this.session, Collections.singletonList(line))){
+                appendPipedLine(target, pipedLine, this.useRawOutput, this.evaluatedCommand, this.prompt);
+            }
+        }else{
+            appendPipedLine(target, line, this.useRawOutput, this.evaluatedCommand, this.prompt);
+        }
+    }
+
+    /*Parses complete (already piped) output lines at once, exactly as the output of the executing command is parsed as it arrives
+     * Used for output which is only attributed to a command once it is complete (see CommandBatch.parse())*/
+    public static String parseLines(List<String> pipedLines, boolean useRawOutput, String evaluatedCommand, String prompt){
+        ParsedText parsedOutput = new ParsedText(0);
+        for(String pipedLine : pipedLines){
+            appendPipedLine(parsedOutput, pipedLine, useRawOutput, evaluatedCommand, prompt);
+        }
+        return parsedOutput.text.toString();
+    }
+
+    /*Parse the command output into a concatenated user-friendly string
+     * Raw output lines are joined with line breaks, otherwise we filter the line and append it to the filtered output*/
+    private static void appendPipedLine(ParsedText target, String pipedLine, boolean useRawOutput, String evaluatedCommand, String prompt){
+        if(useRawOutput){
+            if(target.hasLines){
+                target.text.append(Literals.LineBreak);
+            }
+            target.text.append(pipedLine);
+            target.hasLines = true;
+        }else{
+            appendFilteredLine(target, pipedLine, evaluatedCommand, prompt);
+        }
+    }
+
+    /*We could theoretically just apply a ClearingPipe and then a WhitespacePipe
+     * But then changes to the pipes could affect the session filtering methods
+     *
+     * Filtered lines are joined by a single space, with every whitespace sequence collapsed into a single space.
+     * we do not add blank lines to the string representation, to prevent redundant whitespace being inserted into the filtered output
+     * case 1 :
+     *   output = {"foo", "prompt"};
+     *   stringRepresentation (before filter) => "foo prompt"
+     *   stringRepresentation (after filter)=> "foo ", but the parsed output should be "foo"
+     *
+     * case 2 :
+     *   output = {"", "", ""};
+     *   stringRepresentation => "  " (two space characters), but the parsed output should be ""*/
+    private static void appendFilteredLine(ParsedText target, String line, String evaluatedCommand, String prompt){
+        String filteredLine = line
+                .replace(Literals.CarriageReturn+ Literals.LineBreak, " ")
+                .replace(Literals.LineBreak, " ")
+                .replace(Literals.CarriageReturn, " ")
+                .replace(evaluatedCommand, "")
+                .replace(prompt, "");
+
+        if(filteredLine.isBlank()){
+            return;
+        }
+
+        int appendedFrom = target.text.length();
+        if(target.hasLines){
+            appendCollapsed(target, " ");
+        }
+        appendCollapsed(target, filteredLine);
+        target.hasLines = true;
+
+        /*Collapsing whitespace (or joining lines) may form new occurrences of the command or prompt, which should be cleared as well
+         * Only the appended text (and the end of the text before it, in case the occurrence crosses the line boundary) has to be searched*/
+        removeOccurrences(target.text, evaluatedCommand, appendedFrom);
+        removeOccurrences(target.text, prompt, appendedFrom);
+    }
+
+    //Same as replaceAll("\\s+", " "), but keeps it's state across appended lines
+    private static void appendCollapsed(ParsedText target, String segment){
+        for(int charIdx = 0; charIdx < segment.length(); charIdx++){
+            char currentChar = segment.charAt(charIdx);
+            if(isRegexWhitespace(currentChar)){
+                if(!target.inWhitespace){
+                    target.text.append(' ');
+                    target.inWhitespace = true;
+                }
+            }else{
+                target.text.append(currentChar);
+                target.inWhitespace = false;
+            }
+        }
+    }
+
+    private static void removeOccurrences(StringBuilder text, String pattern, int appendedFrom){
+        if(pattern.isEmpty()){
+            return;
+        }
+
+        int searchFrom = Math.max(0, appendedFrom - pattern.length() + 1);
+        if(text.indexOf(pattern, searchFrom) >= 0){
+            String clearedText = text.substring(searchFrom).replace(pattern, "");
+            text.setLength(searchFrom);
+            text.append(clearedText);
+        }
+    }
+
+    //The \s character class: [ \t\n\x0B\f\r]
+    private static boolean isRegexWhitespace(char character){
+        return character == ' ' || character == '\t' || character == '\n' || character == '\u000B' || character == '\f' || character == '\r';
+    }
+
+    private static class ParsedText {
+        private final StringBuilder text;
+        private boolean hasLines = false; //true once any line was added (even an empty raw line)
+        private boolean inWhitespace = false; //true if the last character appended was a collapsed whitespace sequence
+
+        private ParsedText(int capacity) {
+            this.text = new StringBuilder(Math.max(capacity, 16));
+        }
+
+        private ParsedText copy(int extraCapacity){
+            ParsedText copy = new ParsedText(this.text.length() + extraCapacity);
+            copy.text.append(this.text);
+            copy.hasLines = this.hasLines;
+            copy.inWhitespace = this.inWhitespace;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.sixsense.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class LocalShellChannel extends ShellChannel {
+    /*The JDK cannot allocate a pseudo-terminal by itself, so we let util-linux script(1) allocate one for us and run a login shell on it.
+     * The resulting shell behaves exactly like the one we get from an ssh session (echoes input, prints a prompt, merges stderr into stdout)
+     * -q suppresses the start/done messages, -f flushes after every write, and /dev/null discards the typescript file*/
+    private static final String[] shellCommand = {"script", "-qfc", "/bin/bash -l", "/dev/null"};
+    private static final String terminalType = "vt100"; //Same terminal type requested by sshj when allocating the default PTY
+    private static final long terminationGraceMillis = 500;
+
+    private Process shellProcess; //Shell process, forked from the engine process and attached to it's own pseudo-terminal
+
+    /*Local Shell Channels have a single constructor
+    * Channels spawn a pty-backed shell as a child process of the engine, skipping the tcp connection, key exchange and authentication of an ssh self-connection
+    * Sessions write (and flush) directly to the process input stream , and the output is read by the PSW into the ChannelOutput list
+    * Note that unlike ssh channels, the shell runs as the same user as the engine process*/
+    LocalShellChannel(String name, Session engineSession) throws IOException {
+        super(name, engineSession);
+
+        try {
+            ProcessBuilder builder = new ProcessBuilder(shellCommand)
+                .directory(new File(System.getProperty("user.home")))
+                .redirectErrorStream(true); //script(1) writes everything to the pty anyway, this only catches it's own failures
+
+            Map<String, String> environment = builder.environment();
+            environment.put("TERM", terminalType);
+            this.shellProcess = builder.start();
+        } catch (IOException e) {
+            //Ensure any partially opened resources are closed
+            this.close();
+            throw new IOException("Failed to spawn a local shell process. Caused by: ", e);
+        }
+
+        this.bindStreams(this.shellProcess.getOutputStream(), this.shellProcess.getInputStream());
+    }
+
+    @Override
+    public void close() throws IOException {
+        boolean streamsClosed = closeStreams();
+        boolean processClosed = closeChannelResource("shellProcess", this::terminateShellProcess);
+        markClosed(!(streamsClosed && processClosed));
+    }
+
+    //Ask the shell to terminate, and kill it if it doesn't do so within the grace period
+    private void terminateShellProcess() throws IOException {
+        if(this.shellProcess == null || !this.shellProcess.isAlive()){
+            return;
+        }
+
+        this.shellProcess.destroy();
+        try {
+            if(!this.shellProcess.waitFor(terminationGraceMillis, TimeUnit.MILLISECONDS)){
+                this.shellProcess.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            this.shellProcess.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for local shell process to terminate");
+        }
+    }
+}
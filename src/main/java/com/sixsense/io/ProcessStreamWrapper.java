@@ -2,7 +2,7 @@ package com.sixsense.io;
 
 import com.sixsense.model.logging.IDebuggable;
 import com.sixsense.model.logging.Loggers;
-import com.sixsense.utillity.Literals;
+import com.sixsense.services.TerminalRecorder;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.ThreadContext;
@@ -10,7 +10,10 @@ import org.apache.logging.log4j.ThreadContext;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebuggable {
@@ -20,11 +23,24 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
 
     //Session and I/O
     private Session session; //parent session
+    private final String channelName;
     private InputStream processStream; //JVM input stream (i.e. terminal output stream)
-    private final List<String> processOutput; //List representation of the parsed output
+    private final ChannelOutputBuffer processOutput; //List representation of the parsed output
+    private final TerminalOutputNormalizer outputNormalizer; //Decodes and normalizes the raw bytes, carrying state between reads
+
+    //Read buffer sizing and throughput
+    private static final int MinimalReadSize = 1024;
+    private static final int MaximalReadSize = 64 * 1024;
+    private static final int SmallReadsBeforeShrinking = 8;
+    private int smallReadsInARow = 0;
+    private long totalBytesRead = 0;
+    private long totalReads = 0;
+    private long totalWakeups = 0;
 
     //Diagnostics
-    private final List<String> rawChunks;
+    private static final int MaximalRawChunks = 1024;
+    private final TerminalRecorder terminalRecorder; //Records the raw bytes read from the stream. While recording, chunks are not logged to the terminal log
+    private final Deque<String> rawChunks; //The latest raw chunks, kept in debug mode only
     private final Map<String, String> substitutionCriteria;
     private boolean isUnderDebug = false;
     private boolean isClosed = false;
@@ -33,45 +49,87 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
     * If the process output/error stream fills it's own buffer, the process will get stuck and no new commands may be written to it
     * ProcessStreamWrapper will continuously read from the process stream it receives in the constructor, to avoid the process jamming and failing the session
     * Each session has a map of open channels, through which it performs I/O with the required channel*/
-    ProcessStreamWrapper(InputStream processStream, Session session, List<String> processOutput) {
+    ProcessStreamWrapper(InputStream processStream, Session session, String channelName, ChannelOutputBuffer processOutput) {
         this.processStream = processStream;
         this.session = session;
+        this.channelName = channelName;
         this.processOutput = processOutput;
-        this.rawChunks = new ArrayList<>();
-        this.substitutionCriteria = new LinkedHashMap<>();
-
-        //Initialize the default substitution criteria
-        this.substitutionCriteria.put(" *" + Literals.CarriageReturn + " *", ""); //trim all space characters around carriage returns
-        this.substitutionCriteria.put(" *" + Literals.LineBreak + " *", Literals.LineBreak); //while retaining the line breaks
+        this.outputNormalizer = new TerminalOutputNormalizer(StandardCharsets.UTF_8);
+        this.terminalRecorder = session.getTerminalRecorder();
+        this.rawChunks = new ArrayDeque<>();
+        this.substitutionCriteria = new LinkedHashMap<>(); //Spaces around carriage returns and line breaks are trimmed by the output normalizer itself, so only added criteria are kept here
     }
 
     @Override
     public Boolean get(){
-        ThreadContext.put("sessionID", this.session.getShortSessionId());
+        String loggedSessionId = this.session.getShortSessionId();
+        ThreadContext.put("sessionID", loggedSessionId);
         logger.debug("started reading from stream for session " + this.session.getSessionShellId());
-        byte[] rawDataBuffer = new byte[1024];
+        ByteBuffer rawDataBuffer = ByteBuffer.allocate(MinimalReadSize);
+        long readStart = System.nanoTime();
         int bytesRead;
 
         do {
             bytesRead = readIntoBuffer(rawDataBuffer);
 
             if(bytesRead != -1) {
-                String currentChunk = parseRawChunk(rawDataBuffer, bytesRead);
-                String chunkAfterSubstitution = executeSubstitutionCriteria(currentChunk);
-                String[] splitChunk = chunkAfterSubstitution.split(Literals.LineBreak, -1);  //splitChunk will always have at least one entry (if no line break was read); passing -1 as the second argument will perform the maximum amount of possible splits, without omitting leading or trailing empty strings
-                addChunksToOutput(splitChunk);
+                //Pooled sessions receive a new id whenever they are leased again, so the terminal log should follow the current id
+                if(!loggedSessionId.equals(this.session.getShortSessionId())){
+                    loggedSessionId = this.session.getShortSessionId();
+                    ThreadContext.put("sessionID", loggedSessionId);
+                }
+
+                boolean isBufferFilled = !rawDataBuffer.hasRemaining();
+                recordRawChunk(rawDataBuffer, bytesRead, loggedSessionId);
+                parseRawChunk(rawDataBuffer);
+                publishChunk();
                 signalNewChunk();
+                rawDataBuffer = resizeReadBuffer(rawDataBuffer, bytesRead, isBufferFilled);
+                this.totalBytesRead += bytesRead;
+                this.totalReads++;
             }
         } while (bytesRead != -1 && !this.isClosed()); //as long as eof wasn't reached and the process stream wasn't closed (these conditions are independent)
 
-        logger.debug("finished reading from stream for session " + this.session.getSessionShellId());
+        if(logger.isDebugEnabled()) {
+            long readMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - readStart));
+            logger.debug("finished reading from stream for session " + this.session.getSessionShellId() + ". Read " + this.totalBytesRead + " bytes in " + this.totalReads + " reads and " + readMillis + " ms (" + (this.totalBytesRead * 1000 / readMillis) + " bytes/sec), waking up the session " + this.totalWakeups + " times");
+        }
         ThreadContext.remove("sessionID");
         return true;
     }
 
-    private int readIntoBuffer(byte[] rawDataBuffer){
+    /*Chatty output fills the buffer on every read, so the buffer grows (up to MaximalReadSize) to read it in fewer, larger chunks
+     * Once the output calms down to small chunks (e.g. prompts and short responses), it shrinks back gradually. Leftover bytes of an incomplete character are carried over*/
+    private ByteBuffer resizeReadBuffer(ByteBuffer rawDataBuffer, int bytesRead, boolean isBufferFilled){
+        int capacity = rawDataBuffer.capacity();
+        int resizedCapacity = capacity;
+        if(isBufferFilled && capacity < MaximalReadSize){
+            resizedCapacity = capacity * 2;
+            this.smallReadsInARow = 0;
+        }else if(bytesRead < capacity / 4 && capacity > MinimalReadSize){
+            if(++this.smallReadsInARow == SmallReadsBeforeShrinking){
+                resizedCapacity = capacity / 2;
+                this.smallReadsInARow = 0;
+            }
+        }else{
+            this.smallReadsInARow = 0;
+        }
+
+        if(resizedCapacity == capacity){
+            return rawDataBuffer;
+        }
+        rawDataBuffer.flip();
+        return ByteBuffer.allocate(resizedCapacity).put(rawDataBuffer);
+    }
+
+    //Reads after any leftover bytes of an incomplete character (which were compacted to the start of the buffer after the previous read)
+    private int readIntoBuffer(ByteBuffer rawDataBuffer){
         try {
-            return this.processStream.read(rawDataBuffer);
+            int bytesRead = this.processStream.read(rawDataBuffer.array(), rawDataBuffer.position(), rawDataBuffer.remaining());
+            if(bytesRead > 0){
+                rawDataBuffer.position(rawDataBuffer.position() + bytesRead);
+            }
+            return bytesRead;
         } catch (IOException e) {
             /*processStream.read() will throw an IO exception if closed while waiting for bytes.
             * if the synchronization is held by another thread (invoking close()) we wait for it to finish before checking for closure reason */
@@ -85,71 +143,70 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
         }
     }
 
-    /*If any bytes have been read into the byte buffer, construct a string using the bytes in the buffer
-     * add the chunk into the raw chunks list
-     * then log that it has been parsed*/
-    private String parseRawChunk(byte[] rawData, int bytesRead){
-        String currentChunk = new String(rawData, 0, bytesRead);
-        if(this.isUnderDebug) {
-            synchronized (this.rawChunks) {
-                rawChunks.add(currentChunk);
-            }
-            logger.debug("read chunk " + currentChunk + " directly from stream");
+    //The bytes just read are the last ones written into the buffer (after any leftover bytes of the previous read)
+    private void recordRawChunk(ByteBuffer rawDataBuffer, int bytesRead, String sessionId){
+        if(bytesRead > 0 && this.terminalRecorder.isRecording()) {
+            this.terminalRecorder.record(sessionId, this.channelName, rawDataBuffer, rawDataBuffer.position() - bytesRead, bytesRead);
         }
-        terminalLogger.info(currentChunk);
-        return currentChunk;
     }
 
-    /*Execute the substitution criteria against the current chunk*/
-    private String executeSubstitutionCriteria(String currentChunk){
+    /*Decode and normalize the bytes read into the byte buffer
+     * then add the decoded chunk into the raw chunks list, and log that it has been parsed (unless the raw bytes were recorded already)*/
+    private void parseRawChunk(ByteBuffer rawDataBuffer){
+        boolean isLoggingChunk = !this.terminalRecorder.isRecording() && terminalLogger.isInfoEnabled();
+        this.outputNormalizer.setRecordingRawText(this.isUnderDebug || isLoggingChunk);
+
+        rawDataBuffer.flip();
         synchronized (this.substitutionCriteria) {
-            for(Map.Entry<String, String> criterion : this.substitutionCriteria.entrySet()) {
-                String pattern = criterion.getKey();
-                String replacement = criterion.getValue();
-                currentChunk = currentChunk.replaceAll(pattern, replacement);
+            this.outputNormalizer.normalize(rawDataBuffer);
+        }
+        rawDataBuffer.compact();
+
+        if(this.isUnderDebug || isLoggingChunk) {
+            String currentChunk = this.outputNormalizer.getRawText().toString();
+            if (this.isUnderDebug) {
+                synchronized (this.rawChunks) {
+                    if(this.rawChunks.size() == MaximalRawChunks){
+                        this.rawChunks.removeFirst();
+                    }
+                    this.rawChunks.addLast(currentChunk);
+                }
+                logger.debug("read chunk " + currentChunk + " directly from stream");
+            }
+            if(isLoggingChunk) {
+                terminalLogger.info(currentChunk);
             }
         }
-
-        return currentChunk;
     }
 
-    /*Add the split chunks into the list representation of the output*/
-    private void addChunksToOutput(String[] splitChunk){
-        synchronized (this.processOutput) {
-            if(splitChunk.length > 0) {
-                String firstChunk = splitChunk[0];
-                if (this.processOutput.isEmpty()) {
-                    this.processOutput.add(firstChunk);
-                } else {
-                    String lastLine = this.processOutput.get(this.processOutput.size() - 1);
-                    this.processOutput.set(this.processOutput.size() - 1, lastLine + firstChunk);
-                }
-
-                int chunkIdx;
-                for (chunkIdx = 1; chunkIdx < splitChunk.length; chunkIdx++) {
-                    this.processOutput.add(splitChunk[chunkIdx]);
-                }
-            }
+    //Hand the normalized chunk over to the output buffer. Chunks which were normalized away entirely (e.g. escape sequences alone) have nothing to hand over
+    private void publishChunk(){
+        CharSequence normalizedText = this.outputNormalizer.getNormalizedText();
+        if(normalizedText.length() > 0) {
+            this.processOutput.publish(normalizedText.toString());
         }
     }
 
-    /*Signal the parent session that new chunks has been parsed (i.e. there is new output)*/
+    /*Signal the parent session that new chunks have been published (i.e. there is new output)
+     * Blocking sessions are woken up through the command lock, while event driven sessions receive the chunk as an event
+     * Wakeups are coalesced - until the session drains the chunks published since the previous wakeup, there is no point in waking it up again*/
     private void signalNewChunk(){
-        if(!this.isClosed()) {
+        if(!this.isClosed() && this.processOutput.claimWakeup()) {
+            this.totalWakeups++;
             this.session.getCommandLock().lock();
-            logger.debug(this.session.getTerminalIdentifier() + " proccess stream acquired lock");
             try {
                 this.session.getNewChunkReceived().signalAll();
             } finally {
                 this.session.getCommandLock().unlock();
-                logger.debug(this.session.getTerminalIdentifier() + " proccess stream released lock");
             }
+            this.session.onNewChunk(this.processOutput);
         }
     }
 
+    //Only the latest chunks are kept. The whole output can be replayed from the terminal recorder
     public List<String> getRawChunks(){
         synchronized (this.rawChunks) {
-            return Collections.unmodifiableList(this.rawChunks);
+            return Collections.unmodifiableList(new ArrayList<>(this.rawChunks));
         }
     }
 
@@ -159,9 +216,11 @@ public class ProcessStreamWrapper implements Closeable, Supplier<Boolean>, IDebu
         }
     }
 
+    //Additional criteria are compiled once, and applied to the normalized output of each chunk
     public ProcessStreamWrapper addSubstitutionCriteria(String regex, String replacement){
         synchronized (this.substitutionCriteria) {
             this.substitutionCriteria.put(regex, replacement);
+            this.outputNormalizer.addSubstitutionCriteria(regex, replacement);
             return this;
         }
     }
@@ -0,0 +1,219 @@
+package com.sixsense.io;
+
+import com.sixsense.config.HostConfig;
+import com.sixsense.model.logging.Loggers;
+import net.schmizz.sshj.DefaultConfig;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.connection.channel.direct.Session;
+import net.schmizz.sshj.transport.TransportException;
+import net.schmizz.sshj.transport.verification.PromiscuousVerifier;
+import net.schmizz.sshj.userauth.UserAuthException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*Keeps authenticated ssh connections warm, and multiplexes several shell channels over each connection
+ * Connections are keyed by host, port and username. A connection accepts new channels until it reaches the configured limit,
+ * after which a new connection is opened for the same key (sshd usually caps this via the MaxSessions directive, which defaults to 10)
+ * Connections which have no open channels are kept open, so the next session will not have to pay for the connect + key exchange + authentication*/
+public class SSHConnectionPool implements Closeable {
+    private static final Logger sessionLogger = LogManager.getLogger(Loggers.SessionLogger.name());
+    private static final DefaultConfig sshConfig = new DefaultConfig(); //Default configuration for ssh client
+
+    private final int maximumChannelsPerConnection;
+    private final Map<String, List<PooledConnection>> connections = new ConcurrentHashMap<>(); //key: username@host:port, value: all connections opened for that key
+    private volatile boolean isClosed = false;
+
+    public SSHConnectionPool(int maximumChannelsPerConnection) {
+        this.maximumChannelsPerConnection = Math.max(1, maximumChannelsPerConnection);
+    }
+
+    /*Reserves a channel slot on a connection to the requested host, opening a new connection if all existing ones are full
+     * Only the slot reservation is synchronized (per connection key). Connecting and authenticating happens outside that lock,
+     * so connections to the same host are established concurrently, and channels waiting on a connection which is still connecting will wait for that connection only*/
+    PooledConnection acquire(HostConfig.Host hostConfig) throws IOException {
+        if(isClosed){
+            throw new IOException("Cannot acquire an ssh connection from a closed connection pool");
+        }
+
+        String connectionKey = hostConfig.getUsername() + "@" + hostConfig.getHost() + ":" + hostConfig.getPort();
+        PooledConnection reservedConnection = null;
+        while (reservedConnection == null) {
+            List<PooledConnection> connectionsForKey = connections.computeIfAbsent(connectionKey, key -> new ArrayList<>());
+            synchronized (connectionsForKey) {
+                if (connections.get(connectionKey) != connectionsForKey) {
+                    continue; //The last connection of the key was evicted (and the key removed) while we were waiting for the lock, so we start over with a new list
+                }
+
+                connectionsForKey.removeIf(PooledConnection::isStale);
+                for (PooledConnection connection : connectionsForKey) {
+                    if (connection.reserveChannel()) {
+                        reservedConnection = connection;
+                        break;
+                    }
+                }
+
+                if (reservedConnection == null) {
+                    reservedConnection = new PooledConnection(connectionKey, connectionsForKey);
+                    reservedConnection.reserveChannel();
+                    connectionsForKey.add(reservedConnection);
+                }
+            }
+        }
+
+        try {
+            reservedConnection.connect(hostConfig);
+        }catch (IOException e){
+            reservedConnection.release();
+            throw e;
+        }
+
+        return reservedConnection;
+    }
+
+    public int getMaximumChannelsPerConnection() {
+        return maximumChannelsPerConnection;
+    }
+
+    //Returns the amount of open connections and the amount of channels multiplexed over them, per connection key
+    public Map<String, Map<String, Integer>> getPoolStatus() {
+        Map<String, Map<String, Integer>> poolStatus = new HashMap<>();
+        for(Map.Entry<String, List<PooledConnection>> connectionsForKey : connections.entrySet()){
+            int openConnections;
+            int openChannels = 0;
+            synchronized (connectionsForKey.getValue()) {
+                openConnections = connectionsForKey.getValue().size();
+                for (PooledConnection connection : connectionsForKey.getValue()) {
+                    openChannels += connection.activeChannels;
+                }
+            }
+
+            Map<String, Integer> keyStatus = new HashMap<>();
+            keyStatus.put("connections", openConnections);
+            keyStatus.put("channels", openChannels);
+            poolStatus.put(connectionsForKey.getKey(), keyStatus);
+        }
+
+        return poolStatus;
+    }
+
+    @Override
+    public void close() {
+        this.isClosed = true;
+        for(List<PooledConnection> connectionsForKey : connections.values()){
+            synchronized (connectionsForKey) {
+                for (PooledConnection connection : connectionsForKey) {
+                    connection.disconnect();
+                }
+                connectionsForKey.clear();
+            }
+        }
+        connections.clear();
+        sessionLogger.info("SSH connection pool closed");
+    }
+
+    /*A single ssh client (transport), shared between several shell channels
+     * Channel slots are counted under the owning key's lock, while the connection itself is guarded by the instance monitor*/
+    class PooledConnection {
+        private final String connectionKey;
+        private final List<PooledConnection> siblings; //All connections sharing the same connection key (including this one). Also used as the reservation lock
+        private final SSHClient sshClient;
+        private int activeChannels = 0;
+        private volatile boolean wasConnected = false;
+        private volatile boolean isBroken = false;
+
+        private PooledConnection(String connectionKey, List<PooledConnection> siblings) {
+            this.connectionKey = connectionKey;
+            this.siblings = siblings;
+            this.sshClient = new SSHClient(sshConfig);
+            this.sshClient.addHostKeyVerifier(new PromiscuousVerifier());
+        }
+
+        //Must be called while holding the siblings lock
+        private boolean reserveChannel(){
+            if(isBroken || activeChannels >= maximumChannelsPerConnection){
+                return false;
+            }
+            activeChannels++;
+            return true;
+        }
+
+        //Idle connections which were dropped by the remote side cannot be reused. Must be called while holding the siblings lock
+        private boolean isStale(){
+            return isBroken || (activeChannels == 0 && wasConnected && !sshClient.isConnected());
+        }
+
+        //Connects and authenticates the ssh client, unless another channel has already done so
+        private synchronized void connect(HostConfig.Host hostConfig) throws IOException {
+            if(isBroken){
+                throw new IOException("SSH connection " + connectionKey + " failed while waiting for it to connect");
+            }else if(wasConnected){
+                return;
+            }
+
+            try {
+                sshClient.connect(hostConfig.getHost(), hostConfig.getPort()); //connect to the requested host
+                sshClient.authPassword(hostConfig.getUsername(), hostConfig.getPassword());  //using the credentials from hostConfig
+                wasConnected = true;
+                sessionLogger.debug("Opened new pooled ssh connection " + connectionKey);
+            } catch (UserAuthException e) {
+                markBroken();
+                throw new IOException("Failed to authenticate SSH connection " + connectionKey + " while creating a new SSH client. Caused by: ", e);
+            } catch (TransportException e) {
+                markBroken();
+                throw new IOException("Transport error experienced on SSH connection " + connectionKey + " while creating a new SSH client. Caused by: ", e);
+            } catch (IOException e) {
+                markBroken();
+                throw new IOException("Failed to open SSH connection " + connectionKey + " while creating a new SSH client. Caused by: ", e);
+            }
+        }
+
+        //Starts a new ssh channel multiplexed over this connection
+        Session startSession() throws IOException {
+            try {
+                return sshClient.startSession();
+            } catch (IOException e) {
+                //A transport which fails to open channels is most likely dead; do not hand it to any more channels
+                markBroken();
+                throw e;
+            }
+        }
+
+        //Releases a channel slot. The connection is kept warm, unless it has failed (in which case it is disconnected and evicted once it's last channel is released)
+        void release(){
+            boolean evict;
+            synchronized (siblings) {
+                activeChannels = Math.max(0, activeChannels - 1);
+                evict = activeChannels == 0 && (isBroken || !sshClient.isConnected() || isClosed);
+                if (evict) {
+                    siblings.remove(this);
+                    if (siblings.isEmpty()) {
+                        connections.remove(connectionKey, siblings); //Keys are removed under the same lock acquire() reserves channels with, so no channel is reserved on a removed list
+                    }
+                }
+            }
+
+            if(evict){
+                disconnect();
+            }
+        }
+
+        private void markBroken(){
+            synchronized (siblings) {
+                this.isBroken = true;
+            }
+        }
+
+        private void disconnect(){
+            try {
+                sshClient.close();
+            } catch (IOException e) {
+                sessionLogger.error("Failed to close pooled ssh connection " + connectionKey + ". Caused by: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.sixsense.io;
+
+import com.sixsense.config.HostConfig;
+import net.schmizz.sshj.connection.channel.direct.Session;
+import net.schmizz.sshj.connection.channel.direct.SessionChannel;
+
+import java.io.IOException;
+
+public class SSHShellChannel extends ShellChannel {
+    //SSH connection related classes
+    private SSHConnectionPool.PooledConnection sshConnection; //Pooled SSH client (shared with other channels), forked from the engine process
+    private SessionChannel sshChannel; //Implements the Session and Shell interfaces;  exposes an I/O api to the shell via a pseudo-terminal
+
+    /*SSH Shell Channels have a single constructor
+    * Channels lease an authenticated ssh connection from the connection pool, start a session over it and allocate a pseudo-terminal (PTY) to the session
+    * Sessions write (and flush) directly to the input stream , and the output is read by the PSW into the ChannelOutput list*/
+    SSHShellChannel(String name, HostConfig.Host localhostConfig, SSHConnectionPool connectionPool, com.sixsense.io.Session engineSession) throws IOException {
+        super(name, engineSession);
+
+        try {
+            this.sshConnection = connectionPool.acquire(localhostConfig); //1) lease a connection to the local operating system (self-connection), using the credentials from localhostConfig
+
+            try {
+                Session session = this.sshConnection.startSession(); //2) start an ssh channel multiplexed over the leased connection
+                session.allocateDefaultPTY(); // 3)Allocate a pseudo-terminal to the ssh session (https://linux.die.net/man/7/pty)
+                session.startShell(); // 4)Start the shell by connecting to the allocated pty
+                this.sshChannel = (SessionChannel)session; // 5) and cast the channel to the implementing subclass to expose it's full api
+            } catch (IOException e) {
+                throw new IOException("Failed to start a new SSH session from the pooled SSH client. Caused by: ", e);
+            }
+
+        }catch (IOException e){
+            //Ensure any partially opened resources are closed
+            this.close();
+            throw e;
+        }
+
+        this.bindStreams(this.sshChannel.getOutputStream(), this.sshChannel.getInputStream());
+    }
+
+    @Override
+    public void close() throws IOException {
+        /*SSH channel need to close before the streams to avoid reading data after marking the streams with "End-of-File"
+         *(probably an implementation bug in sshj, but the natural order causes a ConnectionException to be thrown...) */
+        boolean sshChannelClosed = closeChannelResource("sshChannel", this.sshChannel);
+        boolean streamsClosed = closeStreams();
+
+        //The ssh client is shared with other channels, so we only give back our slot (the pool decides when to disconnect it)
+        if(this.sshConnection != null){
+            this.sshConnection.release();
+            this.sshConnection = null;
+        }
+
+        /*Inlining the close statements (partialClosure = close(A) && close(B)...)
+         *will not close resources after the first "false" value (i.e. if close(A) returns false, close(B) won't be invoked)
+         *so we close them all before checking for a partial closure*/
+        markClosed(!(streamsClosed && sshChannelClosed));
+    }
+}
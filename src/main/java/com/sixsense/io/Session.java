@@ -11,26 +11,40 @@ import com.sixsense.model.events.OutputReceivedEvent;
 import com.sixsense.model.events.ResultRetentionEvent;
 import com.sixsense.model.logging.IDebuggable;
 import com.sixsense.model.logging.Loggers;
+import com.sixsense.model.logic.ChannelType;
+import com.sixsense.model.logic.CompletionMode;
 import com.sixsense.model.logic.ExpressionResult;
 import com.sixsense.model.logic.ResultStatus;
+import com.sixsense.model.logic.TimingMode;
 import com.sixsense.model.retention.DataType;
 import com.sixsense.model.retention.DatabaseVariable;
 import com.sixsense.model.retention.RetentionMode;
 import com.sixsense.model.retention.ResultRetention;
 import com.sixsense.services.DiagnosticManager;
+import com.sixsense.services.LatencyManager;
+import com.sixsense.services.TerminalRecorder;
+import com.sixsense.threading.HashedWheelTimer;
 import com.sixsense.threading.ThreadingManager;
 import com.sixsense.utillity.CommandUtils;
+import com.sixsense.utillity.FieldGlossary;
+import com.sixsense.utillity.InternalCommandInterpreter;
 import com.sixsense.utillity.LogicalExpressionResolver;
+import com.sixsense.utillity.StreamingOutcomeMatcher;
 import com.sixsense.utillity.Literals;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.ThreadContext;
 
 import java.io.*;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -40,41 +54,66 @@ import org.springframework.beans.factory.annotation.Autowired;
 public class Session implements Closeable, IDebuggable {
     //Static members and injected beans
     private static final Logger sessionLogger = LogManager.getLogger(Loggers.SessionLogger.name());
+    private static final long WakeUpRetryMillis = 1; //rounded up to the next tick of the engine timer
+    private static final long AwaitBackstopMillis = 200; //Waiting sessions re-check their conditions at least this often, even if a wakeup was missed
     @Autowired private ThreadingManager threadingManager;
     @Autowired private DiagnosticManager diagnosticManager;
     @Autowired private OperationProducer operationProducer;
+    @Autowired private LatencyManager latencyManager;
+    private final TerminalRecorder terminalRecorder; //Passed to the constructor, since the channels (and their stream wrappers) are opened before autowiring
 
     //Connection, synchronization and debugging
     private final Map<String, ShellChannel> channels;
-    private final Lock commandLock =  new ReentrantLock();
-    private final Condition minimalSleepTerminated = commandLock.newCondition();
-    private final Condition newChunkReceived = commandLock.newCondition();
+    private final Lock commandLock; //Branches share the lock (and conditions) of their parent, since the process stream wrappers only signal the parent
+    private final Condition minimalSleepTerminated;
+    private final Condition newChunkReceived;
+    private final Session parent; //null, unless this session is a branch of a parallel block (see fork())
+    private final Set<Session> branches = ConcurrentHashMap.newKeySet(); //Branches currently executing a lane of a parallel block
     private boolean isUnderDebug = false;
     private boolean isClosed = false;
     private boolean terminatedExternally = false;
+    private boolean isClosing = false;
+    private volatile CommandExecution activeExecution; //The command currently executed in event driven mode, if any
+    private CommandBatch currentBatch; //The batch currently executed by a carrier command, if any
 
     //Current command context
-    private final UUID sessionShellId = UUID.randomUUID();
-    private final String operationId;
-    private LocalDateTime commandStartTime;
-    private long elapsedSeconds = 0;
+    private UUID sessionShellId = UUID.randomUUID();
+    private String shortSessionId = sessionShellId.toString().substring(0,8);
+    private String operationId = "";
+    private HashedWheelTimer.Timeout minimalResponseTimer; //Timers of the command currently executed in blocking mode (the minimal response timer is null if the command does not wait)
+    private HashedWheelTimer.Timeout commandDeadline;
     private int drilldownRank = 0;
     private Command currentCommand;
     private int commandOrdinal = 0;
+    private final AtomicInteger ordinalSequence; //Shared with the branches of this session, so every command of the session has it's own ordinal
     private String evaluatedCommand = "";
+    private String commandSentinel = ""; //empty, unless the current command is completed by a sentinel
     private String currentPrompt = "";
+    private Duration minimalTimeToResponse = Duration.ZERO; //Times of the current command (learned from previous executions, if the command is timed adaptively)
+    private Duration timeToTimeout = Duration.ZERO;
+    private long commandWrittenAt = 0; //System.nanoTime() when the current command was written
 
     //Dynamic fields
-    private final Map<String, Deque<ResultRetention>> sessionVariables;
+    private final SessionVariableStore sessionVariables;
     private final Set<DatabaseVariable> databaseVariables;
 
-    public Session(HostConfig.Host localhostConfig, Set<String> channelNames, String operationId) throws InstantiationException{
-        this.sessionVariables = new HashMap<>();
+    public Session(HostConfig.Host localhostConfig, SSHConnectionPool connectionPool, TerminalRecorder terminalRecorder, Set<String> channelNames) throws InstantiationException{
+        this.terminalRecorder = terminalRecorder;
+        this.commandLock = new ReentrantLock();
+        this.minimalSleepTerminated = this.commandLock.newCondition();
+        this.newChunkReceived = this.commandLock.newCondition();
+        this.parent = null;
+        this.ordinalSequence = new AtomicInteger(0);
+        this.sessionVariables = new SessionVariableStore();
         this.databaseVariables = new HashSet<>();
         this.channels = new HashMap<>();
         for(String channelName : channelNames){
+            if(ChannelType.INTERNAL.name().equals(channelName)){
+                continue; //Internal commands are evaluated by the session itself
+            }
+
             try {
-                ShellChannel newChannel = new ShellChannel(channelName, localhostConfig, this);
+                ShellChannel newChannel = ShellChannel.open(channelName, localhostConfig, connectionPool, this);
                 this.channels.put(channelName, newChannel);
             }catch (IOException channelException){
                 String channelFailure = "Session " +  this.getShortSessionId() + " failed to instantiate - channel " + channelName + " " + channelException.getMessage();
@@ -87,18 +126,81 @@ public class Session implements Closeable, IDebuggable {
             }
         }
 
-        //Logging configurations
-        this.operationId = operationId;
         this.loadSessionVariables(Collections.singletonMap("sixsense.session.workingDir", Literals.SessionExecutionDir + "/" + this.getShortSessionId()));
     }
 
+    //Branches are only created by fork()
+    private Session(Session parent, Set<String> channelNames){
+        this.threadingManager = parent.threadingManager;
+        this.diagnosticManager = parent.diagnosticManager;
+        this.operationProducer = parent.operationProducer;
+        this.latencyManager = parent.latencyManager;
+        this.terminalRecorder = parent.terminalRecorder;
+
+        this.commandLock = parent.commandLock;
+        this.minimalSleepTerminated = parent.minimalSleepTerminated;
+        this.newChunkReceived = parent.newChunkReceived;
+        this.parent = parent;
+        this.ordinalSequence = parent.ordinalSequence;
+        this.channels = new HashMap<>();
+        for(String channelName : channelNames){
+            ShellChannel channel = parent.channels.get(channelName);
+            if(channel != null){
+                this.channels.put(channelName, channel);
+            }
+        }
+
+        this.isUnderDebug = parent.isUnderDebug;
+        this.terminatedExternally = parent.terminatedExternally;
+        this.isClosing = parent.isClosing;
+        this.sessionShellId = parent.sessionShellId;
+        this.shortSessionId = parent.shortSessionId;
+        this.operationId = parent.operationId;
+        this.drilldownRank = parent.drilldownRank;
+        this.commandOrdinal = parent.commandOrdinal;
+
+        //The variables of the parent are frozen for the branch - whatever the branch retains is kept apart, until the branch is joined
+        this.sessionVariables = new SessionVariableStore();
+        this.sessionVariables.bindGlobalLayer(parent.getCurrentSessionVariables());
+        this.databaseVariables = new HashSet<>();
+    }
+
+    /*Forks a branch of this session, which executes commands on the given channels while this session (and it's other branches) execute commands on other channels
+     * The branch shares the channels and ids of this session, and starts with a snapshot of the current session variables.
+     * While any branch is running, this session must not execute commands by itself - it only waits for it's branches to be joined*/
+    public Session fork(Set<String> channelNames){
+        Session branch = new Session(this, channelNames);
+        this.branches.add(branch);
+        return branch;
+    }
+
+    /*Joins a branch which has finished executing back into this session: the variables it has retained are retained by this session as well,
+     * and it's database variables are added to those of this session. When several branches retain the same variable, the branch joined last wins*/
+    public void join(Session branch){
+        this.branches.remove(branch);
+        this.sessionVariables.merge(branch.sessionVariables);
+        this.databaseVariables.addAll(branch.databaseVariables);
+    }
+
     /*Extract the data needed to execute the command with the correct channel and prompt
     * (and then of course use them to execute the command)*/
     public ExpressionResult executeCommand(Command command) throws IOException{
-        ShellChannel channel = this.channels.get(command.getChannelName());
+        if(isInternal(command)){
+            return executeInternalCommand(command);
+        }
+
+        ShellChannel channel = this.prepareChannel(command);
         if(channel == null){
             return ExpressionResult.executionError(Literals.InvalidCommandParameters);
         }else{
+            return executeCommand(command, channel);
+        }
+    }
+
+    //Returns the channel the command should be executed with (or null if the session has no such channel), and sets the prompt of that channel as the current prompt
+    private ShellChannel prepareChannel(Command command){
+        ShellChannel channel = this.channels.get(command.getChannelName());
+        if(channel != null){
             String promptReference = this.getPromptReference(channel.getName().toLowerCase());
             String nonFinalPrompt = this.getSessionVariableValue(promptReference);
             if(nonFinalPrompt == null || nonFinalPrompt.isEmpty()){
@@ -108,15 +210,15 @@ public class Session implements Closeable, IDebuggable {
             }
 
             this.currentPrompt = nonFinalPrompt;
-            return executeCommand(command, channel);
         }
+        return channel;
     }
 
     private ExpressionResult executeCommand(Command command, ShellChannel channel) throws IOException {
         /*Initialize local variables needed for executing the current command*/
 
         //output
-        final List<String> processOutput = channel.getChannelOutput(); //The structured output from the process wrapped by the ProcessStreamWrapper for the current channel
+        final ChannelOutputBuffer processOutput = channel.getChannelOutput(); //The structured output from the process wrapped by the ProcessStreamWrapper for the current channel
         String parsedOutput = ""; //The string representation of the process output, parsed by this session for the current command
 
         //Halting conditions and elapsed time
@@ -130,40 +232,308 @@ public class Session implements Closeable, IDebuggable {
         assignContextVariables(command);
         this.commandLock.lock();
         writeCommand(channel);
+        scheduleCommandTimers();
 
-        sleepMinimalSecondsToResponse();
+        sleepMinimalTimeToResponse();
+        CommandOutputParser outputParser = new CommandOutputParser(this, processOutput);
+        StreamingOutcomeMatcher outcomeMatcher = StreamingOutcomeMatcher.compile(command.getExpectedOutcome(), this.getCurrentSessionVariables());
         while(!hasWaitElapsed && !terminatedExternally){
-            /*this.removeOutdatedChunks() clears the command output from data left over from previous commands (edits processOutput in place)
-             *and returns a boolean which is true only if the command has certainly finished writing it's output (if true, then certainly finished. if false, may be either way)
-             *CommandUtils.pipeCommandOutput() passes the output through any pipes defined by this command, possibly mutating, replacing or truncating it. */
-            List<String> pipedProcessOutput;
+            /*outputParser.parse() moves the command cursors of processOutput past data left over from previous commands (and trims that data),
+             *then passes lines received since the previous wakeup through any pipes defined by this command (possibly mutating, replacing or truncating them)
+             *and returns the parsed output of the command so far. outputParser.isCommandEndReached() is true only if the command has certainly finished writing it's output */
             synchronized (processOutput) {
-                commandEndReached = this.removeOutdatedChunks(processOutput);
-                pipedProcessOutput = new ArrayList<>(CommandUtils.pipeCommandOutput(this, processOutput));
+                parsedOutput = outputParser.parse();
             }
 
-            parsedOutput = parsePipedOutput(pipedProcessOutput);
-            resolvedOutcome = attemptToResolve(parsedOutput);
+            commandEndReached = outputParser.isCommandEndReached();
+            retainExitCode(outputParser);
+            outcomeMatcher.feed(parsedOutput, outputParser.getStableLength(), outputParser.getOutputRevision());
+            resolvedOutcome = attemptToResolve(parsedOutput, outcomeMatcher);
             hasWaitElapsed = awaitIfNeeded(resolvedOutcome, commandEndReached);
         }
 
         emitOutputEvents(parsedOutput);
+        if(this.minimalResponseTimer != null) {
+            this.minimalResponseTimer.cancel();
+        }
+        this.commandDeadline.cancel();
         this.commandLock.unlock();
 
-        retainResult(parsedOutput, resolvedOutcome);
+        return finishCommand(command, processOutput, parsedOutput, resolvedOutcome, commandEndReached, this.commandDeadline.isExpired());
+    }
+
+    /*Event driven counterpart of executeCommand(). The command is written, and the returned future completes once the command has finished executing
+     * No thread waits in the meantime - the command is advanced by events instead (see CommandExecution):
+     * 1) The minimal response timer moves the command from AwaitingMinimalResponse to AwaitingOutput (output received until then is evaluated at that point)
+     * 2) While AwaitingOutput, every new chunk received by the process stream wrappers advances the command
+     * 3) The timeout timer and closing the session advance the command one last time, and complete it
+     * Writing the command is the only blocking part done by the calling thread - once the command has finished, it's result is retained on a worker thread (see CommandExecution.complete())*/
+    public CompletableFuture<ExpressionResult> executeCommandAsync(Command command){
+        if(isInternal(command)){
+            return CompletableFuture.completedFuture(executeInternalCommand(command));
+        }
+
+        ShellChannel channel = this.prepareChannel(command);
+        if(channel == null){
+            return CompletableFuture.completedFuture(ExpressionResult.executionError(Literals.InvalidCommandParameters));
+        }
+
+        CommandExecution execution = new CommandExecution(command, channel, this.threadingManager::drive, this.threadingManager::submit, this::advanceCommand);
+        assignContextVariables(command);
+        this.activeExecution = execution;
+        try {
+            writeCommand(channel);
+        }catch (IOException e){
+            this.activeExecution = null;
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if(this.minimalTimeToResponse.isZero()){
+            execution.onMinimalResponseElapsed();
+        }else {
+            execution.addTimer(this.threadingManager.schedule(execution::onMinimalResponseElapsed, this.minimalTimeToResponse.toMillis(), TimeUnit.MILLISECONDS));
+        }
+        execution.addTimer(this.threadingManager.schedule(execution::onDeadlineReached, this.timeToTimeout.toMillis(), TimeUnit.MILLISECONDS));
+        return execution.getResult();
+    }
+
+    /*Advances the command currently executed in event driven mode (always invoked by a single driver thread at a time)
+     * Equivalent to a single iteration of the waiting loop in executeCommand(), except that instead of waiting for the next chunk the driver thread simply returns*/
+    private void advanceCommand(CommandExecution execution){
+        ThreadContext.put("sessionID", this.getShortSessionId());
+        try {
+            Command command = execution.getCommand();
+            boolean awaitsOutcome = !command.getExpectedOutcome().getResolvableExpressions().isEmpty();
+            final ChannelOutputBuffer processOutput = execution.getChannel().getChannelOutput();
+
+            if(awaitsOutcome && !terminatedExternally){
+                if(execution.getOutputParser() == null){
+                    execution.startParsing(
+                        new CommandOutputParser(this, processOutput),
+                        StreamingOutcomeMatcher.compile(command.getExpectedOutcome(), this.getCurrentSessionVariables())
+                    );
+                }
+
+                CommandOutputParser outputParser = execution.getOutputParser();
+                synchronized (processOutput) {
+                    execution.setParsedOutput(outputParser.parse());
+                }
+                execution.setCommandEndReached(outputParser.isCommandEndReached());
+                retainExitCode(outputParser);
+                execution.getOutcomeMatcher().feed(execution.getParsedOutput(), outputParser.getStableLength(), outputParser.getOutputRevision());
+                execution.setResolvedOutcome(attemptToResolve(execution.getParsedOutput(), execution.getOutcomeMatcher()));
+            }
+
+            if(!awaitsOutcome || terminatedExternally || execution.isInterrupted() || execution.isCommandEndReached() || execution.getResolvedOutcome().isResolved() || execution.isDeadlineReached()){
+                this.activeExecution = null;
+                execution.complete(() -> finishExecution(execution, processOutput));
+            }
+        }catch (RuntimeException e){
+            sessionLogger.error("Session " + this.getShortSessionId() + " failed to advance command " + this.commandOrdinal + ". Caused by: " + e.getMessage());
+            this.activeExecution = null;
+            execution.fail(e);
+        }finally {
+            ThreadContext.remove("sessionID");
+        }
+    }
+
+    //Invoked by a worker thread once the command currently executed in event driven mode has finished (see CommandExecution.complete())
+    private ExpressionResult finishExecution(CommandExecution execution, ChannelOutputBuffer processOutput){
+        ThreadContext.put("sessionID", this.getShortSessionId());
+        try {
+            emitOutputEvents(execution.getParsedOutput());
+            return finishCommand(execution.getCommand(), processOutput, execution.getParsedOutput(), execution.getResolvedOutcome(), execution.isCommandEndReached(), execution.isDeadlineReached());
+        }catch (RuntimeException e){
+            sessionLogger.error("Session " + this.getShortSessionId() + " failed to finish command " + this.commandOrdinal + ". Caused by: " + e.getMessage());
+            throw e;
+        }finally {
+            ThreadContext.remove("sessionID");
+        }
+    }
+
+    public static boolean isInternal(Command command){
+        return ChannelType.INTERNAL.name().equals(command.getChannelName());
+    }
+
+    /*Evaluates an internal command in place (see InternalCommandInterpreter). There is no shell to write to or wait for, so the command returns at once -
+     * but it is otherwise executed like any other command: it's output passes through it's output pipes, resolves it's expected outcome,
+     * and is retained and reported with the same events (so internal commands can replace shell commands which only transform session variables)*/
+    private ExpressionResult executeInternalCommand(Command command){
+        assignContextVariables(command);
+        diagnosticManager.emit(new InputSentEvent(this, this.currentCommand, this.commandOrdinal, this.evaluatedCommand));
+
+        String output;
+        try {
+            output = InternalCommandInterpreter.evaluate(this.evaluatedCommand);
+        }catch (IllegalArgumentException e){
+            sessionLogger.error("Session " + this.getShortSessionId() + " failed to evaluate internal command " + this.evaluatedCommand + ". Caused by: " + e.getMessage());
+            emitOutputEvents(""); //Reported like a shell command which printed nothing, so every InputSentEvent is followed by it's output
+            return ExpressionResult.executionError(e.getMessage());
+        }
+
+        if(!command.getOutputPipes().isEmpty()){
+            output = String.join(Literals.LineBreak, CommandUtils.pipeCommandOutput(this, Arrays.asList(output.split(Literals.LineBreak, -1))));
+        }
+        ExpressionResult resolvedOutcome = LogicalExpressionResolver.resolveLogicalExpression(output, this.getCurrentSessionVariables(), command.getExpectedOutcome());
+        ExpressionResult commandResult = new ExpressionResult(resolvedOutcome.isResolved(), resolvedOutcome.getOutcome(), resolvedOutcome.getMessage());
+        emitOutputEvents(output);
+        retainResult(output, commandResult, false);
+        return commandResult;
+    }
+
+    /*Executes several independent commands on the same channel with a single write and a single wait (instead of a round trip per command), and returns the result of each command
+     * The commands are chained into one command line, which is executed as a carrier command in sentinel mode (see CommandBatch).
+     * Once the carrier has returned, it's output is split between the commands, and each command resolves and retains it's own part of the output*/
+    public List<ExpressionResult> executeBatch(List<Command> commands) throws IOException{
+        CommandBatch batch = new CommandBatch(commands, this.getBatchMarkerPrefix());
+        this.currentBatch = batch;
+        try {
+            return batch.getResults(executeCommand(batch.getCarrier()));
+        }finally {
+            this.currentBatch = null;
+        }
+    }
+
+    //Event driven counterpart of executeBatch()
+    public CompletableFuture<List<ExpressionResult>> executeBatchAsync(List<Command> commands){
+        CommandBatch batch = new CommandBatch(commands, this.getBatchMarkerPrefix());
+        this.currentBatch = batch;
+        return executeCommandAsync(batch.getCarrier()).handle((carrierResult, e) -> {
+            this.currentBatch = null;
+            if(e != null){
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            return batch.getResults(carrierResult);
+        });
+    }
+
+    //Batch markers are numbered after the ordinal the carrier command is about to receive (branches may take ordinals in the meantime, but the ordinals never repeat, and neither do the markers)
+    private String getBatchMarkerPrefix(){
+        return "__SXB_" + this.getShortSessionId() + "_" + (this.ordinalSequence.get() + 1) + "_";
+    }
+
+    /*Resolves and retains the output of each command in the batch, as if each command was executed on it's own
+     * Commands whose output has not ended by the time the carrier returned are resolved against whatever output they have printed so far*/
+    private void finishBatch(CommandBatch batch, String carrierOutput, boolean carrierEndReached, boolean deadlineReached){
+        List<Command> commands = batch.getCommands();
+        String[] exitCodes = new String[commands.size()];
+        List<List<String>> commandOutputs = batch.split(carrierOutput, exitCodes);
+        if(carrierEndReached){
+            exitCodes[commands.size() - 1] = this.getSessionVariableValue(FieldGlossary.sixsense_session_exitCode);
+        }
+
+        for(int commandIdx = 0; commandIdx < commands.size(); commandIdx++){
+            Command command = commands.get(commandIdx);
+            this.commandOrdinal = this.ordinalSequence.incrementAndGet();
+            this.currentCommand = command;
+            this.evaluatedCommand = CommandUtils.evaluateAgainstDynamicFields(command.getCommandText(), this.getCurrentSessionVariables());
+
+            List<String> outputLines = commandOutputs.get(commandIdx);
+            String parsedOutput = outputLines == null ? "" : CommandBatch.parse(this, command, outputLines, this.currentPrompt);
+            if(exitCodes[commandIdx] != null){
+                retainExitCode(exitCodes[commandIdx]);
+            }
+
+            ExpressionResult resolvedOutcome = LogicalExpressionResolver.resolveLogicalExpression(parsedOutput, this.getCurrentSessionVariables(), command.getExpectedOutcome());
+            ExpressionResult commandResult = new ExpressionResult(resolvedOutcome.isResolved(), resolvedOutcome.getOutcome(), resolvedOutcome.getMessage());
+            emitOutputEvents(parsedOutput);
+            retainResult(parsedOutput, commandResult, deadlineReached && exitCodes[commandIdx] == null);
+            batch.setResult(commandIdx, commandResult);
+        }
+    }
+
+    //Fired by the process stream wrappers of this session whenever they publish new chunks to the channel output (coalesced, see ProcessStreamWrapper.signalNewChunk()), and passed on to the branch executing on that channel, if any
+    void onNewChunk(ChannelOutputBuffer channelOutput){
+        CommandExecution execution = this.activeExecution;
+        if(execution != null){
+            execution.onNewChunk();
+        }
+
+        for(Session branch : this.branches){
+            for(ShellChannel channel : branch.channels.values()){
+                if(channel.getChannelOutput() == channelOutput){
+                    branch.onNewChunk(channelOutput);
+                }
+            }
+        }
+    }
+
+    /*Retains the result of a command which has finished executing, and cleans up the output it has left behind if needed*/
+    private ExpressionResult finishCommand(Command command, ChannelOutputBuffer processOutput, String parsedOutput, ExpressionResult resolvedOutcome, boolean commandEndReached, boolean deadlineReached){
+        //Resolved results are shared by the compiled expected outcome, and we are about to modify (and return) this one
+        ExpressionResult commandResult = new ExpressionResult(resolvedOutcome.isResolved(), resolvedOutcome.getOutcome(), resolvedOutcome.getMessage());
+        retainResult(parsedOutput, commandResult, deadlineReached);
+        //The command line of a carrier is unique to it's batch, so there is no latency to learn from it
+        if(this.currentBatch != null && command == this.currentBatch.getCarrier()){
+            finishBatch(this.currentBatch, parsedOutput, commandEndReached, deadlineReached);
+        }else{
+            recordLatency(command, processOutput, resolvedOutcome, commandEndReached, deadlineReached);
+        }
         if(command.isRequiresCleanup() || commandEndReached) {
             cleanOutput(processOutput);
         }
 
-        return resolvedOutcome;
+        return commandResult;
     }
 
     /*Extracts variables from the current command and apply them to the current session, for the duration of the command's execution*/
     private void assignContextVariables(Command command){
-        this.commandOrdinal++;
-        this.commandStartTime = LocalDateTime.now();
+        this.commandOrdinal = this.ordinalSequence.incrementAndGet();
         this.currentCommand = command;
         this.evaluatedCommand = CommandUtils.evaluateAgainstDynamicFields(command.getCommandText(), this.getCurrentSessionVariables());
+        this.commandSentinel = "";
+
+        /*Commands completed by a sentinel print a unique marker on a line of it's own once they have finished, followed by their exit code (e.g. __SX_1a2b3c4d_7_0__)
+         * The echo of the command itself never matches the marker, as it contains the printf format instead of the exit code (the suffix is kept short, so the echo is less likely to wrap)*/
+        if(command.getCompletionMode() == CompletionMode.Sentinel && !this.evaluatedCommand.isBlank() && !isInternal(command)){
+            this.commandSentinel = "__SX_" + this.getShortSessionId() + "_" + this.commandOrdinal + "_";
+            this.evaluatedCommand += "; printf '\\n" + this.commandSentinel + "%d__\\n' $?";
+        }
+
+        if(command.getTimingMode() == TimingMode.Adaptive){
+            this.minimalTimeToResponse = this.latencyManager.getMinimalTimeToResponse(this.getDeviceKey(), this.getVpvKey(), command);
+            this.timeToTimeout = this.latencyManager.getTimeToTimeout(this.getDeviceKey(), this.getVpvKey(), command);
+        }else{
+            this.minimalTimeToResponse = command.getMinimalTimeToResponse();
+            this.timeToTimeout = command.getTimeToTimeout();
+        }
+    }
+
+    /*The latency of a command is measured from writing it until the last chunk received before it was resolved (or until now, if it's output was received earlier)
+     * so waiting out the minimal time to response does not count as latency. Commands which were never waited for teach us nothing
+     * Commands which timed out are recorded at their deadline, so a timeout which was learned too short grows on the next executions (see LatencyManager.recordTimeout())*/
+    private void recordLatency(Command command, ChannelOutputBuffer processOutput, ExpressionResult resolvedOutcome, boolean commandEndReached, boolean deadlineReached){
+        boolean awaitsOutcome = !command.getExpectedOutcome().getResolvableExpressions().isEmpty();
+        if(!awaitsOutcome || terminatedExternally){
+            return;
+        }
+
+        if(resolvedOutcome.isResolved() || commandEndReached){
+            long chunkReceivedAt = processOutput.getLastChunkAt();
+            long respondedAt = chunkReceivedAt - this.commandWrittenAt > 0 ? chunkReceivedAt : System.nanoTime();
+            this.latencyManager.recordLatency(this.getDeviceKey(), this.getVpvKey(), command, TimeUnit.NANOSECONDS.toMillis(respondedAt - this.commandWrittenAt));
+        }else if(deadlineReached){
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.commandWrittenAt);
+            this.latencyManager.recordTimeout(this.getDeviceKey(), this.getVpvKey(), command, Math.max(elapsedMillis, this.timeToTimeout.toMillis()));
+        }
+    }
+
+    //The exit code is kept until the next command completed by a sentinel replaces it
+    private void retainExitCode(CommandOutputParser outputParser){
+        if(outputParser.getExitCode() != null){
+            retainExitCode(outputParser.getExitCode());
+        }
+    }
+
+    private void retainExitCode(String exitCode){
+        if(!exitCode.equals(this.getSessionVariableValue(FieldGlossary.sixsense_session_exitCode))){
+            this.sessionVariables.retain(new ResultRetention()
+                .withRetentionMode(RetentionMode.Variable)
+                .withName(FieldGlossary.sixsense_session_exitCode)
+                .withValue(exitCode)
+                .withOverwriteParent(true)
+            );
+        }
     }
 
     /*This method assumes we are holding the commandLock for this session
@@ -179,6 +549,7 @@ public class Session implements Closeable, IDebuggable {
             try {
                 channel.write(this.evaluatedCommand + Literals.LineBreak);
                 channel.flush();
+                this.commandWrittenAt = System.nanoTime();
 
                 diagnosticManager.emit(new InputSentEvent(this, this.currentCommand, this.commandOrdinal, this.evaluatedCommand));
             } catch (IOException e) {
@@ -188,107 +559,46 @@ public class Session implements Closeable, IDebuggable {
         }
     }
 
-    //This method assumes we are holding the commandLock for this session
-    private void sleepMinimalSecondsToResponse(){
-        try {
-            this.minimalSleepTerminated.await(this.currentCommand.getMinimalSecondsToResponse(), TimeUnit.SECONDS);
-        }catch (InterruptedException e){
-            //Basically this shouldn't happen, as we use newChunkReceived.signalAll() to interrupt the await() clause
-            sessionLogger.warn(Literals.Tab + "Session " + this.getShortSessionId() + " interrupted during the minimal seconds to response for command " + this.commandOrdinal, e.getMessage());
+    /*This method assumes we are holding the commandLock for this session
+     * Registers the minimal response wakeup and the deadline of the current command with the engine timer
+     * Once expired, each timer wakes up the session through the command lock (the session only waits with a timeout as a backstop, see AwaitBackstopMillis)*/
+    private void scheduleCommandTimers(){
+        this.minimalResponseTimer = null;
+        if(!this.minimalTimeToResponse.isZero()) {
+            this.minimalResponseTimer = this.threadingManager.schedule(this::wakeUp, this.minimalTimeToResponse.toMillis(), TimeUnit.MILLISECONDS);
         }
+        this.commandDeadline = this.threadingManager.schedule(this::wakeUp, this.timeToTimeout.toMillis(), TimeUnit.MILLISECONDS);
     }
 
-    /*This method assumes we are holding the synchronized block for the (List<String> output) in question
-
-     * We scan for the current prompt and the last evaluated command in the output
-     * and return the latest chunk that satisfies either of the following conditions:
-     * 1) The chunk lies between the two most recent occurrences of the current prompt
-     *       (in which case, the process stream has read the full output of the command)
-     * 2) The chunk is preceded by the current command, which is in turn preceeded by the current prompt
-     *       (in which case, the process stream has either read part of the command, or the command is not followed by the current prompt
-     *
-     * Then we clear the output of all outdated chunks,
-     * and return if the current chunk lies between two occurrences of the current prompt*/
-    private boolean removeOutdatedChunks(List<String> output){
-        if(output.isEmpty()){
-            return false;
-        }
-
-        String firstLineOfCommand;
-        if(this.evaluatedCommand.contains("\n")){
-            firstLineOfCommand = this.evaluatedCommand.substring(0, this.evaluatedCommand.indexOf('\n')+1); //if the command contains multiple lines, only search for the first line in the output
-        }else{
-            firstLineOfCommand = this.evaluatedCommand;
-        }
-
-        int firstRelevantIdx = 0; //all lines before this index (zero-based) will be cleared
-        int promptScore = 0;
-        int cmdScore = 0;
-        boolean promptAppearsTwice = false;
-        boolean commandAppearsOnce = false;
-        for (int lineNum = output.size() - 1; lineNum >= 0 && promptScore + cmdScore < 2; lineNum--) {
-            String currentLine = output.get(lineNum);
-            if(currentLine.startsWith(this.currentPrompt)){
-                promptScore++;
-                firstRelevantIdx = lineNum;
-                if(currentLine.contains(firstLineOfCommand)){
-                    commandAppearsOnce = true;
-                    cmdScore++;
-                }
-                if(promptScore >= 2){
-                    promptAppearsTwice = true;
-                }
+    /*Fired by the engine timer, on one of the driver threads (which must never block)
+     * If the command lock is held, the session is not waiting yet - so instead of waiting for the lock, the wakeup is retried on the next tick*/
+    private void wakeUp(){
+        if(this.commandLock.tryLock()) {
+            try {
+                this.minimalSleepTerminated.signalAll();
+                this.newChunkReceived.signalAll();
+            } finally {
+                this.commandLock.unlock();
+            }
+        }else if(!this.isClosed){
+            try {
+                this.threadingManager.schedule(this::wakeUp, WakeUpRetryMillis, TimeUnit.MILLISECONDS);
+            }catch (RejectedExecutionException e){
+                //The engine is shutting down. The session still wakes up once it's backstop elapses
             }
-        }
-
-        while(firstRelevantIdx > 0){
-            output.remove(0);
-            firstRelevantIdx--;
-        }
-
-        return commandAppearsOnce && promptAppearsTwice; //We assume that if the prompt appears twice, and the command appears once, than case 1) is met
-    }
-
-    /*Parse the command output into a concatenated user-friendly string*/
-    private String parsePipedOutput(List<String> pipedProcessOutput){
-        if(this.currentCommand.isUseRawOutput()) {
-            return String.join(Literals.LineBreak, pipedProcessOutput);
-        }else {
-            return this.filterRawOutput(pipedProcessOutput);
         }
     }
 
-    /*We could theoretically just apply a ClearingPipe and then a WhitespacePipe
-    * But then changes to the pipes could affect the session filtering methods*/
-    private String filterRawOutput(List<String> output){
-        StringJoiner stringRepresentation = new StringJoiner(" ");
-        for(String line : output){
-            String filteredLine = line
-                    .replace(Literals.CarriageReturn+ Literals.LineBreak, " ")
-                    .replace(Literals.LineBreak, " ")
-                    .replace(Literals.CarriageReturn, " ")
-                    .replace(this.evaluatedCommand, "")
-                    .replace(this.currentPrompt, "");
-
-            /*we do not add blank lines to the string representation, to prevent redundant whitespace being inserted into the filtered output
-            * case 1 :
-            *   output = {"foo", "prompt"};
-            *   stringRepresentation (before filter) => "foo prompt"
-            *   stringRepresentation (after filter)=> "foo ", but the parsed output should be "foo"
-            *
-            * case 2 :
-             *   output = {"", "", ""};
-             *   stringRepresentation => "  " (two space characters), but the parsed output should be ""
-            * */
-            if(!filteredLine.isBlank()){
-                stringRepresentation.add(filteredLine);
+    //This method assumes we are holding the commandLock for this session
+    private void sleepMinimalTimeToResponse(){
+        try {
+            while (this.minimalResponseTimer != null && !this.minimalResponseTimer.isExpired() && !this.isClosing) {
+                this.minimalSleepTerminated.await(AwaitBackstopMillis, TimeUnit.MILLISECONDS);
             }
+        }catch (InterruptedException e){
+            //Basically this shouldn't happen, as the engine timer uses minimalSleepTerminated.signalAll() to interrupt the await() clause
+            sessionLogger.warn(Literals.Tab + "Session " + this.getShortSessionId() + " interrupted during the minimal time to response for command " + this.commandOrdinal, e.getMessage());
         }
-
-        return stringRepresentation.toString()
-                .replaceAll("\\s+", " ")
-                .replace(this.evaluatedCommand, "")
-                .replace(this.currentPrompt, "");
     }
 
     /*We could theoretically just apply a ClearingPipe and then a WhitespacePipe
@@ -302,23 +612,23 @@ public class Session implements Closeable, IDebuggable {
     /*Check if the command output matches any of our expected logic
      * If a match is found, return the corresponding result for that expected outcome.
      * If no expected outcome achieved (or none exist), return CommandResult.SUCCESS to progress to the next command*/
-    private ExpressionResult attemptToResolve(String outputAsString){
+    private ExpressionResult attemptToResolve(String outputAsString, StreamingOutcomeMatcher outcomeMatcher){
         return LogicalExpressionResolver.resolveLogicalExpression(
                 outputAsString,
+                outcomeMatcher,
                 this.getCurrentSessionVariables(),
                 this.currentCommand.getExpectedOutcome()
         );
     }
 
     /*If successful, if the command returned completely, or if our waiting period had elapsed, return immediately
-     * Otherwise, await until a new chunk has been received from the process stream wrapper, or until the command timeout */
+     * Otherwise, await until a new chunk has been received from the process stream wrapper, or until the command deadline has expired */
     private boolean awaitIfNeeded(ExpressionResult resolvedOutcome, boolean commandEndReached){
-        this.elapsedSeconds = this.commandStartTime.until(LocalDateTime.now(), ChronoUnit.SECONDS);
-        if(commandEndReached || resolvedOutcome.isResolved() || this.elapsedSeconds >= this.currentCommand.getSecondsToTimeout() - this.currentCommand.getMinimalSecondsToResponse()){
+        if(commandEndReached || resolvedOutcome.isResolved() || this.commandDeadline.isExpired() || this.isClosing){
             return true;
         }else {
             try {
-                this.newChunkReceived.await(this.currentCommand.getSecondsToTimeout() - this.elapsedSeconds, TimeUnit.SECONDS);
+                this.newChunkReceived.await(AwaitBackstopMillis, TimeUnit.MILLISECONDS);
             }catch (InterruptedException e){
                 //Basically this shouldn't happen, as we use newChunkReceived.signalAll() to interrupt the await() clause
                 sessionLogger.warn(Literals.Tab + "Session " + this.getShortSessionId() + " interrupted while waiting for command " + this.commandOrdinal + " to return. Caused by:", e.getMessage());
@@ -328,21 +638,23 @@ public class Session implements Closeable, IDebuggable {
         }
     }
 
+    //The output of a batch carrier is reported by the commands of the batch instead (see finishBatch())
     private void emitOutputEvents(String parsedOutput){
-        if(!terminatedExternally) {
+        boolean isBatchCarrier = this.currentBatch != null && this.currentCommand == this.currentBatch.getCarrier();
+        if(!terminatedExternally && !isBatchCarrier) {
             diagnosticManager.emit(new OutputReceivedEvent(this, this.currentCommand, this.commandOrdinal, parsedOutput));
             diagnosticManager.emit(new OutcomeEvaluationEvent(this, parsedOutput, this.currentCommand.getExpectedOutcome()));
         }
     }
 
     /*If the command has been resolved, check if the result should be retained in any way, and save it if necessary*/
-    private void retainResult(String output, ExpressionResult resolvedOutcome){
+    private void retainResult(String output, ExpressionResult resolvedOutcome, boolean deadlineReached){
         if(terminatedExternally){
             //If terminated externally, the session must stop and the method will return a failure
             resolvedOutcome.withResolved(false)
                 .withOutcome(ResultStatus.FAILURE)
                 .withMessage(Literals.OperationTerminated);
-        }else if(resolvedOutcome.getMessage().equals(Literals.CommandDidNotReachOutcome) && this.elapsedSeconds >= this.currentCommand.getSecondsToTimeout()){
+        }else if(resolvedOutcome.getMessage().equals(Literals.CommandDidNotReachOutcome) && deadlineReached){
             //If a timeout occurred, the command failed to execute and the method will return a failure
             resolvedOutcome.withResolved(false)
                 .withOutcome(ResultStatus.FAILURE)
@@ -377,16 +689,9 @@ public class Session implements Closeable, IDebuggable {
     }
 
     private void retainToVariable(ResultRetention clonedRetention){
-        String variable = clonedRetention.getName();
-        this.sessionVariables.putIfAbsent(variable, new ArrayDeque<>());
-
         /*Note that variables are scoped to the ICommand in question (unless overwriting)
          * and therefore do NOT generate a database variable */
-        Deque<ResultRetention> varStack = this.sessionVariables.get(variable);
-        if(!varStack.isEmpty()) {
-            varStack.pop();
-        }
-        varStack.push(clonedRetention);
+        this.sessionVariables.retain(clonedRetention);
     }
 
     private void retainToFile(ResultRetention clonedRetention){
@@ -429,13 +734,11 @@ public class Session implements Closeable, IDebuggable {
     /*Perform a cleanup on the process output if a cleanup is required (by default or if commandEndReached is true)
      * If commandEndReached is true, the last line is the current prompt; we can safely remove all preceding lines
      * If a cleanup is required, we have no guarantee the last line is not being edited; but we can still safely remove all preceding lines*/
-    private void cleanOutput(final List<String> processOutput){
+    private void cleanOutput(final ChannelOutputBuffer processOutput){
         synchronized (processOutput) {
-            int cleanupCounter = processOutput.size() - 1; //all lines before this index (zero-based) will be cleared
-            while (cleanupCounter > 0) {
-                processOutput.remove(0);
-                cleanupCounter--;
-            }
+            processOutput.drainInbox();
+            processOutput.trimHead(processOutput.size() - 1); //all lines before the last line will be cleared
+            processOutput.markCommandStart(processOutput.getHeadOffset());
         }
     }
 
@@ -444,7 +747,120 @@ public class Session implements Closeable, IDebuggable {
     }
 
     public String getShortSessionId() {
-        return this.sessionShellId.toString().substring(0,8);
+        return this.shortSessionId;
+    }
+
+    //Binds the session to the operation it is about to execute (sessions may be created before the operation they will execute is known)
+    public void bindOperation(String operationId){
+        this.operationId = operationId;
+    }
+
+    public String getOperationId() {
+        return operationId;
+    }
+
+    /*Waits until every channel of this session is idle at it's expected prompt, and then clears whatever the shells printed before it (login banners, leftovers of previous operations)
+     * Returns false if any of the channels did not reach it's prompt within the timeout*/
+    public boolean awaitPrompts(Map<String, String> sessionProperties, long timeoutMillis){
+        return awaitPrompts(sessionProperties, timeoutMillis, Collections.emptyMap());
+    }
+
+    /*Same as awaitPrompts(), but only accepts prompts printed on lines at or after the given absolute offset of each channel (key: channel name)
+     * A channel which was just written to is still at it's previous prompt until it's output arrives, so the previous prompt must not be mistaken for the next one*/
+    private boolean awaitPrompts(Map<String, String> sessionProperties, long timeoutMillis, Map<String, Long> promptOffsets){
+        boolean allPromptsReached = true;
+        String defaultPrompt = sessionProperties.getOrDefault(this.getPromptReference("default"), "");
+
+        HashedWheelTimer.Timeout promptDeadline = this.threadingManager.schedule(this::wakeUp, timeoutMillis, TimeUnit.MILLISECONDS);
+        this.commandLock.lock();
+        try {
+            for (ShellChannel channel : this.channels.values()) {
+                String expectedPrompt = sessionProperties.getOrDefault(this.getPromptReference(channel.getName().toLowerCase()), defaultPrompt);
+                long promptOffset = promptOffsets.getOrDefault(channel.getName(), 0L);
+                while (allPromptsReached && !isAtPrompt(channel.getChannelOutput(), expectedPrompt, promptOffset)) {
+                    if (promptDeadline.isExpired() || this.isClosing || this.isClosed) {
+                        allPromptsReached = false;
+                    }else {
+                        this.newChunkReceived.await(AwaitBackstopMillis, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        }catch (InterruptedException e){
+            sessionLogger.warn("Session " + this.getShortSessionId() + " interrupted while waiting for it's channels to reach their prompts");
+            Thread.currentThread().interrupt();
+            allPromptsReached = false;
+        }finally {
+            this.commandLock.unlock();
+            promptDeadline.cancel();
+        }
+
+        for (ShellChannel channel : this.channels.values()) {
+            cleanOutput(channel.getChannelOutput());
+        }
+        return allPromptsReached;
+    }
+
+    /*A channel is idle at the prompt if the last line it printed ends with the prompt (some shells print terminal control sequences before the prompt itself)
+     * and that line starts at or after the given absolute offset*/
+    private boolean isAtPrompt(final ChannelOutputBuffer processOutput, String expectedPrompt, long promptOffset){
+        synchronized (processOutput) {
+            processOutput.drainInbox();
+            return !expectedPrompt.isEmpty() && !processOutput.isEmpty() && processOutput.getTailOffset() - 1 >= promptOffset &&
+                processOutput.get(processOutput.size() - 1).endsWith(expectedPrompt);
+        }
+    }
+
+    /*Returns each shell of a session which has finished executing an operation to it's initial state, by writing the reset command to it (see SessionPool.recycle())
+     * and waits for every shell to print it's prompt again. Anything the reset prints (the echo of the reset command, login messages) is printed before that prompt,
+     * so none of it is left over for the next operation. The echo of the reset command is appended to the line of the previous prompt,
+     * which is why only prompts on lines after the previous prompt's line are accepted
+     * Returns false if any of the shells could not be written to or did not return to it's prompt, in which case the session should not be reused*/
+    public boolean resetShells(String resetCommand, Map<String, String> sessionProperties, long timeoutMillis){
+        Map<String, Long> promptOffsets = new HashMap<>();
+        for (ShellChannel channel : this.channels.values()) {
+            ChannelOutputBuffer channelOutput = channel.getChannelOutput();
+            synchronized (channelOutput) {
+                channelOutput.drainInbox();
+                promptOffsets.put(channel.getName(), channelOutput.getTailOffset()); //recorded before writing, so the output of the reset command is always at or after it
+            }
+
+            try {
+                channel.write(resetCommand + Literals.LineBreak);
+                channel.flush();
+            } catch (IOException e) {
+                sessionLogger.warn("Session " + this.getShortSessionId() + " failed to reset channel " + channel.getName() + ". Caused by: " + e.getMessage());
+                return false;
+            }
+        }
+        return awaitPrompts(sessionProperties, timeoutMillis, promptOffsets);
+    }
+
+    /*Prepares a session which has finished executing an operation (and whose shells were reset by resetShells()) to be leased again
+     * Everything the session has accumulated during the previous operation is discarded, and the session receives a new id
+     * (so the logs, events and working directory of the next operation are kept apart from the previous one)*/
+    public void reset(){
+        this.commandLock.lock();
+        try {
+            this.sessionShellId = UUID.randomUUID();
+            this.shortSessionId = this.sessionShellId.toString().substring(0, 8);
+            this.operationId = "";
+            this.drilldownRank = 0;
+            this.currentCommand = null;
+            this.commandOrdinal = 0;
+            this.ordinalSequence.set(0);
+            this.evaluatedCommand = "";
+            this.commandSentinel = "";
+            this.currentPrompt = "";
+            this.sessionVariables.clear();
+            this.databaseVariables.clear();
+        }finally {
+            this.commandLock.unlock();
+        }
+
+        for (ShellChannel channel : this.channels.values()) {
+            cleanOutput(channel.getChannelOutput());
+        }
+        this.loadSessionVariables(Collections.singletonMap("sixsense.session.workingDir", Literals.SessionExecutionDir + "/" + this.getShortSessionId()));
     }
 
     public int getDrilldownRank(){
@@ -475,10 +891,18 @@ public class Session implements Closeable, IDebuggable {
         return this.currentPrompt;
     }
 
+    String getCurrentSentinel(){
+        return this.commandSentinel;
+    }
+
     private String getPromptReference(String channelName){
         return "sixsense.session.prompt."+channelName;
     }
 
+    TerminalRecorder getTerminalRecorder() {
+        return terminalRecorder;
+    }
+
     Lock getCommandLock() {
         return commandLock;
     }
@@ -491,19 +915,13 @@ public class Session implements Closeable, IDebuggable {
         return Collections.unmodifiableMap(this.channels);
     }
 
+    //Binds the engine wide session properties as the global layer of the session variables (without copying them)
+    public void bindSessionProperties(Map<String, String> sessionProperties){
+        this.sessionVariables.bindGlobalLayer(sessionProperties);
+    }
+
     public void loadSessionVariables(Map<String, String> properties){
-        for(Map.Entry<String, String> property : properties.entrySet()){
-            String name = property.getKey();
-            String value = property.getValue();
-            this.sessionVariables.putIfAbsent(name, new ArrayDeque<>());
-            this.sessionVariables.get(name).push(
-                new ResultRetention()
-                    .withName(name)
-                    .withValue(value)
-                    .withRetentionMode(RetentionMode.Variable)
-                    .withOverwriteParent(false)
-            );
-        }
+        this.sessionVariables.push(properties);
     }
 
     public void loadSessionDynamicFields(ICommand context){
@@ -513,40 +931,30 @@ public class Session implements Closeable, IDebuggable {
 
     public void removeSessionDynamicFields(ICommand context){
         Map<String, String> contextDynamicFields = context.getDynamicFields();
-        for(String propertyName : contextDynamicFields.keySet()){
-            Deque<ResultRetention> dynamicFieldStack = this.sessionVariables.get(propertyName);
-            ResultRetention topmostVariable = dynamicFieldStack.pop();
-
-            if(topmostVariable.isOverwriteParent()){
-                if(!dynamicFieldStack.isEmpty()) {
-                    dynamicFieldStack.pop();
-                }
-                dynamicFieldStack.push(topmostVariable.withOverwriteParent(false));
-            }
-        }
+        this.sessionVariables.pop(contextDynamicFields.keySet());
     }
 
+    //Returns a read-only snapshot, which is shared by all callers until the session variables change
     public Map<String, String> getCurrentSessionVariables(){
-        Map<String, String> currentSessionFields = new HashMap<>();
-        for(Map.Entry<String, Deque<ResultRetention>> sessionVariable : this.sessionVariables.entrySet()){
-            String propertyName = sessionVariable.getKey();
-            ResultRetention topmostVariable = sessionVariable.getValue().peek();
+        return this.sessionVariables.snapshot();
+    }
 
-            if(topmostVariable != null) {
-                currentSessionFields.put(propertyName, topmostVariable.getValue());
-            }
-        }
-        return currentSessionFields;
+    //Devices are identified by their host, and are grouped by their vendor, product and version (either key is empty if unknown)
+    private String getDeviceKey(){
+        return this.getSessionVariableValue(FieldGlossary.device_host);
+    }
+
+    private String getVpvKey(){
+        return String.join(" ",
+            this.getSessionVariableValue(FieldGlossary.device_vendor),
+            this.getSessionVariableValue(FieldGlossary.device_product),
+            this.getSessionVariableValue(FieldGlossary.device_version)
+        ).trim();
     }
 
     private String getSessionVariableValue(String sessionVar){
-        if(this.sessionVariables.containsKey(sessionVar) && !this.sessionVariables.get(sessionVar).isEmpty()){
-            ResultRetention topmostVariable = this.sessionVariables.get(sessionVar).peek();
-            if(topmostVariable != null) {
-                return topmostVariable.getValue();
-            }
-        }
-        return "";
+        String value = this.sessionVariables.get(sessionVar);
+        return value != null ? value : "";
     }
 
     public Set<DatabaseVariable> getDatabaseVariables(){
@@ -566,8 +974,9 @@ public class Session implements Closeable, IDebuggable {
         isUnderDebug = true;
     }
 
+    //Branches are closed together with the session they were forked from
     public boolean isClosed() {
-        return isClosed;
+        return isClosed || (parent != null && parent.isClosed());
     }
 
     public boolean isTerminated() {
@@ -576,6 +985,21 @@ public class Session implements Closeable, IDebuggable {
 
     public void terminate() {
         this.terminatedExternally = true;
+        for(Session branch : this.branches){
+            branch.terminate();
+        }
+    }
+
+    //Interrupts the command currently executed in event driven mode (blocking commands are woken up by the closing session instead), including the commands of any branches
+    private void interrupt(){
+        this.isClosing = true;
+        CommandExecution execution = this.activeExecution;
+        if(execution != null){
+            execution.onInterrupt();
+        }
+        for(Session branch : this.branches){
+            branch.interrupt();
+        }
     }
 
     @Override
@@ -595,7 +1019,8 @@ public class Session implements Closeable, IDebuggable {
         }
 
         try {
-            //Immediately interrupt the session if it is currently waiting for anything (minimal seconds / new data from process stream wrapper)
+            //Immediately interrupt the session if it is currently waiting for anything (minimal time to response / new data from process stream wrapper)
+            interrupt();
             this.minimalSleepTerminated.signalAll();
             this.newChunkReceived.signalAll();
         }catch(Exception e){
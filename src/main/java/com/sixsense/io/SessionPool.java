@@ -0,0 +1,224 @@
+package com.sixsense.io;
+
+import com.sixsense.config.SessionConfig;
+import com.sixsense.model.logging.Loggers;
+import com.sixsense.threading.ThreadingManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*Keeps sessions which are already connected and idle at their prompts, so operations do not have to wait for their channels to open
+ * Sessions are pooled by their channel signature (the sorted set of their channel names), since a session can only serve operations requiring the exact same channels
+ * Every signature requested at least once is kept at the configured minimum of idle sessions by background refills,
+ * and sessions which finished their operation cleanly have their shells reset and are returned to the pool (up to the configured maximum)*/
+public class SessionPool implements Closeable {
+    private static final Logger sessionLogger = LogManager.getLogger(Loggers.SessionLogger.name());
+
+    private final SessionConfig.SessionPoolProperties poolProperties;
+    private final ThreadingManager threadingManager;
+    private final SessionFactory sessionFactory;
+    private final Supplier<Map<String, String>> sessionProperties; //Expected prompts are read from the session properties, which may change at runtime
+
+    private final Map<String, Deque<Session>> idleSessions = new ConcurrentHashMap<>(); //key: channel signature, value: sessions ready to be leased
+    private final Map<String, AtomicInteger> pendingSessions = new ConcurrentHashMap<>(); //key: channel signature, value: sessions being created or recycled in the background
+    private final Map<String, PoolStatistics> statistics = new ConcurrentHashMap<>(); //key: channel signature, value: hit/miss counters
+    private volatile boolean isClosed = false;
+
+    @FunctionalInterface
+    public interface SessionFactory {
+        Session createSession(Set<String> channelNames) throws InstantiationException;
+    }
+
+    public SessionPool(SessionConfig.SessionPoolProperties poolProperties, ThreadingManager threadingManager, SessionFactory sessionFactory, Supplier<Map<String, String>> sessionProperties) {
+        this.poolProperties = poolProperties;
+        this.threadingManager = threadingManager;
+        this.sessionFactory = sessionFactory;
+        this.sessionProperties = sessionProperties;
+    }
+
+    /*Returns an idle session with the requested channels, or null if none is available (in which case the caller should create a session by itself)
+     * Either way, the pool will refill itself in the background*/
+    public Session lease(Set<String> channelNames){
+        if(!isEnabled()){
+            return null;
+        }
+
+        String signature = channelSignature(channelNames);
+        Deque<Session> idleForSignature = idleSessions.computeIfAbsent(signature, key -> new ConcurrentLinkedDeque<>());
+        PoolStatistics statisticsForSignature = statistics.computeIfAbsent(signature, key -> new PoolStatistics());
+
+        Session session;
+        do {
+            session = idleForSignature.pollFirst();
+        } while (session != null && (session.isClosed() || session.isTerminated()));
+
+        if(session == null){
+            statisticsForSignature.misses.incrementAndGet();
+        }else{
+            statisticsForSignature.hits.incrementAndGet();
+        }
+
+        refill(signature, channelNames);
+        return session;
+    }
+
+    /*Takes ownership of a session which has finished executing it's operation
+     * Returns false if the session cannot be pooled, in which case the caller remains responsible for closing it
+     * Otherwise, the session will be reset in the background and returned to the pool (or closed, if it's channels did not return to their prompts)*/
+    public boolean recycle(Session session){
+        if(!isEnabled() || session.isClosed() || session.isTerminated() || session.isUnderDebug()){
+            return false;
+        }
+
+        String signature = channelSignature(session.getShellChannels().keySet());
+        AtomicInteger pendingForSignature = pendingSessions.computeIfAbsent(signature, key -> new AtomicInteger(0));
+        Deque<Session> idleForSignature = idleSessions.computeIfAbsent(signature, key -> new ConcurrentLinkedDeque<>());
+        if(idleForSignature.size() + pendingForSignature.get() >= poolProperties.getMaximumIdleSessions()){
+            return false;
+        }
+
+        pendingForSignature.incrementAndGet();
+        try {
+            threadingManager.submit(() -> {
+                try {
+                    /*Commands such as "exit" may still be printing after the operation has ended, so we wait for the prompts before resetting
+                     * A channel that does not return to it's prompt (e.g. a remote channel left inside a device shell) cannot be safely reused,
+                     * and neither can a channel which does not return to it's prompt once it's shell was reset*/
+                    Map<String, String> expectedPrompts = sessionProperties.get();
+                    long promptTimeout = poolProperties.getPromptTimeout().toMillis();
+                    boolean isReset = session.awaitPrompts(expectedPrompts, promptTimeout)
+                        && session.resetShells(poolProperties.getResetCommand(), expectedPrompts, promptTimeout);
+
+                    if (isReset) {
+                        session.reset();
+                    }
+                    if (isReset && offer(signature, session)) {
+                        statistics.computeIfAbsent(signature, key -> new PoolStatistics()).recycled.incrementAndGet();
+                    } else {
+                        statistics.computeIfAbsent(signature, key -> new PoolStatistics()).discarded.incrementAndGet();
+                        closeQuietly(session);
+                    }
+                }finally {
+                    pendingForSignature.decrementAndGet();
+                }
+            });
+        }catch (IllegalStateException e){
+            pendingForSignature.decrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    //Create new sessions in the background until the signature has the minimal amount of idle (or soon to be idle) sessions
+    private void refill(String signature, Set<String> channelNames){
+        AtomicInteger pendingForSignature = pendingSessions.computeIfAbsent(signature, key -> new AtomicInteger(0));
+        Deque<Session> idleForSignature = idleSessions.get(signature);
+        Set<String> channelNamesCopy = new HashSet<>(channelNames);
+
+        int missingSessions = poolProperties.getMinimumIdleSessions() - (idleForSignature.size() + pendingForSignature.get());
+        for(int sessionCount = 0; sessionCount < missingSessions; sessionCount++){
+            pendingForSignature.incrementAndGet();
+            try {
+                threadingManager.submit(() -> {
+                    try {
+                        Session session = sessionFactory.createSession(channelNamesCopy);
+                        if (!session.awaitPrompts(sessionProperties.get(), poolProperties.getPromptTimeout().toMillis())) {
+                            //The session is still usable (as usable as a session created on demand), but operations might see some login noise before the first prompt
+                            sessionLogger.warn("Pooled session " + session.getShortSessionId() + " did not reach it's expected prompts within " + poolProperties.getPromptTimeout().toMillis() + "ms");
+                        }
+                        if (!offer(signature, session)) {
+                            closeQuietly(session);
+                        }
+                    } catch (InstantiationException e) {
+                        sessionLogger.error("Failed to create a pooled session for channels " + signature + ". Caused by: " + e.getMessage());
+                    } finally {
+                        pendingForSignature.decrementAndGet();
+                    }
+                });
+            }catch (IllegalStateException e){
+                pendingForSignature.decrementAndGet();
+                sessionLogger.error("Failed to refill session pool for channels " + signature + ". Caused by: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private boolean offer(String signature, Session session){
+        Deque<Session> idleForSignature = idleSessions.computeIfAbsent(signature, key -> new ConcurrentLinkedDeque<>());
+        if(isClosed || idleForSignature.size() >= poolProperties.getMaximumIdleSessions()){
+            return false;
+        }
+
+        idleForSignature.offerLast(session);
+        if(isClosed && idleForSignature.remove(session)){
+            return false; //The pool was closed while we were adding the session
+        }
+        return true;
+    }
+
+    private boolean isEnabled(){
+        return poolProperties != null && poolProperties.isEnabled() && !isClosed;
+    }
+
+    private String channelSignature(Set<String> channelNames){
+        List<String> sortedNames = new ArrayList<>(channelNames);
+        Collections.sort(sortedNames);
+        return String.join(",", sortedNames);
+    }
+
+    private void closeQuietly(Session session){
+        try {
+            session.close();
+        } catch (IOException e) {
+            sessionLogger.error("Failed to close pooled session " + session.getShortSessionId() + ". Caused by: " + e.getMessage());
+        }
+    }
+
+    //Returns the hit/miss counters and the amount of idle sessions, per channel signature
+    public Map<String, Map<String, Long>> getPoolStatus(){
+        Map<String, Map<String, Long>> poolStatus = new HashMap<>();
+        for(Map.Entry<String, PoolStatistics> statisticsForSignature : statistics.entrySet()){
+            String signature = statisticsForSignature.getKey();
+            PoolStatistics signatureStatistics = statisticsForSignature.getValue();
+            Deque<Session> idleForSignature = idleSessions.get(signature);
+
+            Map<String, Long> signatureStatus = new HashMap<>();
+            signatureStatus.put("hits", signatureStatistics.hits.get());
+            signatureStatus.put("misses", signatureStatistics.misses.get());
+            signatureStatus.put("recycled", signatureStatistics.recycled.get());
+            signatureStatus.put("discarded", signatureStatistics.discarded.get());
+            signatureStatus.put("idle", idleForSignature == null ? 0L : idleForSignature.size());
+            poolStatus.put(signature, signatureStatus);
+        }
+
+        return poolStatus;
+    }
+
+    @Override
+    public void close() {
+        this.isClosed = true;
+        for(Deque<Session> idleForSignature : idleSessions.values()){
+            Session session;
+            while ((session = idleForSignature.pollFirst()) != null) {
+                closeQuietly(session);
+            }
+        }
+        sessionLogger.info("Session pool closed");
+    }
+
+    private static class PoolStatistics {
+        private final AtomicLong hits = new AtomicLong(0);
+        private final AtomicLong misses = new AtomicLong(0);
+        private final AtomicLong recycled = new AtomicLong(0);
+        private final AtomicLong discarded = new AtomicLong(0);
+    }
+}
@@ -0,0 +1,246 @@
+package com.sixsense.io;
+
+import com.sixsense.model.retention.ResultRetention;
+import com.sixsense.model.retention.RetentionMode;
+import com.sixsense.utillity.FieldNameTrie;
+
+import java.util.*;
+
+/*Dynamic fields of a single session, kept in two layers:
+ * 1) The global layer - the engine wide session properties. This layer is immutable and shared by all sessions, so sessions never copy it
+ * 2) The overlay layer - session variables, dynamic fields of the commands currently executing and retained variables.
+ *    Each variable has it's own stack, and the topmost value of each stack hides the global value by the same name (if any)
+ *
+ * Lookups are constant time, and read-only snapshots of all current values are cached until the next modification
+ * (so repeatedly evaluating expressions and templates against the session fields copies nothing, as long as the fields do not change).
+ * Snapshots also share the trie of their field names until a variable is added or removed, so changing the value of a variable does not rebuild it*/
+public class SessionVariableStore {
+    private Map<String, String> globalLayer = Collections.emptyMap();
+    private final Map<String, Deque<ResultRetention>> overlayLayer = new HashMap<>(); //key: variable name, value: scoped values (topmost is current)
+    private final Map<String, String> overlayValues = new HashMap<>(); //key: variable name, value: topmost value of the variable's stack
+    private Map<String, String> cachedSnapshot = null;
+    private SharedFieldNames sharedFieldNames = new SharedFieldNames(); //Replaced whenever a variable is added or removed
+
+    //The global layer must not be modified after binding it (the engine replaces it's properties map instead of modifying it)
+    public synchronized void bindGlobalLayer(Map<String, String> globalLayer){
+        this.globalLayer = globalLayer;
+        this.cachedSnapshot = null;
+        this.sharedFieldNames = new SharedFieldNames();
+    }
+
+    //Pushes a new scoped value for each variable
+    public synchronized void push(Map<String, String> variables){
+        for(Map.Entry<String, String> variable : variables.entrySet()){
+            String name = variable.getKey();
+            push(name,
+                new ResultRetention()
+                    .withName(name)
+                    .withValue(variable.getValue())
+                    .withRetentionMode(RetentionMode.Variable)
+                    .withOverwriteParent(false)
+            );
+        }
+    }
+
+    /*Removes the topmost value of each variable when it's scope ends
+     * If the removed value should overwrite it's parent, it replaces the parent value instead*/
+    public synchronized void pop(Set<String> names){
+        for(String name : names){
+            Deque<ResultRetention> variableStack = this.overlayLayer.get(name);
+            if(variableStack == null || variableStack.isEmpty()){
+                continue;
+            }
+
+            ResultRetention topmostVariable = variableStack.pop();
+            if(topmostVariable.isOverwriteParent()){
+                if(!variableStack.isEmpty()) {
+                    variableStack.pop();
+                }
+                variableStack.push(topmostVariable.withOverwriteParent(false));
+            }
+            updateOverlayValue(name, variableStack);
+        }
+    }
+
+    /*Note that variables are scoped to the ICommand in question (unless overwriting)
+     * so a retained variable replaces the current value in the current scope*/
+    public synchronized void retain(ResultRetention retention){
+        String name = retention.getName();
+        Deque<ResultRetention> variableStack = this.overlayLayer.computeIfAbsent(name, key -> new ArrayDeque<>());
+        if(!variableStack.isEmpty()) {
+            variableStack.pop();
+        }
+        push(name, retention);
+    }
+
+    /*Retains the variables of a branch store (see Session.fork()) in this store, as if they were retained here
+     * Once a branch has finished, the dynamic fields of it's commands are all out of scope - so the bottom value of each of it's stacks was retained by the branch*/
+    public void merge(SessionVariableStore branch){
+        List<ResultRetention> retainedVariables = new ArrayList<>();
+        synchronized (branch){
+            for(Deque<ResultRetention> variableStack : branch.overlayLayer.values()){
+                if(!variableStack.isEmpty()){
+                    retainedVariables.add(variableStack.peekLast());
+                }
+            }
+        }
+
+        synchronized (this){
+            for(ResultRetention retainedVariable : retainedVariables){
+                retain(retainedVariable);
+            }
+        }
+    }
+
+    //Returns the current value of the variable, or null if it has none
+    public synchronized String get(String name){
+        String value = this.overlayValues.get(name);
+        return value != null ? value : this.globalLayer.get(name);
+    }
+
+    //Returns a read-only snapshot of the current value of every variable
+    public synchronized Map<String, String> snapshot(){
+        if(this.cachedSnapshot == null){
+            this.cachedSnapshot = new LayeredSnapshot(this.globalLayer, new HashMap<>(this.overlayValues), this.sharedFieldNames);
+        }
+        return this.cachedSnapshot;
+    }
+
+    //Removes all variables (the global layer is bound again when the session is leased)
+    public synchronized void clear(){
+        this.globalLayer = Collections.emptyMap();
+        this.overlayLayer.clear();
+        this.overlayValues.clear();
+        this.cachedSnapshot = null;
+        this.sharedFieldNames = new SharedFieldNames();
+    }
+
+    private void push(String name, ResultRetention scopedValue){
+        Deque<ResultRetention> variableStack = this.overlayLayer.computeIfAbsent(name, key -> new ArrayDeque<>());
+        variableStack.push(scopedValue);
+        updateOverlayValue(name, variableStack);
+    }
+
+    private void updateOverlayValue(String name, Deque<ResultRetention> variableStack){
+        ResultRetention topmostVariable = variableStack.peek();
+        boolean isNameChanged;
+        if(topmostVariable == null || topmostVariable.getValue() == null){
+            isNameChanged = this.overlayValues.remove(name) != null;
+        }else{
+            isNameChanged = this.overlayValues.put(name, topmostVariable.getValue()) == null;
+        }
+
+        this.cachedSnapshot = null;
+        if(isNameChanged){
+            this.sharedFieldNames = new SharedFieldNames();
+        }
+    }
+
+    //Immutable view over both layers. The overlay values are copied when the snapshot is taken, and the global layer is immutable anyway
+    private static class LayeredSnapshot extends AbstractMap<String, String> implements FieldNameTrie.IndexedFields {
+        private final Map<String, String> globalLayer;
+        private final Map<String, String> overlayValues;
+        private final SharedFieldNames sharedFieldNames;
+        private final int size;
+        private Set<Entry<String, String>> entrySet;
+
+        private LayeredSnapshot(Map<String, String> globalLayer, Map<String, String> overlayValues, SharedFieldNames sharedFieldNames) {
+            this.globalLayer = globalLayer;
+            this.overlayValues = overlayValues;
+            this.sharedFieldNames = sharedFieldNames;
+
+            int hiddenGlobals = 0;
+            for(String name : overlayValues.keySet()){
+                if(globalLayer.containsKey(name)){
+                    hiddenGlobals++;
+                }
+            }
+            this.size = globalLayer.size() + overlayValues.size() - hiddenGlobals;
+        }
+
+        @Override
+        public String get(Object name) {
+            String value = this.overlayValues.get(name);
+            return value != null ? value : this.globalLayer.get(name);
+        }
+
+        @Override
+        public boolean containsKey(Object name) {
+            return this.overlayValues.containsKey(name) || this.globalLayer.containsKey(name);
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public FieldNameTrie getFieldNames() {
+            return this.sharedFieldNames.forSnapshot(this);
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            if(this.entrySet == null){
+                this.entrySet = new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, String>> iterator() {
+                        return new LayeredIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return LayeredSnapshot.this.size;
+                    }
+                };
+            }
+            return this.entrySet;
+        }
+
+        //Iterates the overlay values, and then the global values which are not hidden by them
+        private class LayeredIterator implements Iterator<Entry<String, String>> {
+            private final Iterator<Entry<String, String>> overlayIterator = overlayValues.entrySet().iterator();
+            private final Iterator<Entry<String, String>> globalIterator = globalLayer.entrySet().iterator();
+            private Entry<String, String> nextGlobal = null;
+
+            @Override
+            public boolean hasNext() {
+                if(overlayIterator.hasNext()){
+                    return true;
+                }
+                while(nextGlobal == null && globalIterator.hasNext()){
+                    Entry<String, String> candidate = globalIterator.next();
+                    if(!overlayValues.containsKey(candidate.getKey())){
+                        nextGlobal = candidate;
+                    }
+                }
+                return nextGlobal != null;
+            }
+
+            @Override
+            public Entry<String, String> next() {
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }else if(overlayIterator.hasNext()){
+                    return new SimpleImmutableEntry<>(overlayIterator.next());
+                }
+
+                Entry<String, String> globalEntry = nextGlobal;
+                nextGlobal = null;
+                return new SimpleImmutableEntry<>(globalEntry);
+            }
+        }
+    }
+
+    //The trie of the field names shared by every snapshot taken while the same variables are set, built by the first snapshot to evaluate a template
+    private static class SharedFieldNames {
+        private FieldNameTrie fieldNames = null;
+
+        private synchronized FieldNameTrie forSnapshot(LayeredSnapshot snapshot){
+            if(this.fieldNames == null){
+                this.fieldNames = FieldNameTrie.of(snapshot.keySet());
+            }
+            return this.fieldNames;
+        }
+    }
+}
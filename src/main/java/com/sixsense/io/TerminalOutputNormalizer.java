@@ -0,0 +1,259 @@
+package com.sixsense.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*Normalizes the raw bytes read from a process stream into lines of terminal output, one chunk at a time
+ * All state is carried across chunk boundaries:
+ * 1) Bytes are decoded by a single decoder, so a multi-byte character split between two reads is decoded once the rest of it arrives
+ * 2) ANSI/VT100 escape sequences (colors, cursor movement, window titles etc.) are stripped by a state machine, even if split between two reads
+ * 3) Carriage returns are removed, and spaces around carriage returns and line breaks are trimmed (spaces at the end of a chunk are kept, since the line may be a prompt waiting for input)
+ * Additional substitution criteria are compiled once, and are applied to the normalized text of each chunk
+ *
+ * The normalized text of a chunk is kept in a reusable builder, together with the positions of it's line breaks, so the reader can copy each line directly into the output
+ * A normalizer is used by a single process stream reader, and is not thread safe*/
+public class TerminalOutputNormalizer {
+    private static final char Escape = '\u001B';
+    private static final char ControlSequenceIntroducer = '\u009B'; //8-bit equivalent of ESC [
+    private static final char Bell = '\u0007';
+    private static final int MaximumStringSequenceLength = 1024; //Unterminated string sequences (e.g. a stray ESC ] in binary output) should not swallow the rest of the output
+
+    private enum SequenceState {
+        Text, //not inside an escape sequence
+        Escape, //after ESC
+        EscapeIntermediate, //after ESC and at least one intermediate character, e.g. ESC ( B
+        ControlSequence, //after ESC [
+        StringSequence, //after ESC ] (or any other sequence terminated by BEL or by ESC \)
+        StringSequenceEscape //after ESC inside a string sequence
+    }
+
+    private final CharsetDecoder decoder;
+    private final CharBuffer decodedChars;
+    private final List<Pattern> substitutionPatterns;
+    private final List<String> substitutionReplacements;
+
+    //Carried across chunks
+    private SequenceState sequenceState = SequenceState.Text;
+    private int stringSequenceLength = 0;
+    private int pendingSpaces = 0; //spaces which are trimmed if followed by a carriage return or a line break
+    private boolean trimSpaces = false; //true right after a carriage return or a line break
+
+    //Output of the last chunk
+    private final StringBuilder normalizedText;
+    private int[] lineBreakPositions;
+    private int lineBreakCount = 0;
+    private final StringBuilder rawText; //decoded text before normalizing, only kept when recording raw text
+    private boolean isRecordingRawText = false;
+
+    public TerminalOutputNormalizer(Charset charset) {
+        this.decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.decodedChars = CharBuffer.allocate(1024);
+        this.substitutionPatterns = new ArrayList<>();
+        this.substitutionReplacements = new ArrayList<>();
+
+        this.normalizedText = new StringBuilder(1024);
+        this.lineBreakPositions = new int[16];
+        this.rawText = new StringBuilder();
+    }
+
+    //Criteria are applied in the order they were added, after the text was normalized
+    public TerminalOutputNormalizer addSubstitutionCriteria(String regex, String replacement){
+        this.substitutionPatterns.add(Pattern.compile(regex));
+        this.substitutionReplacements.add(replacement);
+        return this;
+    }
+
+    public void setRecordingRawText(boolean isRecordingRawText) {
+        this.isRecordingRawText = isRecordingRawText;
+    }
+
+    /*Normalizes the next chunk of bytes (the buffer must be in read mode)
+     * Bytes of an incomplete character remain in the buffer, and should be compacted in front of the next chunk*/
+    public void normalize(ByteBuffer rawBytes){
+        this.normalizedText.setLength(0);
+        this.rawText.setLength(0);
+        this.lineBreakCount = 0;
+
+        CoderResult decodingResult;
+        do {
+            decodingResult = this.decoder.decode(rawBytes, this.decodedChars, false);
+            this.decodedChars.flip();
+            if(this.isRecordingRawText){
+                this.rawText.append(this.decodedChars);
+            }
+            while(this.decodedChars.hasRemaining()){
+                normalize(this.decodedChars.get());
+            }
+            this.decodedChars.clear();
+        } while (decodingResult.isOverflow());
+
+        emitPendingSpaces();
+        if(!this.substitutionPatterns.isEmpty()){
+            executeSubstitutionCriteria();
+        }
+    }
+
+    private void normalize(char nextChar){
+        switch (this.sequenceState){
+            case Text: {
+                normalizeText(nextChar);
+                break;
+            }
+            case Escape: {
+                if(nextChar == '['){
+                    this.sequenceState = SequenceState.ControlSequence;
+                }else if(nextChar == ']' || nextChar == 'P' || nextChar == 'X' || nextChar == '^' || nextChar == '_'){
+                    this.sequenceState = SequenceState.StringSequence;
+                    this.stringSequenceLength = 0;
+                }else if(nextChar >= 0x20 && nextChar <= 0x2F){
+                    this.sequenceState = SequenceState.EscapeIntermediate;
+                }else if(nextChar >= 0x30 && nextChar <= 0x7E){
+                    this.sequenceState = SequenceState.Text;
+                }else{
+                    abortSequence(nextChar);
+                }
+                break;
+            }
+            case EscapeIntermediate: {
+                if(nextChar >= 0x30 && nextChar <= 0x7E){
+                    this.sequenceState = SequenceState.Text;
+                }else if(nextChar < 0x20 || nextChar > 0x2F){
+                    abortSequence(nextChar);
+                }
+                break;
+            }
+            case ControlSequence: {
+                if(nextChar >= 0x40 && nextChar <= 0x7E){
+                    this.sequenceState = SequenceState.Text;
+                }else if(nextChar < 0x20 || nextChar > 0x3F){
+                    abortSequence(nextChar);
+                }
+                break;
+            }
+            case StringSequence: {
+                if(nextChar == Bell){
+                    this.sequenceState = SequenceState.Text;
+                }else if(nextChar == Escape){
+                    this.sequenceState = SequenceState.StringSequenceEscape;
+                }else if(++this.stringSequenceLength > MaximumStringSequenceLength){
+                    this.sequenceState = SequenceState.Text;
+                }
+                break;
+            }
+            case StringSequenceEscape: {
+                if(nextChar == '\\'){
+                    this.sequenceState = SequenceState.Text;
+                }else{
+                    this.sequenceState = SequenceState.Escape; //The ESC starts a new sequence
+                    normalize(nextChar);
+                }
+                break;
+            }
+        }
+    }
+
+    //Malformed sequences end at the first unexpected character, which is then treated as text
+    private void abortSequence(char nextChar){
+        this.sequenceState = SequenceState.Text;
+        normalizeText(nextChar);
+    }
+
+    private void normalizeText(char nextChar){
+        switch (nextChar){
+            case Escape: {
+                this.sequenceState = SequenceState.Escape;
+                break;
+            }
+            case ControlSequenceIntroducer: {
+                this.sequenceState = SequenceState.ControlSequence;
+                break;
+            }
+            case ' ': {
+                if(!this.trimSpaces){
+                    this.pendingSpaces++;
+                }
+                break;
+            }
+            case '\r': {
+                this.pendingSpaces = 0;
+                this.trimSpaces = true;
+                break;
+            }
+            case '\n': {
+                this.pendingSpaces = 0;
+                this.trimSpaces = true;
+                addLineBreak();
+                break;
+            }
+            default: {
+                emitPendingSpaces();
+                this.trimSpaces = false;
+                this.normalizedText.append(nextChar);
+            }
+        }
+    }
+
+    private void emitPendingSpaces(){
+        for(; this.pendingSpaces > 0; this.pendingSpaces--){
+            this.normalizedText.append(' ');
+        }
+    }
+
+    private void addLineBreak(){
+        if(this.lineBreakCount == this.lineBreakPositions.length){
+            this.lineBreakPositions = Arrays.copyOf(this.lineBreakPositions, this.lineBreakCount * 2);
+        }
+        this.lineBreakPositions[this.lineBreakCount++] = this.normalizedText.length();
+        this.normalizedText.append('\n');
+    }
+
+    //Slow path, only taken if additional criteria were added. The line breaks are located again after substituting
+    private void executeSubstitutionCriteria(){
+        String substitutedText = this.normalizedText.toString();
+        for(int criterionIdx = 0; criterionIdx < this.substitutionPatterns.size(); criterionIdx++){
+            Matcher matcher = this.substitutionPatterns.get(criterionIdx).matcher(substitutedText);
+            substitutedText = matcher.replaceAll(this.substitutionReplacements.get(criterionIdx));
+        }
+
+        this.normalizedText.setLength(0);
+        this.lineBreakCount = 0;
+        for(int charIdx = 0; charIdx < substitutedText.length(); charIdx++){
+            char nextChar = substitutedText.charAt(charIdx);
+            if(nextChar == '\n'){
+                addLineBreak();
+            }else{
+                this.normalizedText.append(nextChar);
+            }
+        }
+    }
+
+    //Normalized text of the last chunk, including line breaks
+    public CharSequence getNormalizedText() {
+        return normalizedText;
+    }
+
+    public int getLineBreakCount() {
+        return lineBreakCount;
+    }
+
+    //Index of a line break in the normalized text
+    public int getLineBreakPosition(int lineBreakIdx) {
+        return lineBreakPositions[lineBreakIdx];
+    }
+
+    //Decoded text of the last chunk before normalizing (empty unless recording raw text)
+    public CharSequence getRawText() {
+        return rawText;
+    }
+}
@@ -0,0 +1,304 @@
+package com.sixsense.io.logging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/*Base of the append-only stores shared by all sessions (see SessionLogStore.java and TerminalRecordingStore.java)
+ *
+ * Records are framed by their length, and appended to the active segment file of the store. Once the active segment is full it is sealed, and a new one is started.
+ * Only the latest segments are kept, so the amount of files a store holds is bounded by it's maximum segments, no matter how many sessions run through the engine
+ * Every segment keeps a sparse index of the ranges each session was written to (see SessionIndex.java), saved next to the segment once it is sealed
+ *
+ * Subclasses decide how records are laid out and written into their segments, while the lifecycle of the segments (naming, loading, rolling and expiry) is kept here*/
+abstract class SegmentedStore<S extends SegmentedStore.Segment> implements Closeable {
+    private static final String IndexSuffix = ".idx";
+    private static final int ReadChunkSize = 64 * 1024;
+
+    protected final String prefix;
+    private final Path directory;
+    private final String segmentSuffix;
+    private final int maximumSegments;
+    private final Pattern segmentPattern;
+    protected final LinkedList<S> segments = new LinkedList<>(); //ordered from oldest to newest. The last segment is the active one
+    protected boolean isClosed = false;
+
+    protected SegmentedStore(Path directory, String prefix, String segmentSuffix, int maximumSegments) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSuffix = segmentSuffix;
+        this.maximumSegments = Math.max(maximumSegments, 1);
+        this.segmentPattern = Pattern.compile(Pattern.quote(prefix) + "\\.(\\d+)" + Pattern.quote(segmentSuffix));
+    }
+
+    //Creates a new active segment, which records are written to
+    protected abstract S createSegment(Path path, Path indexPath, long number) throws IOException;
+
+    //Loads a sealed segment of a previous run, which is only read from
+    protected abstract S loadSegment(Path path, Path indexPath, long number, SessionIndex sessionIndex) throws IOException;
+
+    //Returns the session id of a record (positioned right after it's length), or null if the record is malformed
+    protected abstract String readSessionId(ByteBuffer record);
+
+    //Writes out any records the store still holds for the active segment. Called (under the lock) before the active segment is sealed or read from
+    protected void flushActiveSegment() throws IOException {
+    }
+
+    //Called by the constructors of subclasses once their own fields are set, since creating the active segment depends on them
+    protected final void openSegments() throws IOException {
+        Files.createDirectories(this.directory);
+        loadSegments();
+        long nextSegmentNumber = this.segments.isEmpty() ? 1 : this.segments.getLast().number + 1;
+        this.segments.add(createSegment(segmentPath(nextSegmentNumber), indexPath(nextSegmentNumber), nextSegmentNumber));
+        expireSegments();
+    }
+
+    /*Passes every record in the ranges of the session to the consumer (in the order they were written), positioned right after it's length
+     * Ranges may also hold the records of other sessions, which the consumer has to skip. Segments which expire while they are read are skipped as well*/
+    protected void readSessionRecords(String sessionId, RecordConsumer recordConsumer) throws IOException {
+        for(SegmentRanges sessionRanges : getSessionRanges(sessionId)){
+            long[] offsets = sessionRanges.offsets;
+            try (RecordReader recordReader = new RecordReader(sessionRanges.path, offsets[offsets.length - 1])) {
+                for(int rangeIdx = 0; rangeIdx < offsets.length; rangeIdx += 2) { //The reader skips the bytes between the ranges
+                    long recordStart = offsets[rangeIdx];
+                    ByteBuffer record;
+                    while (recordStart < offsets[rangeIdx + 1] && (record = recordReader.readRecord(recordStart)) != null) {
+                        recordStart += Integer.BYTES + record.remaining();
+                        recordConsumer.accept(record);
+                    }
+                }
+            }catch (NoSuchFileException e){
+                //The segment expired while we were reading the previous ones
+            }
+        }
+    }
+
+    //Returns the ranges of the session in each segment it was written to (copied while holding the lock, so they can be read without it)
+    private synchronized List<SegmentRanges> getSessionRanges(String sessionId) throws IOException {
+        if(!this.isClosed){
+            flushActiveSegment();
+        }
+
+        List<SegmentRanges> sessionRanges = new ArrayList<>();
+        for (Segment segment : this.segments) {
+            long[] offsets = segment.sessionIndex.getRanges(sessionId);
+            if (offsets != null) {
+                sessionRanges.add(new SegmentRanges(segment.path, offsets));
+            }
+        }
+        return sessionRanges;
+    }
+
+    public synchronized int getSegmentCount(){
+        return this.segments.size();
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(!this.isClosed) {
+            flushActiveSegment();
+            this.isClosed = true;
+            S activeSegment = this.segments.getLast();
+            seal(activeSegment);
+            if(activeSegment.isEmpty()){ //No need to keep an empty segment around until the next restart
+                this.segments.removeLast();
+                Files.deleteIfExists(activeSegment.path);
+                Files.deleteIfExists(activeSegment.indexPath);
+            }
+        }
+    }
+
+    protected void rollSegment() throws IOException {
+        flushActiveSegment();
+        S sealedSegment = this.segments.getLast();
+        seal(sealedSegment);
+
+        long nextSegmentNumber = sealedSegment.number + 1;
+        this.segments.add(createSegment(segmentPath(nextSegmentNumber), indexPath(nextSegmentNumber), nextSegmentNumber));
+        expireSegments();
+    }
+
+    private void seal(S segment) throws IOException {
+        if(segment.isActive()) {
+            segment.release();
+            segment.sessionIndex.save(segment.indexPath);
+        }
+    }
+
+    private void expireSegments() throws IOException {
+        while(this.segments.size() > this.maximumSegments){
+            S expiredSegment = this.segments.removeFirst();
+            Files.deleteIfExists(expiredSegment.path);
+            Files.deleteIfExists(expiredSegment.indexPath);
+        }
+    }
+
+    //Segments without an index (if the engine stopped before sealing them) are indexed again by scanning their records
+    private void loadSegments() throws IOException {
+        TreeMap<Long, Path> segmentPaths = new TreeMap<>();
+        try(Stream<Path> files = Files.list(this.directory)) {
+            files.forEach(file -> {
+                Matcher segmentMatcher = this.segmentPattern.matcher(file.getFileName().toString());
+                if (segmentMatcher.matches()) {
+                    segmentPaths.put(Long.parseLong(segmentMatcher.group(1)), file);
+                }
+            });
+        }
+
+        for(Map.Entry<Long, Path> segmentPath : segmentPaths.entrySet()){
+            long number = segmentPath.getKey();
+            Path indexPath = indexPath(number);
+            SessionIndex sessionIndex;
+            if(Files.exists(indexPath)){
+                sessionIndex = SessionIndex.load(indexPath);
+            }else{
+                sessionIndex = rebuildIndex(segmentPath.getValue());
+                sessionIndex.save(indexPath);
+            }
+            this.segments.add(loadSegment(segmentPath.getValue(), indexPath, number, sessionIndex));
+        }
+    }
+
+    //A record cut short (by a crash while writing it) ends the scan
+    private SessionIndex rebuildIndex(Path path) throws IOException {
+        SessionIndex sessionIndex = new SessionIndex();
+        try(RecordReader recordReader = new RecordReader(path, Files.size(path))) {
+            long recordStart = 0;
+            ByteBuffer record;
+            while ((record = recordReader.readRecord(recordStart)) != null) {
+                long recordEnd = recordStart + Integer.BYTES + record.remaining();
+                String sessionId = readSessionId(record);
+                if (sessionId == null) {
+                    break;
+                }
+
+                sessionIndex.add(sessionId, recordStart, recordEnd);
+                recordStart = recordEnd;
+            }
+        }
+        return sessionIndex;
+    }
+
+    private Path segmentPath(long number){
+        return this.directory.resolve(String.format("%s.%08d%s", this.prefix, number, this.segmentSuffix));
+    }
+
+    private Path indexPath(long number){
+        return this.directory.resolve(String.format("%s.%08d%s", this.prefix, number, IndexSuffix));
+    }
+
+    protected abstract static class Segment {
+        protected final long number;
+        protected final Path path;
+        protected final Path indexPath;
+        protected final SessionIndex sessionIndex;
+
+        protected Segment(long number, Path path, Path indexPath, SessionIndex sessionIndex) {
+            this.number = number;
+            this.path = path;
+            this.indexPath = indexPath;
+            this.sessionIndex = sessionIndex;
+        }
+
+        //Only the active segment is written to. Segments of previous runs, and segments which were sealed, are only read from
+        protected abstract boolean isActive();
+
+        protected abstract boolean isEmpty();
+
+        //Makes sure everything written to the segment reaches the disk, and releases the resources used for writing to it
+        protected abstract void release() throws IOException;
+    }
+
+    @FunctionalInterface
+    protected interface RecordConsumer {
+        void accept(ByteBuffer record) throws IOException;
+    }
+
+    private static final class SegmentRanges {
+        private final Path path;
+        private final long[] offsets; //start and end offsets of each range, in the order they were written
+
+        private SegmentRanges(Path path, long[] offsets) {
+            this.path = path;
+            this.offsets = offsets;
+        }
+    }
+
+    /*Reads the records of a segment file one after the other, through a bounded chunk of the file (so reading a range never loads all of it at once)
+     * The chunk only grows when a single record is larger than it*/
+    private static final class RecordReader implements Closeable {
+        private final FileChannel channel;
+        private final long end;
+        private ByteBuffer chunk = ByteBuffer.allocate(ReadChunkSize); //holds the bytes of the file from chunkStart up to it's limit
+        private long chunkStart = 0;
+
+        private RecordReader(Path path, long end) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.end = end;
+            this.chunk.limit(0);
+        }
+
+        /*Returns the record starting at the given offset, positioned right after it's length and limited to it's end
+         * Returns null at the end of the range, at a zero length (the unwritten part of a mapped segment) or at a record cut short*/
+        private ByteBuffer readRecord(long recordStart) throws IOException {
+            if(!fill(recordStart, Integer.BYTES)){
+                return null;
+            }
+
+            int recordLength = this.chunk.getInt((int)(recordStart - this.chunkStart));
+            if(recordLength <= 0 || !fill(recordStart, Integer.BYTES + recordLength)){
+                return null;
+            }
+
+            int bodyStart = (int)(recordStart - this.chunkStart) + Integer.BYTES;
+            ByteBuffer record = this.chunk.duplicate();
+            record.limit(bodyStart + recordLength).position(bodyStart);
+            return record;
+        }
+
+        //Makes sure the chunk holds the given amount of bytes from the offset onwards, keeping the bytes it already holds past the offset
+        private boolean fill(long offset, int length) throws IOException {
+            if(offset + length > this.end){
+                return false;
+            }
+
+            long chunkOffset = offset - this.chunkStart;
+            if(chunkOffset + length <= this.chunk.limit()){
+                return true;
+            }
+
+            //Bytes already read past the offset are kept at the start of the chunk
+            this.chunk.position((int)Math.min(chunkOffset, this.chunk.limit()));
+            if(length > this.chunk.capacity()){
+                this.chunk = ByteBuffer.allocate(length).put(this.chunk);
+            }else{
+                this.chunk.compact();
+            }
+            this.chunkStart = offset;
+
+            this.chunk.limit((int)Math.min(this.chunk.capacity(), this.end - this.chunkStart));
+            while (this.chunk.hasRemaining()) {
+                if (this.channel.read(this.chunk, this.chunkStart + this.chunk.position()) < 0) {
+                    break;
+                }
+            }
+            this.chunk.flip();
+            return this.chunk.limit() >= length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.sixsense.io.logging;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*Sparse index of the sessions written to a single segment file - the ranges of the segment holding the records of each session
+ * A new range is started at a record of the session once the current range of the session started more than IndexInterval bytes before it,
+ * while records of the session starting within the interval (or right where the range ends) extend the current range.
+ * Readers of a session only read it's ranges, so at most IndexInterval bytes of other sessions' records are read per range, no matter how many sessions were interleaved into the segment
+ * Not thread safe - the stores owning the segments guard their indexes*/
+final class SessionIndex {
+    private static final int IndexInterval = 16 * 1024;
+    private final Map<String, SessionRanges> sessionRanges = new HashMap<>(); //key: session id, value: start and end offsets of each range
+
+    void add(String sessionId, long recordStart, long recordEnd){
+        SessionRanges ranges = this.sessionRanges.computeIfAbsent(sessionId, key -> new SessionRanges());
+        int lastRange = ranges.count - 2;
+        if(lastRange >= 0 && (recordStart == ranges.offsets[lastRange + 1] || recordStart - ranges.offsets[lastRange] < IndexInterval)){
+            ranges.offsets[lastRange + 1] = recordEnd;
+        }else{
+            ranges.add(recordStart, recordEnd);
+        }
+    }
+
+    //Returns a copy of the start and end offsets of each range of the session, or null if the session has no records in the segment
+    long[] getRanges(String sessionId){
+        SessionRanges ranges = this.sessionRanges.get(sessionId);
+        return ranges != null ? Arrays.copyOf(ranges.offsets, ranges.count) : null;
+    }
+
+    void save(Path indexPath) throws IOException {
+        List<String> indexLines = new ArrayList<>(this.sessionRanges.size());
+        for(Map.Entry<String, SessionRanges> sessionRanges : this.sessionRanges.entrySet()){
+            StringBuilder indexLine = new StringBuilder(sessionRanges.getKey());
+            SessionRanges ranges = sessionRanges.getValue();
+            for(int offsetIdx = 0; offsetIdx < ranges.count; offsetIdx++){
+                indexLine.append(" ").append(ranges.offsets[offsetIdx]);
+            }
+            indexLines.add(indexLine.toString());
+        }
+        Files.write(indexPath, indexLines, StandardCharsets.UTF_8);
+    }
+
+    static SessionIndex load(Path indexPath) throws IOException {
+        SessionIndex sessionIndex = new SessionIndex();
+        for(String indexLine : Files.readAllLines(indexPath, StandardCharsets.UTF_8)){
+            String[] indexFields = indexLine.split(" ");
+            if(indexFields.length >= 3 && indexFields.length % 2 == 1) {
+                SessionRanges ranges = new SessionRanges();
+                for(int fieldIdx = 1; fieldIdx < indexFields.length; fieldIdx += 2){
+                    ranges.add(Long.parseLong(indexFields[fieldIdx]), Long.parseLong(indexFields[fieldIdx + 1]));
+                }
+                sessionIndex.sessionRanges.put(indexFields[0], ranges);
+            }
+        }
+        return sessionIndex;
+    }
+
+    private static final class SessionRanges {
+        private long[] offsets = new long[2];
+        private int count = 0; //the amount of offsets used, two per range
+
+        private void add(long start, long end){
+            if(this.count == this.offsets.length){
+                this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+            }
+            this.offsets[this.count++] = start;
+            this.offsets[this.count++] = end;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.sixsense.io.logging;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.logging.log4j.core.appender.rolling.FileSize;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Paths;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*Appends the log lines of sessions into a session log store (see SessionLogStore.java), keyed by the sessionID in the thread context
+ * Lines logged outside of a session (when the thread context has no sessionID) are passed on to the fallback appender, if one is configured
+ *
+ * The store buffers it's writes, so the appender flushes it every flushInterval milliseconds (using the scheduler of the log4j configuration)
+ *
+ * Configured in log4j2.xml as <SessionLogStore name="..." directory="..." prefix="..." segmentSize="64MB" maximumSegments="32" flushInterval="1000" fallbackRef="..."> with a nested layout*/
+@Plugin(name = "SessionLogStore", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public class SessionLogAppender extends AbstractAppender {
+    private final SessionLogStore sessionLogStore;
+    private final Configuration configuration;
+    private final String fallbackRef;
+    private final long flushInterval;
+    private ScheduledFuture<?> flushTask;
+
+    private SessionLogAppender(String name, Filter filter, Layout<? extends Serializable> layout, boolean ignoreExceptions, SessionLogStore sessionLogStore, Configuration configuration, String fallbackRef, long flushInterval) {
+        super(name, filter, layout, ignoreExceptions, Property.EMPTY_ARRAY);
+        this.sessionLogStore = sessionLogStore;
+        this.configuration = configuration;
+        this.fallbackRef = fallbackRef;
+        this.flushInterval = flushInterval;
+    }
+
+    @PluginFactory
+    public static SessionLogAppender createAppender(
+        @PluginAttribute("name") String name,
+        @PluginAttribute("directory") String directory,
+        @PluginAttribute("prefix") String prefix,
+        @PluginAttribute("segmentSize") String segmentSize,
+        @PluginAttribute(value = "maximumSegments", defaultInt = 32) int maximumSegments,
+        @PluginAttribute(value = "flushInterval", defaultLong = 1000) long flushInterval,
+        @PluginAttribute("fallbackRef") String fallbackRef,
+        @PluginAttribute(value = "ignoreExceptions", defaultBoolean = true) boolean ignoreExceptions,
+        @PluginElement("Layout") Layout<? extends Serializable> layout,
+        @PluginElement("Filter") Filter filter,
+        @PluginConfiguration Configuration configuration) {
+
+        if(name == null || directory == null){
+            LOGGER.error("SessionLogStore appenders must have both a name and a directory");
+            return null;
+        }
+
+        try {
+            SessionLogStore sessionLogStore = new SessionLogStore(
+                Paths.get(directory),
+                prefix != null ? prefix : name,
+                FileSize.parse(segmentSize, 64 * 1024 * 1024),
+                maximumSegments
+            );
+            if(!configuration.getScheduler().isExecutorServiceSet()) {
+                configuration.getScheduler().incrementScheduledItems(); //The scheduler only starts it's threads if items were declared before the first one is scheduled
+            }
+            return new SessionLogAppender(name, filter, layout != null ? layout : PatternLayout.createDefaultLayout(), ignoreExceptions, sessionLogStore, configuration, fallbackRef, Math.max(flushInterval, 1));
+        } catch (IOException e) {
+            LOGGER.error("Failed to open session log store in " + directory + ". Caused by: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void append(LogEvent event) {
+        String sessionId = event.getContextData().getValue("sessionID");
+        if(sessionId == null){
+            //Resolved on every line, since the fallback appender may be configured after this one
+            Appender fallbackAppender = this.fallbackRef != null ? this.configuration.getAppender(this.fallbackRef) : null;
+            if(fallbackAppender != null) {
+                fallbackAppender.append(event);
+            }
+            return;
+        }
+
+        try {
+            this.sessionLogStore.append(sessionId, getLayout().toByteArray(event));
+        } catch (IOException e) {
+            error("Failed to append to session log store " + getName() + ". Caused by: " + e.getMessage(), event, e);
+            if(!ignoreExceptions()){
+                throw new AppenderLoggingException(e);
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        this.flushTask = this.configuration.getScheduler().scheduleWithFixedDelay(this::flushStore, this.flushInterval, this.flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushStore(){
+        try {
+            this.sessionLogStore.flush();
+        } catch (IOException e) {
+            LOGGER.error("Failed to flush session log store " + getName() + ". Caused by: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        setStopping();
+        if(this.flushTask != null){
+            this.flushTask.cancel(false);
+        }
+        boolean isStopped = super.stop(timeout, timeUnit, false);
+        try {
+            this.sessionLogStore.close();
+        } catch (IOException e) {
+            LOGGER.error("Failed to close session log store " + getName() + ". Caused by: " + e.getMessage());
+        }
+        setStopped();
+        return isStopped;
+    }
+
+    public SessionLogStore getSessionLogStore() {
+        return sessionLogStore;
+    }
+}
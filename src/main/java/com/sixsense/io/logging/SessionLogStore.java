@@ -0,0 +1,157 @@
+package com.sixsense.io.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*Append-only store for the log lines of all sessions, shared by all of them instead of keeping a file per session
+ *
+ * Lines are appended to a single active segment file, as records framed with the id of the session they belong to.
+ * Once the active segment grows past the segment size it is sealed, and a new segment is started (see SegmentedStore.java)
+ *
+ * Records are gathered in a write buffer, which is written to the active segment once it is full, when the segment is sealed or when flush() is called
+ * (the session log appender flushes the store periodically, so a quiet store never holds on to it's lines for long)
+ *
+ * Reading the logs of a session only reads the ranges indexed for it (in bounded chunks), and only in the segments the session was written to.
+ * The index of a sealed segment is saved next to it, so a restarted engine can still read the logs of previous sessions*/
+public class SessionLogStore extends SegmentedStore<SessionLogStore.LogSegment> {
+    private static final int RecordHeaderSize = Integer.BYTES + Byte.BYTES; //record length, followed by the length of the session id
+    private static final int MaximalSessionIdLength = 255;
+    private static final String SegmentSuffix = ".seg";
+    private static final int WriteBufferSize = 64 * 1024;
+
+    private final long segmentSize;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WriteBufferSize); //records appended to the active segment since it was last flushed
+
+    public SessionLogStore(Path directory, String prefix, long segmentSize, int maximumSegments) throws IOException {
+        super(directory, prefix, SegmentSuffix, maximumSegments);
+        this.segmentSize = segmentSize;
+        openSegments();
+    }
+
+    public synchronized void append(String sessionId, byte[] line) throws IOException {
+        if(this.isClosed){
+            throw new IOException("Session log store " + this.prefix + " is closed");
+        }
+
+        byte[] sessionIdBytes = sessionId.getBytes(StandardCharsets.UTF_8);
+        if(sessionIdBytes.length > MaximalSessionIdLength){
+            throw new IllegalArgumentException("Session id " + sessionId + " is longer than " + MaximalSessionIdLength + " bytes");
+        }
+
+        int recordSize = RecordHeaderSize + sessionIdBytes.length + line.length;
+        if(recordSize > this.writeBuffer.remaining()){
+            flushActiveSegment();
+        }
+
+        LogSegment activeSegment = this.segments.getLast();
+        if(recordSize > this.writeBuffer.capacity()){ //Lines longer than the write buffer are written on their own
+            ByteBuffer record = ByteBuffer.allocate(recordSize);
+            record.putInt(recordSize - Integer.BYTES).put((byte)sessionIdBytes.length).put(sessionIdBytes).put(line).flip();
+            activeSegment.write(record);
+        }else{
+            this.writeBuffer.putInt(recordSize - Integer.BYTES).put((byte)sessionIdBytes.length).put(sessionIdBytes).put(line);
+        }
+
+        long recordStart = activeSegment.size;
+        activeSegment.size += recordSize;
+        activeSegment.sessionIndex.add(sessionId, recordStart, activeSegment.size);
+        if(activeSegment.size >= this.segmentSize){
+            rollSegment();
+        }
+    }
+
+    //Writes the buffered records to the active segment
+    public synchronized void flush() throws IOException {
+        if(!this.isClosed) {
+            flushActiveSegment();
+        }
+    }
+
+    //Returns all lines written for the session (in the order they were appended), or an empty string if the session has no lines left in the store
+    public String read(String sessionId) throws IOException {
+        byte[] sessionIdBytes = sessionId.getBytes(StandardCharsets.UTF_8);
+        StringBuilder lines = new StringBuilder();
+        readSessionRecords(sessionId, record -> {
+            int sessionIdLength = record.get() & 0xFF;
+            if(isSameSession(record, sessionIdBytes, sessionIdLength)){
+                int lineStart = record.position() + sessionIdLength;
+                lines.append(new String(record.array(), lineStart, record.limit() - lineStart, StandardCharsets.UTF_8));
+            }
+        });
+        return lines.toString();
+    }
+
+    @Override
+    protected void flushActiveSegment() throws IOException {
+        this.writeBuffer.flip();
+        try {
+            this.segments.getLast().write(this.writeBuffer);
+        }finally {
+            this.writeBuffer.clear();
+        }
+    }
+
+    @Override
+    protected LogSegment createSegment(Path path, Path indexPath, long number) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return new LogSegment(number, path, indexPath, new SessionIndex(), channel, 0);
+    }
+
+    @Override
+    protected LogSegment loadSegment(Path path, Path indexPath, long number, SessionIndex sessionIndex) throws IOException {
+        return new LogSegment(number, path, indexPath, sessionIndex, null, Files.size(path));
+    }
+
+    @Override
+    protected String readSessionId(ByteBuffer record) {
+        int sessionIdLength = record.get() & 0xFF;
+        if(sessionIdLength > record.remaining()){
+            return null;
+        }
+        return new String(record.array(), record.position(), sessionIdLength, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isSameSession(ByteBuffer record, byte[] sessionIdBytes, int sessionIdLength){
+        if(sessionIdLength != sessionIdBytes.length || sessionIdLength > record.remaining()){
+            return false;
+        }
+        return Arrays.equals(record.array(), record.position(), record.position() + sessionIdLength, sessionIdBytes, 0, sessionIdLength);
+    }
+
+    static final class LogSegment extends SegmentedStore.Segment {
+        private FileChannel channel; //only open while the segment is active
+        private long size; //including the records still held by the write buffer
+
+        private LogSegment(long number, Path path, Path indexPath, SessionIndex sessionIndex, FileChannel channel, long size) {
+            super(number, path, indexPath, sessionIndex);
+            this.channel = channel;
+            this.size = size;
+        }
+
+        private void write(ByteBuffer records) throws IOException {
+            while(records.hasRemaining()){
+                this.channel.write(records);
+            }
+        }
+
+        @Override
+        protected boolean isActive() {
+            return this.channel != null;
+        }
+
+        @Override
+        protected boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        @Override
+        protected void release() throws IOException {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+}
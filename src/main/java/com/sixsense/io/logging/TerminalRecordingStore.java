@@ -0,0 +1,205 @@
+package com.sixsense.io.logging;
+
+import com.sixsense.model.logging.TerminalRecord;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+
+/*Append-only recording of the raw bytes read from the terminals of all sessions, so the output of a session can be replayed later on
+ *
+ * Each chunk read from a terminal is compressed with LZ4, and copied into a memory mapped segment file as a record framed with the time it was read,
+ * the session and the channel it was read from. Writing a record is a copy into memory - the operating system writes the mapped pages back to disk on it's own
+ * (and still does if the engine crashes). Segments are mapped at their full size up front, and the part of a segment never written to takes no space on disk
+ * Once a record does not fit the active segment, the segment is sealed and a new one is mapped (see SegmentedStore.java)
+ *
+ * Chunks are compressed by the recording thread into a buffer of it's own, so the lock of the store is only held for reserving room in the segment and copying the record into it*/
+public class TerminalRecordingStore extends SegmentedStore<TerminalRecordingStore.RecordingSegment> {
+    private static final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+    private static final ThreadLocal<ByteBuffer> compressionBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(0)); //grown to fit the largest chunk each thread has compressed
+    private static final int RecordHeaderSize = Integer.BYTES + Long.BYTES + Byte.BYTES + Byte.BYTES + Integer.BYTES; //record length, timestamp (epoch millis), session id length, channel name length and raw length
+    private static final int MaximalIdentifierLength = 255;
+    private static final int MinimalSegmentSize = 1024 * 1024;
+    private static final String SegmentSuffix = ".rec";
+
+    private final int segmentSize;
+
+    public TerminalRecordingStore(Path directory, String prefix, long segmentSize, int maximumSegments) throws IOException {
+        super(directory, prefix, SegmentSuffix, maximumSegments);
+        this.segmentSize = (int)Math.min(Math.max(segmentSize, MinimalSegmentSize), Integer.MAX_VALUE); //a single mapping is limited to 2GB
+        openSegments();
+    }
+
+    //Records the raw bytes in the given range of the buffer (the position and limit of the buffer are not changed)
+    public void record(String sessionId, String channelName, long epochMillis, ByteBuffer rawBytes, int offset, int length) throws IOException {
+        byte[] sessionIdBytes = sessionId.getBytes(StandardCharsets.UTF_8);
+        byte[] channelNameBytes = channelName.getBytes(StandardCharsets.UTF_8);
+        if(sessionIdBytes.length > MaximalIdentifierLength || channelNameBytes.length > MaximalIdentifierLength){
+            throw new IllegalArgumentException("Session id and channel name must not be longer than " + MaximalIdentifierLength + " bytes");
+        }
+
+        ByteBuffer compressedBytes = compressionBuffers.get();
+        int maximalCompressedLength = compressor.maxCompressedLength(length);
+        if(compressedBytes.capacity() < maximalCompressedLength){
+            compressedBytes = ByteBuffer.allocate(maximalCompressedLength);
+            compressionBuffers.set(compressedBytes);
+        }
+        int compressedLength = compressor.compress(rawBytes, offset, length, compressedBytes, 0, compressedBytes.capacity());
+
+        int recordSize = RecordHeaderSize + sessionIdBytes.length + channelNameBytes.length + compressedLength;
+        if(recordSize > this.segmentSize - Integer.BYTES){ //room is always left for the end of segment marker
+            throw new IllegalArgumentException("Chunk of " + length + " bytes is too large for segments of " + this.segmentSize + " bytes");
+        }
+
+        synchronized (this) {
+            if(this.isClosed){
+                throw new IOException("Terminal recording store " + this.prefix + " is closed");
+            }
+
+            RecordingSegment activeSegment = this.segments.getLast();
+            if (activeSegment.buffer.remaining() - Integer.BYTES < recordSize) {
+                rollSegment();
+                activeSegment = this.segments.getLast();
+            }
+
+            //The length is written last, so a record cut short by a crash reads as the end of the segment
+            MappedByteBuffer buffer = activeSegment.buffer;
+            int recordStart = buffer.position();
+            buffer.position(recordStart + Integer.BYTES);
+            buffer.putLong(epochMillis).put((byte) sessionIdBytes.length).put((byte) channelNameBytes.length).putInt(length).put(sessionIdBytes).put(channelNameBytes);
+            buffer.put(compressedBytes.array(), 0, compressedLength);
+            int recordEnd = buffer.position();
+            buffer.putInt(recordStart, recordEnd - recordStart - Integer.BYTES);
+            activeSegment.sessionIndex.add(sessionId, recordStart, recordEnd);
+        }
+    }
+
+    /*Returns the records of the session (in the order they were recorded), or an empty list if the session has no records left in the store
+     * The output of each channel is decoded as a single stream, so a multi-byte character split between two records is decoded once the rest of it is read
+     * (like the output of a live session, see TerminalOutputNormalizer.java)*/
+    public List<TerminalRecord> replay(String sessionId) throws IOException {
+        List<TerminalRecord> records = new ArrayList<>();
+        Map<String, ChannelDecoder> channelDecoders = new HashMap<>();
+        readSessionRecords(sessionId, record -> {
+            long timestamp = record.getLong();
+            int sessionIdLength = record.get() & 0xFF;
+            int channelNameLength = record.get() & 0xFF;
+            int rawLength = record.getInt();
+
+            String recordSessionId = new String(record.array(), record.position(), sessionIdLength, StandardCharsets.UTF_8);
+            if(recordSessionId.equals(sessionId)){
+                int channelNameStart = record.position() + sessionIdLength;
+                String channelName = new String(record.array(), channelNameStart, channelNameLength, StandardCharsets.UTF_8);
+                byte[] rawBytes = new byte[rawLength];
+                decompressor.decompress(record.array(), channelNameStart + channelNameLength, rawBytes, 0, rawLength);
+
+                ChannelDecoder channelDecoder = channelDecoders.computeIfAbsent(channelName, key -> new ChannelDecoder());
+                TerminalRecord terminalRecord = new TerminalRecord(Instant.ofEpochMilli(timestamp), channelName, channelDecoder.decode(rawBytes));
+                channelDecoder.lastRecord = terminalRecord;
+                records.add(terminalRecord);
+            }
+        });
+
+        for(ChannelDecoder channelDecoder : channelDecoders.values()){
+            channelDecoder.finish();
+        }
+        return records;
+    }
+
+    @Override
+    protected RecordingSegment createSegment(Path path, Path indexPath, long number) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //The mapping remains valid after the channel is closed
+            return new RecordingSegment(number, path, indexPath, new SessionIndex(), channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize));
+        }
+    }
+
+    @Override
+    protected RecordingSegment loadSegment(Path path, Path indexPath, long number, SessionIndex sessionIndex) {
+        return new RecordingSegment(number, path, indexPath, sessionIndex, null);
+    }
+
+    @Override
+    protected String readSessionId(ByteBuffer record) {
+        if(record.remaining() < RecordHeaderSize - Integer.BYTES){
+            return null;
+        }
+
+        record.position(record.position() + Long.BYTES);
+        int sessionIdLength = record.get() & 0xFF;
+        record.position(record.position() + Byte.BYTES + Integer.BYTES);
+        if(sessionIdLength > record.remaining()){
+            return null;
+        }
+        return new String(record.array(), record.position(), sessionIdLength, StandardCharsets.UTF_8);
+    }
+
+    static final class RecordingSegment extends SegmentedStore.Segment {
+        private final MappedByteBuffer buffer; //null for segments of previous runs, which are only read from
+        private boolean isSealed = false;
+
+        private RecordingSegment(long number, Path path, Path indexPath, SessionIndex sessionIndex, MappedByteBuffer buffer) {
+            super(number, path, indexPath, sessionIndex);
+            this.buffer = buffer;
+        }
+
+        @Override
+        protected boolean isActive() {
+            return this.buffer != null && !this.isSealed;
+        }
+
+        @Override
+        protected boolean isEmpty() {
+            return this.buffer != null && this.buffer.position() == 0;
+        }
+
+        @Override
+        protected void release() {
+            this.buffer.force();
+            this.isSealed = true;
+        }
+    }
+
+    //Decodes the output of a single channel across it's records, carrying the bytes of an incomplete character over to the next record
+    private static final class ChannelDecoder {
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteBuffer pendingBytes = ByteBuffer.allocate(0);
+        private TerminalRecord lastRecord;
+
+        private String decode(byte[] rawBytes){
+            ByteBuffer input = ByteBuffer.wrap(rawBytes);
+            if(this.pendingBytes.hasRemaining()){
+                input = ByteBuffer.allocate(this.pendingBytes.remaining() + rawBytes.length).put(this.pendingBytes).put(rawBytes).flip();
+            }
+
+            CharBuffer output = CharBuffer.allocate(input.remaining()); //UTF-8 never decodes into more chars than bytes
+            this.decoder.decode(input, output, false);
+            this.pendingBytes = input.slice();
+            return output.flip().toString();
+        }
+
+        //Bytes of a character the recording ended in the middle of are decoded as replacement characters, at the end of the last record of the channel
+        private void finish(){
+            CharBuffer output = CharBuffer.allocate(this.pendingBytes.remaining() + 1);
+            this.decoder.decode(this.pendingBytes, output, true);
+            this.decoder.flush(output);
+            if(output.flip().hasRemaining()){
+                this.lastRecord.setOutput(this.lastRecord.getOutput() + output);
+            }
+        }
+    }
+}
@@ -610,27 +610,16 @@ public class OperationMocks {
                     .withName("var.parsing.chassis")
             );
 
+        //The chassis serial is already held by the session, so extracting it needs no shell
         ICommand chassisParse = new Command()
-            .withChannel(ChannelType.LOCAL)
-            .withCommandText("echo $var.parsing.chassis | awk '{print $3}'")
-            .withSecondsToTimeout(15)
-            .withUseRawOutput(true)
-            .addRetentionPipe(new ClearingPipe())
-            .addRetentionPipe(new LastLinePipe())
-            .addRetentionPipe(new FirstLinePipe())
+            .withChannel(ChannelType.INTERNAL)
+            .withCommandText("field 3 $var.parsing.chassis")
             .withExpectedOutcome(
-                new LogicalExpression<ExpectedOutcome>()
-                    .withLogicalCondition(LogicalCondition.AND)
-                    .addResolvable(
-                        new ExpectedOutcome()
-                            .withBinaryRelation(BinaryRelation.CONTAINS)
-                            .withExpectedValue("awk '{print $3}'")
-                    )
-                    .addResolvable(
-                        new ExpectedOutcome()
-                            .withBinaryRelation(BinaryRelation.ENDS_WITH)
-                            .withExpectedValue("$sixsense.session.prompt.local")
-                    )
+                new LogicalExpression<ExpectedOutcome>().addResolvable(
+                    new ExpectedOutcome()
+                        .withBinaryRelation(BinaryRelation.NOT_EQUALS)
+                        .withExpectedValue("")
+                )
             ).withSaveTo(
                 new ResultRetention()
                     .withRetentionMode(RetentionMode.DatabaseEventual)
@@ -643,10 +632,17 @@ public class OperationMocks {
             .withSecondsToTimeout(10);
 
 
-        return memory.chainCommands(cpu)
-            .chainCommands(freeSpaceRoot)
-            .chainCommands(freeSpaceVar)
-            .chainCommands(uptime)
+        //The data collection commands are read only and independent of each other, so they are written to the device at once
+        ICommand dataCollection = new Block()
+            .addChildBlock(memory)
+            .addChildBlock(cpu)
+            .addChildBlock(freeSpaceRoot)
+            .addChildBlock(freeSpaceVar)
+            .addChildBlock(uptime)
+            .withBlockMode(BlockMode.Pipelined);
+
+        return new Block()
+            .addChildBlock(dataCollection)
             .chainCommands(tmsh)
             .chainCommands(InternalCommands.invalidateCurrentPrompt(ChannelType.REMOTE.name()))
             .chainCommands(chassisTxt)
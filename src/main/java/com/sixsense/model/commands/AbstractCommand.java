@@ -18,6 +18,7 @@ public abstract class AbstractCommand implements ICommand{
 
     private Map<String, String> dynamicFields;
     private ResultRetention saveTo;
+    private transient boolean frozen; //Frozen once compiled into an execution plan (see ExecutionPlan.java)
 
     /*Try not to pollute with additional constructors
     * The empty constructor is for using the 'with' design pattern
@@ -62,11 +63,13 @@ public abstract class AbstractCommand implements ICommand{
 
     @Override
     public void setAlreadyExecuted(boolean alreadyExecuted) {
+        this.assertNotFrozen();
         this.alreadyExecuted = alreadyExecuted;
     }
 
     @Override
     public AbstractCommand withAlreadyExecuted(boolean hasBeenExecuted) {
+        this.assertNotFrozen();
         this.alreadyExecuted = hasBeenExecuted;
         return this;
     }
@@ -78,11 +81,13 @@ public abstract class AbstractCommand implements ICommand{
 
     @Override
     public void setExecutionCondition(LogicalExpression<ExecutionCondition> executionCondition) {
+        this.assertNotFrozen();
         this.executionCondition = executionCondition;
     }
 
     @Override
     public AbstractCommand withExecutionCondition(LogicalExpression<ExecutionCondition> executionCondition) {
+        this.assertNotFrozen();
         this.executionCondition = executionCondition;
         return this;
     }
@@ -94,11 +99,13 @@ public abstract class AbstractCommand implements ICommand{
 
     @Override
     public void setExpectedOutcome(LogicalExpression<ExpectedOutcome> expectedOutcome) {
+        this.assertNotFrozen();
         this.expectedOutcome = expectedOutcome;
     }
 
     @Override
     public AbstractCommand withExpectedOutcome(LogicalExpression<ExpectedOutcome> expectedOutcome) {
+        this.assertNotFrozen();
         this.expectedOutcome = expectedOutcome;
         return this;
     }
@@ -110,12 +117,14 @@ public abstract class AbstractCommand implements ICommand{
 
     @Override
     public AbstractCommand addDynamicField(String key, String value) {
+        this.assertNotFrozen();
         this.dynamicFields.put(key, value);
         return this;
     }
 
     @Override
     public AbstractCommand addDynamicFields(Map<String, String> dynamicFields) {
+        this.assertNotFrozen();
         this.dynamicFields.putAll(dynamicFields);
         return this;
     }
@@ -127,16 +136,34 @@ public abstract class AbstractCommand implements ICommand{
 
     @Override
     public void setSaveTo(ResultRetention saveTo) {
+        this.assertNotFrozen();
         this.saveTo = saveTo;
     }
 
     @Override
     public AbstractCommand withSaveTo(ResultRetention saveTo) {
+        this.assertNotFrozen();
         this.saveTo = saveTo;
         return this;
     }
 
+    //Freezes the command along with it's conditions, outcomes and retention
+    @Override
+    public void freeze() {
+        this.frozen = true;
+        this.executionCondition.freeze();
+        this.expectedOutcome.freeze();
+        this.saveTo.freeze();
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     protected AbstractCommand withSuperCloneState(AbstractCommand creator){
+        this.assertNotFrozen();
         if(this == creator) {
             this.dynamicFields.clear();
         }
@@ -2,12 +2,11 @@ package com.sixsense.model.commands;
 
 import com.sixsense.model.interfaces.IDeepCloneable;
 import com.sixsense.model.interfaces.IEquatable;
+import com.sixsense.model.logic.BlockMode;
 import com.sixsense.model.logic.ExecutionCondition;
 import com.sixsense.model.logic.ExpectedOutcome;
 import com.sixsense.model.logic.LogicalExpression;
-import com.sixsense.io.Session;
 import com.sixsense.utillity.CommandUtils;
-import com.sixsense.utillity.LogicalExpressionResolver;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -17,9 +16,8 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
     //When adding new variables or members, take care to update the assignDefaults() and toString() methods to avoid breaking cloning and serializing behaviour
     private List<ICommand> childBlocks;
 
-    private LogicalExpression<ExecutionCondition> repeatCondition;
-    private Iterator<ICommand> commandIterator;
-    private ICommand currentCommand;
+    private LogicalExpression<ExecutionCondition> repeatCondition; //Executions iterate the child blocks with a BlockCursor, so the block holds no execution state
+    private BlockMode blockMode;
 
     /*Try not to pollute with additional constructors
      * The empty constructor is for using the 'with' design pattern
@@ -28,88 +26,48 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
         super();
         this.childBlocks = new ArrayList<>();
         this.repeatCondition = new LogicalExpression<>();
+        this.blockMode = BlockMode.Sequential;
     }
 
     public Block(LogicalExpression<ExecutionCondition> executionCondition, LogicalExpression<ExpectedOutcome> expectedOutcome, List<ICommand> childBlocks, LogicalExpression<ExecutionCondition> repeatCondition) {
         super(executionCondition, expectedOutcome);
         this.childBlocks = childBlocks;
         this.repeatCondition = repeatCondition;
+        this.blockMode = BlockMode.Sequential;
     }
 
     public ICommand chainCommands(ICommand additional){
         return CommandUtils.chainCommands(this, additional);
     }
 
-    public ICommand getNextCommand(Session context){
-        //If no iterator has been created, obtain an iterator from the childBlocks list
-        Iterator<ICommand> commandIterator = this.getCommandIterator();
-
-        //If the last available command has been returned, return null
-        if(hasExhaustedCommands(context)){
-            return null;
-        }
-
-        //If not returned by this step, there is a next command available
-        //If the last command was a plain command, or already executed, obtain the next command.
-        if(this.currentCommand == null || this.currentCommand.isAlreadyExecuted()){
-            this.currentCommand = commandIterator.next();
-        }
-
-        //finally, return the next command which has not been executed
-        return this.currentCommand;
-
-    }
-
-    public boolean hasExhaustedCommands(Session context){
-        if(!this.getCommandIterator().hasNext()){
-            if(this.currentCommand == null){
-                return true;
-            }else if(!this.currentCommand.isAlreadyExecuted()){
-                return false;
-            }else if(this.repeatCondition.getResolvableExpressions().isEmpty()){
-                return true;
-            }else if(LogicalExpressionResolver.resolveLogicalExpression(context.getCurrentSessionVariables(), repeatCondition).isResolved()) {//as long as resolved, the halting condition is not met
-                //If the passed block is a repeating block, which has not yet finished repeating, reset the current loop and return false
-                this.resetNextCommandLoop();
-                return false;
-            }
-            return true;
-        }
-        return false;
-    }
-
-    private void resetNextCommandLoop(){
-        this.reset();
-        this.commandIterator = childBlocks.iterator();
-        this.currentCommand = null;
-
-        for(ICommand command : this.getChildBlocks()){
-            if(command instanceof Block){
-                ((Block) command).resetNextCommandLoop();
-            }else if(command instanceof Command){
-                command.reset();
-            }
-        }
-    }
-
     public LogicalExpression<ExecutionCondition> getRepeatCondition() {
         return repeatCondition;
     }
 
     public void setRepeatCondition(LogicalExpression<ExecutionCondition> repeatCondition) {
+        this.assertNotFrozen();
         this.repeatCondition = repeatCondition;
     }
 
     public Block withRepeatCondition(LogicalExpression<ExecutionCondition> repeatCondition) {
+        this.assertNotFrozen();
         this.repeatCondition = repeatCondition;
         return this;
     }
 
-    private Iterator<ICommand> getCommandIterator(){
-        if(this.commandIterator == null){
-            this.commandIterator = childBlocks.iterator();
-        }
-        return this.commandIterator;
+    public BlockMode getBlockMode() {
+        return blockMode;
+    }
+
+    public void setBlockMode(BlockMode blockMode) {
+        this.assertNotFrozen();
+        this.blockMode = blockMode;
+    }
+
+    public Block withBlockMode(BlockMode blockMode) {
+        this.assertNotFrozen();
+        this.blockMode = blockMode;
+        return this;
     }
 
     public List<ICommand> getChildBlocks() {
@@ -117,20 +75,31 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
     }
 
     public Block prependChildBlock(ICommand childBlock) {
+        this.assertNotFrozen();
         this.childBlocks.add(0, childBlock);
         return this;
     }
 
     public Block addChildBlock(ICommand childBlock) {
+        this.assertNotFrozen();
         this.childBlocks.add(childBlock);
         return this;
     }
 
     public Block addChildBlocks(List<ICommand> childBlocks) {
+        this.assertNotFrozen();
         this.childBlocks.addAll(childBlocks);
         return this;
     }
 
+    //Freezes the block along with it's child blocks and repeat condition
+    @Override
+    public void freeze() {
+        super.freeze();
+        this.childBlocks.forEach(ICommand::freeze);
+        this.repeatCondition.freeze();
+    }
+
     //Returns a new instance of the same block in its pristine state. That is - as if the new state was never executed
     @Override
     public Block deepClone(){
@@ -146,12 +115,14 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
     private Block assignDefaults(Block block){
         List<ICommand> clonedChildBlocks = this.childBlocks.stream().map(ICommand::deepClone).collect(Collectors.toList());
         if(this == block) {
+            this.assertNotFrozen();
             this.childBlocks.clear();
         }
 
         return (Block)block
                 .addChildBlocks(clonedChildBlocks)
                 .withRepeatCondition(block.repeatCondition.deepClone())
+                .withBlockMode(this.blockMode)
                 .withSuperCloneState(this);
     }
 
@@ -174,7 +145,8 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
 
     public boolean equals(Block other) {
         return this.childBlocks.equals(other.childBlocks) &&
-            this.repeatCondition.equals(other.repeatCondition);
+            this.repeatCondition.equals(other.repeatCondition) &&
+            this.blockMode == other.blockMode;
     }
 
     @Override
@@ -184,7 +156,7 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
 
     @Override
     public int hashCode() {
-        Stream<Object> childStream = Arrays.stream(new Object[]{childBlocks, repeatCondition});
+        Stream<Object> childStream = Arrays.stream(new Object[]{childBlocks, repeatCondition, blockMode});
         Stream<Object> superStream = Arrays.stream(superMembers());
 
         Object[] mergedMembers = Stream.concat(superStream, childStream).toArray();
@@ -196,6 +168,7 @@ public class Block extends AbstractCommand implements ICommand, IDeepCloneable<B
         return "Block{" +
                 "childBlocks=" + childBlocks +
                 ", repeatCondition=" + repeatCondition +
+                ", blockMode=" + blockMode +
                 ", " + super.superToString() +
                 '}';
     }
@@ -0,0 +1,45 @@
+package com.sixsense.model.commands;
+
+import com.sixsense.model.logic.ExecutionCondition;
+import com.sixsense.model.logic.LogicalExpression;
+import com.sixsense.utillity.LogicalExpressionResolver;
+
+import java.util.List;
+import java.util.Map;
+
+/*Progress of a single execution of a block. The block itself belongs to an execution plan and may be executed by many sessions at once,
+ * so each execution iterates the block's child commands with it's own cursor (repeating the block only moves the cursor back to the first child)
+ * A cursor is created per block execution, and is not thread safe*/
+public class BlockCursor {
+    private final List<ICommand> childBlocks;
+    private final LogicalExpression<ExecutionCondition> repeatCondition;
+    private int nextChildIdx;
+
+    public BlockCursor(Block block) {
+        this.childBlocks = block.getChildBlocks();
+        this.repeatCondition = block.getRepeatCondition();
+        this.nextChildIdx = 0;
+    }
+
+    /*Returns the next child command of the block, or null if the block has exhausted it's commands
+     * Once the last child command was returned, the block repeats as long as it's repeat condition is resolved (as long as resolved, the halting condition is not met)*/
+    public ICommand next(Map<String, String> sessionFields){
+        if(this.childBlocks.isEmpty()){
+            return null;
+        }else if(this.nextChildIdx == this.childBlocks.size()){
+            if(this.repeatCondition.getResolvableExpressions().isEmpty()){
+                return null;
+            }else if(!LogicalExpressionResolver.resolveLogicalExpression(sessionFields, this.repeatCondition).isResolved()){
+                return null;
+            }
+            this.nextChildIdx = 0;
+        }
+
+        return this.childBlocks.get(this.nextChildIdx++);
+    }
+
+    //Returns the child command next() would return, without moving the cursor (or null if the current repetition of the block has exhausted it's commands)
+    public ICommand peek(){
+        return this.nextChildIdx < this.childBlocks.size() ? this.childBlocks.get(this.nextChildIdx) : null;
+    }
+}
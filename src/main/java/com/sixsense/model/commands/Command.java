@@ -1,14 +1,18 @@
 package com.sixsense.model.commands;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.sixsense.model.interfaces.IDeepCloneable;
 import com.sixsense.model.interfaces.IEquatable;
 import com.sixsense.model.logic.ChannelType;
+import com.sixsense.model.logic.CompletionMode;
 import com.sixsense.model.logic.ExecutionCondition;
 import com.sixsense.model.logic.ExpectedOutcome;
 import com.sixsense.model.logic.LogicalExpression;
+import com.sixsense.model.logic.TimingMode;
 import com.sixsense.model.pipes.AbstractOutputPipe;
 import com.sixsense.utillity.CommandUtils;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Stream;
 
@@ -16,8 +20,10 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
     //When adding new variables or members, take care to update the assignDefaults() and toString() methods to avoid breaking cloning and serializing behaviour
     private String channelName;
     private String commandText;
-    private int minimalSecondsToResponse;
-    private int secondsToTimeout;
+    private Duration minimalTimeToResponse;
+    private Duration timeToTimeout;
+    private CompletionMode completionMode;
+    private TimingMode timingMode;
 
     private boolean requiresCleanup;
     private boolean useRawOutput;
@@ -31,8 +37,10 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
         super();
         this.channelName = ChannelType.REMOTE.name();
         this.commandText = "";
-        this.minimalSecondsToResponse = 0;
-        this.secondsToTimeout = 10;
+        this.minimalTimeToResponse = Duration.ZERO;
+        this.timeToTimeout = Duration.ofSeconds(10);
+        this.completionMode = CompletionMode.Prompt;
+        this.timingMode = TimingMode.Fixed;
 
         this.requiresCleanup = true;
         this.useRawOutput = false;
@@ -44,8 +52,10 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
         super(executionCondition, expectedOutcome);
         this.channelName = channelName;
         this.commandText = commandText;
-        this.minimalSecondsToResponse = minimalSecondsToResponse;
-        this.secondsToTimeout = secondsToTimeout;
+        this.minimalTimeToResponse = Duration.ofSeconds(minimalSecondsToResponse);
+        this.timeToTimeout = Duration.ofSeconds(secondsToTimeout);
+        this.completionMode = CompletionMode.Prompt;
+        this.timingMode = TimingMode.Fixed;
 
         this.requiresCleanup = true;
         this.useRawOutput = false;
@@ -62,18 +72,22 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
     }
 
     public void setChannel(ChannelType commandType) {
+        this.assertNotFrozen();
         this.setChannelName(commandType.name());
     }
 
     public void setChannelName(String channelName) {
+        this.assertNotFrozen();
         this.channelName = channelName.toUpperCase();
     }
 
     public Command withChannel(ChannelType commandType) {
+        this.assertNotFrozen();
         return this.withChannelName(commandType.name());
     }
 
     public Command withChannelName(String channelName) {
+        this.assertNotFrozen();
         this.channelName = channelName.toUpperCase();
         return this;
     }
@@ -83,37 +97,123 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
     }
 
     public void setCommandText(String commandText) {
+        this.assertNotFrozen();
         this.commandText = commandText;
     }
 
     public Command withCommandText(String commandText) {
+        this.assertNotFrozen();
         this.commandText = commandText;
         return this;
     }
 
+    @JsonIgnore
+    public Duration getMinimalTimeToResponse() {
+        return minimalTimeToResponse;
+    }
+
+    public Command withMinimalTimeToResponse(Duration minimalTimeToResponse) {
+        this.assertNotFrozen();
+        this.minimalTimeToResponse = minimalTimeToResponse;
+        return this;
+    }
+
+    //Serialized in milliseconds
+    public long getMinimalMillisToResponse() {
+        return minimalTimeToResponse.toMillis();
+    }
+
+    public void setMinimalMillisToResponse(long minimalMillisToResponse) {
+        this.assertNotFrozen();
+        this.minimalTimeToResponse = Duration.ofMillis(minimalMillisToResponse);
+    }
+
+    /*The whole second accessors are kept for clients written before millisecond timing was introduced, so both are serialized side by side
+     * The seconds are truncated from the millisecond duration: a client which only reads and writes back the seconds drops the sub-second part (e.g. 1500ms round trips as 1000ms).
+     * Setting the same whole seconds again keeps the sub-second part, so a document carrying both fields deserializes to the millisecond duration, in whatever order they appear*/
     public int getMinimalSecondsToResponse() {
-        return minimalSecondsToResponse;
+        return (int)minimalTimeToResponse.getSeconds();
     }
 
     public void setMinimalSecondsToResponse(int minimalSecondsToResponse) {
-        this.minimalSecondsToResponse = minimalSecondsToResponse;
+        this.assertNotFrozen();
+        if(this.minimalTimeToResponse.getSeconds() != minimalSecondsToResponse) {
+            this.minimalTimeToResponse = Duration.ofSeconds(minimalSecondsToResponse);
+        }
     }
 
     public Command withMinimalSecondsToResponse(int minimalTimeToResponse) {
-        this.minimalSecondsToResponse = minimalTimeToResponse;
+        this.assertNotFrozen();
+        this.minimalTimeToResponse = Duration.ofSeconds(minimalTimeToResponse);
+        return this;
+    }
+
+    @JsonIgnore
+    public Duration getTimeToTimeout() {
+        return timeToTimeout;
+    }
+
+    public Command withTimeToTimeout(Duration timeToTimeout) {
+        this.assertNotFrozen();
+        this.timeToTimeout = timeToTimeout;
         return this;
     }
 
+    //Serialized in milliseconds
+    public long getMillisToTimeout() {
+        return timeToTimeout.toMillis();
+    }
+
+    public void setMillisToTimeout(long millisToTimeout) {
+        this.assertNotFrozen();
+        this.timeToTimeout = Duration.ofMillis(millisToTimeout);
+    }
+
+    //Serialized next to the milliseconds, and truncated the same way as the minimal seconds to response
     public int getSecondsToTimeout() {
-        return secondsToTimeout;
+        return (int)timeToTimeout.getSeconds();
     }
 
     public void setSecondsToTimeout(int secondsToTimeout) {
-        this.secondsToTimeout = secondsToTimeout;
+        this.assertNotFrozen();
+        if(this.timeToTimeout.getSeconds() != secondsToTimeout) {
+            this.timeToTimeout = Duration.ofSeconds(secondsToTimeout);
+        }
     }
 
     public Command withSecondsToTimeout(int timout) {
-        this.secondsToTimeout = timout;
+        this.assertNotFrozen();
+        this.timeToTimeout = Duration.ofSeconds(timout);
+        return this;
+    }
+
+    public CompletionMode getCompletionMode() {
+        return completionMode;
+    }
+
+    public void setCompletionMode(CompletionMode completionMode) {
+        this.assertNotFrozen();
+        this.completionMode = completionMode;
+    }
+
+    public Command withCompletionMode(CompletionMode completionMode) {
+        this.assertNotFrozen();
+        this.completionMode = completionMode;
+        return this;
+    }
+
+    public TimingMode getTimingMode() {
+        return timingMode;
+    }
+
+    public void setTimingMode(TimingMode timingMode) {
+        this.assertNotFrozen();
+        this.timingMode = timingMode;
+    }
+
+    public Command withTimingMode(TimingMode timingMode) {
+        this.assertNotFrozen();
+        this.timingMode = timingMode;
         return this;
     }
 
@@ -122,10 +222,12 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
     }
 
     public void setRequiresCleanup(boolean requiresCleanup) {
+        this.assertNotFrozen();
         this.requiresCleanup = requiresCleanup;
     }
 
     public Command withRequiresCleanup(boolean requiresCleanup) {
+        this.assertNotFrozen();
         this.requiresCleanup = requiresCleanup;
         return this;
     }
@@ -135,38 +237,44 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
     }
 
     public void setUseRawOutput(boolean useRawOutput) {
+        this.assertNotFrozen();
         this.useRawOutput = useRawOutput;
     }
 
     public Command withUseRawOutput(boolean useRawOutput) {
+        this.assertNotFrozen();
         this.useRawOutput = useRawOutput;
         return this;
     }
 
     public Set<AbstractOutputPipe> getOutputPipes() {
-        return outputPipes;
+        return this.isFrozen() ? Collections.unmodifiableSet(outputPipes) : outputPipes;
     }
 
     public Command addOutputPipe(AbstractOutputPipe outputPipe) {
+        this.assertNotFrozen();
         this.outputPipes.add(outputPipe);
         return this;
     }
 
     public Command addOutputPipes(Collection<AbstractOutputPipe> outputPipes) {
+        this.assertNotFrozen();
         this.outputPipes.addAll(outputPipes);
         return this;
     }
 
     public Set<AbstractOutputPipe> getRetentionPipes() {
-        return retentionPipes;
+        return this.isFrozen() ? Collections.unmodifiableSet(retentionPipes) : retentionPipes;
     }
 
     public Command addRetentionPipe(AbstractOutputPipe retentionPipes) {
+        this.assertNotFrozen();
         this.retentionPipes.add(retentionPipes);
         return this;
     }
 
     public Command addRetentionPipes(Collection<AbstractOutputPipe> retentionPipes) {
+        this.assertNotFrozen();
         this.retentionPipes.addAll(retentionPipes);
         return this;
     }
@@ -187,8 +295,10 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
         return (Command)command
                 .withChannelName(this.channelName)
                 .withCommandText(this.commandText)
-                .withMinimalSecondsToResponse(this.minimalSecondsToResponse)
-                .withSecondsToTimeout(this.secondsToTimeout)
+                .withMinimalTimeToResponse(this.minimalTimeToResponse)
+                .withTimeToTimeout(this.timeToTimeout)
+                .withCompletionMode(this.completionMode)
+                .withTimingMode(this.timingMode)
                 .withRequiresCleanup(this.requiresCleanup)
                 .withUseRawOutput(this.useRawOutput)
                 .addOutputPipes(this.outputPipes)
@@ -214,8 +324,10 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
     }
 
     public boolean equals(Command other) {
-        return this.minimalSecondsToResponse == other.minimalSecondsToResponse &&
-            this.secondsToTimeout == other.secondsToTimeout &&
+        return this.minimalTimeToResponse.equals(other.minimalTimeToResponse) &&
+            this.timeToTimeout.equals(other.timeToTimeout) &&
+            this.completionMode == other.completionMode &&
+            this.timingMode == other.timingMode &&
             this.requiresCleanup == other.requiresCleanup &&
             this.useRawOutput == other.useRawOutput &&
             this.channelName.equals(other.channelName) &&
@@ -231,7 +343,7 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
 
     @Override
     public int hashCode() {
-        Stream<Object> childStream = Arrays.stream(new Object[]{channelName, commandText, minimalSecondsToResponse, secondsToTimeout, requiresCleanup, useRawOutput, outputPipes, retentionPipes});
+        Stream<Object> childStream = Arrays.stream(new Object[]{channelName, commandText, minimalTimeToResponse, timeToTimeout, completionMode, timingMode, requiresCleanup, useRawOutput, outputPipes, retentionPipes});
         Stream<Object> superStream = Arrays.stream(superMembers());
 
         Object[] mergedMembers = Stream.concat(superStream, childStream).toArray();
@@ -243,8 +355,10 @@ public class Command extends AbstractCommand implements ICommand, IDeepCloneable
         return "Command{" +
                 "channelName=" + channelName +
                 ", commandText='" + commandText + '\'' +
-                ", minimalSecondsToResponse=" + minimalSecondsToResponse +
-                ", secondsToTimeout=" + secondsToTimeout +
+                ", minimalTimeToResponse=" + minimalTimeToResponse +
+                ", timeToTimeout=" + timeToTimeout +
+                ", completionMode=" + completionMode +
+                ", timingMode=" + timingMode +
                 ", requiresCleanup=" + requiresCleanup +
                 ", useRawOutput=" + useRawOutput +
                 ", outputPipes=" + outputPipes +
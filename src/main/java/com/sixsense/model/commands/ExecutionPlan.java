@@ -0,0 +1,50 @@
+package com.sixsense.model.commands;
+
+/*Compiled form of an operation's execution block, which is shared by all executions of the operation (e.g. by the operations of every device in a workflow)
+ * Compiling clones the execution block once, and freezes the clone so it can never be modified afterwards (see IFreezable.java):
+ * the session engine keeps the progress of each execution in block cursors, instead of marking the commands as executed and resetting blocks between repetitions.
+ *
+ * Since the plan cannot change, it's hash code is computed only once (when compiled)*/
+public final class ExecutionPlan {
+    private final ICommand executionBlock;
+    private final int hashCode;
+
+    private ExecutionPlan(ICommand executionBlock) {
+        this.executionBlock = executionBlock.deepClone();
+        this.executionBlock.freeze();
+        this.hashCode = this.executionBlock.hashCode();
+    }
+
+    public static ExecutionPlan compile(ICommand executionBlock){
+        return new ExecutionPlan(executionBlock);
+    }
+
+    //The returned block is shared by all executions of the plan, and is frozen (deepClone() it to get a block which can be modified)
+    public ICommand getExecutionBlock() {
+        return executionBlock;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        } else if (other == null || this.getClass() != other.getClass()) {
+            return false;
+        } else {
+            ExecutionPlan otherAsPlan = (ExecutionPlan) other;
+            return this.hashCode == otherAsPlan.hashCode && this.executionBlock.equals(otherAsPlan.executionBlock);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionPlan{" +
+                "executionBlock=" + executionBlock +
+                '}';
+    }
+}
@@ -1,5 +1,6 @@
 package com.sixsense.model.commands;
 
+import com.sixsense.model.interfaces.IFreezable;
 import com.sixsense.model.logic.ExecutionCondition;
 import com.sixsense.model.logic.ExpectedOutcome;
 import com.sixsense.model.logic.LogicalExpression;
@@ -16,7 +17,7 @@ import java.util.Map;
     @JsonSubTypes.Type(value=Operation.class, name = "Operation"),
     @JsonSubTypes.Type(value=ParallelWorkflow.class, name = "ParallelWorkflow")
 })
-public interface ICommand {
+public interface ICommand extends IFreezable {
     String getUUID();
 
     boolean isAlreadyExecuted();
@@ -16,6 +16,7 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
     private String operationName;
     private ICommand executionBlock;
     private Set<String> channelNames;
+    private transient ExecutionPlan executionPlan; //Compiled when first needed, and shared with operations cloned by cloneWithSharedPlan()
 
     /*Try not to pollute with additional constructors
      * The empty constructor is for using the 'with' design pattern
@@ -39,10 +40,12 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
     }
 
     public void setOperationName(String operationName) {
+        this.assertNotFrozen();
         this.operationName = operationName;
     }
 
     public Operation withOperationName(String operationName) {
+        this.assertNotFrozen();
         this.operationName = operationName;
         return this;
     }
@@ -52,36 +55,64 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
     }
 
     public void setExecutionBlock(ICommand executionBlock) {
+        this.assertNotFrozen();
         this.executionBlock = executionBlock;
+        this.executionPlan = null;
     }
 
     public Operation withExecutionBlock(ICommand executionBlock) {
+        this.assertNotFrozen();
         this.executionBlock = executionBlock;
+        this.executionPlan = null;
         return this;
     }
 
+    /*Returns the execution plan of the operation, compiling the execution block only if it was not compiled yet
+     * The plan is a snapshot of the execution block - modifying the execution block in place after compiling it requires setting it again*/
+    public ExecutionPlan compile(){
+        ExecutionPlan plan = this.executionPlan;
+        if(plan == null){
+            plan = ExecutionPlan.compile(this.executionBlock);
+            this.executionPlan = plan;
+        }
+        return plan;
+    }
+
     public Set<String> getChannelNames() {
         return Collections.unmodifiableSet(channelNames);
     }
 
     public Operation addChannel(ChannelType channelName) {
+        this.assertNotFrozen();
         return this.addChannelName(channelName.name());
     }
 
     public Operation addChannelName(String channelName) {
+        this.assertNotFrozen();
         this.channelNames.add(channelName.toUpperCase());
         return this;
     }
 
     public Operation addChannels(Set<ChannelType> channelNames) {
+        this.assertNotFrozen();
         return this.addChannelNames(channelNames.stream().map(ChannelType::name).collect(Collectors.toSet()));
     }
 
     public Operation addChannelNames(Set<String> channelNames) {
+        this.assertNotFrozen();
         this.channelNames.addAll(channelNames.stream().map(String::toUpperCase).collect(Collectors.toSet()));
         return this;
     }
 
+    //Freezes the operation along with it's execution block (the workflows of the operation are never part of an execution plan, and are not frozen)
+    @Override
+    public void freeze() {
+        super.freeze();
+        if(this.executionBlock != null) {
+            this.executionBlock.freeze();
+        }
+    }
+
     @Override
     public ICommand chainCommands(ICommand additional) {
         throw new UnsupportedOperationException("Not yet supported, but it should be...");
@@ -93,6 +124,21 @@ public class Operation extends AbstractWorkflow implements ICommand, IWorkflow,
        return assignDefaults(new Operation());
     }
 
+    /*Returns a new instance of the same operation in its pristine state, without deep cloning the execution block
+     * Instead, the new instance shares the execution plan of this operation (which holds no execution state, and may be executed by any number of operations at once)
+     * The execution block of the new instance is the frozen block of the plan, so it can only be replaced, and never modified in place*/
+    public Operation cloneWithSharedPlan(){
+        ExecutionPlan sharedPlan = this.compile();
+        Operation operation = (Operation)new Operation()
+                .withOperationName(this.operationName)
+                .withExecutionBlock(sharedPlan.getExecutionBlock())
+                .addChannelNames(this.channelNames)
+                .withSuperCloneState(this);
+
+        operation.executionPlan = sharedPlan;
+        return operation;
+    }
+
     //Reverts the same operation instance to it's pristine state.  That is - as if the same command was never executed
     @Override
     public Operation reset(){
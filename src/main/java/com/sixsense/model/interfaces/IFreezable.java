@@ -0,0 +1,16 @@
+package com.sixsense.model.interfaces;
+
+/*Objects which can be made read-only once they are built (e.g. the commands of a compiled execution plan, which are shared by all executions of the plan)
+ * Freezing an object freezes everything it holds as well, and modifying a frozen object throws an UnsupportedOperationException.
+ * Deep clones of a frozen object are never frozen*/
+public interface IFreezable {
+    void freeze();
+
+    boolean isFrozen();
+
+    default void assertNotFrozen(){
+        if(isFrozen()){
+            throw new UnsupportedOperationException(this.getClass().getSimpleName() + " belongs to a compiled execution plan, and must not be modified (deepClone() it first)");
+        }
+    }
+}
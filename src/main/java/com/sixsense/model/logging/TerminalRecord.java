@@ -0,0 +1,73 @@
+package com.sixsense.model.logging;
+
+import java.time.Instant;
+
+//A single chunk of raw terminal output, as it was read from a channel of a session (see TerminalRecordingStore.java)
+public class TerminalRecord {
+    private Instant recordedAt;
+    private String channelName;
+    private String output;
+
+    /*Try not to pollute with additional constructors
+     * The empty constructor is for using the 'with' design pattern
+     * The parameterized constructor is for complete constructors - where all arguments are known */
+    public TerminalRecord() {
+        this.recordedAt = Instant.now();
+        this.channelName = "";
+        this.output = "";
+    }
+
+    public TerminalRecord(Instant recordedAt, String channelName, String output) {
+        this.recordedAt = recordedAt;
+        this.channelName = channelName;
+        this.output = output;
+    }
+
+    public Instant getRecordedAt() {
+        return recordedAt;
+    }
+
+    public void setRecordedAt(Instant recordedAt) {
+        this.recordedAt = recordedAt;
+    }
+
+    public TerminalRecord withRecordedAt(Instant recordedAt) {
+        this.recordedAt = recordedAt;
+        return this;
+    }
+
+    public String getChannelName() {
+        return channelName;
+    }
+
+    public void setChannelName(String channelName) {
+        this.channelName = channelName;
+    }
+
+    public TerminalRecord withChannelName(String channelName) {
+        this.channelName = channelName;
+        return this;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
+
+    public TerminalRecord withOutput(String output) {
+        this.output = output;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "TerminalRecord{" +
+            "recordedAt=" + recordedAt +
+            ", channelName='" + channelName + '\'' +
+            ", output='" + output + '\'' +
+            '}';
+    }
+}
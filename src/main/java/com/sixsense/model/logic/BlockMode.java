@@ -0,0 +1,7 @@
+package com.sixsense.model.logic;
+
+public enum BlockMode {
+    Sequential, //Each child command is written once the previous one has returned
+    Pipelined, //Consecutive child commands on the same channel are written at once, and their output is split between them once all have returned. Commands must not depend on each other
+    Parallel //Child commands on different channels are executed at the same time, each channel by a branch of the session (see SessionEngine.executeLanes())
+}
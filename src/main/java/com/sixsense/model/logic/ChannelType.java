@@ -1,5 +1,6 @@
 package com.sixsense.model.logic;
 
 public enum ChannelType {
-    LOCAL, REMOTE, DOWNLOAD, UPLOAD
+    LOCAL, REMOTE, DOWNLOAD, UPLOAD,
+    INTERNAL //Never opened - commands on the internal channel are evaluated by the session itself (see InternalCommandInterpreter)
 }
@@ -0,0 +1,6 @@
+package com.sixsense.model.logic;
+
+public enum CompletionMode {
+    Prompt, //The command has finished once the prompt is printed again after it's output
+    Sentinel //A unique marker (followed by the exit code) is printed once the command has finished. Requires a posix shell on the channel
+}
@@ -1,5 +1,6 @@
 package com.sixsense.model.logic;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.sixsense.model.interfaces.IDeepCloneable;
 import com.sixsense.model.interfaces.IEquatable;
 import com.sixsense.utillity.ExpressionUtils;
@@ -11,6 +12,7 @@ public class ExecutionCondition implements IFlowConnector, IDeepCloneable<Execut
     private BinaryRelation binaryRelation;
     private String expectedValue;
     private ExpressionResult expressionResult;
+    private transient boolean frozen;
 
     //The default Execution condition wills search for the empty string in any session field, therefore always returning CommandResult.SUCCESS.
     public ExecutionCondition(){
@@ -32,10 +34,12 @@ public class ExecutionCondition implements IFlowConnector, IDeepCloneable<Execut
     }
 
     public void setVariable(String variable) {
+        this.assertNotFrozen();
         this.variable = variable;
     }
 
     public ExecutionCondition withVariable(String variable) {
+        this.assertNotFrozen();
         this.variable = variable;
         return this;
     }
@@ -46,10 +50,12 @@ public class ExecutionCondition implements IFlowConnector, IDeepCloneable<Execut
     }
 
     public void setBinaryRelation(BinaryRelation binaryRelation) {
+        this.assertNotFrozen();
         this.binaryRelation = binaryRelation;
     }
 
     public ExecutionCondition withBinaryRelation(BinaryRelation binaryRelation) {
+        this.assertNotFrozen();
         this.binaryRelation = binaryRelation;
         return this;
     }
@@ -60,10 +66,12 @@ public class ExecutionCondition implements IFlowConnector, IDeepCloneable<Execut
     }
 
     public void setExpectedValue(String expectedValue) {
+        this.assertNotFrozen();
         this.expectedValue = expectedValue;
     }
 
     public ExecutionCondition withExpectedValue(String expectedValue) {
+        this.assertNotFrozen();
         this.expectedValue = expectedValue;
         return this;
     }
@@ -75,11 +83,13 @@ public class ExecutionCondition implements IFlowConnector, IDeepCloneable<Execut
 
     @Override
     public void setExpressionResult(ExpressionResult expressionResult) {
+        this.assertNotFrozen();
         this.expressionResult = expressionResult;
     }
 
     @Override
     public ExecutionCondition withExpressionResult(ExpressionResult expressionResult) {
+        this.assertNotFrozen();
         this.expressionResult = expressionResult;
         return this;
     }
@@ -92,6 +102,18 @@ public class ExecutionCondition implements IFlowConnector, IDeepCloneable<Execut
         return ExpressionUtils.mergeExpressions(this, additional);
     }
 
+    @Override
+    public void freeze() {
+        this.frozen = true;
+        this.expressionResult.freeze();
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     //Returns a new instance of the same execution condition in its pristine state. That is - as if the new state was never resolved
     @Override
     public ExecutionCondition deepClone(){
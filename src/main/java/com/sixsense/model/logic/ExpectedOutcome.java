@@ -1,5 +1,6 @@
 package com.sixsense.model.logic;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.sixsense.model.interfaces.IDeepCloneable;
 import com.sixsense.model.interfaces.IEquatable;
 import com.sixsense.utillity.ExpressionUtils;
@@ -10,6 +11,7 @@ public class ExpectedOutcome implements IFlowConnector, IDeepCloneable<ExpectedO
     private BinaryRelation binaryRelation;
     private String expectedValue;
     private ExpressionResult expressionResult;
+    private transient boolean frozen;
 
     //The default expected outcome wills search for the empty string in any result, therefore always returning CommandResult.SUCCESS.
     public ExpectedOutcome() {
@@ -30,10 +32,12 @@ public class ExpectedOutcome implements IFlowConnector, IDeepCloneable<ExpectedO
     }
 
     public void setBinaryRelation(BinaryRelation binaryRelation) {
+        this.assertNotFrozen();
         this.binaryRelation = binaryRelation;
     }
 
     public ExpectedOutcome withBinaryRelation(BinaryRelation binaryRelation) {
+        this.assertNotFrozen();
         this.binaryRelation = binaryRelation;
         return this;
     }
@@ -44,10 +48,12 @@ public class ExpectedOutcome implements IFlowConnector, IDeepCloneable<ExpectedO
     }
 
     public void setExpectedValue(String expectedValue) {
+        this.assertNotFrozen();
         this.expectedValue = expectedValue;
     }
 
     public ExpectedOutcome withExpectedValue(String expectedValue) {
+        this.assertNotFrozen();
         this.expectedValue = expectedValue;
         return this;
     }
@@ -59,11 +65,13 @@ public class ExpectedOutcome implements IFlowConnector, IDeepCloneable<ExpectedO
 
     @Override
     public void setExpressionResult(ExpressionResult expressionResult) {
+        this.assertNotFrozen();
         this.expressionResult = expressionResult;
     }
 
     @Override
     public ExpectedOutcome withExpressionResult(ExpressionResult expressionResult) {
+        this.assertNotFrozen();
         this.expressionResult = expressionResult;
         return this;
     }
@@ -76,6 +84,18 @@ public class ExpectedOutcome implements IFlowConnector, IDeepCloneable<ExpectedO
         return ExpressionUtils.mergeExpressions(this, additional);
     }
 
+    @Override
+    public void freeze() {
+        this.frozen = true;
+        this.expressionResult.freeze();
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     //Returns a new instance of the same expected outcome in its pristine state. That is - as if the new state was never resolved
     @Override
     public ExpectedOutcome deepClone(){
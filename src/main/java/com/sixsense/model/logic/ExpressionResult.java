@@ -1,14 +1,17 @@
 package com.sixsense.model.logic;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.sixsense.model.interfaces.IDeepCloneable;
 import com.sixsense.model.interfaces.IEquatable;
+import com.sixsense.model.interfaces.IFreezable;
 
 import java.util.Objects;
 
-public class ExpressionResult implements IDeepCloneable<ExpressionResult>, IEquatable<ExpressionResult> {
+public class ExpressionResult implements IDeepCloneable<ExpressionResult>, IEquatable<ExpressionResult>, IFreezable {
     private boolean resolved; //Did the logical expression turn out to be true?
     private ResultStatus outcome; //If the logical expression has been resolved, what should be the outcome of the command?
     private String message; //Arbitrary message, if the logical expression has been resolved
+    private transient boolean frozen;
 
     public ExpressionResult() {
         this.resolved = false;
@@ -48,10 +51,12 @@ public class ExpressionResult implements IDeepCloneable<ExpressionResult>, IEqua
     }
 
     public void setResolved(boolean resolved) {
+        this.assertNotFrozen();
         this.resolved = resolved;
     }
 
     public ExpressionResult withResolved(boolean resolved) {
+        this.assertNotFrozen();
         this.resolved = resolved;
         return this;
     }
@@ -61,10 +66,12 @@ public class ExpressionResult implements IDeepCloneable<ExpressionResult>, IEqua
     }
 
     public void setOutcome(ResultStatus outcome) {
+        this.assertNotFrozen();
         this.outcome = outcome;
     }
 
     public ExpressionResult withOutcome(ResultStatus resultStatus) {
+        this.assertNotFrozen();
         this.outcome = resultStatus;
         return this;
     }
@@ -74,14 +81,27 @@ public class ExpressionResult implements IDeepCloneable<ExpressionResult>, IEqua
     }
 
     public void setMessage(String message) {
+        this.assertNotFrozen();
         this.message = message;
     }
 
     public ExpressionResult withMessage(String message) {
+        this.assertNotFrozen();
         this.message = message;
         return this;
     }
 
+    @Override
+    public void freeze() {
+        this.frozen = true;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     //Returns a new instance of the same expected outcome in its pristine state. That is - as if the new state was never resolved
     @Override
     public ExpressionResult deepClone(){
@@ -2,6 +2,7 @@ package com.sixsense.model.logic;
 
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.sixsense.model.interfaces.IFreezable;
 
 @JsonTypeInfo(use=JsonTypeInfo.Id.NAME, property="@class")
 @JsonSubTypes({
@@ -9,7 +10,7 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
     @JsonSubTypes.Type(value=ExecutionCondition.class, name = "ExecutionCondition"),
     @JsonSubTypes.Type(value=ExpectedOutcome.class, name = "ExpectedOutcome")
 })
-public interface IResolvable {
+public interface IResolvable extends IFreezable {
     ExpressionResult getExpressionResult();
 
     void setExpressionResult(ExpressionResult expressionResult);
@@ -1,7 +1,9 @@
 package com.sixsense.model.logic;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.sixsense.model.interfaces.IDeepCloneable;
 import com.sixsense.model.interfaces.IEquatable;
+import com.sixsense.utillity.CompiledExpression;
 import com.sixsense.utillity.ExpressionUtils;
 
 import java.util.*;
@@ -11,6 +13,8 @@ public class LogicalExpression<E extends IFlowConnector> implements IResolvable,
     private LinkedHashSet<IResolvable> resolvableExpressions; //specifically require LinkedHashSet, to preserve resolvable order (as argument order matters when evaluating the expression)
     private LogicalCondition logicalCondition;
     private ExpressionResult expressionResult;
+    private transient boolean frozen;
+    private transient CompiledExpression compiledExpression; //Compiled when first resolved, and discarded whenever this expression is modified
 
 
     //this should be the only constructor for this class
@@ -25,16 +29,21 @@ public class LogicalExpression<E extends IFlowConnector> implements IResolvable,
     }
 
     public LogicalExpression<E> addResolvable(E resolvable){
+        this.assertNotFrozen();
         this.resolvableExpressions.add(resolvable);
+        this.compiledExpression = null;
         return this;
     }
 
     public LogicalExpression<E> addExpression(LogicalExpression<E> expression){
+        this.assertNotFrozen();
         this.resolvableExpressions.add(expression);
+        this.compiledExpression = null;
         return this;
     }
 
     public LogicalExpression<E> addResolvables(LinkedHashSet<E> resolvables){
+        this.assertNotFrozen();
         for(E resolvable : resolvables){
             this.addResolvable(resolvable);
         }
@@ -42,6 +51,7 @@ public class LogicalExpression<E extends IFlowConnector> implements IResolvable,
     }
 
     public  LogicalExpression<E> addExpressions(LinkedHashSet<LogicalExpression<E>> expressions){
+        this.assertNotFrozen();
         for(LogicalExpression<E> expression : expressions){
             this.addExpression(expression);
         }
@@ -59,20 +69,36 @@ public class LogicalExpression<E extends IFlowConnector> implements IResolvable,
     //this method is private to prevent unchecked type addition (i.e. add an executionCondition to an expression of Expected outcomes
     //currently only used for deep clone method
     private LogicalExpression<E> addResolvableExpressions(Set<IResolvable> expressions){
+        this.assertNotFrozen();
         this.resolvableExpressions.addAll(expressions);
+        this.compiledExpression = null;
         return this;
     }
 
+    //Returns an evaluator for this expression, compiling it if it was modified since the last time it was compiled
+    public CompiledExpression compile(){
+        CompiledExpression compiled = this.compiledExpression;
+        if(compiled == null){
+            compiled = CompiledExpression.compile(this);
+            this.compiledExpression = compiled;
+        }
+        return compiled;
+    }
+
     public LogicalCondition getLogicalCondition() {
         return logicalCondition;
     }
 
     public void setLogicalCondition(LogicalCondition logicalCondition) {
+        this.assertNotFrozen();
         this.logicalCondition = logicalCondition;
+        this.compiledExpression = null;
     }
 
     public LogicalExpression<E> withLogicalCondition(LogicalCondition logicalCondition) {
+        this.assertNotFrozen();
         this.logicalCondition = logicalCondition;
+        this.compiledExpression = null;
         return this;
     }
 
@@ -83,11 +109,13 @@ public class LogicalExpression<E extends IFlowConnector> implements IResolvable,
 
     @Override
     public void setExpressionResult(ExpressionResult expressionResult) {
+        this.assertNotFrozen();
         this.expressionResult = expressionResult;
     }
 
     @Override
     public LogicalExpression<E> withExpressionResult(ExpressionResult expressionResult) {
+        this.assertNotFrozen();
         this.expressionResult = expressionResult;
         return this;
     }
@@ -100,6 +128,20 @@ public class LogicalExpression<E extends IFlowConnector> implements IResolvable,
         return ExpressionUtils.mergeExpressions(this, additional);
     }
 
+    //Freezes the expression along with all of it's nested expressions and leaves
+    @Override
+    public void freeze() {
+        this.frozen = true;
+        this.resolvableExpressions.forEach(IResolvable::freeze);
+        this.expressionResult.freeze();
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     @Override
     public LogicalExpression<E> deepClone(){
         Set<IResolvable> clonedExpressions = this.resolvableExpressions.stream().map(IResolvable::deepClone).collect(Collectors.toSet());
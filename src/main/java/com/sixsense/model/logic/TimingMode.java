@@ -0,0 +1,6 @@
+package com.sixsense.model.logic;
+
+public enum TimingMode {
+    Fixed, //The command waits for it's minimal time to response, and times out after it's time to timeout
+    Adaptive //Both are derived from the latencies observed for the command on the same device (or on devices of the same vendor, product and version)
+}
@@ -1,6 +1,7 @@
 package com.sixsense.model.pipes;
 
 import com.sixsense.io.Session;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
@@ -29,6 +30,14 @@ public abstract class AbstractOutputPipe {
         return pipedOutputWrapper.get(0);
     }
     public abstract List<String> pipe(Session session, List<String> output);
+
+    /*Pipes which transform every line on it's own (without adding, removing or reordering lines) can be applied only to newly received lines
+     * Pipes which depend on the entire output (e.g. First and Last output pipes) should keep this default*/
+    @JsonIgnore
+    public boolean isLineIndependent(){
+        return false;
+    }
+
     public abstract boolean equals(Object obj);
 
     @Override
@@ -27,6 +27,11 @@ public class ClearingPipe extends AbstractOutputPipe {
         return pipedOutput;
     }
 
+    @Override
+    public boolean isLineIndependent() {
+        return true;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof ClearingPipe;
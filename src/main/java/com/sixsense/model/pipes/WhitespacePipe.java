@@ -25,6 +25,11 @@ public class WhitespacePipe extends AbstractOutputPipe {
         return pipedOutput;
     }
 
+    @Override
+    public boolean isLineIndependent() {
+        return true;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof WhitespacePipe;
@@ -1,15 +1,18 @@
 package com.sixsense.model.retention;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.sixsense.model.interfaces.IDeepCloneable;
+import com.sixsense.model.interfaces.IFreezable;
 
 import java.util.Objects;
 
-public class ResultRetention implements IDeepCloneable<ResultRetention> {
+public class ResultRetention implements IDeepCloneable<ResultRetention>, IFreezable {
     private RetentionMode retentionMode;
     private DataType dataType;
     private String name;
     private String value; //Value may be set either upon creation (preconfigured value) or when a command outputs (dynamic value)
     private boolean overwriteParent; //If true, will overwrite it's entire variable stack, ignoring variable scoping considerations
+    private transient boolean frozen;
 
     public ResultRetention() {
         this.retentionMode = RetentionMode.None;
@@ -32,10 +35,12 @@ public class ResultRetention implements IDeepCloneable<ResultRetention> {
     }
 
     public void setRetentionMode(RetentionMode retentionMode) {
+        this.assertNotFrozen();
         this.retentionMode = retentionMode;
     }
 
     public ResultRetention withRetentionMode(RetentionMode retentionMode) {
+        this.assertNotFrozen();
         this.retentionMode = retentionMode;
         return this;
     }
@@ -45,10 +50,12 @@ public class ResultRetention implements IDeepCloneable<ResultRetention> {
     }
 
     public void setDataType(DataType dataType) {
+        this.assertNotFrozen();
         this.dataType = dataType;
     }
 
     public ResultRetention withDataType(DataType dataType) {
+        this.assertNotFrozen();
         this.dataType = dataType;
         return this;
     }
@@ -58,10 +65,12 @@ public class ResultRetention implements IDeepCloneable<ResultRetention> {
     }
 
     public void setName(String name) {
+        this.assertNotFrozen();
         this.name = name;
     }
 
     public ResultRetention withName(String name) {
+        this.assertNotFrozen();
         this.name = name;
         return this;
     }
@@ -71,10 +80,12 @@ public class ResultRetention implements IDeepCloneable<ResultRetention> {
     }
 
     public void setValue(String value) {
+        this.assertNotFrozen();
         this.value = value;
     }
 
     public ResultRetention withValue(String value) {
+        this.assertNotFrozen();
         this.value = value;
         return this;
     }
@@ -84,14 +95,27 @@ public class ResultRetention implements IDeepCloneable<ResultRetention> {
     }
 
     public void setOverwriteParent(boolean overwriteParent) {
+        this.assertNotFrozen();
         this.overwriteParent = overwriteParent;
     }
 
     public ResultRetention withOverwriteParent(boolean overwriteParent) {
+        this.assertNotFrozen();
         this.overwriteParent = overwriteParent;
         return this;
     }
 
+    @Override
+    public void freeze() {
+        this.frozen = true;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     //Returns a new instance of the same variable retention in its pristine state. That is - as if the new state was never saved
     @Override
     public ResultRetention deepClone(){
@@ -0,0 +1,6 @@
+package com.sixsense.model.threading;
+
+public enum BackPressurePolicy {
+    Block, //Emitting threads wait until the dispatcher frees a slot for their event, so no event is ever lost
+    Drop //Events emitted while the ring buffer is full are discarded, so emitting threads never wait (but handlers and awaiting threads may miss events)
+}
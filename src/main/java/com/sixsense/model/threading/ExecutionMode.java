@@ -0,0 +1,6 @@
+package com.sixsense.model.threading;
+
+public enum ExecutionMode {
+    Blocking, //Each session is executed by it's own engine thread, which waits while the commands are running
+    EventDriven //Sessions are advanced by output and timer events, on a small fixed pool of driver threads
+}
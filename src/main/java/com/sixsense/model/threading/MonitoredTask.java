@@ -0,0 +1,47 @@
+package com.sixsense.model.threading;
+
+import com.sixsense.threading.IThreadMonitoingFactory;
+
+/*Monitors threads which cannot be wrapped by a MonitoredThread - namely virtual threads, which cannot be subclassed
+ * Instead of wrapping the thread, the task it runs is wrapped, and the state of the task is bound to the running thread until the task finishes*/
+public class MonitoredTask implements Runnable {
+    private static final ThreadLocal<MonitoredTask> currentTask = new ThreadLocal<>();
+
+    private final IThreadMonitoingFactory monitoringFactory;
+    private final Runnable task;
+    private final MonitoredThreadState currentThreadState;
+    private volatile long threadId = -1;
+
+    public MonitoredTask(IThreadMonitoingFactory monitoringFactory, Runnable task) {
+        this.monitoringFactory = monitoringFactory;
+        this.task = task;
+        this.currentThreadState = new MonitoredThreadState();
+    }
+
+    //Returns the state of the task running on the current thread, or null if the current thread is not running a monitored task
+    public static MonitoredThreadState currentTaskState(){
+        MonitoredTask runningTask = currentTask.get();
+        return runningTask != null ? runningTask.currentThreadState : null;
+    }
+
+    public MonitoredThreadState getCurrentThreadState() {
+        return currentThreadState;
+    }
+
+    public long getThreadId() {
+        return threadId;
+    }
+
+    @Override
+    public void run() {
+        this.threadId = Thread.currentThread().getId();
+        currentTask.set(this);
+        this.monitoringFactory.watch(this);
+        try {
+            this.task.run();
+        }finally {
+            this.monitoringFactory.unwatch(this);
+            currentTask.remove();
+        }
+    }
+}
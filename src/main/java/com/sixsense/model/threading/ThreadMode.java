@@ -0,0 +1,6 @@
+package com.sixsense.model.threading;
+
+public enum ThreadMode {
+    Platform, //Engine tasks run on a pool of platform threads
+    Virtual //Every engine task runs on a new virtual thread (requires java 21 or later at runtime)
+}
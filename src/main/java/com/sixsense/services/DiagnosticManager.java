@@ -3,6 +3,7 @@ package com.sixsense.services;
 import com.sixsense.model.events.AbstractEngineEvent;
 import com.sixsense.model.events.EngineEventType;
 import com.sixsense.model.events.IEngineEventHandler;
+import com.sixsense.threading.EventRingBuffer;
 import com.sixsense.threading.ThreadingManager;
 import com.sixsense.utillity.EventQueue;
 import com.sixsense.utillity.ThreadingUtils;
@@ -27,12 +28,18 @@ public class DiagnosticManager{
      * while maintaining linear time emit (O(n) time complexity) where n denotes # of event listeners 
      * 
      * engineEventHandlers registers listeners for all session engine events. Designed to fire events asynchronously in separate threads.
+     * handlersByType is a copy-on-write snapshot of engineEventHandlers (indexed by event type ordinal), replaced whenever a listener registers or unregisters, so dispatching never locks
      * futureEvents registers listeners that wait for lifecycle events for a single session. Threads block execution while waiting for these events.
-     * eventQueue logs events emitted for sessions registered via the await() functions*/
+     * eventQueue logs events emitted for sessions registered via the await() functions. It also guards futureEvents, so checking for past events and awaiting future events is atomic*/
     private final EnumMap<EngineEventType, HashSet<IEngineEventHandler>> engineEventHandlers = new EnumMap<>(EngineEventType.class);
+    private volatile IEngineEventHandler[][] handlersByType;
     private final Map<String, EnumMap<EngineEventType, CompletableFuture<AbstractEngineEvent>>> futureEvents = new HashMap<>();
     private final EventQueue eventQueue = new EventQueue();
 
+    /* Events are emitted on the hot path of sessions, so emitting an event only publishes it into a pre-allocated ring buffer
+     * A single dispatcher thread then records the events of diagnosed sessions, and hands the events to their handlers in batches (see dispatchEvents())*/
+    private final EventRingBuffer<EventSlot> eventRingBuffer;
+
     @Autowired
     private DiagnosticManager(LoggingManager loggingManager, ThreadingManager threadingManager){
         this.loggingManager = loggingManager;
@@ -41,6 +48,8 @@ public class DiagnosticManager{
         for(EngineEventType eventType : EnumSet.allOf(EngineEventType.class)){
             engineEventHandlers.put(eventType, new HashSet<>());
         }
+        this.handlersByType = snapshotHandlers();
+        this.eventRingBuffer = threadingManager.createEventRingBuffer(EventSlot::new, this::dispatchEvents);
     }
 
     //Register an event handler to receive events from the diagnostic manager
@@ -49,6 +58,7 @@ public class DiagnosticManager{
             for (EngineEventType eventType : eventTypes) {
                 this.engineEventHandlers.get(eventType).add(eventHandler);
             }
+            this.handlersByType = snapshotHandlers();
         }
     }
 
@@ -58,11 +68,23 @@ public class DiagnosticManager{
             for(Collection<IEngineEventHandler> set : this.engineEventHandlers.values()){
                 set.remove(eventHandler);
             }
+            this.handlersByType = snapshotHandlers();
         }
     }
 
+    //This method assumes we are holding the synchronized block for engineEventHandlers
+    private IEngineEventHandler[][] snapshotHandlers(){
+        IEngineEventHandler[][] handlerSnapshot = new IEngineEventHandler[EngineEventType.values().length][];
+        for(Map.Entry<EngineEventType, HashSet<IEngineEventHandler>> handlers : this.engineEventHandlers.entrySet()){
+            handlerSnapshot[handlers.getKey().ordinal()] = handlers.getValue().toArray(new IEngineEventHandler[0]);
+        }
+        return handlerSnapshot;
+    }
+
     public void registerSession(String sessionId){
-        this.eventQueue.registerSession(sessionId);
+        synchronized (this.eventQueue) {
+            this.eventQueue.registerSession(sessionId);
+        }
     }
 
     /*If an event of the required type has already occurred, return it immediately.
@@ -75,11 +97,11 @@ public class DiagnosticManager{
                     return CompletableFuture.completedFuture(pastEvent);
                 }
             }
-        }
 
-        /*If no event of the required type has occurred yet, register a future that will resolve when such an event occurs.
-        * If such a future was already registered, return it instead*/
-        return awaitFutureEvent(sessionId, eventType);
+            /*If no event of the required type has occurred yet, register a future that will resolve when such an event occurs.
+             * If such a future was already registered, return it instead*/
+            return awaitFutureEvent(sessionId, eventType);
+        }
     }
 
     /* Consume events sequentially from the event queue.
@@ -94,79 +116,117 @@ public class DiagnosticManager{
                     return CompletableFuture.completedFuture(nextEvent);
                 }
             } while(nextEvent != null);
-        }
 
-        /*If no event of the required type has occurred yet, register a future that will resolve when such an event occurs.
-         * If such a future was already registered, return it instead*/
-        return awaitFutureEvent(sessionId, eventType);
+            /*If no event of the required type has occurred yet, register a future that will resolve when such an event occurs.
+             * If such a future was already registered, return it instead*/
+            return awaitFutureEvent(sessionId, eventType);
+        }
     }
 
+    //This method assumes we are holding the synchronized block for the event queue
     private Future<AbstractEngineEvent> awaitFutureEvent(String sessionId, EngineEventType eventType){
-        EnumMap<EngineEventType, CompletableFuture<AbstractEngineEvent>> eventMap;
-        synchronized (this.futureEvents){
-            this.futureEvents.putIfAbsent(sessionId, new EnumMap<>(EngineEventType.class));
-            eventMap = this.futureEvents.get(sessionId);
-        }
-
-        synchronized (eventMap) {
-            eventMap.putIfAbsent(eventType, new CompletableFuture<>());
-            return eventMap.get(eventType);
-        }
+        this.futureEvents.putIfAbsent(sessionId, new EnumMap<>(EngineEventType.class));
+        EnumMap<EngineEventType, CompletableFuture<AbstractEngineEvent>> eventMap = this.futureEvents.get(sessionId);
+        eventMap.putIfAbsent(eventType, new CompletableFuture<>());
+        return eventMap.get(eventType);
     }
 
+    /*Logged and published on the emitting thread, and dispatched later by the event ring buffer
+     * The lifecycle phase is a property of the emitting thread, so it is updated here as well
+     *
+     * Note that recording the event for the await() functions happens on the dispatcher thread as well, so it is asynchronous to the emitting thread:
+     * an event is not yet visible to await() or awaitAndConsume() when emit() returns, and futures awaiting it are completed by the dispatcher shortly afterwards.
+     * Awaiting an event which was just emitted still returns it, either immediately or through a future the dispatcher completes (events of each session are recorded in the order they were emitted)*/
     public void emit(AbstractEngineEvent event){
         this.loggingManager.logEngineEvent(event);
         ThreadingUtils.updateLifecyclePhase(event.getEventType());
+        this.eventRingBuffer.publish(EventSlot::assign, event);
+    }
 
-        if(event.getSession() != null) {
-            String sessionId = event.getSession().getSessionShellId();
-            synchronized (this.eventQueue) {
-                /*To avoid any chance for leaking memory, it is not possible to await events at any point after the SessionClosed event*/
-                if(event.getEventType().equals(EngineEventType.SessionClosed)){
-                    synchronized (this.eventQueue){
-                        this.eventQueue.unregisterSession(sessionId);
-                    }
-                }else {
-                    this.eventQueue.pushIfRegistered(sessionId, event);
+    /*Invoked by the dispatcher thread of the event ring buffer, with every event published since the previous batch (in the order they were published)
+     * Each handler receives all of it's events in the batch through a single task, instead of a task per event*/
+    private void dispatchEvents(List<EventSlot> batch){
+        synchronized (this.eventQueue) {
+            for(EventSlot slot : batch){
+                if(slot.sessionId != null) {
+                    recordSessionEvent(slot.sessionId, slot.event);
                 }
             }
+        }
 
-            EnumMap<EngineEventType, CompletableFuture<AbstractEngineEvent>> eventMap;
-            synchronized (this.futureEvents) {
-                /*But it is still possible to obtain their encapsulating futures, provided they were requested before the SessionClosed event*/
-                eventMap = this.futureEvents.get(sessionId);
-                if(event.getEventType().equals(EngineEventType.SessionClosed)){
-                    this.futureEvents.remove(sessionId);
-                }
+        IEngineEventHandler[][] handlers = this.handlersByType;
+        Map<IEngineEventHandler, List<AbstractEngineEvent>> eventsByHandler = new LinkedHashMap<>();
+        for(EventSlot slot : batch){
+            for(IEngineEventHandler eventHandler : handlers[slot.event.getEventType().ordinal()]){
+                eventsByHandler.computeIfAbsent(eventHandler, key -> new ArrayList<>()).add(slot.event);
             }
+            slot.clear();
+        }
 
-            if(eventMap != null){
-                synchronized (eventMap) {
-                    CompletableFuture<AbstractEngineEvent> futureEvent = eventMap.remove(event.getEventType());
-                    if(futureEvent != null){
-                        futureEvent.complete(event);
+        for(Map.Entry<IEngineEventHandler, List<AbstractEngineEvent>> handlerEvents : eventsByHandler.entrySet()){
+            IEngineEventHandler eventHandler = handlerEvents.getKey();
+            List<AbstractEngineEvent> events = handlerEvents.getValue();
+            try {
+                threadingManager.submit(() -> {
+                    for(AbstractEngineEvent event : events){
+                        try {
+                            eventHandler.handleEngineEvent(event);
+                        }catch (RuntimeException e){
+                            logger.error("Event handler failed to handle engine event " + event.getEventType() + ". Caused by: " + e.getMessage());
+                        }
                     }
-                }
+                });
+            } catch (Exception e) {
+                logger.error("Failed to emit task to event handler for engine event. Caused by: " + e.getMessage());
             }
         }
+    }
 
-        synchronized (this.engineEventHandlers){
-            for (IEngineEventHandler iEngineEventHandler : this.engineEventHandlers.get(event.getEventType())) {
-                try {
-                    threadingManager.submit(() -> iEngineEventHandler.handleEngineEvent(event));
-                } catch (Exception e) {
-                    logger.error("Failed to emit task to event handler for engine event. Caused by: " + e.getMessage());
-                }
+    //This method assumes we are holding the synchronized block for the event queue
+    private void recordSessionEvent(String sessionId, AbstractEngineEvent event){
+        /*To avoid any chance for leaking memory, it is not possible to await events at any point after the SessionClosed event*/
+        if(event.getEventType().equals(EngineEventType.SessionClosed)){
+            this.eventQueue.unregisterSession(sessionId);
+        }else {
+            this.eventQueue.pushIfRegistered(sessionId, event);
+        }
+
+        /*But it is still possible to obtain their encapsulating futures, provided they were requested before the SessionClosed event*/
+        EnumMap<EngineEventType, CompletableFuture<AbstractEngineEvent>> eventMap = this.futureEvents.get(sessionId);
+        if(event.getEventType().equals(EngineEventType.SessionClosed)){
+            this.futureEvents.remove(sessionId);
+        }
+
+        if(eventMap != null){
+            CompletableFuture<AbstractEngineEvent> futureEvent = eventMap.remove(event.getEventType());
+            if(futureEvent != null){
+                futureEvent.complete(event);
             }
         }
     }
 
     public void clearDiagnosedSessions(){
-        synchronized (this.futureEvents) {
-            this.futureEvents.clear();
-        }
         synchronized (this.eventQueue){
+            this.futureEvents.clear();
             this.eventQueue.clear();
         }
     }
-}
\ No newline at end of file
+
+    /*A slot of the event ring buffer. Slots are allocated once and reused for every event published through them
+     * The session id is captured while emitting, as pooled sessions receive a new id whenever they are leased again (possibly before the event is dispatched)*/
+    private static class EventSlot {
+        private AbstractEngineEvent event;
+        private String sessionId;
+
+        private static void assign(EventSlot slot, AbstractEngineEvent event){
+            slot.event = event;
+            slot.sessionId = event.getSession() != null ? event.getSession().getSessionShellId() : null;
+        }
+
+        //Release the references, so dispatched events can be collected
+        private void clear(){
+            this.event = null;
+            this.sessionId = null;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.sixsense.services;
+
+import com.sixsense.config.SessionConfig;
+import com.sixsense.model.commands.Command;
+import com.sixsense.utillity.LatencyHistogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+/*Learns how long commands take to respond, so commands in adaptive timing mode do not depend on hand tuned waits
+ * Latencies are recorded per command template (the channel and the command text, before evaluating dynamic fields),
+ * both for the device which executed the command and for all devices of the same vendor, product and version.
+ *
+ * Adaptive commands use the device's histogram once it has enough samples, or the histogram of it's vendor, product and version until then
+ * (a new device of a known model starts with the latencies of it's siblings). Without enough samples in either, the command's own times are used
+ *
+ * Commands which timed out are recorded as censored samples at their deadline - the command would have taken at least that long.
+ * Once more than 1% of the samples are censored, the 99th percentile reaches the deadline, and the next timeout grows by the safety factor (up to the maximum timeout)*/
+public class LatencyManager {
+    private static final Logger logger = LogManager.getLogger(LatencyManager.class);
+    private static final double TimeoutPercentile = 0.99;
+    private static final double MinimalResponsePercentile = 0.01;
+
+    private final SessionConfig.LatencyProperties latencyProperties;
+    private final Map<String, Map<String, LatencyHistogram>> deviceLatencies = new ConcurrentHashMap<>(); //key: device host, value: histograms by command template
+    private final Map<String, Map<String, LatencyHistogram>> vpvLatencies = new ConcurrentHashMap<>(); //key: vendor, product and version, value: histograms by command template
+
+    @Autowired
+    public LatencyManager(SessionConfig sessionConfig) {
+        this.latencyProperties = sessionConfig.getLatency();
+    }
+
+    //Either key may be empty, in which case the latency is not recorded for it
+    public void recordLatency(String deviceKey, String vpvKey, Command command, long latencyMillis){
+        String template = getCommandTemplate(command);
+        if(!deviceKey.isEmpty()){
+            getHistogram(this.deviceLatencies, deviceKey, template).record(latencyMillis);
+        }
+        if(!vpvKey.isEmpty()){
+            getHistogram(this.vpvLatencies, vpvKey, template).record(latencyMillis);
+        }
+    }
+
+    /*Records a command which did not respond before it's deadline (either key may be empty, like in recordLatency())
+     * The actual latency is unknown, so the deadline is recorded as the lowest latency the command could have had*/
+    public void recordTimeout(String deviceKey, String vpvKey, Command command, long deadlineMillis){
+        recordLatency(deviceKey, vpvKey, command, deadlineMillis);
+    }
+
+    /*The 1st percentile of the observed latency - the command has hardly ever responded any sooner, so evaluating it's output before then is wasted work
+     * Never longer than the command's own minimal time to response*/
+    public Duration getMinimalTimeToResponse(String deviceKey, String vpvKey, Command command){
+        LatencyHistogram histogram = getLearnedHistogram(deviceKey, vpvKey, command);
+        if(histogram == null){
+            return command.getMinimalTimeToResponse();
+        }
+
+        long learnedMillis = histogram.getPercentile(MinimalResponsePercentile);
+        return Duration.ofMillis(Math.min(learnedMillis, command.getMinimalTimeToResponse().toMillis()));
+    }
+
+    //The 99th percentile of the observed latency multiplied by the safety factor, within the configured bounds
+    public Duration getTimeToTimeout(String deviceKey, String vpvKey, Command command){
+        LatencyHistogram histogram = getLearnedHistogram(deviceKey, vpvKey, command);
+        if(histogram == null){
+            return command.getTimeToTimeout();
+        }
+
+        long learnedMillis = (long)Math.ceil(histogram.getPercentile(TimeoutPercentile) * this.latencyProperties.getSafetyFactor());
+        learnedMillis = Math.max(learnedMillis, this.latencyProperties.getMinimumTimeout().toMillis());
+        learnedMillis = Math.min(learnedMillis, this.latencyProperties.getMaximumTimeout().toMillis());
+        return Duration.ofMillis(learnedMillis);
+    }
+
+    public Map<String, Map<String, Map<String, Long>>> getDeviceLatencies(){
+        return describe(this.deviceLatencies);
+    }
+
+    public Map<String, Map<String, Map<String, Long>>> getVpvLatencies(){
+        return describe(this.vpvLatencies);
+    }
+
+    public void clearLatencies(){
+        this.deviceLatencies.clear();
+        this.vpvLatencies.clear();
+        logger.info("Cleared all learned command latencies");
+    }
+
+    private LatencyHistogram getLearnedHistogram(String deviceKey, String vpvKey, Command command){
+        String template = getCommandTemplate(command);
+        LatencyHistogram histogram = findHistogram(this.deviceLatencies, deviceKey, template);
+        if(histogram == null || histogram.getSampleCount() < this.latencyProperties.getMinimumSamples()){
+            histogram = findHistogram(this.vpvLatencies, vpvKey, template);
+        }
+
+        if(histogram == null || histogram.getSampleCount() < this.latencyProperties.getMinimumSamples()){
+            return null;
+        }
+        return histogram;
+    }
+
+    private LatencyHistogram getHistogram(Map<String, Map<String, LatencyHistogram>> latencies, String key, String template){
+        return latencies.computeIfAbsent(key, newKey -> new ConcurrentHashMap<>())
+            .computeIfAbsent(template, newTemplate -> new LatencyHistogram(this.latencyProperties.getMaximumSamples()));
+    }
+
+    private LatencyHistogram findHistogram(Map<String, Map<String, LatencyHistogram>> latencies, String key, String template){
+        Map<String, LatencyHistogram> histograms = latencies.get(key);
+        return histograms != null ? histograms.get(template) : null;
+    }
+
+    private String getCommandTemplate(Command command){
+        return command.getChannelName() + ": " + command.getCommandText();
+    }
+
+    private Map<String, Map<String, Map<String, Long>>> describe(Map<String, Map<String, LatencyHistogram>> latencies){
+        Map<String, Map<String, Map<String, Long>>> description = new TreeMap<>();
+        for(Map.Entry<String, Map<String, LatencyHistogram>> keyLatencies : latencies.entrySet()){
+            Map<String, Map<String, Long>> templateDescriptions = new TreeMap<>();
+            for(Map.Entry<String, LatencyHistogram> templateLatency : keyLatencies.getValue().entrySet()){
+                LatencyHistogram histogram = templateLatency.getValue();
+                Map<String, Long> histogramDescription = new LinkedHashMap<>();
+                histogramDescription.put("samples", histogram.getSampleCount());
+                histogramDescription.put("p50", histogram.getPercentile(0.5));
+                histogramDescription.put("p90", histogram.getPercentile(0.9));
+                histogramDescription.put("p99", histogram.getPercentile(TimeoutPercentile));
+                histogramDescription.put("p99.9", histogram.getPercentile(0.999));
+                templateDescriptions.put(templateLatency.getKey(), histogramDescription);
+            }
+            description.put(keyLatencies.getKey(), templateDescriptions);
+        }
+        return description;
+    }
+}
@@ -1,5 +1,6 @@
 package com.sixsense.services;
 
+import com.sixsense.config.ThreadingConfig;
 import com.sixsense.model.events.*;
 import com.sixsense.model.logging.Loggers;
 import com.sixsense.model.logic.ExpressionResult;
@@ -7,56 +8,163 @@ import com.sixsense.model.retention.DatabaseVariable;
 import com.sixsense.model.retention.RetentionMode;
 import com.sixsense.model.retention.ResultRetention;
 import com.sixsense.io.Session;
+import com.sixsense.io.logging.SessionLogAppender;
+import com.sixsense.threading.EventRingBuffer;
+import com.sixsense.threading.ThreadingManager;
 import com.sixsense.utillity.CommandUtils;
 import com.sixsense.utillity.ExpressionUtils;
 import com.sixsense.utillity.Literals;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.LoggerContext;
-import org.apache.logging.log4j.core.appender.FileAppender;
-import org.apache.logging.log4j.core.appender.FileManager;
-import org.apache.logging.log4j.core.appender.routing.RoutingAppender;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
-/*Manages all logging operations that are done from a session's context*/
+/*Manages all logging operations that are done from a session's context
+ *
+ * Engine events are emitted on the hot path of sessions, so by default the session thread only checks whether the event would be logged at all,
+ * and captures whatever state of the session may change before the event is logged (drilldown rank, session variables etc.) into a pre-allocated ring buffer slot.
+ * Building the log lines (printable expression trees, dynamic field dumps) and writing them is left to the logging dispatcher thread (see writeRecords())*/
 public class LoggingManager  {
+    private static final Logger logger = LogManager.getLogger(LoggingManager.class);
     private static final EnumMap<Loggers, Logger> loggers = new EnumMap<>(Loggers.class); //Maps logger names to the actual loggers
-    private static final Map<String, RoutingAppender> routingAppenders = new HashMap<>(); //Routing appenders (holding references to files belonging to sessions)
+    private static final List<SessionLogAppender> sessionLogAppenders = new ArrayList<>(); //Appenders of the session log stores (holding the trails of all sessions)
+    private static final String[] indentations = new String[16]; //Indentations are reused for the common drilldown ranks, instead of repeating tabs for every line
 
-    private LoggingManager(){
+    private final EventRingBuffer<LogRecord> logRingBuffer; //null if engine events are logged synchronously on the session thread
+    private final LongAdder engineEvents = new LongAdder(); //Engine events passed to logEngineEvent() since the statistics were last reset
+    private final LongAdder sessionThreadNanos = new LongAdder(); //Time session threads spent in logEngineEvent() since the statistics were last reset
+
+    //Public so both logging modes can be compared side by side (see LoggingManagerTests). The engine itself only uses the bean
+    @Autowired
+    public LoggingManager(ThreadingManager threadingManager, ThreadingConfig threadingConfig){
         for(Loggers logger : EnumSet.allOf(Loggers.class)){
             loggers.put(logger, LogManager.getLogger(logger.name()));
         }
 
         Map<String, Appender> appenderMap = ((LoggerContext) LogManager.getContext(false)).getConfiguration().getAppenders();
-        routingAppenders.put("session_log", (RoutingAppender)appenderMap.get("session_log"));
-        routingAppenders.put("command_log", (RoutingAppender)appenderMap.get("command_log"));
-        routingAppenders.put("terminal_log", (RoutingAppender)appenderMap.get("terminal_log"));
+        for(String appenderName : List.of("session_log", "command_log", "terminal_log")){
+            Appender appender = appenderMap.get(appenderName);
+            if(appender instanceof SessionLogAppender && !sessionLogAppenders.contains(appender)) {
+                sessionLogAppenders.add((SessionLogAppender) appender);
+            }
+        }
+
+        for(int rank = 0; rank < indentations.length; rank++){
+            indentations[rank] = Literals.Tab.repeat(rank);
+        }
+
+        if(threadingConfig.getEvents().isAsynchronousLogging()) {
+            this.logRingBuffer = threadingManager.createEventRingBuffer(LogRecord::new, this::writeRecords);
+        }else{
+            this.logRingBuffer = null;
+        }
     }
 
     public void logEngineEvent(AbstractEngineEvent event) {
+        long startTime = System.nanoTime();
+        try {
+            //Nothing is captured (let alone formatted) for events that would not be logged anyway
+            if (isLogged(event)) {
+                if (this.logRingBuffer != null) {
+                    this.logRingBuffer.publish(LogRecord::capture, event);
+                } else {
+                    LogRecord record = new LogRecord();
+                    LogRecord.capture(record, event);
+                    writeRecord(record);
+                }
+            }
+        }finally {
+            this.engineEvents.increment();
+            this.sessionThreadNanos.add(System.nanoTime() - startTime);
+        }
+    }
+
+    //Returns the trails of a session (key: session log store, value: the lines written for the session), as long as they were not expired from the session log stores
+    public Map<String, String> getSessionLogs(String sessionId){
+        Map<String, String> sessionLogs = new LinkedHashMap<>();
+        for(SessionLogAppender appender : sessionLogAppenders){
+            try {
+                sessionLogs.put(appender.getSessionLogStore().getPrefix(), appender.getSessionLogStore().read(sessionId));
+            } catch (IOException e) {
+                logger.error("Failed to read " + appender.getName() + " of session " + sessionId + ". Caused by: " + e.getMessage());
+            }
+        }
+        return sessionLogs;
+    }
+
+    //Returns the amount of engine events logged, and the time session threads spent logging them (in nanoseconds) since the statistics were last reset
+    public Map<String, Long> getLoggingStatistics(){
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("events", this.engineEvents.sum());
+        statistics.put("sessionThreadNanos", this.sessionThreadNanos.sum());
+        return statistics;
+    }
+
+    public void resetLoggingStatistics(){
+        this.engineEvents.reset();
+        this.sessionThreadNanos.reset();
+    }
+
+    private boolean isLogged(AbstractEngineEvent event){
+        Logger sessionLogger = loggers.get(Loggers.SessionLogger);
+        switch (event.getEventType()){
+            case ExecutionAnomaly: return sessionLogger.isEnabled(Level.ERROR);
+            case SessionCreated:
+            case SessionClosed:
+            case InputSent:
+            case OutputReceived: return sessionLogger.isInfoEnabled() || loggers.get(Loggers.CommandLogger).isInfoEnabled();
+            default: return sessionLogger.isInfoEnabled();
+        }
+    }
+
+    //Invoked by the dispatcher thread of the log ring buffer
+    private void writeRecords(List<LogRecord> records){
+        for(LogRecord record : records){
+            try {
+                //Lines are indexed by the session id in the thread context, so we borrow the context of the thread that emitted the event
+                if (record.sessionId != null) {
+                    ThreadContext.put("sessionID", record.sessionId);
+                } else {
+                    ThreadContext.remove("sessionID");
+                }
+                writeRecord(record);
+            }catch (RuntimeException e){
+                logger.error("Failed to log engine event. Caused by: " + e.getMessage());
+            }finally {
+                record.clear();
+            }
+        }
+        ThreadContext.remove("sessionID");
+    }
+
+    private void writeRecord(LogRecord record) {
+        AbstractEngineEvent event = record.event;
         try{
             switch (event.getEventType()){
-                case SessionCreated: logSessionCreated((SessionCreatedEvent)event); break;
-                case OperationStart: logOperationStart((OperationStartEvent)event); break;
-                case BlockStart: logBlockStart((BlockStartEvent)event); break;
-                case CommandStart: logCommandStart((CommandStartEvent) event); break;
-                case InputSent: logInputSent((InputSentEvent) event); break;
-                case OutputReceived: logOutputReceived((OutputReceivedEvent) event); break;
-                case CommandEnd: logCommandEnd((CommandEndEvent) event); break;
-                case BlockEnd: logBlockEnd((BlockEndEvent)event); break;
-                case OperationEnd: logOperationEnd((OperationEndEvent)event); break;
-                case SessionClosed: logSessionClosed((SessionClosedEvent)event); break;
-                case ConditionEvaluation: logConditionEvaluation((ConditionEvaluationEvent) event); break;
-                case OutcomeEvaluation: logOutcomeEvaluation((OutcomeEvaluationEvent) event); break;
-                case ResultRetention: logVariableRetention((ResultRetentionEvent)event); break;
+                case SessionCreated: logSessionCreated((SessionCreatedEvent)event, record); break;
+                case OperationStart: logOperationStart((OperationStartEvent)event, record); break;
+                case BlockStart: logBlockStart((BlockStartEvent)event, record); break;
+                case CommandStart: logCommandStart((CommandStartEvent) event, record); break;
+                case InputSent: logInputSent((InputSentEvent) event, record); break;
+                case OutputReceived: logOutputReceived((OutputReceivedEvent) event, record); break;
+                case CommandEnd: logCommandEnd((CommandEndEvent) event, record); break;
+                case BlockEnd: logBlockEnd((BlockEndEvent)event, record); break;
+                case OperationEnd: logOperationEnd((OperationEndEvent)event, record); break;
+                case SessionClosed: logSessionClosed((SessionClosedEvent)event, record); break;
+                case ConditionEvaluation: logConditionEvaluation((ConditionEvaluationEvent) event, record); break;
+                case OutcomeEvaluation: logOutcomeEvaluation((OutcomeEvaluationEvent) event, record); break;
+                case ResultRetention: logVariableRetention((ResultRetentionEvent)event, record); break;
                 case ExecutionAnomaly: logExecutionAnomaly((ExecutionAnomalyEvent)event); break;
                 default: throw new IllegalArgumentException("Cannot log event of type " + event.getEventType() + ": Event type does not exist");
             }
@@ -65,152 +173,119 @@ public class LoggingManager  {
         }
     }
 
-    void closeLoggers(String sessionId){
-        routingAppenders.values().forEach(appender -> {
-            FileAppender fileAppender = (FileAppender) appender.getAppenders().get(sessionId).getAppender();
-            FileManager fileManager = fileAppender.getManager();
-            fileManager.close();
-        });
-    }
-
-    private void logSessionCreated(SessionCreatedEvent event){
-        String indentation = getIndentation(event.getSession());
+    private void logSessionCreated(SessionCreatedEvent event, LogRecord record){
         String creationDate = Instant.now().atZone(ZoneId.of("CET")).toLocalDateTime().format(Literals.DateFormatter);
-
-        jointLog(
-            EnumSet.of(Loggers.SessionLogger, Loggers.CommandLogger),
-            Level.INFO,
-            "Session " +  event.getSession().getSessionShellId() + " has been created at " + creationDate
-        );
-        logDynamicFields(indentation, SessionEngine.getSessionProperties(), Literals.PlusSign);
+        jointLog(EnumSet.of(Loggers.SessionLogger, Loggers.CommandLogger), Level.INFO, "Session {} has been created at {}", record.sessionShellId, creationDate);
+        logDynamicFields(record.indentation, record.sessionVariables, Literals.PlusSign);
     }
 
-    private void logOperationStart(OperationStartEvent event){
-        String indentation = getIndentation(event.getSession());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Operation " + event.getOperation().getShortUUID() + " Start");
-        logDynamicFields(indentation, event.getOperation().getDynamicFields(), Literals.PlusSign);
+    private void logOperationStart(OperationStartEvent event, LogRecord record){
+        loggers.get(Loggers.SessionLogger).info("{}Operation {} Start", record.indentation, event.getOperation().getShortUUID());
+        logDynamicFields(record.indentation, event.getOperation().getDynamicFields(), Literals.PlusSign);
     }
 
-    private void logBlockStart(BlockStartEvent event){
-        String indentation = getIndentation(event.getSession());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Block " + event.getBlock().getShortUUID() + " Start");
-        logDynamicFields(indentation, event.getBlock().getDynamicFields(), Literals.PlusSign);
+    private void logBlockStart(BlockStartEvent event, LogRecord record){
+        loggers.get(Loggers.SessionLogger).info("{}Block {} Start", record.indentation, event.getBlock().getShortUUID());
+        logDynamicFields(record.indentation, event.getBlock().getDynamicFields(), Literals.PlusSign);
     }
 
-    private void logCommandStart(CommandStartEvent event){
-        String indentation = getIndentation(event.getSession());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Command " + event.getCommand().getShortUUID() + " Start");
-        logDynamicFields(indentation, event.getCommand().getDynamicFields(), Literals.PlusSign);
+    private void logCommandStart(CommandStartEvent event, LogRecord record){
+        loggers.get(Loggers.SessionLogger).info("{}Command {} Start", record.indentation, event.getCommand().getShortUUID());
+        logDynamicFields(record.indentation, event.getCommand().getDynamicFields(), Literals.PlusSign);
     }
 
-    private void logInputSent(InputSentEvent event){
-        String indentation = getIndentation(event.getSession());
-        loggers.get(Loggers.SessionLogger).debug(indentation + event.getSession().getTerminalIdentifier() + " session acquired lock");
-        loggers.get(Loggers.SessionLogger).info(indentation + "Wrote: \"" + event.getInputSent() + "\" to channel " + event.getCommand().getChannelName());
-        loggers.get(Loggers.CommandLogger).info(event.getOrdinal() + "W): <" + event.getCommand().getChannelName() + "> " + event.getInputSent());
+    private void logInputSent(InputSentEvent event, LogRecord record){
+        Logger sessionLogger = loggers.get(Loggers.SessionLogger);
+        if(record.terminalIdentifier != null) {
+            sessionLogger.debug("{}{} session acquired lock", record.indentation, record.terminalIdentifier);
+        }
+        sessionLogger.info("{}Wrote: \"{}\" to channel {}", record.indentation, event.getInputSent(), event.getCommand().getChannelName());
+        loggers.get(Loggers.CommandLogger).info("{}W): <{}> {}", event.getOrdinal(), event.getCommand().getChannelName(), event.getInputSent());
     }
 
-    private void logOutputReceived(OutputReceivedEvent event){
-        String indentation = getIndentation(event.getSession());
-        loggers.get(Loggers.SessionLogger).debug(indentation + event.getSession().getTerminalIdentifier() + " session finished command wait");
-        loggers.get(Loggers.SessionLogger).info(indentation + "Read: \"" + event.getOutputReceived() + "\"");
-        loggers.get(Loggers.CommandLogger).info(event.getOrdinal() + "R): <" + event.getCommand().getChannelName() + "> " + event.getOutputReceived());
-        loggers.get(Loggers.SessionLogger).debug(indentation + event.getSession().getTerminalIdentifier() + " session released lock");
+    private void logOutputReceived(OutputReceivedEvent event, LogRecord record){
+        Logger sessionLogger = loggers.get(Loggers.SessionLogger);
+        if(record.terminalIdentifier != null) {
+            sessionLogger.debug("{}{} session finished command wait", record.indentation, record.terminalIdentifier);
+        }
+        sessionLogger.info("{}Read: \"{}\"", record.indentation, event.getOutputReceived());
+        loggers.get(Loggers.CommandLogger).info("{}R): <{}> {}", event.getOrdinal(), event.getCommand().getChannelName(), event.getOutputReceived());
+        if(record.terminalIdentifier != null) {
+            sessionLogger.debug("{}{} session released lock", record.indentation, record.terminalIdentifier);
+        }
     }
 
-    private void logCommandEnd(CommandEndEvent event){
-        String indentation = getIndentation(event.getSession());
-        logDynamicFields(indentation, event.getCommand().getDynamicFields(), Literals.MinusSign);
-        loggers.get(Loggers.SessionLogger).info(indentation + "Command result is " + event.getResult());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Command " + event.getCommand().getShortUUID() + " End");
+    private void logCommandEnd(CommandEndEvent event, LogRecord record){
+        logDynamicFields(record.indentation, event.getCommand().getDynamicFields(), Literals.MinusSign);
+        loggers.get(Loggers.SessionLogger).info("{}Command result is {}", record.indentation, event.getResult());
+        loggers.get(Loggers.SessionLogger).info("{}Command {} End", record.indentation, event.getCommand().getShortUUID());
     }
 
-    private void logBlockEnd(BlockEndEvent event){
-        String indentation = getIndentation(event.getSession());
-        logDynamicFields(indentation, event.getBlock().getDynamicFields(), Literals.MinusSign);
-        loggers.get(Loggers.SessionLogger).info(indentation + "Block result is " + event.getResult());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Block " + event.getBlock().getShortUUID() + " End");
+    private void logBlockEnd(BlockEndEvent event, LogRecord record){
+        logDynamicFields(record.indentation, event.getBlock().getDynamicFields(), Literals.MinusSign);
+        loggers.get(Loggers.SessionLogger).info("{}Block result is {}", record.indentation, event.getResult());
+        loggers.get(Loggers.SessionLogger).info("{}Block {} End", record.indentation, event.getBlock().getShortUUID());
     }
 
-    private void logOperationEnd(OperationEndEvent event){
-        String indentation = getIndentation(event.getSession());
-        logDynamicFields(indentation, event.getOperation().getDynamicFields(), Literals.MinusSign);
-        loggers.get(Loggers.SessionLogger).info(indentation + "Operation result is " + event.getResult());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Operation " + event.getOperation().getShortUUID() + " End");
+    private void logOperationEnd(OperationEndEvent event, LogRecord record){
+        logDynamicFields(record.indentation, event.getOperation().getDynamicFields(), Literals.MinusSign);
+        loggers.get(Loggers.SessionLogger).info("{}Operation result is {}", record.indentation, event.getResult());
+        loggers.get(Loggers.SessionLogger).info("{}Operation {} End", record.indentation, event.getOperation().getShortUUID());
     }
 
-    private void logSessionClosed(SessionClosedEvent event){
-        String indentation = getIndentation(event.getSession());
-        logDynamicFields(indentation, SessionEngine.getSessionProperties(), Literals.MinusSign);
-        jointLog(
-            EnumSet.of(Loggers.SessionLogger, Loggers.CommandLogger),
-            Level.INFO,
-            "Session " +  event.getSession().getSessionShellId() + " has been closed"
-        );
+    private void logSessionClosed(SessionClosedEvent event, LogRecord record){
+        logDynamicFields(record.indentation, record.sessionVariables, Literals.MinusSign);
+        jointLog(EnumSet.of(Loggers.SessionLogger, Loggers.CommandLogger), Level.INFO, "Session {} has been closed", record.sessionShellId);
     }
 
-    private void logConditionEvaluation(ConditionEvaluationEvent event){
-        String indentation = getIndentation(event.getSession());
-        String asTree = ExpressionUtils.toPrintableString(event.getCondition()).replaceAll("\n", "\n" + indentation);
-        String resolvedCondition = CommandUtils.evaluateAgainstDynamicFields(asTree, event.getSession().getCurrentSessionVariables());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Execution condition:");
-        loggers.get(Loggers.SessionLogger).info(indentation + resolvedCondition);
+    private void logConditionEvaluation(ConditionEvaluationEvent event, LogRecord record){
+        String asTree = ExpressionUtils.toPrintableString(event.getCondition()).replace("\n", "\n" + record.indentation);
+        String resolvedCondition = CommandUtils.evaluateAgainstDynamicFields(asTree, record.sessionVariables);
+        loggers.get(Loggers.SessionLogger).info("{}Execution condition:", record.indentation);
+        loggers.get(Loggers.SessionLogger).info("{}{}", record.indentation, resolvedCondition);
     }
 
-    private void logOutcomeEvaluation(OutcomeEvaluationEvent event){
-        String indentation = getIndentation(event.getSession());
-        String asTree = ExpressionUtils.toPrintableString(event.getExpectedOutcome()).replaceAll("\n", "\n" + indentation);
-        String resolvedOutcome = CommandUtils.evaluateAgainstDynamicFields(asTree, event.getSession().getCurrentSessionVariables());
-        loggers.get(Loggers.SessionLogger).info(indentation + "Expected outcome:");
-        loggers.get(Loggers.SessionLogger).info(indentation + resolvedOutcome);
+    private void logOutcomeEvaluation(OutcomeEvaluationEvent event, LogRecord record){
+        String asTree = ExpressionUtils.toPrintableString(event.getExpectedOutcome()).replace("\n", "\n" + record.indentation);
+        String resolvedOutcome = CommandUtils.evaluateAgainstDynamicFields(asTree, record.sessionVariables);
+        loggers.get(Loggers.SessionLogger).info("{}Expected outcome:", record.indentation);
+        loggers.get(Loggers.SessionLogger).info("{}{}", record.indentation, resolvedOutcome);
     }
 
-    private void logVariableRetention(ResultRetentionEvent event){
-        Session session = event.getSession();
-        String indentation = getIndentation(session);
+    private void logVariableRetention(ResultRetentionEvent event, LogRecord record){
+        String indentation = record.indentation;
         ResultRetention retention = event.getResultRetention();
         RetentionMode retentionMode = retention.getRetentionMode();
 
-        loggers.get(Loggers.SessionLogger).info(indentation + "Result retention of type [" + retentionMode.name() + "]");
+        loggers.get(Loggers.SessionLogger).info("{}Result retention of type [{}]", indentation, retentionMode.name());
         switch (retentionMode){
-            case Variable:{
-                Map<String, String> oldSessionVarState = session.getCurrentSessionVariables();
-                if(oldSessionVarState.containsKey(retention.getName())) {
-                    logDynamicFields(indentation, retention.getName(), oldSessionVarState.get(retention.getName()), Literals.MinusSign);
+            case Variable:
+            case DatabaseEventual:{
+                if(record.previousValue != null) {
+                    logDynamicFields(indentation, retention.getName(), record.previousValue, Literals.MinusSign);
                 }
 
                 logDynamicFields(indentation, retention.getName(), retention.getValue(), Literals.PlusSign);
             }break;
             case File:{
-                loggers.get(Loggers.SessionLogger).info(indentation + "Added results to file " + retention.getName());
-            }break;
-            case DatabaseEventual:{
-                Set<DatabaseVariable> oldDatabaseVarState = session.getDatabaseVariables();
-                for(DatabaseVariable var : oldDatabaseVarState) {
-                    if (var.getName().equals(retention.getName())) {
-                        logDynamicFields(indentation, retention.getName(), var.getValue(), Literals.MinusSign);
-                        break;
-                    }
-                }
-
-                logDynamicFields(indentation, retention.getName(), retention.getValue(), Literals.PlusSign);
+                loggers.get(Loggers.SessionLogger).info("{}Added results to file {}", indentation, retention.getName());
             }break;
             case DatabaseImmediate:{
                 logDynamicFields(indentation, retention.getName(), retention.getValue(), Literals.PlusSign);
             }break;
             default:{
-                loggers.get(Loggers.SessionLogger).info(indentation + "No result retention was performed");
+                loggers.get(Loggers.SessionLogger).info("{}No result retention was performed", indentation);
             }break;
         }
     }
 
     private void logExecutionAnomaly(ExecutionAnomalyEvent event){
         ExpressionResult anomaly = event.getResult();
-        loggers.get(Loggers.SessionLogger).error("Excecution anomaly encountered: " + anomaly.toString());
+        loggers.get(Loggers.SessionLogger).error("Excecution anomaly encountered: {}", anomaly);
     }
 
-    private String getIndentation(Session session){
-        return Literals.Tab.repeat(session.getDrilldownRank());
+    private static String getIndentation(int drilldownRank){
+        return drilldownRank < indentations.length ? indentations[drilldownRank] : Literals.Tab.repeat(drilldownRank);
     }
 
     //The dynamic fields should be from the ICommand in question, and not all fields in session context. because we log loading and removal of the relevant fields by the ICommand
@@ -223,12 +298,78 @@ public class LoggingManager  {
     }
 
     private void logDynamicFields(String indentation, String key, String value, String sign){
-        loggers.get(Loggers.SessionLogger).info(indentation + sign + " " + key + " = \"" + value + "\"");
+        loggers.get(Loggers.SessionLogger).info("{}{} {} = \"{}\"", indentation, sign, key, value);
     }
 
-    private void jointLog(EnumSet<Loggers> loggerNames, Level logLevel, String message){
+    private void jointLog(EnumSet<Loggers> loggerNames, Level logLevel, String message, Object... params){
         for(Loggers loggerName : loggerNames){
-            loggers.get(loggerName).log(logLevel, message);
+            loggers.get(loggerName).log(logLevel, message, params);
+        }
+    }
+
+    /*Whatever an event needs in order to be logged later on, as it was when the event was emitted
+     * The session keeps changing after emitting (it's drilldown rank, session variables and terminal identifier),
+     * while the emitted event, the command it refers to and the session variable snapshots do not, so the record only keeps references to them*/
+    private static class LogRecord {
+        private AbstractEngineEvent event;
+        private String sessionId; //The id indexing the lines of the event under it's session
+        private String sessionShellId;
+        private String indentation;
+        private String terminalIdentifier; //Only captured if debug lines would be logged
+        private Map<String, String> sessionVariables; //Only captured for events which log session variables
+        private String previousValue; //The value a result retention is about to replace (if any)
+
+        private static void capture(LogRecord record, AbstractEngineEvent event){
+            Session session = event.getSession();
+            record.event = event;
+            record.sessionId = ThreadContext.get("sessionID");
+            if(session == null){
+                record.indentation = "";
+                return;
+            }
+
+            record.sessionShellId = session.getSessionShellId();
+            record.indentation = getIndentation(session.getDrilldownRank());
+            switch (event.getEventType()){
+                case SessionCreated:
+                case SessionClosed: record.sessionVariables = SessionEngine.getSessionProperties(); break;
+                case ConditionEvaluation:
+                case OutcomeEvaluation: record.sessionVariables = session.getCurrentSessionVariables(); break;
+                case InputSent:
+                case OutputReceived:{
+                    if(loggers.get(Loggers.SessionLogger).isDebugEnabled()) {
+                        record.terminalIdentifier = session.getTerminalIdentifier();
+                    }
+                }break;
+                case ResultRetention: record.previousValue = previousValue(session, ((ResultRetentionEvent)event).getResultRetention()); break;
+                default: break;
+            }
+        }
+
+        private static String previousValue(Session session, ResultRetention retention){
+            switch (retention.getRetentionMode()){
+                case Variable: return session.getCurrentSessionVariables().get(retention.getName());
+                case DatabaseEventual:{
+                    for(DatabaseVariable var : session.getDatabaseVariables()) {
+                        if (var.getName().equals(retention.getName())) {
+                            return var.getValue();
+                        }
+                    }
+                    return null;
+                }
+                default: return null;
+            }
+        }
+
+        //Release the references, so logged events can be collected
+        private void clear(){
+            this.event = null;
+            this.sessionId = null;
+            this.sessionShellId = null;
+            this.indentation = null;
+            this.terminalIdentifier = null;
+            this.sessionVariables = null;
+            this.previousValue = null;
         }
     }
 }
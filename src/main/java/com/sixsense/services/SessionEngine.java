@@ -6,13 +6,20 @@ import com.sixsense.model.events.*;
 import com.sixsense.model.logic.*;
 import com.sixsense.model.commands.Operation;
 import com.sixsense.model.commands.Block;
+import com.sixsense.model.commands.BlockCursor;
 import com.sixsense.model.commands.Command;
 import com.sixsense.model.commands.ICommand;
 import com.sixsense.model.retention.OperationResult;
+import com.sixsense.model.threading.ExecutionMode;
+import com.sixsense.io.CommandBatch;
 import com.sixsense.io.ProcessStreamWrapper;
+import com.sixsense.io.SSHConnectionPool;
+import com.sixsense.io.SessionPool;
 import com.sixsense.io.Session;
 import com.sixsense.io.ShellChannel;
+import com.sixsense.threading.ParallelLanes;
 import com.sixsense.threading.ThreadingManager;
+import com.sixsense.utillity.CommandUtils;
 import com.sixsense.utillity.LogicalExpressionResolver;
 import com.sixsense.utillity.Literals;
 import com.sixsense.utillity.ThreadingUtils;
@@ -30,42 +37,51 @@ import org.springframework.stereotype.Service;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /*Creates sessions and executes operations*/
 @Service
 @EnableConfigurationProperties({SessionConfig.class, HostConfig.class})
-public class SessionEngine implements ApplicationContextAware {
+public class SessionEngine implements ApplicationContextAware, Closeable {
     private static final Logger logger = LogManager.getLogger(SessionEngine.class);
     private ApplicationContext appContext;
     private final ThreadingManager threadingManager;
     private final DiagnosticManager diagnosticManager;
-    private final LoggingManager loggingManager;
 
     private final SessionConfig sessionConfig;
     private final HostConfig.Host localhostConfig;
+    private final SSHConnectionPool connectionPool;
+    private final TerminalRecorder terminalRecorder;
+    private final SessionPool sessionPool;
 
 
-    private static final Map<String, String> sessionProperties = new ConcurrentHashMap<>();
+    private static volatile Map<String, String> sessionProperties = Collections.emptyMap(); //Immutable, and shared by all sessions. Updates replace the map instead of modifying it
     private final Map<String, Operation> runningOperations = new ConcurrentHashMap<>(); //key: operation id, value: operation
     private final Map<String, Session> runningSessions = new ConcurrentHashMap<>(); //key: session id, value: session
     private final Map<String, String> operationsToSessions = new ConcurrentHashMap<>(); //key: operation id, value: session id
 
     @Autowired
-    private SessionEngine(ThreadingManager threadingManager, DiagnosticManager diagnosticManager, LoggingManager loggingManager, SessionConfig sessionConfig, HostConfig hostConfig) {
+    private SessionEngine(ThreadingManager threadingManager, DiagnosticManager diagnosticManager, TerminalRecorder terminalRecorder, SessionConfig sessionConfig, HostConfig hostConfig) {
         this.threadingManager = threadingManager;
         this.diagnosticManager = diagnosticManager;
-        this.loggingManager = loggingManager;
+        this.terminalRecorder = terminalRecorder;
         this.sessionConfig = sessionConfig;
         this.localhostConfig = hostConfig.getLocal();
+        this.connectionPool = new SSHConnectionPool(sessionConfig.getMaximumChannelsPerConnection());
+        this.sessionPool = new SessionPool(sessionConfig.getPool(), threadingManager, this::createPooledSession, SessionEngine::getSessionProperties);
 
-        sessionProperties.put("sixsense.session.version", this.sessionConfig.getVersion());
+        Map<String, String> initialProperties = new HashMap<>();
+        initialProperties.put("sixsense.session.version", this.sessionConfig.getVersion());
         for(Map.Entry<String, String> prompt : this.sessionConfig.getPrompt().entrySet()){
             String promptName = prompt.getKey();
             String promptText = prompt.getValue();
-            sessionProperties.put("sixsense.session.prompt." + promptName, promptText);
+            initialProperties.put("sixsense.session.prompt." + promptName, promptText);
         }
+        addSessionProperties(initialProperties);
 
         logger.info("Session engine initialized");
     }
@@ -110,7 +126,7 @@ public class SessionEngine implements ApplicationContextAware {
 
             try {
                 preExecute(session, operation);
-                ICommand executionBlock = operation.getExecutionBlock();
+                ICommand executionBlock = operation.compile().getExecutionBlock();
 
                 if (executionConditionsMet(session, operation)) {
                     operationResult.setExpressionResult(
@@ -126,6 +142,7 @@ public class SessionEngine implements ApplicationContextAware {
                 }
 
                 postExecute(session, operation);
+                operation.setAlreadyExecuted(true); //Blocks and commands belong to the shared execution plan, so only the operation itself is marked as executed
                 diagnosticManager.emit(new OutcomeEvaluationEvent(session, "", operation.getExpectedOutcome()));
             } catch (Exception e) {
                 String errorMessage = "SessionEngine - Failed to execute operation " + operation.getOperationName() + ". Caused by: " + e.getMessage();
@@ -161,35 +178,48 @@ public class SessionEngine implements ApplicationContextAware {
             preExecute(session, parentBlock);
 
             if(executionConditionsMet(session, parentBlock)) {
-                while (!parentBlock.hasExhaustedCommands(session)) {
-                    ICommand nextCommand = parentBlock.getNextCommand(session);
-                    if (nextCommand != null) {
-                        ExpressionResult commandResult = executeBlock(session, nextCommand);
-                        if (commandResult.getOutcome().equals(ResultStatus.FAILURE)){
-                            blockResult = commandResult;
-                            break;
-                        }else if(!commandResult.getOutcome().equals(ResultStatus.SKIP)){
-                            progressiveResult = commandResult;
-                        }
+                BlockCursor blockCursor = new BlockCursor(parentBlock);
+                ICommand nextCommand;
+                while ((nextCommand = blockCursor.next(session.getCurrentSessionVariables())) != null) {
+                    ExpressionResult commandResult;
+                    if(parentBlock.getBlockMode() == BlockMode.Parallel){
+                        commandResult = executeLanes(session, collectLanes(blockCursor, nextCommand, session));
+                    }else {
+                        List<Command> batch = collectBatch(parentBlock, blockCursor, nextCommand, session);
+                        commandResult = batch.size() > 1 ? executeBatch(session, batch) : executeBlock(session, nextCommand);
+                    }
+
+                    if (commandResult.getOutcome().equals(ResultStatus.FAILURE)){
+                        blockResult = commandResult;
+                        break;
+                    }else if(!commandResult.getOutcome().equals(ResultStatus.SKIP)){
+                        progressiveResult = commandResult;
                     }
                 }
             }else{
                 progressiveResult = ExpressionResult.skip();
             }
 
-            postExecute(session, parentBlock);
-            if(blockResult == null) {// which (before this line) can only be assigned if commandResult has ResultStatus.FAILURE
-                blockResult = expectedResult(progressiveResult, parentBlock.getExpectedOutcome().getExpressionResult());
-            }
-
-            diagnosticManager.emit(new OutcomeEvaluationEvent(session, "", parentBlock.getExpectedOutcome()));
-            diagnosticManager.emit(new BlockEndEvent(session, parentBlock, blockResult));
+            blockResult = finishBlock(session, parentBlock, progressiveResult, blockResult);
         }else{
             blockResult = handleExecutionAnomaly(session, Literals.InvalidExecutionBlock);
         }
         return blockResult;
     }
 
+    //failedResult is null, unless one of the child commands has failed (which ends the block immediately)
+    private ExpressionResult finishBlock(Session session, Block parentBlock, ExpressionResult progressiveResult, ExpressionResult failedResult){
+        postExecute(session, parentBlock);
+        ExpressionResult blockResult = failedResult;
+        if(blockResult == null) {
+            blockResult = expectedResult(progressiveResult, parentBlock.getExpectedOutcome().getExpressionResult());
+        }
+
+        diagnosticManager.emit(new OutcomeEvaluationEvent(session, "", parentBlock.getExpectedOutcome()));
+        diagnosticManager.emit(new BlockEndEvent(session, parentBlock, blockResult));
+        return blockResult;
+    }
+
     private ExpressionResult executeCommand(Session session, Command currentCommand) throws IOException{
         ExpressionResult commandResult;
 
@@ -212,6 +242,430 @@ public class SessionEngine implements ApplicationContextAware {
         return commandResult;
     }
 
+    /*Event driven counterpart of executeOperation(). Returns once the first command of the operation was written, and the returned future completes once the operation has finished
+    * The operation is executed as a continuation over it's execution plan: each command continues the execution on the worker thread which finished it (see Session.executeCommandAsync()),
+    * so no thread is held by the operation while it's commands are running*/
+    public CompletableFuture<OperationResult> executeOperationAsync(Operation operation){
+        Session session;
+        try {
+            session = initializeSession(operation);
+        } catch (Exception e){
+            String errorMessage = "SessionEngine - Failed to execute operation " + operation.getOperationName() + ". Caused by: " + e.getMessage();
+            logger.error(errorMessage);
+            return CompletableFuture.completedFuture(new OperationResult().withExpressionResult(
+                this.handleExecutionAnomaly(null, errorMessage)
+            ));
+        }
+
+        return executeOperationAsync(session, operation).handle((operationResult, e) -> {
+            try {
+                if(e != null){
+                    throw e instanceof CompletionException ? e.getCause() : e;
+                }
+                finalizeSession(session, operation.getUUID());
+                return operationResult;
+            } catch (Throwable failure){
+                String errorMessage = "SessionEngine - Failed to execute operation " + operation.getOperationName() + ". Caused by: " + failure.getMessage();
+                logger.error(errorMessage);
+                return new OperationResult().withExpressionResult(
+                    this.handleExecutionAnomaly(session, errorMessage)
+                );
+            }
+        });
+    }
+
+    public CompletableFuture<OperationResult> executeOperationAsync(Session session, Operation operation){
+        if(operation == null || session.isClosed() || operation.getExecutionBlock() == null){
+            return CompletableFuture.completedFuture(executeOperation(session, operation)); //Nothing to execute, only the anomaly is handled
+        }
+
+        session.incrementDrilldownRank();
+        diagnosticManager.emit(new OperationStartEvent(session, operation));
+
+        CompletableFuture<ExpressionResult> futureResult;
+        try {
+            preExecute(session, operation);
+            ICommand executionBlock = operation.compile().getExecutionBlock();
+
+            if (executionConditionsMet(session, operation)) {
+                futureResult = executeBlockAsync(session, executionBlock).thenApply(blockResult ->
+                    expectedResult(blockResult, operation.getExpectedOutcome().getExpressionResult())
+                );
+            } else {
+                futureResult = CompletableFuture.completedFuture(ExpressionResult.skip());
+            }
+        } catch (Exception e) {
+            futureResult = CompletableFuture.failedFuture(e);
+        }
+
+        return futureResult.handle((expressionResult, e) -> {
+            OperationResult operationResult = new OperationResult();
+            if(e == null) {
+                operationResult.setExpressionResult(expressionResult);
+                postExecute(session, operation);
+                operation.setAlreadyExecuted(true);
+                diagnosticManager.emit(new OutcomeEvaluationEvent(session, "", operation.getExpectedOutcome()));
+            }else{
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                String errorMessage = "SessionEngine - Failed to execute operation " + operation.getOperationName() + ". Caused by: " + cause.getMessage();
+                logger.error(errorMessage);
+                operationResult.setExpressionResult(
+                    handleExecutionAnomaly(session, errorMessage)
+                );
+            }
+
+            operationResult.addDatabaseVariables(session.getDatabaseVariables());
+            diagnosticManager.emit(new OperationEndEvent(session, operation, operationResult));
+            session.decrementDrilldownRank();
+            return operationResult;
+        });
+    }
+
+    private CompletableFuture<ExpressionResult> executeBlockAsync(Session session, ICommand executionBlock){
+        if(session.isClosed()){
+            return CompletableFuture.completedFuture(handleExecutionAnomaly(session, Literals.SessionAlreadyClosed));
+        }else if (executionBlock instanceof Command) {
+            return executeCommandAsync(session, (Command)executionBlock);
+        }else if(executionBlock instanceof Block){
+            Block parentBlock = (Block)executionBlock;
+            diagnosticManager.emit(new BlockStartEvent(session, parentBlock));
+            preExecute(session, parentBlock);
+
+            if(executionConditionsMet(session, parentBlock)) {
+                CompletableFuture<ExpressionResult> blockResult = new CompletableFuture<>();
+                continueBlock(session, parentBlock, new BlockCursor(parentBlock), ExpressionResult.defaultOutcome(), null, blockResult);
+                return blockResult;
+            }else{
+                return CompletableFuture.completedFuture(finishBlock(session, parentBlock, ExpressionResult.skip(), null));
+            }
+        }else{
+            return CompletableFuture.completedFuture(handleExecutionAnomaly(session, Literals.InvalidExecutionBlock));
+        }
+    }
+
+    /*Continues executing the child commands of a block, after the command which returned commandResult (null when starting the block)
+    * Child commands which complete immediately (e.g. skipped commands) are continued in place. Once a child command has to wait for it's output,
+    * this method returns and the block is continued by whichever worker thread finishes that command*/
+    private void continueBlock(Session session, Block parentBlock, BlockCursor blockCursor, ExpressionResult progressiveResult, ExpressionResult commandResult, CompletableFuture<ExpressionResult> blockResult){
+        try {
+            while (true) {
+                if (commandResult != null) {
+                    if (commandResult.getOutcome().equals(ResultStatus.FAILURE)) {
+                        blockResult.complete(finishBlock(session, parentBlock, progressiveResult, commandResult));
+                        return;
+                    } else if (!commandResult.getOutcome().equals(ResultStatus.SKIP)) {
+                        progressiveResult = commandResult;
+                    }
+                }
+
+                ICommand nextCommand = blockCursor.next(session.getCurrentSessionVariables());
+                if (nextCommand == null) {
+                    blockResult.complete(finishBlock(session, parentBlock, progressiveResult, null));
+                    return;
+                }
+
+                CompletableFuture<ExpressionResult> futureCommandResult;
+                if(parentBlock.getBlockMode() == BlockMode.Parallel){
+                    futureCommandResult = executeLanesAsync(session, collectLanes(blockCursor, nextCommand, session));
+                }else {
+                    List<Command> batch = collectBatch(parentBlock, blockCursor, nextCommand, session);
+                    futureCommandResult = batch.size() > 1 ? executeBatchAsync(session, batch) : executeBlockAsync(session, nextCommand);
+                }
+                if (!futureCommandResult.isDone()) {
+                    ExpressionResult resultSoFar = progressiveResult;
+                    futureCommandResult.whenComplete((nextResult, e) -> {
+                        if (e != null) {
+                            blockResult.completeExceptionally(e);
+                        } else {
+                            continueBlock(session, parentBlock, blockCursor, resultSoFar, nextResult, blockResult);
+                        }
+                    });
+                    return;
+                }
+                commandResult = futureCommandResult.join();
+            }
+        } catch (Exception e) {
+            blockResult.completeExceptionally(e);
+        }
+    }
+
+    private CompletableFuture<ExpressionResult> executeCommandAsync(Session session, Command currentCommand){
+        if(session.isClosed()){
+            return CompletableFuture.completedFuture(handleExecutionAnomaly(session, Literals.SessionAlreadyClosed));
+        }
+
+        diagnosticManager.emit(new CommandStartEvent(session, currentCommand));
+        preExecute(session, currentCommand);
+
+        CompletableFuture<ExpressionResult> futureResult;
+        if (executionConditionsMet(session, currentCommand)) {
+            futureResult = session.executeCommandAsync(currentCommand);
+        } else {
+            futureResult = CompletableFuture.completedFuture(ExpressionResult.skip());
+        }
+
+        return futureResult.thenApply(commandResult -> {
+            postExecute(session, currentCommand);
+            diagnosticManager.emit(new CommandEndEvent(session, currentCommand, commandResult));
+            return commandResult;
+        });
+    }
+
+    /*In pipelined blocks, the child command is batched together with the consecutive child commands following it on the same channel
+    * Commands which may not be batched (see CommandBatch.isBatchable()) end the batch*/
+    private List<Command> collectBatch(Block parentBlock, BlockCursor blockCursor, ICommand nextCommand, Session session){
+        if(parentBlock.getBlockMode() != BlockMode.Pipelined || !CommandBatch.isBatchable(nextCommand, null)){
+            return Collections.emptyList();
+        }
+
+        List<Command> batch = new ArrayList<>();
+        batch.add((Command)nextCommand);
+        while (CommandBatch.isBatchable(blockCursor.peek(), batch.get(0).getChannelName())){
+            batch.add((Command)blockCursor.next(session.getCurrentSessionVariables()));
+        }
+        return batch;
+    }
+
+    /*Executes a batch of commands with a single write, and returns the result of the batch as if it's commands were executed one after the other
+    * (the first failed command fails the batch, and skipped commands do not affect it). Execution conditions are resolved before the batch is written*/
+    private ExpressionResult executeBatch(Session session, List<Command> batch) throws IOException{
+        if(session.isClosed()){
+            return handleExecutionAnomaly(session, Literals.SessionAlreadyClosed);
+        }
+
+        List<Command> executedCommands = startBatch(session, batch);
+        if(executedCommands.isEmpty()){
+            return ExpressionResult.skip();
+        }
+        return finishBatch(session, executedCommands, session.executeBatch(executedCommands));
+    }
+
+    private CompletableFuture<ExpressionResult> executeBatchAsync(Session session, List<Command> batch){
+        if(session.isClosed()){
+            return CompletableFuture.completedFuture(handleExecutionAnomaly(session, Literals.SessionAlreadyClosed));
+        }
+
+        List<Command> executedCommands = startBatch(session, batch);
+        if(executedCommands.isEmpty()){
+            return CompletableFuture.completedFuture(ExpressionResult.skip());
+        }
+        return session.executeBatchAsync(executedCommands).thenApply(results -> finishBatch(session, executedCommands, results));
+    }
+
+    //Returns the commands of the batch whose execution conditions are met (skipped commands end right away)
+    private List<Command> startBatch(Session session, List<Command> batch){
+        List<Command> executedCommands = new ArrayList<>();
+        for(Command command : batch){
+            diagnosticManager.emit(new CommandStartEvent(session, command));
+            preExecute(session, command);
+            if(executionConditionsMet(session, command)){
+                executedCommands.add(command);
+            }else{
+                diagnosticManager.emit(new CommandEndEvent(session, command, ExpressionResult.skip()));
+            }
+            postExecute(session, command);
+        }
+        return executedCommands;
+    }
+
+    private ExpressionResult finishBatch(Session session, List<Command> executedCommands, List<ExpressionResult> results){
+        ExpressionResult batchResult = ExpressionResult.skip();
+        for(int commandIdx = 0; commandIdx < executedCommands.size(); commandIdx++){
+            ExpressionResult commandResult = results.get(commandIdx);
+            diagnosticManager.emit(new CommandEndEvent(session, executedCommands.get(commandIdx), commandResult));
+            if(!batchResult.getOutcome().equals(ResultStatus.FAILURE) && !commandResult.getOutcome().equals(ResultStatus.SKIP)){
+                batchResult = commandResult;
+            }
+        }
+        return batchResult;
+    }
+
+    /*In parallel blocks, the child command is executed together with the rest of the current pass over the block's child commands
+    * The children are split into lanes by their channels: children sharing a channel (directly, or through other children) are executed one after the other in the same lane*/
+    private List<Lane> collectLanes(BlockCursor blockCursor, ICommand nextCommand, Session session){
+        List<Lane> lanes = new ArrayList<>();
+        ICommand childCommand = nextCommand;
+        for(int position = 0; childCommand != null; position++){
+            Lane childLane = new Lane(childCommand, position);
+            Lane mergedLane = null;
+            for(Iterator<Lane> laneIterator = lanes.iterator(); laneIterator.hasNext();){
+                Lane lane = laneIterator.next();
+                if(!Collections.disjoint(lane.channelNames, childLane.channelNames)){
+                    if(mergedLane == null){
+                        mergedLane = lane;
+                    }else{
+                        mergedLane.merge(lane);
+                        laneIterator.remove();
+                    }
+                }
+            }
+
+            if(mergedLane == null){
+                lanes.add(childLane);
+            }else{
+                mergedLane.merge(childLane);
+            }
+            childCommand = blockCursor.peek() != null ? blockCursor.next(session.getCurrentSessionVariables()) : null;
+        }
+        return lanes;
+    }
+
+    /*Executes each lane on it's own branch of the session (see Session.fork()), and joins the branches in block order once all lanes have finished
+    * Lanes other than the first are executed by the engine pool, while the current thread executes the first lane (or any lane the engine pool has rejected)
+    * Branches are only joined once every lane has stopped running (see ParallelLanes.java), even if one of the lanes has thrown*/
+    private ExpressionResult executeLanes(Session session, List<Lane> lanes) throws IOException{
+        int childCount = lanes.stream().mapToInt(lane -> lane.children.size()).sum();
+        ExpressionResult[] childResults = new ExpressionResult[childCount];
+        AtomicBoolean laneFailed = new AtomicBoolean(false);
+        if(lanes.size() == 1){
+            executeLane(session, lanes.get(0), childResults, laneFailed);
+            return foldLanes(childResults);
+        }
+
+        List<Session> branches = new ArrayList<>();
+        try {
+            for (Lane lane : lanes) {
+                branches.add(session.fork(lane.channelNames));
+            }
+
+            List<ParallelLanes.LaneTask> laneTasks = new ArrayList<>();
+            laneTasks.add(() -> executeLane(branches.get(0), lanes.get(0), childResults, laneFailed));
+            for (int laneIdx = 1; laneIdx < lanes.size(); laneIdx++) {
+                Session branch = branches.get(laneIdx);
+                Lane lane = lanes.get(laneIdx);
+                laneTasks.add(() -> {
+                    String callerSessionId = ThreadContext.get("sessionID"); //Set if the engine pool has rejected the lane, and it runs on the current thread
+                    ThreadContext.put("sessionID", branch.getShortSessionId());
+                    try {
+                        executeLane(branch, lane, childResults, laneFailed);
+                    } finally {
+                        if(callerSessionId != null) {
+                            ThreadContext.put("sessionID", callerSessionId);
+                        }else{
+                            ThreadContext.remove("sessionID");
+                        }
+                    }
+                });
+            }
+            ParallelLanes.execute(this.threadingManager::submit, laneTasks, laneFailed);
+        }finally {
+            for(Session branch : branches){
+                session.join(branch);
+            }
+        }
+        return foldLanes(childResults);
+    }
+
+    //Executes the children of a lane one after the other, until one of them fails (or until a child of another lane has failed)
+    private void executeLane(Session branch, Lane lane, ExpressionResult[] childResults, AtomicBoolean laneFailed) throws IOException{
+        for(int childIdx = 0; childIdx < lane.children.size() && !laneFailed.get(); childIdx++){
+            ExpressionResult childResult = executeBlock(branch, lane.children.get(childIdx));
+            childResults[lane.positions.get(childIdx)] = childResult;
+            if(childResult.getOutcome().equals(ResultStatus.FAILURE)){
+                laneFailed.set(true);
+            }
+        }
+    }
+
+    //Event driven counterpart of executeLanes(). Each lane is started in turn, and is continued by the worker threads once it's first command is written
+    private CompletableFuture<ExpressionResult> executeLanesAsync(Session session, List<Lane> lanes){
+        int childCount = lanes.stream().mapToInt(lane -> lane.children.size()).sum();
+        ExpressionResult[] childResults = new ExpressionResult[childCount];
+        AtomicBoolean laneFailed = new AtomicBoolean(false);
+        if(lanes.size() == 1){
+            CompletableFuture<Void> laneResult = new CompletableFuture<>();
+            continueLane(session, lanes.get(0), 0, childResults, laneFailed, laneResult);
+            return laneResult.thenApply(ignored -> foldLanes(childResults));
+        }
+
+        //All branches are forked before any lane starts, so a failed fork never leaves lanes running on branches nobody joins
+        List<Session> branches = new ArrayList<>();
+        try {
+            for (Lane lane : lanes) {
+                branches.add(session.fork(lane.channelNames));
+            }
+        } catch (RuntimeException e) {
+            for(Session branch : branches){
+                session.join(branch);
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<?>[] laneResults = new CompletableFuture<?>[lanes.size()];
+        for (int laneIdx = 0; laneIdx < lanes.size(); laneIdx++) {
+            CompletableFuture<Void> laneResult = new CompletableFuture<>();
+            laneResults[laneIdx] = laneResult;
+            continueLane(branches.get(laneIdx), lanes.get(laneIdx), 0, childResults, laneFailed, laneResult);
+        }
+
+        return CompletableFuture.allOf(laneResults).handle((ignored, e) -> {
+            for(Session branch : branches){
+                session.join(branch);
+            }
+            if(e != null){
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            return foldLanes(childResults);
+        });
+    }
+
+    //Continues executing the children of a lane from childIdx, in the same manner continueBlock() continues a block
+    private void continueLane(Session branch, Lane lane, int childIdx, ExpressionResult[] childResults, AtomicBoolean laneFailed, CompletableFuture<Void> laneResult){
+        try {
+            while (childIdx < lane.children.size() && !laneFailed.get()) {
+                int position = lane.positions.get(childIdx);
+                CompletableFuture<ExpressionResult> futureChildResult = executeBlockAsync(branch, lane.children.get(childIdx++));
+                if (!futureChildResult.isDone()) {
+                    int nextChildIdx = childIdx;
+                    futureChildResult.whenComplete((childResult, e) -> {
+                        if (e != null) {
+                            laneFailed.set(true); //The other lanes stop after their current child, and the branches are joined once they have
+                            laneResult.completeExceptionally(e);
+                        } else if (recordLaneResult(childResult, position, childResults, laneFailed)) {
+                            continueLane(branch, lane, nextChildIdx, childResults, laneFailed, laneResult);
+                        } else {
+                            laneResult.complete(null);
+                        }
+                    });
+                    return;
+                }
+
+                if (!recordLaneResult(futureChildResult.join(), position, childResults, laneFailed)) {
+                    break;
+                }
+            }
+            laneResult.complete(null);
+        } catch (Exception e) {
+            laneFailed.set(true);
+            laneResult.completeExceptionally(e);
+        }
+    }
+
+    //Returns false if the child has failed (in which case no lane should start any more children)
+    private boolean recordLaneResult(ExpressionResult childResult, int position, ExpressionResult[] childResults, AtomicBoolean laneFailed){
+        childResults[position] = childResult;
+        if(childResult.getOutcome().equals(ResultStatus.FAILURE)){
+            laneFailed.set(true);
+            return false;
+        }
+        return true;
+    }
+
+    /*Folds the results of the children in block order, as if they were executed one after the other: the first failed child fails the block,
+    * and otherwise the last child which was not skipped determines the result. Children which were not started (since a child of another lane has failed) are ignored*/
+    private ExpressionResult foldLanes(ExpressionResult[] childResults){
+        ExpressionResult passResult = ExpressionResult.skip();
+        for(ExpressionResult childResult : childResults){
+            if(childResult == null || childResult.getOutcome().equals(ResultStatus.SKIP)){
+                continue;
+            }else if(childResult.getOutcome().equals(ResultStatus.FAILURE)){
+                return childResult;
+            }
+            passResult = childResult;
+        }
+        return passResult;
+    }
+
     private boolean executionConditionsMet(Session session, ICommand command){
         return LogicalExpressionResolver.resolveLogicalExpression(
                 session.getCurrentSessionVariables(),
@@ -237,16 +691,27 @@ public class SessionEngine implements ApplicationContextAware {
         return executionError;
     }
 
-    //Attempts to create a new session
+    //Attempts to lease a pre-warmed session from the session pool, and creates a new session if none is available
     public Session initializeSession(Operation operation) throws InstantiationException{
-        Session session;
-        try{
-            session = (Session) this.appContext.getBean("sixSenseSession", operation);
-        } catch (BeansException e){
-            logger.error("SessionEngine - Failed to initialize a new session for operation " + operation.getOperationName() + ". Caused by: " + e.getMessage());
-            throw new InstantiationException(e.getMessage());
+        if(operation == null){
+            throw new InstantiationException("Cannot create a session using a null operation!");
+        }
+
+        Session session = this.sessionPool.lease(operation.getChannelNames());
+        if(session == null) {
+            try {
+                session = (Session) this.appContext.getBean("sixSenseSession", operation.getChannelNames());
+            } catch (BeansException e) {
+                logger.error("SessionEngine - Failed to initialize a new session for operation " + operation.getOperationName() + ". Caused by: " + e.getMessage());
+                throw new InstantiationException(e.getMessage());
+            }
         }
 
+        session.bindOperation(operation.getUUID());
+        session.bindSessionProperties(sessionProperties);
+        ThreadContext.put("sessionID", session.getShortSessionId());
+        ThreadingUtils.updateSessionAndOperationIds(session.getShortSessionId(), operation.getShortUUID());
+
         this.runningSessions.put(session.getSessionShellId(), session);
         this.runningOperations.put(operation.getUUID(), operation);
         this.operationsToSessions.put(operation.getUUID(), session.getSessionShellId());
@@ -255,18 +720,25 @@ public class SessionEngine implements ApplicationContextAware {
         return session;
     }
 
-    //Create a prototype session bean, generate the required I/O channels and load session variables. If fails, will finalize the session to prevent it from executing commands
+    //Used by the session pool to create new sessions in the background
+    private Session createPooledSession(Set<String> channelNames) throws InstantiationException{
+        try {
+            return (Session) this.appContext.getBean("sixSenseSession", channelNames);
+        } catch (BeansException e) {
+            throw new InstantiationException(e.getMessage());
+        }
+    }
+
+    /*Create a prototype session bean and generate the required I/O channels. If fails, will finalize the session to prevent it from executing commands
+    * Sessions are not bound to any operation at this point (they may wait in the session pool before being leased), so operation related state is loaded in initializeSession()*/
     @Bean(value="sixSenseSession")
     @Scope("prototype")
-    private Session createSession(Operation operation) throws InstantiationException, IOException, NullPointerException{
-        if(operation == null){
-            throw new NullPointerException("Cannot create a session using a null operation!");
+    private Session createSession(Set<String> channelNames) throws InstantiationException, IOException, NullPointerException{
+        if(channelNames == null){
+            throw new NullPointerException("Cannot create a session without channel names!");
         }
 
-        Session session = new Session(this.localhostConfig, operation.getChannelNames(), operation.getUUID());
-        session.loadSessionVariables(sessionProperties);
-        ThreadContext.put("sessionID", session.getShortSessionId());
-        ThreadingUtils.updateSessionAndOperationIds(session.getShortSessionId(), operation.getShortUUID());
+        Session session = new Session(this.localhostConfig, this.connectionPool, this.terminalRecorder, channelNames);
 
         try {
             List<ProcessStreamWrapper> wrappers = session.getShellChannels().values().stream()
@@ -280,6 +752,7 @@ public class SessionEngine implements ApplicationContextAware {
             String message = "Failed to create new session - could not submit channel IO streams to worker queue. Caused by: " + e.getMessage();
             logger.error(message);
 
+            session.terminate(); //Terminated sessions are never recycled into the session pool
             finalizeSession(session);
             throw new IOException(message);
         }
@@ -295,16 +768,19 @@ public class SessionEngine implements ApplicationContextAware {
     }
 
     private void finalizeSession(Session session) throws IOException{
+        String sessionId = session.getSessionShellId();
         try {
-            session.close();
+            //As far as the rest of the engine is concerned, the session is closed (even if it's channels are recycled into the session pool)
             diagnosticManager.emit(new SessionClosedEvent(session));
+            if(!this.sessionPool.recycle(session)) {
+                session.close();
+            }
         } catch (IOException e) {
-            logger.error("SessionEngine - Failed to finalize session with id " + session.getSessionShellId() + ". Caused by: " + e.getMessage());
+            logger.error("SessionEngine - Failed to finalize session with id " + sessionId + ". Caused by: " + e.getMessage());
             throw e;
         } finally {
             ThreadContext.remove("sessionID");
             ThreadingUtils.updateLifecyclePhase(EngineEventType.NotInSession);
-            loggingManager.closeLoggers(session.getShortSessionId());
         }
     }
 
@@ -345,7 +821,6 @@ public class SessionEngine implements ApplicationContextAware {
     private void postExecute(Session session, ICommand currentCommand){
         session.removeSessionDynamicFields(currentCommand);
         session.decrementDrilldownRank();
-        currentCommand.setAlreadyExecuted(true);
     }
 
     @Override
@@ -354,13 +829,19 @@ public class SessionEngine implements ApplicationContextAware {
     }
 
     public static Map<String, String> getSessionProperties(){
-        return Collections.unmodifiableMap(sessionProperties);
+        return sessionProperties;
     }
 
-    public static Map<String, String> addSessionProperties(Map<String, String> updatedConfig) {
-        //updates the session properties for the current run of the engine
-        sessionProperties.putAll(updatedConfig);
-        return Collections.unmodifiableMap(sessionProperties);
+    public static synchronized Map<String, String> addSessionProperties(Map<String, String> updatedConfig) {
+        //updates the session properties for the current run of the engine. Running sessions keep the properties they were leased with
+        Map<String, String> updatedProperties = new HashMap<>(sessionProperties);
+        updatedProperties.putAll(updatedConfig);
+        sessionProperties = Collections.unmodifiableMap(updatedProperties);
+        return sessionProperties;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return sessionConfig.getExecutionMode();
     }
 
     public Map<String, Operation> getRunningOperations() {
@@ -374,4 +855,55 @@ public class SessionEngine implements ApplicationContextAware {
     public Map<String, String> getOperationsToSessions(){
         return Collections.unmodifiableMap(operationsToSessions);
     }
+
+    public Map<String, Map<String, Integer>> getConnectionPoolStatus(){
+        return connectionPool.getPoolStatus();
+    }
+
+    public Map<String, Map<String, Long>> getSessionPoolStatus(){
+        return sessionPool.getPoolStatus();
+    }
+
+    //Closes any pooled sessions and disconnects any pooled ssh connections once the engine shuts down
+    @Override
+    public void close() {
+        this.sessionPool.close();
+        this.connectionPool.close();
+    }
+
+    //Child commands of a parallel block which are executed one after the other, on channels no other lane of the block uses
+    private static final class Lane {
+        private final List<ICommand> children = new ArrayList<>();
+        private final List<Integer> positions = new ArrayList<>(); //position of each child within the pass over the block
+        private final Set<String> channelNames = new HashSet<>();
+
+        private Lane(ICommand childCommand, int position) {
+            this.children.add(childCommand);
+            this.positions.add(position);
+            this.channelNames.addAll(CommandUtils.getChannelNames(childCommand));
+        }
+
+        //Lanes are merged in block order, so the children of the merged lane keep their relative order
+        private void merge(Lane other){
+            List<ICommand> mergedChildren = new ArrayList<>();
+            List<Integer> mergedPositions = new ArrayList<>();
+            int thisIdx = 0;
+            int otherIdx = 0;
+            while(thisIdx < this.children.size() || otherIdx < other.children.size()){
+                if(otherIdx == other.children.size() || (thisIdx < this.children.size() && this.positions.get(thisIdx) < other.positions.get(otherIdx))){
+                    mergedChildren.add(this.children.get(thisIdx));
+                    mergedPositions.add(this.positions.get(thisIdx++));
+                }else{
+                    mergedChildren.add(other.children.get(otherIdx));
+                    mergedPositions.add(other.positions.get(otherIdx++));
+                }
+            }
+
+            this.children.clear();
+            this.children.addAll(mergedChildren);
+            this.positions.clear();
+            this.positions.addAll(mergedPositions);
+            this.channelNames.addAll(other.channelNames);
+        }
+    }
 }
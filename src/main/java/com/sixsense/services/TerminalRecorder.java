@@ -0,0 +1,76 @@
+package com.sixsense.services;
+
+import com.sixsense.config.SessionConfig;
+import com.sixsense.io.logging.TerminalRecordingStore;
+import com.sixsense.model.logging.TerminalRecord;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+@Service
+/*Records the raw output of the terminals of all sessions (see TerminalRecordingStore.java), so the output of any session can be replayed later on
+ * Recording is cheap enough to leave on in production. If the recording store cannot be opened, sessions run without recording*/
+public class TerminalRecorder implements Closeable {
+    private static final Logger logger = LogManager.getLogger(TerminalRecorder.class);
+    private final TerminalRecordingStore recordingStore; //null if recording is disabled
+
+    @Autowired
+    public TerminalRecorder(SessionConfig sessionConfig) {
+        SessionConfig.RecordingProperties recordingProperties = sessionConfig.getRecording();
+        TerminalRecordingStore recordingStore = null;
+        if(recordingProperties.isEnabled()) {
+            try {
+                recordingStore = new TerminalRecordingStore(
+                    Paths.get(recordingProperties.getDirectory()),
+                    "terminal",
+                    recordingProperties.getSegmentSize().toBytes(),
+                    recordingProperties.getMaximumSegments()
+                );
+            } catch (IOException e) {
+                logger.error("Failed to open terminal recordings in " + recordingProperties.getDirectory() + ", so terminals will not be recorded. Caused by: " + e.getMessage());
+            }
+        }
+        this.recordingStore = recordingStore;
+    }
+
+    public boolean isRecording(){
+        return this.recordingStore != null;
+    }
+
+    //Records the raw bytes in the given range of the buffer. Failing to record a chunk never fails the session it was read from
+    public void record(String sessionId, String channelName, ByteBuffer rawBytes, int offset, int length){
+        try {
+            this.recordingStore.record(sessionId, channelName, System.currentTimeMillis(), rawBytes, offset, length);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to record terminal output of session " + sessionId + ". Caused by: " + e.getMessage());
+        }
+    }
+
+    public List<TerminalRecord> replay(String sessionId){
+        if(!isRecording()){
+            return Collections.emptyList();
+        }
+
+        try {
+            return this.recordingStore.replay(sessionId);
+        } catch (IOException e) {
+            logger.error("Failed to replay terminal output of session " + sessionId + ". Caused by: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(isRecording()) {
+            this.recordingStore.close();
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.sixsense.model.events.IEngineEventHandler;
 import com.sixsense.model.events.OperationEndEvent;
 import com.sixsense.model.logic.*;
 import com.sixsense.model.retention.OperationResult;
+import com.sixsense.model.threading.ExecutionMode;
 import com.sixsense.threading.ThreadingManager;
 import com.sixsense.utillity.LogicalExpressionResolver;
 import org.apache.logging.log4j.Logger;
@@ -18,6 +19,7 @@ import org.springframework.stereotype.Service;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 @Service
 public class WorkflowManager implements IEngineEventHandler {
@@ -78,6 +80,10 @@ public class WorkflowManager implements IEngineEventHandler {
 
     private CompletableFuture<OperationResult> executeParallelOperation(Operation operation){
         try {
+            if(sessionEngine.getExecutionMode() == ExecutionMode.EventDriven){
+                //Only the session is initialized on the engine pool, the operation itself is driven by the driver threads
+                return threadingManager.submit(() -> sessionEngine.executeOperationAsync(operation)).thenCompose(Function.identity());
+            }
             return threadingManager.submit(() -> sessionEngine.executeOperation(operation));
         }catch (Exception e){
             logger.error("Failed to submit operation " + operation.getUUID() + " to worker queue. Caused by: " + e.getMessage());
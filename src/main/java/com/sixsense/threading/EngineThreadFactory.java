@@ -1,12 +1,15 @@
 package com.sixsense.threading;
 
 import com.sixsense.config.ThreadingConfig;
+import com.sixsense.model.threading.MonitoredTask;
 import com.sixsense.model.threading.MonitoredThread;
+import com.sixsense.model.threading.MonitoredThreadState;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -17,18 +20,46 @@ public class EngineThreadFactory implements ThreadFactory, IThreadMonitoingFacto
     private final ThreadGroup threadGroup;
     private final ThreadingConfig.ThreadingProperties threadingProperties;
     private final Set<MonitoredThread> monitoredThreads;
+    private final Set<MonitoredTask> monitoredTasks;
+    private final ThreadFactory virtualThreadFactory; //null, unless this factory creates virtual threads
 
     EngineThreadFactory(ThreadingConfig.ThreadingProperties threadingProperties) {
+        this(threadingProperties, null);
+    }
+
+    private EngineThreadFactory(ThreadingConfig.ThreadingProperties threadingProperties, ThreadFactory virtualThreadFactory) {
         SecurityManager securityManager = System.getSecurityManager();
         this.threadGroup = securityManager != null ? securityManager.getThreadGroup() : Thread.currentThread().getThreadGroup();
         this.threadingProperties = threadingProperties;
         this.monitoredThreads = Collections.synchronizedSet(new HashSet<>());
+        this.monitoredTasks = Collections.synchronizedSet(new HashSet<>());
+        this.virtualThreadFactory = virtualThreadFactory;
+    }
+
+    /*Virtual threads were only added in java 21, while the engine is compiled against java 11. Therefore, the virtual thread builder is looked up reflectively
+    * Returns null if the current runtime does not support virtual threads*/
+    static EngineThreadFactory forVirtualThreads(ThreadingConfig.ThreadingProperties threadingProperties){
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object virtualThreadBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtualThreadBuilder = builderClass.getMethod("name", String.class, long.class).invoke(virtualThreadBuilder, threadingProperties.getThreadNamePrefix(), 1L);
+            ThreadFactory virtualThreadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(virtualThreadBuilder);
+            return new EngineThreadFactory(threadingProperties, virtualThreadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Virtual threads are not supported by the current runtime. Caused by: " + e.getMessage());
+            return null;
+        }
     }
 
     /*Executors.DefaultThreadFactory() is sadly a private class :(
     * Therefore we are forced to implement a very similar class, with minor adjustments to apply our threadingProperties*/
     @Override
     public Thread newThread(Runnable runnable) {
+        if(this.virtualThreadFactory != null){
+            //Virtual threads cannot be subclassed (and therefore cannot be wrapped by a MonitoredThread), so the runnable is monitored instead
+            return this.virtualThreadFactory.newThread(new MonitoredTask(this, runnable));
+        }
+
         Thread newThread = new Thread(this.threadGroup, runnable, this.threadingProperties.getThreadNamePrefix() + this.threadNumber.getAndIncrement(), 0L);
         if (newThread.isDaemon()) {
             newThread.setDaemon(false);
@@ -59,4 +90,30 @@ public class EngineThreadFactory implements ThreadFactory, IThreadMonitoingFacto
         monitoredThread.getCurrentThreadState().resetState();
         return this.monitoredThreads.remove(monitoredThread);
     }
+
+    @Override
+    public boolean watch(MonitoredTask monitoredTask) {
+        return this.monitoredTasks.add(monitoredTask);
+    }
+
+    @Override
+    public boolean unwatch(MonitoredTask monitoredTask) {
+        monitoredTask.getCurrentThreadState().resetState();
+        return this.monitoredTasks.remove(monitoredTask);
+    }
+
+    @Override
+    public Map<Long, MonitoredThreadState> getMonitoredThreadStates() {
+        Map<Long, MonitoredThreadState> threadStates = IThreadMonitoingFactory.super.getMonitoredThreadStates();
+        synchronized (this.monitoredTasks) {
+            for (MonitoredTask task : this.monitoredTasks) {
+                threadStates.put(task.getThreadId(), task.getCurrentThreadState());
+            }
+        }
+        return threadStates;
+    }
+
+    public boolean isVirtual() {
+        return this.virtualThreadFactory != null;
+    }
 }
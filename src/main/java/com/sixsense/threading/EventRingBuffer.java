@@ -0,0 +1,191 @@
+package com.sixsense.threading;
+
+import com.sixsense.model.threading.BackPressurePolicy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*Multi producer, single consumer ring buffer of events (in the style of the LMAX disruptor)
+ *
+ * The slots are allocated once, when the ring buffer is created. A producer claims the next sequence with a single CAS, fills the slot of that sequence in place (through a translator)
+ * and then publishes the sequence. A single dispatcher thread consumes the published slots in order, in batches - every slot published since the previous batch (up to the maximum batch size)
+ * is handed to the batch consumer at once. Slots are reused once the batch consumer returns, so it must copy whatever it keeps out of them
+ *
+ * Publishing never takes a lock. While there is nothing to consume the dispatcher parks, and the first producer to publish afterwards unparks it
+ * If the ring is full, the back pressure policy decides whether the producer waits for the dispatcher to free a slot, or discards it's event
+ *
+ * Closing the ring buffer seals the claimed sequence, so no sequence can be claimed afterwards. The dispatcher keeps dispatching until every sequence claimed before that
+ * has been published and dispatched (including sequences whose producers were still filling their slots when the ring buffer was closed)*/
+public class EventRingBuffer<E> implements Closeable {
+    private static final Logger logger = LogManager.getLogger(EventRingBuffer.class);
+    private static final int SpinsBeforeParking = 100;
+    private static final long BlockedProducerParkNanos = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long SealedSequence = Long.MAX_VALUE; //the claimed sequence once the ring buffer is closed
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLongArray publishedSequences; //the latest sequence published in each slot
+    private final AtomicLong claimedSequence = new AtomicLong(-1); //the latest sequence claimed by a producer
+    private final AtomicLong consumedSequence = new AtomicLong(-1); //the latest sequence consumed by the dispatcher (producers never wrap past it)
+    private final AtomicBoolean isDispatcherParked = new AtomicBoolean(false);
+    private final AtomicLong droppedEvents = new AtomicLong(0);
+    private final int maximumBatchSize;
+    private final BackPressurePolicy backPressurePolicy;
+    private final Consumer<List<E>> batchConsumer;
+    private final Thread dispatcher;
+    private volatile boolean isClosed = false;
+    private volatile long lastClaimedSequence = SealedSequence; //the latest sequence claimed before closing (sealed sequence until closed)
+
+    public EventRingBuffer(ThreadFactory threadFactory, Supplier<E> slotFactory, int capacity, int maximumBatchSize, BackPressurePolicy backPressurePolicy, Consumer<List<E>> batchConsumer) {
+        int roundedCapacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1; //rounded up to a power of two
+        this.slots = new Object[roundedCapacity];
+        this.mask = roundedCapacity - 1;
+        this.publishedSequences = new AtomicLongArray(roundedCapacity);
+        for(int slotIdx = 0; slotIdx < roundedCapacity; slotIdx++){
+            this.slots[slotIdx] = slotFactory.get();
+            this.publishedSequences.set(slotIdx, -1);
+        }
+        this.maximumBatchSize = Math.max(maximumBatchSize, 1);
+        this.backPressurePolicy = backPressurePolicy;
+        this.batchConsumer = batchConsumer;
+
+        this.dispatcher = threadFactory.newThread(this::dispatch);
+        this.dispatcher.start();
+    }
+
+    /*Claims the next slot, fills it using the translator and publishes it
+     * Returns false if the event was not published (if the ring is full and the policy is to drop events, or if the ring buffer has been closed)*/
+    public <A> boolean publish(BiConsumer<E, A> translator, A argument){
+        long sequence = claim();
+        if(sequence < 0){
+            return false;
+        }
+
+        int slotIdx = (int)sequence & this.mask;
+        translator.accept(slot(slotIdx), argument);
+        this.publishedSequences.set(slotIdx, sequence); //a volatile write, so it can't be reordered after reading whether the dispatcher is parked (see awaitPublished())
+        if(this.isDispatcherParked.get() && this.isDispatcherParked.compareAndSet(true, false)){
+            LockSupport.unpark(this.dispatcher);
+        }
+        return true;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    //Returns -1 if no sequence was claimed
+    private long claim(){
+        int spins = 0;
+        while (!this.isClosed) {
+            long claimed = this.claimedSequence.get();
+            if(claimed == SealedSequence){
+                break;
+            }
+
+            long next = claimed + 1;
+            //The slot of the next sequence was last used by sequence (next - capacity), which must have been consumed already
+            if(next - this.slots.length > this.consumedSequence.get()){
+                if(this.backPressurePolicy == BackPressurePolicy.Drop){
+                    this.droppedEvents.incrementAndGet();
+                    return -1;
+                }else if(++spins < SpinsBeforeParking){
+                    Thread.onSpinWait();
+                }else{
+                    LockSupport.parkNanos(this, BlockedProducerParkNanos);
+                }
+            }else if(this.claimedSequence.compareAndSet(claimed, next)){
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    //Events claimed before the ring buffer was closed are still dispatched
+    private void dispatch(){
+        List<E> batch = new ArrayList<>(this.maximumBatchSize);
+        long nextSequence = 0;
+        while (true) {
+            for(long sequence = nextSequence; batch.size() < this.maximumBatchSize && this.publishedSequences.get((int)sequence & this.mask) == sequence; sequence++){
+                batch.add(slot((int)sequence & this.mask));
+            }
+
+            if(batch.isEmpty()){
+                if(isDrained(nextSequence)){
+                    break;
+                }
+                awaitPublished(nextSequence);
+                continue;
+            }
+
+            try {
+                this.batchConsumer.accept(batch);
+            }catch (RuntimeException e){
+                logger.error("Failed to dispatch a batch of " + batch.size() + " events. Caused by: " + e.getMessage());
+            }
+            nextSequence += batch.size();
+            this.consumedSequence.lazySet(nextSequence - 1);
+            batch.clear();
+            reportDroppedEvents();
+        }
+        logger.debug("Event ring buffer closed after dispatching " + nextSequence + " events");
+    }
+
+    //Spins briefly, since events tend to arrive in bursts, and only then parks until a producer publishes the awaited sequence
+    private void awaitPublished(long sequence){
+        int slotIdx = (int)sequence & this.mask;
+        for(int spins = 0; spins < SpinsBeforeParking; spins++){
+            if(this.publishedSequences.get(slotIdx) == sequence || isDrained(sequence)){
+                return;
+            }
+            Thread.onSpinWait();
+        }
+
+        //The sequence is checked again after announcing that we park, so a producer publishing in the meantime either is seen here or sees us parked (and unparks us)
+        this.isDispatcherParked.set(true);
+        if(this.publishedSequences.get(slotIdx) != sequence && !isDrained(sequence)){
+            LockSupport.park(this);
+        }
+        this.isDispatcherParked.set(false);
+    }
+
+    //True once the ring buffer was closed, and every sequence claimed before that was dispatched
+    private boolean isDrained(long nextSequence){
+        return nextSequence > this.lastClaimedSequence;
+    }
+
+    private void reportDroppedEvents(){
+        if(this.backPressurePolicy == BackPressurePolicy.Drop && this.droppedEvents.get() > 0){
+            logger.warn("Dropped " + this.droppedEvents.getAndSet(0) + " events, since the event ring buffer was full");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private E slot(int slotIdx){
+        return (E) this.slots[slotIdx];
+    }
+
+    /*Producers which claimed a sequence before the claimed sequence was sealed still publish it (unparking the dispatcher as usual)
+     * Any producer claiming afterwards fails (it's compare and set fails on the sealed sequence, and it sees the ring buffer closed when it retries)*/
+    @Override
+    public void close() {
+        this.isClosed = true;
+        long lastClaimed = this.claimedSequence.getAndSet(SealedSequence);
+        if(lastClaimed != SealedSequence){
+            this.lastClaimedSequence = lastClaimed;
+        }
+        LockSupport.unpark(this.dispatcher);
+    }
+}
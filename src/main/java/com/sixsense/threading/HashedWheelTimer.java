@@ -0,0 +1,256 @@
+package com.sixsense.threading;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*Schedules the timed events of the engine (command deadlines, minimal response wakeups, prompt timeouts) on a single timing wheel,
+ * instead of having every waiting session park with it's own timeout
+ *
+ * The wheel is an array of buckets, each covering one tick. A timeout is placed in the bucket of the tick it expires in,
+ * together with the amount of full rounds the wheel has to turn before it does. A single ticker thread visits one bucket per tick,
+ * and hands the expired tasks to the executor (the ticker itself never runs them, so a slow task does not delay other timeouts)
+ *
+ * Scheduling and cancelling only enqueue the timeout (O(1), from any thread) - the ticker moves new timeouts into their buckets and unlinks cancelled ones
+ * Deadlines are measured with System.nanoTime(), and a timeout never expires before it's deadline (but may expire up to one tick after it)
+ * While no timeouts are pending, the ticker does not tick at all*/
+public class HashedWheelTimer implements Closeable {
+    private static final Logger logger = LogManager.getLogger(HashedWheelTimer.class);
+    private static final int MaximumTransfersPerTick = 100000; //A burst of new timeouts should not stall the wheel
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int wheelMask;
+    private final Executor executor;
+    private final Queue<Timeout> addedTimeouts;
+    private final Queue<Timeout> cancelledTimeouts;
+    private final AtomicLong pendingTimeouts;
+    private final long startTime;
+    private final Thread ticker;
+    private volatile boolean isClosed = false;
+    private long tick = 0; //only accessed by the ticker
+
+    public HashedWheelTimer(ThreadFactory threadFactory, Executor executor, Duration tickDuration, int wheelSize) {
+        this.tickNanos = Math.max(tickDuration.toNanos(), 1);
+        this.wheel = new Bucket[Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1]; //rounded up to a power of two
+        for(int bucketIdx = 0; bucketIdx < this.wheel.length; bucketIdx++){
+            this.wheel[bucketIdx] = new Bucket();
+        }
+        this.wheelMask = this.wheel.length - 1;
+        this.executor = executor;
+        this.addedTimeouts = new ConcurrentLinkedQueue<>();
+        this.cancelledTimeouts = new ConcurrentLinkedQueue<>();
+        this.pendingTimeouts = new AtomicLong(0);
+        this.startTime = System.nanoTime();
+
+        this.ticker = threadFactory.newThread(this::turnWheel);
+        this.ticker.start();
+    }
+
+    //Runs the task on the executor once the delay has elapsed, unless the returned timeout is cancelled first
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) throws RejectedExecutionException{
+        if(this.isClosed){
+            throw new RejectedExecutionException("Cannot schedule task - timer has been closed");
+        }
+
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - this.startTime + Math.max(unit.toNanos(delay), 0));
+        this.addedTimeouts.add(timeout);
+        if(this.pendingTimeouts.getAndIncrement() == 0){
+            LockSupport.unpark(this.ticker); //The ticker is idle while no timeouts are pending
+        }
+        return timeout;
+    }
+
+    public long getPendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    private void turnWheel(){
+        while (!this.isClosed) {
+            long tickDeadline = awaitNextTick();
+            if(this.isClosed){
+                break;
+            }
+
+            unlinkCancelledTimeouts();
+            transferAddedTimeouts();
+            this.wheel[(int) (this.tick & this.wheelMask)].expireTimeouts(tickDeadline);
+            this.tick++;
+        }
+        logger.debug("Timer closed with " + this.pendingTimeouts.get() + " pending timeouts");
+    }
+
+    //Returns the time the current tick ends at (relative to the start time of the timer)
+    private long awaitNextTick(){
+        while(this.pendingTimeouts.get() == 0 && !this.isClosed){
+            LockSupport.park(this);
+            //No timeouts were pending in the meantime, so there is nothing to expire in the ticks we have missed
+            this.tick = Math.max(this.tick, (System.nanoTime() - this.startTime) / this.tickNanos);
+        }
+
+        long tickDeadline = this.tickNanos * (this.tick + 1);
+        long currentTime = System.nanoTime() - this.startTime;
+        while (currentTime < tickDeadline && !this.isClosed) {
+            LockSupport.parkNanos(this, tickDeadline - currentTime);
+            currentTime = System.nanoTime() - this.startTime;
+        }
+        return tickDeadline;
+    }
+
+    private void unlinkCancelledTimeouts(){
+        Timeout cancelledTimeout;
+        while ((cancelledTimeout = this.cancelledTimeouts.poll()) != null) {
+            if(cancelledTimeout.bucket != null) {
+                cancelledTimeout.bucket.remove(cancelledTimeout);
+            }
+        }
+    }
+
+    private void transferAddedTimeouts(){
+        Timeout addedTimeout;
+        for (int transferred = 0; transferred < MaximumTransfersPerTick && (addedTimeout = this.addedTimeouts.poll()) != null; transferred++) {
+            if(addedTimeout.state.get() == Timeout.Cancelled){
+                continue;
+            }
+
+            //Timeouts whose deadline has already passed expire in the current tick
+            long expirationTick = Math.max(addedTimeout.deadline / this.tickNanos, this.tick);
+            addedTimeout.remainingRounds = (expirationTick - this.tick) / this.wheel.length;
+            this.wheel[(int) (expirationTick & this.wheelMask)].add(addedTimeout);
+        }
+    }
+
+    private void execute(Timeout timeout){
+        try {
+            this.executor.execute(timeout.task);
+        }catch (RejectedExecutionException e){
+            logger.warn("Timer failed to execute an expired task. Caused by: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        this.isClosed = true;
+        LockSupport.unpark(this.ticker);
+    }
+
+    public static final class Timeout {
+        private static final int Pending = 0;
+        private static final int Cancelled = 1;
+        private static final int Expired = 2;
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline; //relative to the start time of the timer
+        private final AtomicInteger state;
+
+        //Bucket linkage, only accessed by the ticker
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+            this.state = new AtomicInteger(Pending);
+        }
+
+        //Returns false if the timeout has already expired (or was already cancelled)
+        public boolean cancel(){
+            if(this.state.compareAndSet(Pending, Cancelled)){
+                this.timer.pendingTimeouts.decrementAndGet();
+                this.timer.cancelledTimeouts.add(this);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled(){
+            return this.state.get() == Cancelled;
+        }
+
+        //True once the deadline has passed, even if the task itself is still waiting for (or running on) the executor
+        public boolean isExpired(){
+            return this.state.get() == Expired;
+        }
+
+        private boolean expire(){
+            if(this.state.compareAndSet(Pending, Expired)){
+                this.timer.pendingTimeouts.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    //Doubly linked list of timeouts, so cancelled timeouts are unlinked in constant time
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout){
+            timeout.bucket = this;
+            if(this.head == null){
+                this.head = this.tail = timeout;
+            }else{
+                this.tail.next = timeout;
+                timeout.previous = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        private void expireTimeouts(long tickDeadline){
+            Timeout timeout = this.head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= tickDeadline) {
+                    remove(timeout);
+                    if(timeout.expire()) {
+                        execute(timeout);
+                    }
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout){
+            if(timeout.bucket != this){
+                return; //Already unlinked
+            }
+
+            if(timeout.previous != null){
+                timeout.previous.next = timeout.next;
+            }
+            if(timeout.next != null){
+                timeout.next.previous = timeout.previous;
+            }
+            if(timeout == this.head){
+                this.head = timeout.next;
+            }
+            if(timeout == this.tail){
+                this.tail = timeout.previous;
+            }
+
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.sixsense.threading;
 
+import com.sixsense.model.threading.MonitoredTask;
 import com.sixsense.model.threading.MonitoredThread;
+import com.sixsense.model.threading.MonitoredThreadState;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 public interface IThreadMonitoingFactory {
@@ -9,4 +13,21 @@ public interface IThreadMonitoingFactory {
     Set<MonitoredThread> getMonitoredThreads();
     boolean watch(MonitoredThread monitoredThread);
     boolean unwatch(MonitoredThread monitoredThread);
+
+    //Only factories creating virtual threads monitor tasks instead of threads
+    default boolean watch(MonitoredTask monitoredTask){
+        return false;
+    }
+
+    default boolean unwatch(MonitoredTask monitoredTask){
+        return false;
+    }
+
+    default Map<Long, MonitoredThreadState> getMonitoredThreadStates(){
+        Map<Long, MonitoredThreadState> threadStates = new HashMap<>();
+        for(MonitoredThread thread : getMonitoredThreads()){
+            threadStates.put(thread.getId(), thread.getCurrentThreadState()); //A thread's id is a positive long, that remains unchaned during the thread's lifetime
+        }
+        return threadStates;
+    }
 }
@@ -0,0 +1,90 @@
+package com.sixsense.threading;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*Executes the lanes of a parallel block concurrently (see SessionEngine.executeLanes())
+ * The first lane runs on the current thread, the rest on the given executor (or on the current thread after the first lane, if the executor rejects them)
+ * Whether the lanes succeed or not, execute() only returns once every lane has stopped running - so the caller may safely join the branches the lanes ran on*/
+public final class ParallelLanes {
+    private static final Logger logger = LogManager.getLogger(ParallelLanes.class);
+
+    @FunctionalInterface
+    public interface LaneTask {
+        void run() throws IOException;
+    }
+
+    private ParallelLanes(){
+        /*Empty private constructor - no instances of this class should be created */
+    }
+
+    /*If any lane throws, the stop flag is raised (so the other lanes stop after their current child) and the lanes which are still running are awaited
+    * before the first failure is rethrown. Failures of the other lanes are only logged*/
+    public static void execute(Executor laneExecutor, List<LaneTask> laneTasks, AtomicBoolean stopFlag) throws IOException{
+        List<CompletableFuture<Void>> submittedLanes = new ArrayList<>();
+        List<LaneTask> rejectedLanes = new ArrayList<>();
+        boolean lanesFinished = false;
+        try {
+            for (LaneTask laneTask : laneTasks.subList(1, laneTasks.size())) {
+                try {
+                    submittedLanes.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            laneTask.run();
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, laneExecutor));
+                } catch (RejectedExecutionException | IllegalStateException e) {
+                    logger.warn("Lane executor rejected a lane, executing it after the first lane. Caused by: " + e.getMessage());
+                    rejectedLanes.add(laneTask);
+                }
+            }
+
+            laneTasks.get(0).run();
+            for (LaneTask rejectedLane : rejectedLanes) {
+                rejectedLane.run();
+            }
+            for (CompletableFuture<Void> submittedLane : submittedLanes) {
+                awaitLane(submittedLane);
+            }
+            lanesFinished = true;
+        }finally {
+            if(!lanesFinished){
+                stopFlag.set(true);
+                for (CompletableFuture<Void> submittedLane : submittedLanes) {
+                    awaitQuietly(submittedLane);
+                }
+            }
+        }
+    }
+
+    private static void awaitLane(CompletableFuture<Void> laneResult) throws IOException{
+        try {
+            laneResult.join();
+        }catch (CompletionException e){
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    //Only called once a lane has already failed, so the failures of the remaining lanes are secondary
+    private static void awaitQuietly(CompletableFuture<Void> laneResult){
+        try {
+            laneResult.join();
+        }catch (CompletionException | CancellationException e){
+            logger.warn("Lane failed after another lane had already failed. Caused by: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.sixsense.threading;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/*Executor which starts a new thread for every submitted task, instead of pooling threads
+ * Meant for virtual threads, which are cheap to create and should never be pooled (a virtual thread blocked on I/O or on a lock releases it's carrier thread)
+ * so the amount of concurrent tasks is not bounded by the size of a pool*/
+public class ThreadPerTaskExecutor extends AbstractExecutorService {
+    private final ThreadFactory threadFactory;
+    private final Set<Thread> runningThreads = ConcurrentHashMap.newKeySet();
+    private final Object terminationLock = new Object();
+    private volatile boolean isShutdown = false;
+
+    ThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this.terminationLock) {
+            if (this.isShutdown) {
+                throw new RejectedExecutionException("Cannot execute task - executor has been shut down");
+            }
+
+            TaskRunner taskRunner = new TaskRunner(task);
+            Thread thread = this.threadFactory.newThread(taskRunner);
+            if (thread == null) {
+                throw new RejectedExecutionException("Cannot execute task - thread factory failed to create a thread");
+            }
+
+            taskRunner.thread = thread;
+            this.runningThreads.add(thread);
+            thread.start();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this.terminationLock) {
+            this.isShutdown = true;
+            this.terminationLock.notifyAll();
+        }
+    }
+
+    //Tasks are never queued (each task starts running immediately), so there are no pending tasks to return
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        for (Thread runningThread : this.runningThreads) {
+            runningThread.interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.isShutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.isShutdown && this.runningThreads.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this.terminationLock) {
+            while (!isTerminated()) {
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this.terminationLock, remainingNanos);
+            }
+            return true;
+        }
+    }
+
+    private class TaskRunner implements Runnable {
+        private final Runnable task;
+        private Thread thread; //assigned before the thread is started
+
+        private TaskRunner(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.task.run();
+            } finally {
+                runningThreads.remove(this.thread);
+                if (isShutdown) {
+                    synchronized (terminationLock) {
+                        terminationLock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -3,8 +3,8 @@ package com.sixsense.threading;
 import com.sixsense.api.http.overrides.HTTPThreadExecutor;
 import com.sixsense.config.ThreadingConfig;
 import com.sixsense.model.events.EngineEventType;
-import com.sixsense.model.threading.MonitoredThread;
 import com.sixsense.model.threading.MonitoredThreadState;
+import com.sixsense.model.threading.ThreadMode;
 import com.sixsense.model.threading.ThreadPool;
 import com.sixsense.utillity.ThreadingUtils;
 import org.apache.catalina.connector.Connector;
@@ -17,10 +17,10 @@ import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
 import org.springframework.stereotype.Component;
 
 import java.io.Closeable;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -30,13 +30,18 @@ import java.util.function.Supplier;
 public class ThreadingManager implements Closeable {
     private static final Logger logger = LogManager.getLogger(ThreadingManager.class);
     private static final int ShutdownGraceSeconds = 5;
-    private final ThreadPoolExecutor enginePool; //Executes all tasks originating from the engine itself (com.SixSense.*)
+    private final ExecutorService enginePool; //Executes all tasks originating from the engine itself (com.SixSense.*)
+    private final EngineThreadFactory engineThreadFactory;
+    private final ThreadPoolExecutor driverPool; //Advances event driven sessions, and runs expired timers
+    private final HashedWheelTimer timer; //Command deadlines, minimal response wakeups and any other timed events of the engine
     private final HTTPThreadExecutor httpConnectionPool; //Executes all threads intercepting web requests (org.apache.catalina.*) [NOT all tomcat threads]
     private final ThreadPoolExecutor amqpConnectionPool;
+    private final List<EventRingBuffer<?>> eventRingBuffers; //Each dispatches it's events on a dedicated thread
 
-    private final ThreadingConfig.ThreadingProperties engineProperties;
+    private final ThreadingConfig.EngineThreadingProperties engineProperties;
     private final ThreadingConfig.ThreadingProperties httpProperties;
     private final ThreadingConfig.AMQPThreadingProperties amqpProperties;
+    private final ThreadingConfig.EventProperties eventProperties;
 
     private boolean isClosed = false;
 
@@ -45,23 +50,105 @@ public class ThreadingManager implements Closeable {
         this.engineProperties = threadingConfig.getEngine();
         this.httpProperties = threadingConfig.getHttp();
         this.amqpProperties = threadingConfig.getAmqp();
+        this.eventProperties = threadingConfig.getEvents();
 
-        this.enginePool = generateThreadPool(this.engineProperties);
+        this.engineThreadFactory = generateEngineThreadFactory(this.engineProperties);
+        this.enginePool = generateEnginePool(this.engineProperties, this.engineThreadFactory);
+        this.driverPool = generateDriverPool(this.engineProperties);
+        this.timer = generateTimer(this.engineProperties, this.driverPool);
         this.httpConnectionPool = new HTTPThreadExecutor(this.httpProperties);
-        this.amqpConnectionPool = generateThreadPool(this.amqpProperties);
+        this.amqpConnectionPool = generateThreadPool(this.amqpProperties, new EngineThreadFactory(this.amqpProperties));
+        this.eventRingBuffers = new CopyOnWriteArrayList<>();
 
-        this.enginePool.prestartAllCoreThreads();
         this.amqpConnectionPool.prestartAllCoreThreads();
     }
 
-    private ThreadPoolExecutor generateThreadPool(ThreadingConfig.ThreadingProperties threadingProperties){
+    private EngineThreadFactory generateEngineThreadFactory(ThreadingConfig.EngineThreadingProperties engineProperties){
+        if(engineProperties.getThreadMode() == ThreadMode.Virtual){
+            EngineThreadFactory virtualThreadFactory = EngineThreadFactory.forVirtualThreads(engineProperties);
+            if(virtualThreadFactory != null){
+                logger.info("Engine tasks will run on virtual threads");
+                return virtualThreadFactory;
+            }
+            logger.warn("Virtual threads are not supported by the current runtime (java " + Runtime.version().feature() + "). Engine tasks will run on platform threads instead");
+        }
+        return new EngineThreadFactory(engineProperties);
+    }
+
+    /*Sessions, process stream readers and event handlers all block for most of their lifetime (waiting for output, or for the next event)
+    * Pooled platform threads therefore bound the amount of concurrent sessions, while virtual threads release their carrier thread whenever blocked
+    * Virtual threads are cheap to create and should never be pooled, so each engine task runs on a new virtual thread*/
+    private ExecutorService generateEnginePool(ThreadingConfig.EngineThreadingProperties engineProperties, EngineThreadFactory threadFactory){
+        if(threadFactory.isVirtual()){
+            return new ThreadPerTaskExecutor(threadFactory);
+        }
+
+        ThreadPoolExecutor threadPool = generateThreadPool(engineProperties, threadFactory);
+        threadPool.prestartAllCoreThreads();
+        return threadPool;
+    }
+
+    /*Driver threads only ever advance event driven sessions and run expired timers (and never block while doing so),
+    * so a small fixed amount of platform threads can drive any amount of sessions*/
+    private ThreadPoolExecutor generateDriverPool(ThreadingConfig.EngineThreadingProperties engineProperties){
+        ThreadingConfig.ThreadingProperties driverProperties = new ThreadingConfig.ThreadingProperties(
+            engineProperties.getAllowedIdleTime(),
+            engineProperties.getDriverThreads(),
+            engineProperties.getDriverThreads(),
+            engineProperties.getThreadNamePrefix() + "driver-"
+        );
+
+        return new ThreadPoolExecutor(
+                driverProperties.getMinimumThreads(),
+                driverProperties.getMaximumThreads(),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new EngineThreadFactory(driverProperties)
+        );
+    }
+
+    private HashedWheelTimer generateTimer(ThreadingConfig.EngineThreadingProperties engineProperties, Executor timerExecutor){
+        ThreadingConfig.ThreadingProperties tickerProperties = new ThreadingConfig.ThreadingProperties(
+            engineProperties.getAllowedIdleTime(),
+            1,
+            1,
+            engineProperties.getThreadNamePrefix() + "timer-"
+        );
+
+        return new HashedWheelTimer(new EngineThreadFactory(tickerProperties), timerExecutor, engineProperties.getTimerTick(), engineProperties.getTimerWheelSize());
+    }
+
+    /*Events are emitted on the hot path of sessions, so they are published into a ring buffer and handed to the batch consumer on a dedicated dispatcher thread (see EventRingBuffer)
+    * The dispatcher must never block for long, as emitting threads may wait for it once the ring is full*/
+    public <E> EventRingBuffer<E> createEventRingBuffer(Supplier<E> slotFactory, Consumer<List<E>> batchConsumer){
+        ThreadingConfig.ThreadingProperties dispatcherProperties = new ThreadingConfig.ThreadingProperties(
+            this.engineProperties.getAllowedIdleTime(),
+            1,
+            1,
+            this.engineProperties.getThreadNamePrefix() + "events-"
+        );
+
+        EventRingBuffer<E> eventRingBuffer = new EventRingBuffer<>(
+            new EngineThreadFactory(dispatcherProperties),
+            slotFactory,
+            this.eventProperties.getRingSize(),
+            this.eventProperties.getMaximumBatchSize(),
+            this.eventProperties.getBackPressure(),
+            batchConsumer
+        );
+        this.eventRingBuffers.add(eventRingBuffer);
+        return eventRingBuffer;
+    }
+
+    private ThreadPoolExecutor generateThreadPool(ThreadingConfig.ThreadingProperties threadingProperties, EngineThreadFactory threadFactory){
         return new ThreadPoolExecutor(
                 threadingProperties.getMinimumThreads(),
                 threadingProperties.getMaximumThreads(),
                 threadingProperties.getAllowedIdleTime().toMillis(),
                 TimeUnit.MILLISECONDS,
                 new SynchronousQueue<>(), //To allow for dynamic size increase, we must provide a synchronousQueue (https://stackoverflow.com/a/8591681/1658288, https://stackoverflow.com/a/47691139/1658288)
-                new EngineThreadFactory(threadingProperties)
+                threadFactory
         );
     }
 
@@ -80,6 +167,16 @@ public class ThreadingManager implements Closeable {
         enginePool.submit(worker);
     }
 
+    //Advances an event driven session on one of the driver threads
+    public void drive(Runnable transition) throws RejectedExecutionException{
+        driverPool.execute(transition);
+    }
+
+    //Fires a timed event on one of the driver threads once the delay has elapsed (unless cancelled first). Timed events must not block
+    public HashedWheelTimer.Timeout schedule(Runnable timedEvent, long delay, TimeUnit unit) throws RejectedExecutionException{
+        return timer.schedule(timedEvent, delay, unit);
+    }
+
     //Invokes thenApplyAsync using the enginePool, without exposing it (and breaking encapsulation)
     public <T, U> CompletableFuture<U> applyFutureCallback(CompletableFuture<T> future, Function<? super T,? extends U> callback){
         return future.thenApplyAsync(callback, enginePool);
@@ -104,7 +201,7 @@ public class ThreadingManager implements Closeable {
 
     private IThreadMonitoingFactory getMonitoringThreadFactory(ThreadPool threadPool){
         switch (threadPool){
-            case Engine: return (EngineThreadFactory)this.enginePool.getThreadFactory();
+            case Engine: return this.engineThreadFactory;
             case HTTP: return this.httpConnectionPool.getThreadFactory();
             case AMQP: return (EngineThreadFactory)this.amqpConnectionPool.getThreadFactory();
             default: throw new IllegalArgumentException("No managed thread pool named " + threadPool.name() + " exists");
@@ -113,14 +210,7 @@ public class ThreadingManager implements Closeable {
 
     public Map<Long, MonitoredThreadState> getEngineThreadStatus(){
         IThreadMonitoingFactory monitoringThreadFactory = getMonitoringThreadFactory(ThreadPool.Engine);
-        Set<MonitoredThread> currentThreads = monitoringThreadFactory.getMonitoredThreads();
-
-        Map<Long, MonitoredThreadState> threadStatus = new HashMap<>();
-        for(MonitoredThread thread : currentThreads){
-            threadStatus.put(thread.getId(), thread.getCurrentThreadState()); //A thread's id is a positive long, that remains unchaned during the thread's lifetime
-        }
-
-        return threadStatus;
+        return monitoringThreadFactory.getMonitoredThreadStates();
     }
 
 
@@ -144,6 +234,11 @@ public class ThreadingManager implements Closeable {
             logger.warn("Engine pool did not finish terminating workers after the allotted time has elapsed. Shutting down forcefully now");
             this.enginePool.shutdownNow();
         }
+        for(EventRingBuffer<?> eventRingBuffer : this.eventRingBuffers){
+            eventRingBuffer.close();
+        }
+        this.timer.close();
+        this.driverPool.shutdownNow(); //Event driven sessions are not advanced anymore once the engine pool has shut down
 
         this.isClosed = true;
         logger.info("WorkerQueue closed");
@@ -6,10 +6,10 @@ import com.sixsense.model.wrappers.RawExecutionConfig;
 import com.sixsense.model.pipes.AbstractOutputPipe;
 import com.sixsense.io.Session;
 
-import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 public class CommandUtils {
     private CommandUtils(){
@@ -62,17 +62,22 @@ public class CommandUtils {
         }
     }
 
+    //The operations of all devices share a single execution plan, so the execution block is compiled once instead of being cloned per device
     public static ParallelWorkflow composeWorkflow(RawExecutionConfig rawConfig){
         ParallelWorkflow parallelNode = new ParallelWorkflow();
+        Operation rawOperation = rawConfig.getOperation();
         for(Device device : rawConfig.getDevices()){
             parallelNode.addParallelOperation(
-                (Operation)rawConfig.getOperation().deepClone()
+                (Operation)rawOperation.cloneWithSharedPlan()
                     .addDynamicFields(device.getDynamicFields())
                     .addDynamicField(FieldGlossary.device_internal_id, device.getShortUUID())
                     .addDynamicField(FieldGlossary.device_host, device.getCredentials().getHost())
                     .addDynamicField(FieldGlossary.device_username, device.getCredentials().getUsername())
                     .addDynamicField(FieldGlossary.device_password, device.getCredentials().getPassword())
                     .addDynamicField(FieldGlossary.device_port, String.valueOf(device.getCredentials().getPort()))
+                    .addDynamicField(FieldGlossary.device_vendor, device.getVpv().getVendor())
+                    .addDynamicField(FieldGlossary.device_product, device.getVpv().getProduct())
+                    .addDynamicField(FieldGlossary.device_version, device.getVpv().getVersion())
             );
         }
 
@@ -100,6 +105,25 @@ public class CommandUtils {
         }
     }
 
+    //Returns the names of all channels the command (or any of it's child commands) is executed on
+    public static Set<String> getChannelNames(ICommand command){
+        Set<String> channelNames = new HashSet<>();
+        collectChannelNames(command, channelNames);
+        return channelNames;
+    }
+
+    private static void collectChannelNames(ICommand command, Set<String> channelNames){
+        if(command instanceof Command){
+            channelNames.add(((Command) command).getChannelName());
+        }else if(command instanceof Block){
+            for(ICommand childBlock : ((Block) command).getChildBlocks()){
+                collectChannelNames(childBlock, channelNames);
+            }
+        }else if(command instanceof Operation && ((Operation) command).getExecutionBlock() != null){
+            collectChannelNames(((Operation) command).getExecutionBlock(), channelNames);
+        }
+    }
+
     public static String evaluateAgainstDynamicFields(String commandText){
         return evaluateAgainstDynamicFields(commandText, null);
     }
@@ -108,18 +132,8 @@ public class CommandUtils {
         if(commandText == null || commandText.isEmpty()){
             return commandText;
         }
-        if(dynamicFields != null) {
-            /*Consider the case of evaluating two dynamic fields: var.scope.field = 'foo' and var.scope.field_with_long_name = 'bar':
-            * If the command contains, say, 'echo $var.scope.field_with_long_name', and we evaluate var.scope.field first
-            * Then the command will return as 'foo_with_long_name'
-            * Therefore we order the dynamic fields by inverse lexicographical order to avoid this scenario*/
-            List<String> orderedKeys = dynamicFields.keySet().stream().sorted(Comparator.reverseOrder()).collect(Collectors.toList());
-            for (String dynamicField : orderedKeys) {
-                commandText = commandText.replace(Literals.VariableMark + dynamicField, dynamicFields.get(dynamicField));
-            }
-        }
-
-        return commandText;
+        //Placeholders are matched against the longest dynamic field name in a single pass (see DynamicFieldTemplate)
+        return DynamicFieldTemplate.compile(commandText).evaluate(dynamicFields);
     }
 
     public static List<String> pipeCommandOutput(Session session, List<String> output){
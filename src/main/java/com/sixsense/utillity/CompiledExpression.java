@@ -0,0 +1,307 @@
+package com.sixsense.utillity;
+
+import com.sixsense.model.logic.*;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/*Immutable evaluator for a logical expression, compiled once and then resolved over and over again
+ * (expected outcomes are resolved on every chunk of output, and execution/repeat conditions on every command or loop iteration)
+ *
+ * Compiling a leaf resolves it's binary relation into a dedicated operand, and prepares everything that does not depend on the session fields:
+ * expected values with dynamic fields are compiled into templates, while expected values without them are kept as is, and are parsed into a number (for numeric relations) or a pattern (for regex relations) only once.
+ * Each leaf also prepares it's resolved and unresolved results in advance, so resolving a compiled expression does not clone any leaf or allocate any result.
+ * As a consequence, returned results are shared by every session, and are frozen so modifying them throws (deepClone() them first)
+ *
+ * Resolving a compiled expression allocates nothing at all, as long as it's dynamic fields are whole placeholders (e.g. a condition on $var.scope.field)
+ * and it's regular expressions are static: each thread reuses it's own matcher for every static pattern, and plain integers are parsed without allocating.
+ * Expected values which embed dynamic fields in other text allocate the evaluated value (and dynamic regular expressions allocate a matcher)
+ *
+ * Nested expressions are resolved through their own compiled form, so modifying a nested expression only invalidates the nested expression.
+ * A leaf which was modified after compilation is detected by comparing it's members to the values they held when compiled, and is resolved the slow way (like an uncompiled leaf).
+ * Frozen leaves (e.g. the leaves of a compiled execution plan, see IFreezable.java) can never be modified, so they are never compared*/
+public final class CompiledExpression {
+    private static final ExpressionResult DefaultOutcome = frozen(ExpressionResult.defaultOutcome());
+    private static final ExpressionResult OutcomeNotReached = frozen(ExpressionResult.executionError(Literals.CommandDidNotReachOutcome));
+    private static final ExpressionResult OutcomeNotNumeric = frozen(ExpressionResult.executionError(Literals.ExpectedOutcomeNotNumeric));
+    private static final ExpressionResult UnsupportedRelation = frozen(ExpressionResult.executionError(Literals.UnsuportedBinaryRelation));
+    private static final int MaximalFastParseDigits = 15; //Integers of up to 15 digits are always represented exactly by a double
+
+    private final LogicalCondition logicalCondition;
+    private final CompiledOperand[] operands;
+
+    private CompiledExpression(LogicalExpression<? extends IResolvable> logicalExpression) {
+        this.logicalCondition = logicalExpression.getLogicalCondition();
+        this.operands = new CompiledOperand[logicalExpression.getResolvableExpressions().size()];
+
+        int operandIdx = 0;
+        for(IResolvable resolvable : logicalExpression.getResolvableExpressions()){
+            if(resolvable instanceof LogicalExpression){
+                this.operands[operandIdx++] = new NestedExpression((LogicalExpression<? extends IResolvable>)resolvable);
+            }else if(resolvable instanceof IFlowConnector){
+                this.operands[operandIdx++] = new CompiledLeaf((IFlowConnector)resolvable);
+            }else{
+                throw new IllegalArgumentException("Cannot resolve expressions of type " + resolvable.getClass().getSimpleName());
+            }
+        }
+    }
+
+    public static CompiledExpression compile(LogicalExpression<? extends IResolvable> logicalExpression){
+        return new CompiledExpression(logicalExpression);
+    }
+
+    //Same semantics as LogicalExpressionResolver.resolveLogicalExpression()
+    public ExpressionResult resolve(String commandOutput, StreamingOutcomeMatcher outcomeMatcher, Map<String, String> sessionFields){
+        if(this.operands.length == 0){
+            return DefaultOutcome;
+        }
+
+        ExpressionResult expressionResult;
+        switch (this.logicalCondition) {
+            case OR: {
+                for (CompiledOperand operand : this.operands) {
+                    expressionResult = operand.resolve(commandOutput, outcomeMatcher, sessionFields);
+                    if (expressionResult.isResolved()) {
+                        return expressionResult;
+                    }
+                }
+                return OutcomeNotReached;
+            }
+            case NOR: {
+                for (CompiledOperand operand : this.operands) {
+                    expressionResult = operand.resolve(commandOutput, outcomeMatcher, sessionFields);
+                    if (expressionResult.isResolved()) {
+                        return OutcomeNotReached;
+                    }
+                }
+                return DefaultOutcome;
+            }
+            case AND: {
+                for (CompiledOperand operand : this.operands) {
+                    expressionResult = operand.resolve(commandOutput, outcomeMatcher, sessionFields);
+                    if (!expressionResult.isResolved()) {
+                        return OutcomeNotReached;
+                    }
+                }
+                return DefaultOutcome;
+            }
+            case NAND: {
+                for (CompiledOperand operand : this.operands) {
+                    expressionResult = operand.resolve(commandOutput, outcomeMatcher, sessionFields);
+                    if (!expressionResult.isResolved()) {
+                        return expressionResult;
+                    }
+                }
+                return OutcomeNotReached;
+            }
+            default: {
+                return UnsupportedRelation;
+            }
+        }
+    }
+
+    private interface CompiledOperand {
+        ExpressionResult resolve(String commandOutput, StreamingOutcomeMatcher outcomeMatcher, Map<String, String> sessionFields);
+    }
+
+    //Relation between the evaluated input (command output or session variable) and the evaluated expected value of a leaf
+    private interface RelationOperand {
+        boolean evaluate(CompiledLeaf leaf, String input, String expectedValue, StreamingOutcomeMatcher outcomeMatcher);
+    }
+
+    private static class NestedExpression implements CompiledOperand {
+        private final LogicalExpression<? extends IResolvable> nestedExpression;
+
+        private NestedExpression(LogicalExpression<? extends IResolvable> nestedExpression) {
+            this.nestedExpression = nestedExpression;
+        }
+
+        @Override
+        public ExpressionResult resolve(String commandOutput, StreamingOutcomeMatcher outcomeMatcher, Map<String, String> sessionFields) {
+            return nestedExpression.compile().resolve(commandOutput, outcomeMatcher, sessionFields);
+        }
+    }
+
+    private static class CompiledLeaf implements CompiledOperand {
+        //The source leaf, and the values it held when compiled
+        private final IFlowConnector source;
+        private final boolean isSourceFrozen;
+        private final BinaryRelation sourceRelation;
+        private final String sourceValue;
+        private final String sourceVariable;
+        private final ResultStatus sourceOutcome;
+        private final String sourceMessage;
+
+        private final RelationOperand relation;
+        private final boolean isCondition; //Execution conditions compare a session variable, expected outcomes compare the command output
+        private final DynamicFieldTemplate variableTemplate;
+        private final DynamicFieldTemplate valueTemplate;
+        private final boolean isVariableDynamic;
+        private final boolean isValueDynamic;
+        private final double numericValue; //Only used if the expected value is numeric and static
+        private final boolean isValueNumeric;
+        private final Pattern valuePattern; //Only compiled if the expected value is static
+        private final ThreadLocal<Matcher> valueMatchers; //Matchers of the static pattern, reset for every input (a matcher is not thread safe, so each thread has it's own)
+        private final ExpressionResult resolvedResult;
+        private final ExpressionResult unresolvedResult;
+
+        private CompiledLeaf(IFlowConnector source) {
+            ExpressionResult sourceResult = source.getExpressionResult();
+            this.source = source;
+            this.isSourceFrozen = source.isFrozen();
+            this.sourceRelation = source.getBinaryRelation();
+            this.sourceValue = source.getExpectedValue();
+            this.sourceOutcome = sourceResult.getOutcome();
+            this.sourceMessage = sourceResult.getMessage();
+            this.isCondition = source instanceof ExecutionCondition;
+            this.sourceVariable = this.isCondition ? ((ExecutionCondition)source).getVariable() : null;
+
+            this.variableTemplate = compileTemplate(this.sourceVariable);
+            this.valueTemplate = compileTemplate(this.sourceValue);
+            this.isVariableDynamic = this.variableTemplate != null && this.variableTemplate.hasPlaceholders();
+            this.isValueDynamic = this.valueTemplate != null && this.valueTemplate.hasPlaceholders();
+            this.relation = compileRelation(this.sourceRelation);
+            this.resolvedResult = frozen(sourceResult.deepClone().withResolved(true));
+            this.unresolvedResult = frozen(sourceResult.deepClone().withResolved(false));
+
+            double parsedValue = 0;
+            boolean parsedSuccessfully = false;
+            Pattern compiledPattern = null;
+            if(!this.isValueDynamic && this.sourceValue != null){
+                if(isNumericRelation(this.sourceRelation)){
+                    try {
+                        parsedValue = Double.parseDouble(this.sourceValue);
+                        parsedSuccessfully = true;
+                    }catch (NumberFormatException e){
+                        parsedSuccessfully = false; //The relation will fail when resolved, like it would have without compiling
+                    }
+                }else if(this.sourceRelation == BinaryRelation.MATCHES_REGEX){
+                    try {
+                        compiledPattern = Pattern.compile(this.sourceValue);
+                    }catch (PatternSyntaxException e){
+                        compiledPattern = null; //The pattern will fail to compile again when resolved, like it would have without compiling
+                    }
+                }
+            }
+            this.numericValue = parsedValue;
+            this.isValueNumeric = parsedSuccessfully;
+            this.valuePattern = compiledPattern;
+            this.valueMatchers = compiledPattern == null ? null : ThreadLocal.withInitial(() -> this.valuePattern.matcher(""));
+        }
+
+        @Override
+        public ExpressionResult resolve(String commandOutput, StreamingOutcomeMatcher outcomeMatcher, Map<String, String> sessionFields) {
+            if(!this.isSourceFrozen && isModified()){
+                return LogicalExpressionResolver.resolveLeaf(commandOutput, outcomeMatcher, sessionFields, this.source);
+            }else if(this.relation == null){
+                return UnsupportedRelation;
+            }
+
+            String input;
+            if(this.isCondition){
+                input = this.isVariableDynamic ? this.variableTemplate.evaluate(sessionFields) : this.sourceVariable;
+            }else{
+                input = commandOutput;
+            }
+            String expectedValue = this.isValueDynamic ? this.valueTemplate.evaluate(sessionFields) : this.sourceValue;
+
+            try {
+                return this.relation.evaluate(this, input, expectedValue, outcomeMatcher) ? this.resolvedResult : this.unresolvedResult;
+            }catch (NumberFormatException e){
+                return OutcomeNotNumeric;
+            }
+        }
+
+        //The resolved flag of the source result is ignored, as the prepared results override it anyway
+        private boolean isModified(){
+            ExpressionResult currentResult = this.source.getExpressionResult();
+            return this.source.getBinaryRelation() != this.sourceRelation ||
+                !Objects.equals(this.source.getExpectedValue(), this.sourceValue) ||
+                currentResult.getOutcome() != this.sourceOutcome ||
+                !Objects.equals(currentResult.getMessage(), this.sourceMessage) ||
+                (this.isCondition && !Objects.equals(((ExecutionCondition)this.source).getVariable(), this.sourceVariable));
+        }
+
+        private double expectedNumber(String expectedValue) throws NumberFormatException {
+            if(this.isValueDynamic){
+                return parseNumber(expectedValue);
+            }else if(this.isValueNumeric){
+                return this.numericValue;
+            }
+            throw new NumberFormatException("Expected value " + expectedValue + " is not a number");
+        }
+
+        private boolean findPattern(String input, String expectedValue){
+            if(this.valueMatchers == null){
+                return LogicalExpressionResolver.compilePattern(expectedValue).matcher(input).find();
+            }
+
+            Matcher valueMatcher = this.valueMatchers.get();
+            try {
+                return valueMatcher.reset(input).find();
+            }finally {
+                valueMatcher.reset(""); //so the matcher does not hold on to the input (e.g. the entire command output) until the next resolution
+            }
+        }
+    }
+
+    private static ExpressionResult frozen(ExpressionResult result){
+        result.freeze();
+        return result;
+    }
+
+    //Parses plain integers (the usual output of counting commands) without allocating, and any other number with Double.parseDouble()
+    private static double parseNumber(String value) throws NumberFormatException {
+        int length = value.length();
+        int digitsStart = length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+') ? 1 : 0;
+        if(length == digitsStart || length - digitsStart > MaximalFastParseDigits){
+            return Double.parseDouble(value);
+        }
+
+        long parsedValue = 0;
+        for(int charIdx = digitsStart; charIdx < length; charIdx++){
+            char digit = value.charAt(charIdx);
+            if(digit < '0' || digit > '9'){
+                return Double.parseDouble(value);
+            }
+            parsedValue = parsedValue * 10 + (digit - '0');
+        }
+        return value.charAt(0) == '-' ? -parsedValue : parsedValue;
+    }
+
+    private static DynamicFieldTemplate compileTemplate(String value){
+        return value == null || value.isEmpty() ? null : DynamicFieldTemplate.compile(value);
+    }
+
+    private static boolean isNumericRelation(BinaryRelation relation){
+        return relation == BinaryRelation.LESSER_THAN || relation == BinaryRelation.LESSER_OR_EQUAL_TO ||
+            relation == BinaryRelation.GREATER_THAN || relation == BinaryRelation.GREATER_OR_EQUAL_TO;
+    }
+
+    //The output is always parsed before the expected value, so a non numeric output fails the relation even if the expected value is numeric
+    private static RelationOperand compileRelation(BinaryRelation relation){
+        if(relation == null){
+            return null;
+        }
+
+        switch (relation){
+            case EQUALS: return (leaf, input, expectedValue, matcher) -> input.equals(expectedValue);
+            case NOT_EQUALS: return (leaf, input, expectedValue, matcher) -> !input.equals(expectedValue);
+            case CONTAINS: return (leaf, input, expectedValue, matcher) -> LogicalExpressionResolver.contains(input, expectedValue, matcher);
+            case NOT_CONTAINS: return (leaf, input, expectedValue, matcher) -> !LogicalExpressionResolver.contains(input, expectedValue, matcher);
+            case CONTAINED_BY: return (leaf, input, expectedValue, matcher) -> expectedValue.contains(input);
+            case NOT_CONTAINED_BY: return (leaf, input, expectedValue, matcher) -> !expectedValue.contains(input);
+            case STARTS_WITH: return (leaf, input, expectedValue, matcher) -> input.startsWith(expectedValue);
+            case ENDS_WITH: return (leaf, input, expectedValue, matcher) -> input.endsWith(expectedValue);
+            case LESSER_THAN: return (leaf, input, expectedValue, matcher) -> parseNumber(input) < leaf.expectedNumber(expectedValue);
+            case LESSER_OR_EQUAL_TO: return (leaf, input, expectedValue, matcher) -> parseNumber(input) <= leaf.expectedNumber(expectedValue);
+            case GREATER_THAN: return (leaf, input, expectedValue, matcher) -> parseNumber(input) > leaf.expectedNumber(expectedValue);
+            case GREATER_OR_EQUAL_TO: return (leaf, input, expectedValue, matcher) -> parseNumber(input) >= leaf.expectedNumber(expectedValue);
+            case MATCHES_REGEX: return (leaf, input, expectedValue, matcher) -> leaf.findPattern(input, expectedValue);
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.sixsense.utillity;
+
+import java.util.*;
+
+/*A text containing dynamic field placeholders (a variable mark followed by a field name, e.g. $var.scope.field), compiled once so it can be evaluated against any set of dynamic fields
+ * The text is tokenized into literal chunks and variable marks when compiled. Field names have no terminating character, so the name following each mark
+ * is matched when evaluated, by walking a trie of the dynamic field names from the mark onwards (see FieldNameTrie).
+ *
+ * Consider the case of evaluating two dynamic fields: var.scope.field = 'foo' and var.scope.field_with_long_name = 'bar':
+ * If the text contains, say, 'echo $var.scope.field_with_long_name', the longest matching field name wins, so the text evaluates to 'echo bar' (and not to 'echo foo_with_long_name')
+ * The text is evaluated in a single pass, so values of dynamic fields are inserted as is (placeholders inside them are not evaluated again)*/
+public final class DynamicFieldTemplate {
+    private static final int MaximumCachedTemplates = 1024;
+    private static final Map<String, DynamicFieldTemplate> compiledTemplates = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true){
+        //Evaluated texts may be composed at runtime (e.g. log lines), so only the most recently evaluated texts are kept
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DynamicFieldTemplate> eldest) {
+            return size() > MaximumCachedTemplates;
+        }
+    });
+
+    private final String text;
+    private final int[] markPositions; //index of each variable mark in the text
+
+    private DynamicFieldTemplate(String text) {
+        this.text = text;
+
+        List<Integer> positions = new ArrayList<>();
+        for(int markPosition = text.indexOf(Literals.VariableMark); markPosition >= 0; markPosition = text.indexOf(Literals.VariableMark, markPosition + 1)){
+            positions.add(markPosition);
+        }
+        this.markPositions = positions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    //Returns the compiled template for the text, compiling it only if it was not compiled recently
+    public static DynamicFieldTemplate compile(String text){
+        DynamicFieldTemplate template = compiledTemplates.get(text);
+        if(template == null){
+            template = new DynamicFieldTemplate(text);
+            compiledTemplates.put(text, template);
+        }
+        return template;
+    }
+
+    public boolean hasPlaceholders(){
+        return this.markPositions.length > 0;
+    }
+
+    public String evaluate(Map<String, String> dynamicFields){
+        if(this.markPositions.length == 0 || dynamicFields == null || dynamicFields.isEmpty()){
+            return this.text;
+        }
+
+        FieldNameTrie fieldNames = FieldNameTrie.forFields(dynamicFields);
+        StringBuilder evaluatedText = null; //Only allocated once the first placeholder is matched
+        int copiedUntil = 0; //Characters before this index were already copied (or replaced) into the evaluated text
+        for(int markPosition : this.markPositions){
+            if(markPosition < copiedUntil){
+                continue; //The mark was part of a field name that was already replaced
+            }
+
+            int nameStart = markPosition + Literals.VariableMark.length();
+            String fieldName = fieldNames.longestMatch(this.text, nameStart);
+            String fieldValue = fieldName == null ? null : dynamicFields.get(fieldName);
+            if(fieldValue != null){
+                if(markPosition == 0 && fieldName.length() == this.text.length() - nameStart){
+                    return fieldValue; //The whole text is a single placeholder, so it evaluates to the field value as is
+                }
+                if(evaluatedText == null){
+                    evaluatedText = new StringBuilder(this.text.length() + fieldValue.length());
+                }
+                evaluatedText.append(this.text, copiedUntil, markPosition).append(fieldValue);
+                copiedUntil = nameStart + fieldName.length();
+            }
+        }
+
+        if(evaluatedText == null){
+            return this.text;
+        }
+        return evaluatedText.append(this.text, copiedUntil, this.text.length()).toString();
+    }
+}
@@ -0,0 +1,107 @@
+package com.sixsense.utillity;
+
+import java.util.*;
+
+/*Trie of dynamic field names (not values, which are always read from the evaluated fields), used to match the field name following each variable mark of a DynamicFieldTemplate
+ * Building a trie walks every field name, so it is built once per set of field names:
+ * Maps which already hold the trie of their names (e.g. session variable snapshots, which share it until a variable is added or removed) implement IndexedFields,
+ * and the trie of any other map is reused by the same thread for as long as the names of the maps it evaluates do not change*/
+public final class FieldNameTrie {
+    public static final FieldNameTrie Empty = new FieldNameTrie(Collections.emptySet());
+    private static final ThreadLocal<LastEvaluated> lastEvaluated = ThreadLocal.withInitial(LastEvaluated::new); //Sessions are confined to their own threads, so concurrent sessions do not replace each other's trie
+
+    private final Set<String> fieldNames;
+    private final char[][] transitionChars; //sorted, for binary search
+    private final int[][] transitionStates;
+    private final String[] terminalNames; //the field name ending at each state, or null
+
+    //Dynamic fields which hold the trie of their own field names
+    public interface IndexedFields {
+        FieldNameTrie getFieldNames();
+    }
+
+    private FieldNameTrie(Set<String> fieldNames) {
+        this.fieldNames = new HashSet<>(fieldNames);
+
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<String> namesPerState = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        namesPerState.add(null);
+        for(String fieldName : this.fieldNames){
+            int state = 0;
+            for(int charIdx = 0; charIdx < fieldName.length(); charIdx++){
+                Integer nextState = trie.get(state).get(fieldName.charAt(charIdx));
+                if(nextState == null){
+                    nextState = trie.size();
+                    trie.get(state).put(fieldName.charAt(charIdx), nextState);
+                    trie.add(new TreeMap<>());
+                    namesPerState.add(null);
+                }
+                state = nextState;
+            }
+            namesPerState.set(state, fieldName);
+        }
+
+        this.transitionChars = new char[trie.size()][];
+        this.transitionStates = new int[trie.size()][];
+        this.terminalNames = namesPerState.toArray(new String[0]);
+        for(int state = 0; state < trie.size(); state++){
+            Map<Character, Integer> transitions = trie.get(state);
+            transitionChars[state] = new char[transitions.size()];
+            transitionStates[state] = new int[transitions.size()];
+            int transitionIdx = 0;
+            for(Map.Entry<Character, Integer> transition : transitions.entrySet()){
+                transitionChars[state][transitionIdx] = transition.getKey();
+                transitionStates[state][transitionIdx] = transition.getValue();
+                transitionIdx++;
+            }
+        }
+    }
+
+    public static FieldNameTrie of(Set<String> fieldNames){
+        return fieldNames.isEmpty() ? Empty : new FieldNameTrie(fieldNames);
+    }
+
+    //Returns the trie of the names of the dynamic fields
+    public static FieldNameTrie forFields(Map<String, String> dynamicFields){
+        if(dynamicFields instanceof IndexedFields){
+            return ((IndexedFields)dynamicFields).getFieldNames();
+        }
+
+        LastEvaluated last = lastEvaluated.get();
+        if(last.dynamicFields != dynamicFields){
+            if(!last.fieldNames.hasSameNames(dynamicFields.keySet())){
+                last.fieldNames = of(dynamicFields.keySet());
+            }
+            last.dynamicFields = dynamicFields; //The same map is usually evaluated again, so it's names are only compared when the map changes
+        }
+        return last.fieldNames;
+    }
+
+    public boolean hasSameNames(Set<String> otherNames){
+        return this.fieldNames.size() == otherNames.size() && this.fieldNames.containsAll(otherNames);
+    }
+
+    //Returns the longest field name the text starts with (from the given index), or null if none does
+    public String longestMatch(String text, int fromIndex){
+        int state = 0;
+        String longestName = terminalNames[0];
+        for(int charIdx = fromIndex; charIdx < text.length(); charIdx++){
+            int transitionIdx = Arrays.binarySearch(transitionChars[state], text.charAt(charIdx));
+            if(transitionIdx < 0){
+                break;
+            }
+
+            state = transitionStates[state][transitionIdx];
+            if(terminalNames[state] != null){
+                longestName = terminalNames[state];
+            }
+        }
+        return longestName;
+    }
+
+    private static final class LastEvaluated {
+        private Map<String, String> dynamicFields = null;
+        private FieldNameTrie fieldNames = Empty;
+    }
+}
@@ -0,0 +1,230 @@
+package com.sixsense.utillity;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/*Evaluates internal commands - commands on the INTERNAL channel, which transform values the session already holds without a round trip to any shell
+ * The command text is evaluated against the session fields first (like any other command), and then interpreted as one of the following:
+ *     expr <arithmetic>                e.g. expr $var.counter + 1          integer arithmetic (+ - * / % and parentheses). Backslashes are ignored, so shell escaped expressions (e.g. 2 \* 3) work as well
+ *     slice <from> <to> <text>         e.g. slice 0 -1 $var.line           the characters of text from (inclusive) to (exclusive). Negative indices count from the end of the text
+ *     field <index> <text>             e.g. field 3 $var.parsing.chassis   the index'th whitespace separated field of text (like awk '{print $3}'). Negative indices count from the last field
+ *     split <separator> <index> <text> e.g. split : 2 $var.pair            the index'th field of text, separated by a literal separator
+ *     capture <regex> <text>           e.g. capture 'v(\d+)' $var.version  the first capturing group of the first match of regex in text (or the whole match, if the regex has no groups)
+ *
+ * Arguments may be single quoted if they contain spaces, with quotes inside them doubled (e.g. 'it''s'). The text is always the rest of the command, as is (so evaluated values never have to be quoted)
+ * Fields and slices out of range, and regexes which do not match, evaluate to an empty string*/
+public class InternalCommandInterpreter {
+    private InternalCommandInterpreter(){
+        /*Empty private constructor - no instances of this class should be created */
+    }
+
+    //Throws an IllegalArgumentException if the command is not a valid internal command
+    public static String evaluate(String commandText){
+        Arguments arguments = new Arguments(commandText);
+        String function = arguments.next();
+        switch (function){
+            case "expr":
+                String expression = arguments.rest();
+                try {
+                    return Long.toString(new ArithmeticParser(expression).parse());
+                }catch (ArithmeticException e){
+                    throw new IllegalArgumentException("Arithmetic expression " + expression + " overflows");
+                }
+            case "slice":
+                return slice(arguments.nextInteger(), arguments.nextInteger(), arguments.rest());
+            case "field":
+                return field(arguments.nextInteger(), arguments.rest().strip().split("\\s+"));
+            case "split":
+                String separator = arguments.next();
+                return field(arguments.nextInteger(), arguments.rest().split(Pattern.quote(separator), -1));
+            case "capture":
+                return capture(arguments.next(), arguments.rest());
+            default:
+                throw new IllegalArgumentException("Unknown internal command " + function);
+        }
+    }
+
+    //Quotes an argument, so it is read back as is no matter which characters it contains
+    public static String quote(String argument){
+        return "'" + argument.replace("'", "''") + "'";
+    }
+
+    private static String slice(int from, int to, String text){
+        int beginIdx = Math.min(Math.max(from < 0 ? text.length() + from : from, 0), text.length());
+        int endIdx = Math.min(Math.max(to < 0 ? text.length() + to : to, 0), text.length());
+        return beginIdx < endIdx ? text.substring(beginIdx, endIdx) : "";
+    }
+
+    //Fields are numbered from 1, like in awk
+    private static String field(int index, String[] fields){
+        int fieldIdx = index < 0 ? fields.length + index : index - 1;
+        return fieldIdx >= 0 && fieldIdx < fields.length ? fields[fieldIdx] : "";
+    }
+
+    private static String capture(String regex, String text){
+        try {
+            Matcher matcher = Pattern.compile(regex).matcher(text);
+            if(!matcher.find()){
+                return "";
+            }
+            String captured = matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+            return captured != null ? captured : "";
+        }catch (PatternSyntaxException e){
+            throw new IllegalArgumentException("Invalid regex " + regex + ". Caused by: " + e.getDescription());
+        }
+    }
+
+    //Splits the leading arguments of a command, leaving the rest of the command as is
+    private static class Arguments {
+        private final String commandText;
+        private int position = 0;
+
+        private Arguments(String commandText) {
+            this.commandText = commandText;
+        }
+
+        private String next(){
+            skipWhitespace();
+            if(this.position == this.commandText.length()){
+                throw new IllegalArgumentException("Internal command " + this.commandText + " is missing arguments");
+            }
+
+            int argumentStart = this.position;
+            if(this.commandText.charAt(this.position) == '\''){
+                return nextQuoted();
+            }
+
+            while(this.position < this.commandText.length() && !Character.isWhitespace(this.commandText.charAt(this.position))){
+                this.position++;
+            }
+            return this.commandText.substring(argumentStart, this.position);
+        }
+
+        //A doubled quote inside a quoted argument stands for a single quote
+        private String nextQuoted(){
+            StringBuilder argument = new StringBuilder();
+            int segmentStart = this.position + 1;
+            while(true){
+                int closingQuote = this.commandText.indexOf('\'', segmentStart);
+                if(closingQuote < 0){
+                    throw new IllegalArgumentException("Internal command " + this.commandText + " has an unterminated quote");
+                }
+
+                argument.append(this.commandText, segmentStart, closingQuote);
+                if(closingQuote + 1 < this.commandText.length() && this.commandText.charAt(closingQuote + 1) == '\''){
+                    argument.append('\'');
+                    segmentStart = closingQuote + 2;
+                }else{
+                    this.position = closingQuote + 1;
+                    return argument.toString();
+                }
+            }
+        }
+
+        private int nextInteger(){
+            String argument = next();
+            try {
+                return Integer.parseInt(argument);
+            }catch (NumberFormatException e){
+                throw new IllegalArgumentException("Internal command argument " + argument + " is not a number");
+            }
+        }
+
+        //The separating whitespace is skipped, but the text itself is not trimmed
+        private String rest(){
+            if(this.position < this.commandText.length() && Character.isWhitespace(this.commandText.charAt(this.position))){
+                this.position++;
+            }
+            return this.commandText.substring(this.position);
+        }
+
+        private void skipWhitespace(){
+            while(this.position < this.commandText.length() && Character.isWhitespace(this.commandText.charAt(this.position))){
+                this.position++;
+            }
+        }
+    }
+
+    //Recursive descent over integer arithmetic (expression: term {+|- term}, term: factor {*|/|% factor}, factor: [+|-] factor | (expression) | number)
+    private static class ArithmeticParser {
+        private final String expression;
+        private int position = 0;
+
+        private ArithmeticParser(String expression) {
+            this.expression = expression.replace("\\", " ");
+        }
+
+        private long parse(){
+            long result = parseExpression();
+            if(peek() != 0){
+                throw new IllegalArgumentException("Unexpected character '" + peek() + "' in arithmetic expression " + this.expression);
+            }
+            return result;
+        }
+
+        private long parseExpression(){
+            long result = parseTerm();
+            while(peek() == '+' || peek() == '-'){
+                char operator = this.expression.charAt(this.position++);
+                long operand = parseTerm();
+                result = operator == '+' ? Math.addExact(result, operand) : Math.subtractExact(result, operand);
+            }
+            return result;
+        }
+
+        private long parseTerm(){
+            long result = parseFactor();
+            while(peek() == '*' || peek() == '/' || peek() == '%'){
+                char operator = this.expression.charAt(this.position++);
+                long operand = parseFactor();
+                if(operator == '*'){
+                    result = Math.multiplyExact(result, operand);
+                }else if(operand == 0){
+                    throw new IllegalArgumentException("Division by zero in arithmetic expression " + this.expression);
+                }else{
+                    result = operator == '/' ? result / operand : result % operand;
+                }
+            }
+            return result;
+        }
+
+        private long parseFactor(){
+            char next = peek();
+            if(next == '-' || next == '+'){
+                this.position++;
+                long operand = parseFactor();
+                return next == '-' ? Math.negateExact(operand) : operand;
+            }else if(next == '('){
+                this.position++;
+                long result = parseExpression();
+                if(peek() != ')'){
+                    throw new IllegalArgumentException("Missing closing parenthesis in arithmetic expression " + this.expression);
+                }
+                this.position++;
+                return result;
+            }
+
+            int numberStart = this.position;
+            while(this.position < this.expression.length() && Character.isDigit(this.expression.charAt(this.position))){
+                this.position++;
+            }
+            if(numberStart == this.position){
+                throw new IllegalArgumentException("Expected a number at position " + numberStart + " of arithmetic expression " + this.expression);
+            }
+            try {
+                return Long.parseLong(this.expression.substring(numberStart, this.position));
+            }catch (NumberFormatException e){
+                throw new IllegalArgumentException("Number out of range in arithmetic expression " + this.expression);
+            }
+        }
+
+        //Returns the next non whitespace character, or 0 at the end of the expression
+        private char peek(){
+            while(this.position < this.expression.length() && Character.isWhitespace(this.expression.charAt(this.position))){
+                this.position++;
+            }
+            return this.position < this.expression.length() ? this.expression.charAt(this.position) : 0;
+        }
+    }
+}
@@ -10,6 +10,8 @@ import com.sixsense.model.retention.DataType;
 import com.sixsense.model.retention.RetentionMode;
 import com.sixsense.model.retention.ResultRetention;
 
+import java.time.Duration;
+
 public class InternalCommands {
     private InternalCommands(){
         /*Empty private constructor - no instances of this class should be created */
@@ -19,7 +21,7 @@ public class InternalCommands {
         ICommand lastChunk = new Command()
             .withChannelName(channelType)
             .withCommandText("")
-            .withMinimalSecondsToResponse(2)
+            .withMinimalTimeToResponse(Duration.ofMillis(500)) //long enough for the whole prompt to arrive, even from remote devices
             .withSecondsToTimeout(10)
             .withUseRawOutput(true)
             .addRetentionPipe(new FirstLinePipe())
@@ -71,12 +73,32 @@ public class InternalCommands {
         return lastChunk.chainCommands(currentChunk);
     }
 
+    //Assigns the result of an integer arithmetic expression (e.g. "$var.block.counter + 1") to a session variable
     public static Command assignValue(String assignedField, String expression) {
+        return internalCommand(assignedField, "expr " + expression);
+    }
+
+    //Assigns the characters of text from (inclusive) to (exclusive) to a session variable. Negative indices count from the end of the text
+    public static Command sliceValue(String assignedField, int from, int to, String text) {
+        return internalCommand(assignedField, "slice " + from + " " + to + " " + text);
+    }
+
+    //Assigns the fieldIndex'th whitespace separated field of text (counting from 1, like awk) to a session variable
+    public static Command extractField(String assignedField, int fieldIndex, String text) {
+        return internalCommand(assignedField, "field " + fieldIndex + " " + text);
+    }
+
+    //Assigns the first capturing group of the first match of regex in text to a session variable
+    public static Command captureValue(String assignedField, String regex, String text) {
+        return internalCommand(assignedField, "capture " + InternalCommandInterpreter.quote(regex) + " " + text);
+    }
+
+    /*Internal commands are evaluated by the session itself, without a round trip to any shell (see InternalCommandInterpreter)
+     * Commands which evaluate to an empty string (e.g. a regex which did not match) fail, instead of assigning an empty value*/
+    private static Command internalCommand(String assignedField, String commandText) {
         return (Command) new Command()
-            .withChannel(ChannelType.LOCAL)
-            .withCommandText("expr " + expression)
-            .withMinimalSecondsToResponse(1)
-            .withSecondsToTimeout(5)
+            .withChannel(ChannelType.INTERNAL)
+            .withCommandText(commandText)
             .withExpectedOutcome(
                 new LogicalExpression<ExpectedOutcome>().addResolvable(
                     new ExpectedOutcome()
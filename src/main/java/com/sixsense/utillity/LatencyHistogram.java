@@ -0,0 +1,99 @@
+package com.sixsense.utillity;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*Histogram of command latencies (in milliseconds), with a bounded relative error instead of a bounded absolute error
+ * Latencies below 16ms each have their own bucket. Above that, every power of two is split into 8 buckets,
+ * so a percentile is never overestimated by more than 12.5% (latencies up to ~24 days fit in 232 buckets)
+ *
+ * Recording is lock free, and may be done by many sessions at once
+ * Once the maximal amount of samples is reached, all bucket counts are halved - so the histogram keeps adapting to changes in the device's latency,
+ * while older samples still count (decaying races with concurrent recordings, so counts are approximate while it does)*/
+public class LatencyHistogram {
+    private static final int SubBucketBits = 3;
+    private static final int SubBucketCount = 1 << SubBucketBits;
+    private static final int LinearBucketCount = SubBucketCount << 1;
+    private static final int MaximalExponent = 30;
+    private static final int BucketCount = LinearBucketCount + (MaximalExponent - SubBucketBits) * SubBucketCount;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong sampleCount;
+    private final long maximumSamples;
+
+    public LatencyHistogram(long maximumSamples) {
+        this.buckets = new AtomicLongArray(BucketCount);
+        this.sampleCount = new AtomicLong(0);
+        this.maximumSamples = maximumSamples;
+    }
+
+    public void record(long latencyMillis){
+        this.buckets.incrementAndGet(bucketOf(latencyMillis));
+        if(this.sampleCount.incrementAndGet() >= this.maximumSamples){
+            decay();
+        }
+    }
+
+    public long getSampleCount() {
+        return sampleCount.get();
+    }
+
+    /*Returns the highest latency of the bucket the percentile falls in (0 < percentile <= 1), or -1 if nothing was recorded yet
+     * Rounding up is deliberate, since percentiles are used to decide how long to wait for a command*/
+    public long getPercentile(double percentile){
+        long samples = 0;
+        for(int bucketIdx = 0; bucketIdx < BucketCount; bucketIdx++){
+            samples += this.buckets.get(bucketIdx);
+        }
+        if(samples == 0){
+            return -1;
+        }
+
+        long rank = Math.max((long)Math.ceil(percentile * samples), 1);
+        long cumulativeCount = 0;
+        for(int bucketIdx = 0; bucketIdx < BucketCount; bucketIdx++){
+            cumulativeCount += this.buckets.get(bucketIdx);
+            if(cumulativeCount >= rank){
+                return highestValueOf(bucketIdx);
+            }
+        }
+        return highestValueOf(BucketCount - 1);
+    }
+
+    private synchronized void decay(){
+        if(this.sampleCount.get() < this.maximumSamples){
+            return; //Already decayed by another session
+        }
+
+        long remainingSamples = 0;
+        for(int bucketIdx = 0; bucketIdx < BucketCount; bucketIdx++){
+            long bucketCount = this.buckets.get(bucketIdx);
+            long decayedCount = (bucketCount + 1) / 2; //rounded up, so rare (and slow) latencies are not forgotten at once
+            this.buckets.addAndGet(bucketIdx, decayedCount - bucketCount);
+            remainingSamples += decayedCount;
+        }
+        this.sampleCount.set(remainingSamples);
+    }
+
+    private static int bucketOf(long latencyMillis){
+        long boundedLatency = Math.min(Math.max(latencyMillis, 0), (1L << (MaximalExponent + 1)) - 1);
+        if(boundedLatency < LinearBucketCount){
+            return (int) boundedLatency;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(boundedLatency);
+        int subBucket = (int) (boundedLatency >>> (exponent - SubBucketBits)) & (SubBucketCount - 1);
+        return LinearBucketCount + (exponent - SubBucketBits - 1) * SubBucketCount + subBucket;
+    }
+
+    private static long highestValueOf(int bucketIdx){
+        if(bucketIdx < LinearBucketCount){
+            return bucketIdx;
+        }
+
+        int exponent = (bucketIdx - LinearBucketCount) / SubBucketCount + SubBucketBits + 1;
+        int subBucket = (bucketIdx - LinearBucketCount) % SubBucketCount;
+        long lowestValue = (long)(SubBucketCount + subBucket) << (exponent - SubBucketBits);
+        return lowestValue + (1L << (exponent - SubBucketBits)) - 1;
+    }
+}
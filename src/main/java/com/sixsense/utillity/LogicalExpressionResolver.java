@@ -3,10 +3,15 @@ package com.sixsense.utillity;
 import com.sixsense.model.logic.*;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class LogicalExpressionResolver {
+    //Expected outcomes are resolved again on every chunk of output, so regular expressions which could not be compiled in advance are compiled once and cached
+    private static final int MaximumCachedPatterns = 1024;
+    private static final Map<String, Pattern> compiledPatterns = new ConcurrentHashMap<>();
+
     private LogicalExpressionResolver(){
         /*Empty private constructor - no instances of this class should be created */
     }
@@ -18,61 +23,23 @@ public class LogicalExpressionResolver {
 
     //resolves logical expressions composed of expected outcomes
     public static ExpressionResult resolveLogicalExpression(String commandOutput, Map<String, String> sessionFields, LogicalExpression<? extends IResolvable> logicalExpression){
-        if(logicalExpression.getResolvableExpressions().isEmpty()){
-            return ExpressionResult.defaultOutcome();
-        }
+        return resolveLogicalExpression(commandOutput, null, sessionFields, logicalExpression);
+    }
 
-        ExpressionResult expressionResult;
-        switch (logicalExpression.getLogicalCondition()) {
-            case OR: {
-                for (IResolvable resolvable : logicalExpression.getResolvableExpressions()) {
-                    expressionResult = resolve(commandOutput, sessionFields, resolvable);
-                    if (expressionResult.isResolved()) {
-                        return expressionResult;
-                    }
-                }
-                return ExpressionResult.executionError(Literals.CommandDidNotReachOutcome);
-            }
-            case NOR: {
-                for (IResolvable resolvable : logicalExpression.getResolvableExpressions()) {
-                    expressionResult = resolve(commandOutput, sessionFields, resolvable);
-                    if (expressionResult.isResolved()) {
-                        return ExpressionResult.executionError(Literals.CommandDidNotReachOutcome);
-                    }
-                }
-                return ExpressionResult.defaultOutcome();
-            }
-            case AND: {
-                for (IResolvable resolvable : logicalExpression.getResolvableExpressions()) {
-                    expressionResult = resolve(commandOutput, sessionFields, resolvable);
-                    if (!expressionResult.isResolved()) {
-                        return ExpressionResult.executionError(Literals.CommandDidNotReachOutcome);
-                    }
-                }
-                return ExpressionResult.defaultOutcome();
-            }
-            case NAND: {
-                for (IResolvable resolvable : logicalExpression.getResolvableExpressions()) {
-                    expressionResult = resolve(commandOutput, sessionFields, resolvable);
-                    if (!expressionResult.isResolved()) {
-                        return expressionResult;
-                    }
-                }
-                return ExpressionResult.executionError(Literals.CommandDidNotReachOutcome);
-            }
-            default: {
-                return ExpressionResult.executionError(Literals.UnsuportedBinaryRelation);
-            }
-        }
+    /*resolves logical expressions composed of expected outcomes, while the command output is still being received
+     * CONTAINS/NOT_CONTAINS outcomes are looked up in the outcome matcher (which has already been fed with the command output) instead of scanning the entire output again
+     *
+     * Expressions are compiled when first resolved (see CompiledExpression), so the returned results are shared and must not be modified*/
+    public static ExpressionResult resolveLogicalExpression(String commandOutput, StreamingOutcomeMatcher outcomeMatcher, Map<String, String> sessionFields, LogicalExpression<? extends IResolvable> logicalExpression){
+        return logicalExpression.compile().resolve(commandOutput, outcomeMatcher, sessionFields);
     }
 
-    private static ExpressionResult resolve(String commandOutput, Map<String, String> sessionFields, IResolvable resolvable){
+    //Resolves a single leaf without compiling it (used for leaves modified after their expression was compiled)
+    static ExpressionResult resolveLeaf(String commandOutput, StreamingOutcomeMatcher outcomeMatcher, Map<String, String> sessionFields, IFlowConnector resolvable){
         if(resolvable instanceof ExecutionCondition){
             return evaluateAndResolveCondition((ExecutionCondition)resolvable, sessionFields);
         }else if(resolvable instanceof ExpectedOutcome) {
-            return evaluateAndResolveOutcome(commandOutput, (ExpectedOutcome)resolvable, sessionFields);
-        }else if(resolvable instanceof LogicalExpression){
-            return resolveLogicalExpression(commandOutput, sessionFields, (LogicalExpression<? extends IResolvable>)resolvable);
+            return evaluateAndResolveOutcome(commandOutput, outcomeMatcher, (ExpectedOutcome)resolvable, sessionFields);
         }
         throw new IllegalArgumentException("Cannot resolve expressions of type " + resolvable.getClass().getSimpleName());
     }
@@ -82,24 +49,24 @@ public class LogicalExpressionResolver {
         String conditionValue = CommandUtils.evaluateAgainstDynamicFields(executionCondition.getExpectedValue(), sessionFields);
         ExecutionCondition withExpectedValue = executionCondition.deepClone().withExpectedValue(conditionValue);
 
-        return LogicalExpressionResolver.resolveBinaryOperand(conditionInput, withExpectedValue);
+        return LogicalExpressionResolver.resolveBinaryOperand(conditionInput, null, withExpectedValue);
     }
 
-    private static ExpressionResult evaluateAndResolveOutcome(String commandOutput, ExpectedOutcome possibleOutcome, Map<String, String> sessionFields){
+    private static ExpressionResult evaluateAndResolveOutcome(String commandOutput, StreamingOutcomeMatcher outcomeMatcher, ExpectedOutcome possibleOutcome, Map<String, String> sessionFields){
         String outcomeValue = CommandUtils.evaluateAgainstDynamicFields(possibleOutcome.getExpectedValue(), sessionFields);
         ExpectedOutcome withExpectedValue = possibleOutcome.deepClone().withExpectedValue(outcomeValue);
 
-        return LogicalExpressionResolver.resolveBinaryOperand(commandOutput, withExpectedValue);
+        return LogicalExpressionResolver.resolveBinaryOperand(commandOutput, outcomeMatcher, withExpectedValue);
     }
     
-    private static ExpressionResult resolveBinaryOperand(String output, IFlowConnector expectedOutcome){
+    private static ExpressionResult resolveBinaryOperand(String output, StreamingOutcomeMatcher outcomeMatcher, IFlowConnector expectedOutcome){
         try{
             boolean evaluation;
             switch (expectedOutcome.getBinaryRelation()){
                 case EQUALS: evaluation = expectEquals(output, expectedOutcome); break;
                 case NOT_EQUALS: evaluation = expectNotEquals(output, expectedOutcome); break;
-                case CONTAINS: evaluation = expectContains(output, expectedOutcome); break;
-                case NOT_CONTAINS: evaluation = expectDoesNotContain(output, expectedOutcome); break;
+                case CONTAINS: evaluation = expectContains(output, outcomeMatcher, expectedOutcome); break;
+                case NOT_CONTAINS: evaluation = expectDoesNotContain(output, outcomeMatcher, expectedOutcome); break;
                 case CONTAINED_BY: evaluation = expectContainedBy(output, expectedOutcome); break;
                 case NOT_CONTAINED_BY: evaluation = expectNotContainedBy(output, expectedOutcome); break;
                 case STARTS_WITH: evaluation = expectStartsWith(output, expectedOutcome); break;
@@ -126,12 +93,12 @@ public class LogicalExpressionResolver {
         return !output.equals(expectedOutcome.getExpectedValue());
     }
 
-    private static boolean expectContains(String output, IFlowConnector expectedOutcome){
-        return output.contains(expectedOutcome.getExpectedValue());
+    private static boolean expectContains(String output, StreamingOutcomeMatcher outcomeMatcher, IFlowConnector expectedOutcome){
+        return contains(output, expectedOutcome.getExpectedValue(), outcomeMatcher);
     }
 
-    private static boolean expectDoesNotContain(String output, IFlowConnector expectedOutcome){
-        return !output.contains(expectedOutcome.getExpectedValue());
+    private static boolean expectDoesNotContain(String output, StreamingOutcomeMatcher outcomeMatcher, IFlowConnector expectedOutcome){
+        return !expectContains(output, outcomeMatcher, expectedOutcome);
     }
 
     private static boolean expectContainedBy(String output, IFlowConnector expectedOutcome){
@@ -176,9 +143,29 @@ public class LogicalExpressionResolver {
     }
 
     private static boolean expectMatchesRegex(String output, IFlowConnector expectedOutcome) throws NumberFormatException {
-        Pattern expectedPattern = Pattern.compile(expectedOutcome.getExpectedValue());
+        Pattern expectedPattern = compilePattern(expectedOutcome.getExpectedValue());
         Matcher patternMatcher = expectedPattern.matcher(output);
         return patternMatcher.find();
     }
 
+    static boolean contains(String output, String expectedValue, StreamingOutcomeMatcher outcomeMatcher){
+        if(outcomeMatcher != null && outcomeMatcher.isTracked(expectedValue)){
+            return outcomeMatcher.contains(expectedValue);
+        }
+        return output.contains(expectedValue);
+    }
+
+    //Patterns with dynamic fields cannot be compiled in advance, so they are compiled once per evaluated value and cached
+    static Pattern compilePattern(String regex){
+        Pattern expectedPattern = compiledPatterns.get(regex);
+        if(expectedPattern == null){
+            expectedPattern = Pattern.compile(regex);
+            if(compiledPatterns.size() >= MaximumCachedPatterns){
+                compiledPatterns.clear(); //Expected values may contain dynamic fields, so we do not let the cache grow indefinitely
+            }
+            compiledPatterns.put(regex, expectedPattern);
+        }
+        return expectedPattern;
+    }
+
 }
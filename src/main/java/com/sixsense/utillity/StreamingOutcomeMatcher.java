@@ -0,0 +1,202 @@
+package com.sixsense.utillity;
+
+import com.sixsense.model.logic.*;
+
+import java.util.*;
+
+/*Finds the literal values of a command's expected outcomes in it's output, as the output keeps arriving
+ * All CONTAINS/NOT_CONTAINS literals of a command are compiled once into a single Aho-Corasick automaton, so the output is scanned once for all of them
+ * (instead of once per outcome, on every wakeup)
+ *
+ * The parsed output is fed as a stable prefix (which will not change for the rest of the command) followed by a volatile suffix (e.g. the line still being written)
+ * The stable prefix is scanned only once and matches found in it are remembered, while the volatile suffix is re-scanned on every wakeup,
+ * starting from the automaton state at the end of the prefix (so matches crossing the boundary are found as well)
+ *
+ * A matcher is created per command execution, and is not thread safe*/
+public class StreamingOutcomeMatcher {
+    private final Map<String, Integer> literalIds; //key: literal value, value: literal id
+
+    //Automaton, in arrays indexed by state (state 0 is the root)
+    private final char[][] transitionChars; //sorted, for binary search
+    private final int[][] transitionStates;
+    private final int[] failureStates;
+    private final int[][] matchedLiterals; //ids of all literals ending at each state (including the ones reached through failure links)
+
+    //Scan state
+    private final boolean[] foundInStableOutput;
+    private final boolean[] foundInVolatileOutput;
+    private long outputRevision = -1;
+    private int stablePosition = 0;
+    private int stableState = 0;
+
+    private StreamingOutcomeMatcher(List<String> literals) {
+        this.literalIds = new HashMap<>();
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> literalsPerState = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        literalsPerState.add(new ArrayList<>());
+
+        //1) Build a trie of all literals
+        for(String literal : literals){
+            if(literalIds.containsKey(literal)){
+                continue;
+            }
+
+            int state = 0;
+            for(int charIdx = 0; charIdx < literal.length(); charIdx++){
+                Integer nextState = trie.get(state).get(literal.charAt(charIdx));
+                if(nextState == null){
+                    nextState = trie.size();
+                    trie.get(state).put(literal.charAt(charIdx), nextState);
+                    trie.add(new TreeMap<>());
+                    literalsPerState.add(new ArrayList<>());
+                }
+                state = nextState;
+            }
+
+            int literalId = literalIds.size();
+            literalIds.put(literal, literalId);
+            literalsPerState.get(state).add(literalId);
+        }
+
+        int stateCount = trie.size();
+        this.transitionChars = new char[stateCount][];
+        this.transitionStates = new int[stateCount][];
+        this.failureStates = new int[stateCount];
+        this.matchedLiterals = new int[stateCount][];
+        for(int state = 0; state < stateCount; state++){
+            Map<Character, Integer> transitions = trie.get(state);
+            transitionChars[state] = new char[transitions.size()];
+            transitionStates[state] = new int[transitions.size()];
+            int transitionIdx = 0;
+            for(Map.Entry<Character, Integer> transition : transitions.entrySet()){
+                transitionChars[state][transitionIdx] = transition.getKey();
+                transitionStates[state][transitionIdx] = transition.getValue();
+                transitionIdx++;
+            }
+        }
+
+        //2) Link each state to the state of it's longest proper suffix (breadth first, so shorter suffixes are always linked first)
+        Deque<Integer> stateQueue = new ArrayDeque<>();
+        matchedLiterals[0] = new int[0];
+        for(int childState : transitionStates[0]){
+            failureStates[childState] = 0;
+            stateQueue.add(childState);
+        }
+
+        while(!stateQueue.isEmpty()){
+            int state = stateQueue.poll();
+            List<Integer> literalsForState = literalsPerState.get(state);
+            int[] inheritedLiterals = matchedLiterals[failureStates[state]];
+            int[] literalsAtState = new int[literalsForState.size() + inheritedLiterals.length];
+            for(int literalIdx = 0; literalIdx < literalsForState.size(); literalIdx++){
+                literalsAtState[literalIdx] = literalsForState.get(literalIdx);
+            }
+            System.arraycopy(inheritedLiterals, 0, literalsAtState, literalsForState.size(), inheritedLiterals.length);
+            matchedLiterals[state] = literalsAtState;
+
+            for(int transitionIdx = 0; transitionIdx < transitionChars[state].length; transitionIdx++){
+                int childState = transitionStates[state][transitionIdx];
+                int fallbackState = failureStates[state];
+                int failureState = transitionFrom(fallbackState, transitionChars[state][transitionIdx]);
+                while(failureState < 0 && fallbackState != 0){
+                    fallbackState = failureStates[fallbackState];
+                    failureState = transitionFrom(fallbackState, transitionChars[state][transitionIdx]);
+                }
+                failureStates[childState] = failureState < 0 ? 0 : failureState;
+                stateQueue.add(childState);
+            }
+        }
+
+        this.foundInStableOutput = new boolean[literalIds.size()];
+        this.foundInVolatileOutput = new boolean[literalIds.size()];
+    }
+
+    /*Compiles the literals of all CONTAINS/NOT_CONTAINS outcomes in the expression (evaluated against the current session fields)
+     * The empty literal is contained in any output, so there is no need to search for it*/
+    public static StreamingOutcomeMatcher compile(LogicalExpression<? extends IResolvable> expectedOutcome, Map<String, String> sessionFields){
+        List<String> literals = new ArrayList<>();
+        collectLiterals(expectedOutcome, sessionFields, literals);
+        return new StreamingOutcomeMatcher(literals);
+    }
+
+    private static void collectLiterals(LogicalExpression<? extends IResolvable> logicalExpression, Map<String, String> sessionFields, List<String> literals){
+        for(IResolvable resolvable : logicalExpression.getResolvableExpressions()){
+            if(resolvable instanceof LogicalExpression){
+                collectLiterals((LogicalExpression<? extends IResolvable>)resolvable, sessionFields, literals);
+            }else if(resolvable instanceof ExpectedOutcome){
+                ExpectedOutcome outcome = (ExpectedOutcome)resolvable;
+                BinaryRelation relation = outcome.getBinaryRelation();
+                if(relation == BinaryRelation.CONTAINS || relation == BinaryRelation.NOT_CONTAINS){
+                    String literal = CommandUtils.evaluateAgainstDynamicFields(outcome.getExpectedValue(), sessionFields);
+                    if(!literal.isEmpty()) {
+                        literals.add(literal);
+                    }
+                }
+            }
+        }
+    }
+
+    /*Feeds the current output of the command
+     * The first {stableLength} characters of the output must not change as long as the output revision remains the same. A new revision restarts the scan*/
+    public void feed(String output, int stableLength, long outputRevision){
+        if(this.literalIds.isEmpty()){
+            return;
+        }
+
+        if(outputRevision != this.outputRevision){
+            this.outputRevision = outputRevision;
+            this.stablePosition = 0;
+            this.stableState = 0;
+            Arrays.fill(this.foundInStableOutput, false);
+        }
+
+        int state = this.stableState;
+        int stableEnd = Math.min(stableLength, output.length());
+        for(; this.stablePosition < stableEnd; this.stablePosition++){
+            state = step(state, output.charAt(this.stablePosition));
+            markMatches(state, this.foundInStableOutput);
+        }
+        this.stableState = state;
+
+        Arrays.fill(this.foundInVolatileOutput, false);
+        for(int position = this.stablePosition; position < output.length(); position++){
+            state = step(state, output.charAt(position));
+            markMatches(state, this.foundInVolatileOutput);
+        }
+    }
+
+    //Returns true if the literal was compiled into this matcher (otherwise, the caller should search the output by itself)
+    public boolean isTracked(String literal){
+        return this.literalIds.containsKey(literal);
+    }
+
+    //Returns true if the literal appeared in the output last fed to this matcher
+    public boolean contains(String literal){
+        Integer literalId = this.literalIds.get(literal);
+        return literalId != null && (this.foundInStableOutput[literalId] || this.foundInVolatileOutput[literalId]);
+    }
+
+    private int step(int state, char nextChar){
+        while(true){
+            int nextState = transitionFrom(state, nextChar);
+            if(nextState >= 0){
+                return nextState;
+            }else if(state == 0){
+                return 0;
+            }
+            state = this.failureStates[state];
+        }
+    }
+
+    private int transitionFrom(int state, char nextChar){
+        int transitionIdx = Arrays.binarySearch(this.transitionChars[state], nextChar);
+        return transitionIdx < 0 ? -1 : this.transitionStates[state][transitionIdx];
+    }
+
+    private void markMatches(int state, boolean[] found){
+        for(int literalId : this.matchedLiterals[state]){
+            found[literalId] = true;
+        }
+    }
+}
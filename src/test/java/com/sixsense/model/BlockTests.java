@@ -2,6 +2,11 @@ package com.sixsense.model;
 
 import com.sixsense.SixSenseBaseTest;
 import com.sixsense.model.commands.*;
+import com.sixsense.model.logic.BinaryRelation;
+import com.sixsense.model.logic.ExecutionCondition;
+import com.sixsense.model.logic.ExpectedOutcome;
+import com.sixsense.model.logic.LogicalCondition;
+import com.sixsense.model.logic.LogicalExpression;
 import com.sixsense.utillity.CommandUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -9,6 +14,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.List;
+import java.util.Map;
 
 //It might be worth to add test cases for the cartesian product of chaining any two ICommands
 @Test(groups = {"model"})
@@ -119,4 +125,82 @@ public class BlockTests extends SixSenseBaseTest {
 
         Assert.assertTrue(p1Throwed && p2Throwed);
     }
+
+    public void testBlockCursorRepeats(){
+        Command c1 = new Command();
+        Command c2 = new Command();
+        Block repeatingBlock = new Block()
+            .addChildBlock(c1)
+            .addChildBlock(c2)
+            .withRepeatCondition(new LogicalExpression<ExecutionCondition>()
+                .addResolvable(new ExecutionCondition("$var.test.repeat", BinaryRelation.EQUALS, "true"))
+            );
+
+        //each cursor iterates the same block independently, and the block repeats as long as the repeat condition is resolved
+        Map<String, String> repeating = Map.of("var.test.repeat", "true");
+        Map<String, String> halting = Map.of("var.test.repeat", "false");
+        BlockCursor firstCursor = new BlockCursor(repeatingBlock);
+        BlockCursor secondCursor = new BlockCursor(repeatingBlock);
+
+        Assert.assertSame(firstCursor.next(repeating), c1);
+        Assert.assertSame(firstCursor.next(repeating), c2);
+        Assert.assertSame(secondCursor.next(halting), c1);
+        Assert.assertSame(firstCursor.next(repeating), c1);
+        Assert.assertSame(firstCursor.next(halting), c2);
+        Assert.assertNull(firstCursor.next(halting));
+        Assert.assertSame(secondCursor.next(halting), c2);
+        Assert.assertNull(secondCursor.next(halting));
+        Assert.assertNull(new BlockCursor(new Block()).next(repeating));
+    }
+
+    public void testSharedExecutionPlan(){
+        Operation operation = new Operation().withExecutionBlock(new Block().addChildBlock(new Command().withCommandText("echo")));
+        Operation firstClone = operation.cloneWithSharedPlan();
+        Operation secondClone = operation.cloneWithSharedPlan();
+
+        //clones share the compiled plan of the original operation (instead of cloning the execution block)
+        Assert.assertSame(firstClone.compile(), operation.compile());
+        Assert.assertSame(secondClone.getExecutionBlock(), firstClone.getExecutionBlock());
+        Assert.assertNotEquals(secondClone.getUUID(), firstClone.getUUID());
+        Assert.assertEquals(firstClone.getExecutionBlock(), operation.getExecutionBlock());
+
+        //replacing the execution block discards the compiled plan
+        firstClone.setExecutionBlock(new Command().withCommandText("pwd"));
+        Assert.assertNotEquals(firstClone.compile(), operation.compile());
+    }
+
+    public void testFrozenExecutionPlan(){
+        Operation operation = new Operation().withExecutionBlock(new Block()
+            .addChildBlock(new Command().withCommandText("echo").withExpectedOutcome(new LogicalExpression<ExpectedOutcome>().addResolvable(new ExpectedOutcome(BinaryRelation.CONTAINS, "echo"))))
+            .withRepeatCondition(new LogicalExpression<ExecutionCondition>().addResolvable(new ExecutionCondition("$sixsense.loop", BinaryRelation.EQUALS, "true")))
+        );
+        ExecutionPlan plan = operation.compile();
+        Block sharedBlock = (Block)operation.cloneWithSharedPlan().getExecutionBlock();
+        Command sharedCommand = (Command)sharedBlock.getChildBlocks().get(0);
+        int planHash = plan.hashCode();
+
+        //the block of a compiled plan is shared by all executions, so no part of it may be modified
+        Assert.assertTrue(sharedBlock.isFrozen());
+        Assert.assertThrows(UnsupportedOperationException.class, () -> sharedBlock.addChildBlock(new Command()));
+        Assert.assertThrows(UnsupportedOperationException.class, () -> sharedBlock.getRepeatCondition().setLogicalCondition(LogicalCondition.AND));
+        Assert.assertThrows(UnsupportedOperationException.class, () -> sharedBlock.reset());
+        Assert.assertThrows(UnsupportedOperationException.class, () -> sharedCommand.setCommandText("rm -rf /tmp"));
+        Assert.assertThrows(UnsupportedOperationException.class, () -> sharedCommand.addDynamicField("sixsense.dir", "/tmp"));
+        Assert.assertThrows(UnsupportedOperationException.class, () -> sharedCommand.getOutputPipes().clear());
+        Assert.assertThrows(UnsupportedOperationException.class, () -> sharedCommand.getSaveTo().setValue("leaked"));
+        Assert.assertThrows(UnsupportedOperationException.class, () -> sharedCommand.getExpectedOutcome().getExpressionResult().setResolved(true));
+        ExpectedOutcome sharedOutcome = (ExpectedOutcome)sharedCommand.getExpectedOutcome().getResolvableExpressions().iterator().next();
+        Assert.assertThrows(UnsupportedOperationException.class, () -> sharedOutcome.setExpectedValue("other"));
+        Assert.assertEquals(plan.hashCode(), planHash);
+        Assert.assertEquals(operation.compile().hashCode(), sharedBlock.hashCode());
+
+        //the operation's own block is not part of the plan, and deep clones of the plan's block can be modified
+        Assert.assertFalse(operation.getExecutionBlock().isFrozen());
+        Block clonedBlock = sharedBlock.deepClone();
+        Assert.assertFalse(clonedBlock.isFrozen());
+        Assert.assertFalse(clonedBlock.getChildBlocks().get(0).isFrozen());
+        ((Command)clonedBlock.getChildBlocks().get(0)).setCommandText("pwd");
+        clonedBlock.addChildBlock(new Command());
+        Assert.assertEquals(clonedBlock.getChildBlocks().size(), 2);
+    }
 }
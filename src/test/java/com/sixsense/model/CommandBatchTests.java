@@ -0,0 +1,203 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.CommandBatch;
+import com.sixsense.model.commands.Block;
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.logic.ChannelType;
+import com.sixsense.model.logic.CompletionMode;
+import com.sixsense.model.logic.ExpressionResult;
+import com.sixsense.model.logic.ResultStatus;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+@Test(groups = {"model"})
+public class CommandBatchTests extends SixSenseBaseTest {
+    private static final String MarkerPrefix = "__SXB_1a2b3c4d_7_";
+
+    public void testCarrierCommandLine(){
+        CommandBatch batch = new CommandBatch(Arrays.asList(
+            newCommand("hostname;").withTimeToTimeout(Duration.ofSeconds(2)),
+            newCommand("uname -r ; ;").withTimeToTimeout(Duration.ofSeconds(3))
+        ), MarkerPrefix);
+
+        //Trailing separators are stripped, so the command line never contains an empty command
+        Command carrier = batch.getCarrier();
+        Assert.assertEquals(carrier.getCommandText(), "printf '\\n" + MarkerPrefix + "0_%d__\\n' $?; hostname; printf '\\n" + MarkerPrefix + "1_%d__\\n' $?; uname -r");
+        Assert.assertEquals(carrier.getChannelName(), ChannelType.LOCAL.name());
+        Assert.assertEquals(carrier.getCompletionMode(), CompletionMode.Sentinel);
+        Assert.assertEquals(carrier.getTimeToTimeout(), Duration.ofSeconds(5));
+        Assert.assertTrue(carrier.isUseRawOutput());
+    }
+
+    public void testSplit(){
+        CommandBatch batch = newBatch(3);
+        String carrierOutput = String.join("\n",
+            "[SixSensePrompt ~]# printf '\\n" + MarkerPrefix + "0_%d__\\n' $?; first; printf '\\n" + MarkerPrefix + "1_%d__\\n' $?; second; printf '\\n" + MarkerPrefix + "2_%d__\\n' $?; third",
+            "",
+            MarkerPrefix + "0_0__",
+            "first line",
+            "",
+            MarkerPrefix + "1_0__",
+            "second line",
+            "second line, again",
+            MarkerPrefix + "2_3__",
+            "third line"
+        );
+
+        //The echo of the command line is not attributed to any command, and the exit code of each command is printed by the marker after it
+        String[] exitCodes = new String[3];
+        List<List<String>> commandOutputs = batch.split(carrierOutput, exitCodes);
+        Assert.assertEquals(commandOutputs.get(0), List.of("first line"));
+        Assert.assertEquals(commandOutputs.get(1), List.of("second line", "second line, again"));
+        Assert.assertEquals(commandOutputs.get(2), List.of("third line"));
+        Assert.assertEquals(Arrays.asList(exitCodes), Arrays.asList("0", "3", null));
+    }
+
+    public void testMarkerParsing(){
+        CommandBatch batch = newBatch(2);
+        String carrierOutput = String.join("\n",
+            MarkerPrefix + "0_0__",
+            MarkerPrefix + "0_0__", //printed again by the first command, after it's own marker
+            MarkerPrefix + "5_0__", //out of order
+            "__SXB_ffffffff_7_1_0__", //marker of another session
+            MarkerPrefix + "1_x__", //malformed exit code
+            MarkerPrefix + "1_0__ trailing",
+            MarkerPrefix + "1_12__",
+            "last"
+        );
+
+        //Only the next marker in order ends the output of a command. Anything else which looks like a marker is plain output
+        String[] exitCodes = new String[2];
+        List<List<String>> commandOutputs = batch.split(carrierOutput, exitCodes);
+        Assert.assertEquals(commandOutputs.get(0), List.of(
+            MarkerPrefix + "0_0__",
+            MarkerPrefix + "5_0__",
+            "__SXB_ffffffff_7_1_0__",
+            MarkerPrefix + "1_x__",
+            MarkerPrefix + "1_0__ trailing"
+        ));
+        Assert.assertEquals(commandOutputs.get(1), List.of("last"));
+        Assert.assertEquals(exitCodes[0], "12");
+    }
+
+    public void testBatchBoundaries(){
+        CommandBatch batch = newBatch(3);
+
+        //Commands the shell has not started by the time the carrier returned (e.g. once it timed out) have no output at all
+        String[] exitCodes = new String[3];
+        List<List<String>> commandOutputs = batch.split("echo of the command line\n" + MarkerPrefix + "0_0__\nslow output", exitCodes);
+        Assert.assertEquals(commandOutputs.get(0), List.of("slow output"));
+        Assert.assertNull(commandOutputs.get(1));
+        Assert.assertNull(commandOutputs.get(2));
+        Assert.assertEquals(Arrays.asList(exitCodes), Arrays.asList(null, null, null));
+
+        //A command without output still has an (empty) output once it has started
+        exitCodes = new String[3];
+        commandOutputs = batch.split(MarkerPrefix + "0_0__\n" + MarkerPrefix + "1_0__\n\n" + MarkerPrefix + "2_1__\n", exitCodes);
+        Assert.assertEquals(commandOutputs.get(0), List.of());
+        Assert.assertEquals(commandOutputs.get(1), List.of());
+        Assert.assertEquals(commandOutputs.get(2), List.of(""));
+        Assert.assertEquals(Arrays.asList(exitCodes), Arrays.asList("0", "1", null));
+
+        //Nothing is attributed to any command before the first marker
+        commandOutputs = batch.split("echo of the command line", new String[3]);
+        Assert.assertEquals(commandOutputs, Arrays.asList(null, null, null));
+    }
+
+    public void testOutputAttribution(){
+        Command rawCommand = newCommand("cat file").withUseRawOutput(true);
+        Command filteredCommand = newCommand("ls");
+        CommandBatch batch = new CommandBatch(Arrays.asList(rawCommand, filteredCommand), MarkerPrefix);
+        List<List<String>> commandOutputs = batch.split(String.join("\n",
+            MarkerPrefix + "0_0__",
+            "  indented",
+            "",
+            "line",
+            MarkerPrefix + "1_0__",
+            "a    b",
+            "",
+            "c",
+            "[SixSensePrompt ~]# "
+        ), new String[2]);
+
+        //Each command parses it's own part of the output, according to it's own settings
+        Assert.assertEquals(CommandBatch.parse(null, rawCommand, commandOutputs.get(0), "[SixSensePrompt ~]# "), "  indented\n\nline");
+        Assert.assertEquals(CommandBatch.parse(null, filteredCommand, commandOutputs.get(1), "[SixSensePrompt ~]# "), "a b c");
+
+        //Commands which were never resolved share the result of the carrier
+        ExpressionResult firstResult = new ExpressionResult().withResolved(true).withOutcome(ResultStatus.SUCCESS);
+        ExpressionResult carrierResult = ExpressionResult.executionError("carrier failed");
+        batch.setResult(0, firstResult);
+        List<ExpressionResult> results = batch.getResults(carrierResult);
+        Assert.assertSame(results.get(0), firstResult);
+        Assert.assertSame(results.get(1), carrierResult);
+    }
+
+    public void testBatchingEligibility(){
+        Assert.assertTrue(CommandBatch.isBatchable(newCommand("ls"), null));
+        Assert.assertTrue(CommandBatch.isBatchable(newCommand("ls"), ChannelType.LOCAL.name()));
+
+        //Commands on other channels, internal commands, commands with dynamic fields of their own and blocks are never batched
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("ls"), ChannelType.REMOTE.name()));
+        Assert.assertFalse(CommandBatch.isBatchable(new Command().withChannel(ChannelType.INTERNAL).withCommandText("set x 1"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("ls $sixsense.dir").addDynamicField("sixsense.dir", "/tmp"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(new Block().addChildBlock(newCommand("ls")), null));
+        Assert.assertFalse(CommandBatch.isBatchable(null, null));
+    }
+
+    public void testBackgroundCommands(){
+        //A trailing & (or a pipe / logical operator waiting for the next command) cannot be followed by "; " and the next marker
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("sleep 10 &"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("sleep 10 & ;"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("make &&"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("cat file |"), null));
+        Assert.assertTrue(CommandBatch.isBatchable(newCommand("sleep 10 & wait"), null));
+        Assert.assertTrue(CommandBatch.isBatchable(newCommand("ls 2>&1"), null));
+    }
+
+    public void testCommentedCommands(){
+        //A comment would swallow the rest of the command line, including the next marker
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("ls # list files"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("# just a comment"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("ls;# list files"), null));
+        Assert.assertTrue(CommandBatch.isBatchable(newCommand("echo $#"), null));
+        Assert.assertTrue(CommandBatch.isBatchable(newCommand("echo ${#PATH}"), null));
+        Assert.assertTrue(CommandBatch.isBatchable(newCommand("grep -c x#y file"), null));
+    }
+
+    public void testHeredocCommands(){
+        //A heredoc would read the rest of the command line as it's input
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("cat <<EOF"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("cat << 'EOF' > file\nline\nEOF"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("cat <<-EOF"), null));
+        Assert.assertTrue(CommandBatch.isBatchable(newCommand("grep x <<< \"$text\""), null));
+        Assert.assertTrue(CommandBatch.isBatchable(newCommand("sort < file"), null));
+    }
+
+    public void testMultilineCommands(){
+        //Line continuations (and commands spanning several lines) would be written as several command lines
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("ls \\"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("ls \\\n  -la"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("ls\npwd"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand("ls\rpwd"), null));
+        Assert.assertFalse(CommandBatch.isBatchable(newCommand(" ; "), null));
+        Assert.assertTrue(CommandBatch.isBatchable(newCommand("echo a\\ b"), null));
+    }
+
+    private CommandBatch newBatch(int commandCount){
+        Command[] commands = new Command[commandCount];
+        for(int commandIdx = 0; commandIdx < commandCount; commandIdx++){
+            commands[commandIdx] = newCommand("command " + commandIdx);
+        }
+        return new CommandBatch(Arrays.asList(commands), MarkerPrefix);
+    }
+
+    private Command newCommand(String commandText){
+        return new Command().withChannel(ChannelType.LOCAL).withCommandText(commandText);
+    }
+}
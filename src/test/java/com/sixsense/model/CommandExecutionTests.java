@@ -0,0 +1,179 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.CommandExecution;
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.logic.ExpressionResult;
+import com.sixsense.model.logic.ResultStatus;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+@Test(groups = {"model"})
+public class CommandExecutionTests extends SixSenseBaseTest {
+
+    public void testCompletion(){
+        Queue<Runnable> driver = new LinkedList<>();
+        List<Runnable> worker = new ArrayList<>();
+        AtomicInteger advances = new AtomicInteger(0);
+        CommandExecution execution = newExecution(driver, worker, currentExecution -> {
+            //The command finishes on it's second chunk
+            if(advances.incrementAndGet() == 3){
+                currentExecution.complete(() -> new ExpressionResult().withResolved(true).withOutcome(ResultStatus.SUCCESS));
+            }
+        });
+
+        //Chunks received during the minimal time to response are not evaluated on their own
+        execution.onNewChunk();
+        Assert.assertTrue(driver.isEmpty());
+        Assert.assertEquals(execution.getState(), CommandExecution.State.AwaitingMinimalResponse);
+
+        execution.onMinimalResponseElapsed();
+        runAll(driver);
+        execution.onNewChunk();
+        runAll(driver);
+        Assert.assertEquals(advances.get(), 2);
+        Assert.assertFalse(execution.getResult().isDone());
+
+        execution.onNewChunk();
+        runAll(driver);
+        Assert.assertEquals(advances.get(), 3);
+        Assert.assertEquals(execution.getState(), CommandExecution.State.Completed);
+
+        //The result is only completed by the worker, and events fired after completion never advance the command again
+        Assert.assertEquals(worker.size(), 1);
+        Assert.assertFalse(execution.getResult().isDone());
+        worker.get(0).run();
+        Assert.assertEquals(execution.getResult().join().getOutcome(), ResultStatus.SUCCESS);
+
+        execution.onNewChunk();
+        execution.onDeadlineReached();
+        runAll(driver);
+        Assert.assertEquals(advances.get(), 3);
+    }
+
+    public void testTimeout(){
+        Queue<Runnable> driver = new LinkedList<>();
+        List<Runnable> worker = new ArrayList<>();
+        AtomicInteger advances = new AtomicInteger(0);
+        CommandExecution execution = newExecution(driver, worker, currentExecution -> {
+            advances.incrementAndGet();
+            if(currentExecution.isDeadlineReached()){
+                currentExecution.complete(() -> ExpressionResult.defaultOutcome().withMessage("timed out"));
+            }
+        });
+
+        //The deadline ends the minimal time to response as well, so the command is evaluated one last time and completed
+        execution.onDeadlineReached();
+        Assert.assertEquals(execution.getState(), CommandExecution.State.AwaitingOutput);
+        runAll(driver);
+        Assert.assertEquals(advances.get(), 1);
+        Assert.assertEquals(execution.getState(), CommandExecution.State.Completed);
+
+        worker.forEach(Runnable::run);
+        Assert.assertEquals(execution.getResult().join().getMessage(), "timed out");
+    }
+
+    public void testSecondAccessors(){
+        Command command = new Command().withTimeToTimeout(Duration.ofMillis(1500)).withMinimalTimeToResponse(Duration.ofMillis(250));
+
+        //the seconds are truncated from the millisecond durations, and setting the same seconds again keeps the milliseconds (as when both fields are deserialized)
+        Assert.assertEquals(command.getSecondsToTimeout(), 1);
+        Assert.assertEquals(command.getMinimalSecondsToResponse(), 0);
+        command.setSecondsToTimeout(command.getSecondsToTimeout());
+        command.setMinimalSecondsToResponse(command.getMinimalSecondsToResponse());
+        Assert.assertEquals(command.getMillisToTimeout(), 1500);
+        Assert.assertEquals(command.getMinimalMillisToResponse(), 250);
+
+        //other seconds replace the milliseconds entirely
+        command.setSecondsToTimeout(3);
+        command.setMinimalSecondsToResponse(1);
+        Assert.assertEquals(command.getMillisToTimeout(), 3000);
+        Assert.assertEquals(command.getMinimalMillisToResponse(), 1000);
+    }
+
+    public void testCoalescedEvents(){
+        Queue<Runnable> driver = new LinkedList<>();
+        List<Runnable> worker = new ArrayList<>();
+        AtomicInteger advances = new AtomicInteger(0);
+        CommandExecution execution = newExecution(driver, worker, currentExecution -> {
+            //Events fired while the command is being advanced are coalesced into a single additional advance
+            if(advances.incrementAndGet() == 1){
+                for(int chunk = 0; chunk < 10; chunk++){
+                    currentExecution.onNewChunk();
+                }
+            }
+        });
+
+        execution.onMinimalResponseElapsed();
+        for(int chunk = 0; chunk < 100; chunk++){
+            execution.onNewChunk();
+        }
+        Assert.assertEquals(driver.size(), 1);
+        runAll(driver);
+        Assert.assertEquals(advances.get(), 2);
+        Assert.assertTrue(driver.isEmpty());
+
+        //Once drained, the next event is scheduled again
+        execution.onNewChunk();
+        Assert.assertEquals(driver.size(), 1);
+        runAll(driver);
+        Assert.assertEquals(advances.get(), 3);
+    }
+
+    public void testConcurrentEvents() throws InterruptedException {
+        ExecutorService driverPool = Executors.newFixedThreadPool(4);
+        AtomicInteger activeAdvances = new AtomicInteger(0);
+        AtomicInteger overlappingAdvances = new AtomicInteger(0);
+        CommandExecution execution = new CommandExecution(new Command(), null, driverPool, Runnable::run, currentExecution -> {
+            if(activeAdvances.incrementAndGet() > 1){
+                overlappingAdvances.incrementAndGet();
+            }
+            Thread.onSpinWait();
+            activeAdvances.decrementAndGet();
+        });
+
+        try {
+            execution.onMinimalResponseElapsed();
+            Thread[] chunkProducers = new Thread[4];
+            for (int producer = 0; producer < chunkProducers.length; producer++) {
+                chunkProducers[producer] = new Thread(() -> {
+                    for (int chunk = 0; chunk < 10000; chunk++) {
+                        execution.onNewChunk();
+                    }
+                });
+                chunkProducers[producer].start();
+            }
+            for (Thread chunkProducer : chunkProducers) {
+                chunkProducer.join();
+            }
+        }finally {
+            driverPool.shutdown();
+            Assert.assertTrue(driverPool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        //The command is never advanced by more than one driver thread at a time
+        Assert.assertEquals(overlappingAdvances.get(), 0);
+    }
+
+    private CommandExecution newExecution(Queue<Runnable> driver, List<Runnable> worker, Consumer<CommandExecution> advance){
+        return new CommandExecution(new Command(), null, driver::add, worker::add, advance);
+    }
+
+    private void runAll(Queue<Runnable> driver){
+        Runnable task;
+        while((task = driver.poll()) != null){
+            task.run();
+        }
+    }
+}
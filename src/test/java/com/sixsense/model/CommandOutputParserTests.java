@@ -0,0 +1,103 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.ChannelOutputBuffer;
+import com.sixsense.io.CommandOutputParser;
+import com.sixsense.model.commands.Command;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {"model"})
+public class CommandOutputParserTests extends SixSenseBaseTest {
+    private static final String Prompt = "[SixSensePrompt ~]# ";
+    private static final String Sentinel = "__SX_1a2b3c4d_7_";
+    private static final String CommandText = "ls /tmp";
+    private static final String EvaluatedCommand = CommandText + "; printf '\\n" + Sentinel + "%d__\\n' $?";
+
+    public void testSentinelDetection(){
+        ChannelOutputBuffer buffer = new ChannelOutputBuffer();
+        CommandOutputParser parser = newParser(buffer, false);
+
+        buffer.publish(Prompt + EvaluatedCommand + "\nfile1\nfile2\n");
+        Assert.assertEquals(parse(buffer, parser), "file1 file2");
+        Assert.assertFalse(parser.isCommandEndReached());
+        Assert.assertNull(parser.getExitCode());
+
+        //The command has certainly finished once the sentinel is printed, even before the next prompt arrives
+        buffer.publish(Sentinel + "0__\n");
+        Assert.assertEquals(parse(buffer, parser), "file1 file2");
+        Assert.assertTrue(parser.isCommandEndReached());
+        Assert.assertEquals(parser.getExitCode(), "0");
+    }
+
+    public void testExitCodeCapture(){
+        ChannelOutputBuffer buffer = new ChannelOutputBuffer();
+        CommandOutputParser parser = newParser(buffer, false);
+
+        buffer.publish(Prompt + EvaluatedCommand + "\nls: cannot access '/tmp': No such file or directory\n" + Sentinel + "127__\n" + Prompt);
+        Assert.assertEquals(parse(buffer, parser), "ls: cannot access '/tmp': No such file or directory");
+        Assert.assertTrue(parser.isCommandEndReached());
+        Assert.assertEquals(parser.getExitCode(), "127");
+    }
+
+    public void testMarkerStripping(){
+        ChannelOutputBuffer buffer = new ChannelOutputBuffer();
+        CommandOutputParser parser = newParser(buffer, true);
+
+        //Raw output keeps the echo of the command, but neither the sentinel nor the empty line printed before it (when the output already ended with a line break)
+        buffer.publish(Prompt + EvaluatedCommand + "\nfile1\nfile2\n\n" + Sentinel + "0__\n" + Prompt);
+        String parsedOutput = parse(buffer, parser);
+        Assert.assertTrue(parser.isCommandEndReached());
+        Assert.assertEquals(parsedOutput, Prompt + EvaluatedCommand + "\nfile1\nfile2");
+    }
+
+    public void testSentinelSplitAcrossChunks(){
+        ChannelOutputBuffer buffer = new ChannelOutputBuffer();
+        CommandOutputParser parser = newParser(buffer, false);
+
+        buffer.publish(Prompt + EvaluatedCommand + "\nfile1\n__SX_1a2b");
+        Assert.assertEquals(parse(buffer, parser), "file1 __SX_1a2b");
+        Assert.assertFalse(parser.isCommandEndReached());
+
+        //Only complete lines are matched against the sentinel
+        buffer.publish("3c4d_7_");
+        parse(buffer, parser);
+        Assert.assertFalse(parser.isCommandEndReached());
+        Assert.assertNull(parser.getExitCode());
+
+        buffer.publish("2__\n");
+        Assert.assertEquals(parse(buffer, parser), "file1");
+        Assert.assertTrue(parser.isCommandEndReached());
+        Assert.assertEquals(parser.getExitCode(), "2");
+    }
+
+    public void testSentinelLikeOutput(){
+        ChannelOutputBuffer buffer = new ChannelOutputBuffer();
+        CommandOutputParser parser = newParser(buffer, false);
+
+        //The echo of a wrapped command, the marker of a previous command and a malformed marker printed by the command itself are all plain output
+        buffer.publish(Prompt + CommandText + "; printf '\\n\n" + Sentinel + "%d__\\n' $?\n");
+        buffer.publish("__SX_1a2b3c4d_6_0__\n" + Sentinel + "x__\n" + Sentinel + "0__ trailing\n");
+        parse(buffer, parser);
+        Assert.assertFalse(parser.isCommandEndReached());
+        Assert.assertNull(parser.getExitCode());
+
+        buffer.publish(Sentinel + "1__\n" + Prompt);
+        String parsedOutput = parse(buffer, parser);
+        Assert.assertTrue(parser.isCommandEndReached());
+        Assert.assertEquals(parser.getExitCode(), "1");
+        Assert.assertTrue(parsedOutput.contains("__SX_1a2b3c4d_6_0__"), "Parsed output was " + parsedOutput);
+        Assert.assertTrue(parsedOutput.endsWith(Sentinel + "0__ trailing"), "Parsed output was " + parsedOutput);
+    }
+
+    private CommandOutputParser newParser(ChannelOutputBuffer buffer, boolean useRawOutput){
+        Command command = new Command().withCommandText(CommandText).withUseRawOutput(useRawOutput);
+        return new CommandOutputParser(null, buffer, command, Prompt, EvaluatedCommand, Sentinel);
+    }
+
+    private String parse(ChannelOutputBuffer buffer, CommandOutputParser parser){
+        synchronized (buffer) {
+            return parser.parse();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.model.logic.*;
+import com.sixsense.utillity.LogicalExpressionResolver;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+@Test(groups = {"model"})
+public class CompiledExpressionTests extends SixSenseBaseTest {
+    private static final Logger logger = LogManager.getLogger(CompiledExpressionTests.class);
+
+    public void testDynamicOperands(){
+        LogicalExpression<ExecutionCondition> condition = new LogicalExpression<ExecutionCondition>()
+            .withLogicalCondition(LogicalCondition.AND)
+            .addResolvable(new ExecutionCondition("$var.test.count", BinaryRelation.GREATER_THAN, "2"))
+            .addResolvable(new ExecutionCondition("$var.test.name", BinaryRelation.MATCHES_REGEX, "^$var.test.prefix"));
+
+        Map<String, String> sessionFields = Map.of("var.test.count", "3", "var.test.name", "router-1", "var.test.prefix", "rout");
+        Assert.assertTrue(LogicalExpressionResolver.resolveLogicalExpression(sessionFields, condition).isResolved());
+
+        //the same compiled expression is resolved against the current session fields every time
+        sessionFields = Map.of("var.test.count", "1", "var.test.name", "router-1", "var.test.prefix", "rout");
+        Assert.assertFalse(LogicalExpressionResolver.resolveLogicalExpression(sessionFields, condition).isResolved());
+
+        sessionFields = Map.of("var.test.count", "three", "var.test.name", "router-1", "var.test.prefix", "rout");
+        ExpressionResult notNumeric = LogicalExpressionResolver.resolveLogicalExpression(sessionFields, condition);
+        Assert.assertFalse(notNumeric.isResolved());
+    }
+
+    public void testModifiedAfterCompilation(){
+        ExpectedOutcome outcome = new ExpectedOutcome(BinaryRelation.EQUALS, "foo");
+        LogicalExpression<ExpectedOutcome> expectedOutcome = new LogicalExpression<ExpectedOutcome>().addResolvable(outcome);
+        Assert.assertTrue(LogicalExpressionResolver.resolveLogicalExpression("foo", Collections.emptyMap(), expectedOutcome).isResolved());
+
+        //modifying a leaf or the expression itself should take effect on the next resolution
+        outcome.setExpectedValue("bar");
+        Assert.assertFalse(LogicalExpressionResolver.resolveLogicalExpression("foo", Collections.emptyMap(), expectedOutcome).isResolved());
+
+        expectedOutcome.addResolvable(new ExpectedOutcome(BinaryRelation.STARTS_WITH, "fo"));
+        Assert.assertTrue(LogicalExpressionResolver.resolveLogicalExpression("foo", Collections.emptyMap(), expectedOutcome).isResolved());
+    }
+
+    public void testModifiedResult(){
+        ExpectedOutcome outcome = new ExpectedOutcome(BinaryRelation.EQUALS, "foo");
+        LogicalExpression<ExpectedOutcome> expectedOutcome = new LogicalExpression<ExpectedOutcome>().addResolvable(outcome);
+        Assert.assertEquals(LogicalExpressionResolver.resolveLogicalExpression("foo", Collections.emptyMap(), expectedOutcome).getOutcome(), ResultStatus.SUCCESS);
+
+        //the result of a leaf is compared by value, so modifying it in place should take effect on the next resolution as well
+        outcome.getExpressionResult().withOutcome(ResultStatus.FAILURE).withMessage("foo is not allowed");
+        ExpressionResult modifiedResult = LogicalExpressionResolver.resolveLogicalExpression("foo", Collections.emptyMap(), expectedOutcome);
+        Assert.assertEquals(modifiedResult.getOutcome(), ResultStatus.FAILURE);
+        Assert.assertEquals(modifiedResult.getMessage(), "foo is not allowed");
+
+        //an equal value set after compilation is not a modification
+        outcome.setExpectedValue(new String("foo"));
+        Assert.assertTrue(LogicalExpressionResolver.resolveLogicalExpression("foo", Collections.emptyMap(), expectedOutcome).isResolved());
+    }
+
+    public void testFrozenResults(){
+        LogicalExpression<ExpectedOutcome> expectedOutcome = new LogicalExpression<ExpectedOutcome>().addResolvable(new ExpectedOutcome(BinaryRelation.EQUALS, "foo"));
+        LogicalExpression<ExecutionCondition> notNumeric = new LogicalExpression<ExecutionCondition>().addResolvable(new ExecutionCondition("$var.test.count", BinaryRelation.GREATER_THAN, "2"));
+
+        //results of compiled expressions are shared by every session, so modifying them must throw
+        ExpressionResult resolved = LogicalExpressionResolver.resolveLogicalExpression("foo", Collections.emptyMap(), expectedOutcome);
+        ExpressionResult unresolved = LogicalExpressionResolver.resolveLogicalExpression("bar", Collections.emptyMap(), expectedOutcome);
+        ExpressionResult executionError = LogicalExpressionResolver.resolveLogicalExpression(Map.of("var.test.count", "three"), notNumeric);
+        for(ExpressionResult sharedResult : new ExpressionResult[]{resolved, unresolved, executionError}){
+            Assert.assertTrue(sharedResult.isFrozen());
+            Assert.assertThrows(UnsupportedOperationException.class, () -> sharedResult.setOutcome(ResultStatus.FAILURE));
+            Assert.assertThrows(UnsupportedOperationException.class, () -> sharedResult.setMessage("modified"));
+        }
+        Assert.assertSame(LogicalExpressionResolver.resolveLogicalExpression("foo", Collections.emptyMap(), expectedOutcome), resolved);
+        Assert.assertEquals(resolved.getOutcome(), ResultStatus.SUCCESS);
+
+        //deep clones of shared results can be modified
+        ExpressionResult clonedResult = resolved.deepClone();
+        Assert.assertFalse(clonedResult.isFrozen());
+        clonedResult.setMessage("modified");
+        Assert.assertEquals(clonedResult.getMessage(), "modified");
+    }
+
+    /*Benchmarks resolving compiled expressions against resolving the same expressions leaf by leaf, without compiling them
+     * Leaves modified after their expression was compiled are resolved the slow way, which is how every leaf was resolved before expressions were compiled.
+     * Logs the time and the allocated bytes per resolution of each, and verifies that both resolve the same way and that the compiled expressions allocate nothing at all*/
+    public void testResolutionThroughput(){
+        Map<String, String> sessionFields = new HashMap<>();
+        for(int fieldNum = 0; fieldNum < 20; fieldNum++){
+            sessionFields.put("var.test.field" + fieldNum, "value " + fieldNum);
+        }
+        sessionFields.put("var.test.count", "42");
+        StringBuilder commandOutput = new StringBuilder();
+        for(int lineNum = 0; lineNum < 20; lineNum++){
+            commandOutput.append("interface eth").append(lineNum).append(" is up, line protocol is up ");
+        }
+
+        //Expected outcomes are resolved on every chunk of output, and execution conditions on every command
+        benchmarkResolutions("expected outcome", commandOutput.toString(), sessionFields, suffix -> new LogicalExpression<ExpectedOutcome>()
+            .withLogicalCondition(LogicalCondition.OR)
+            .addResolvable(new ExpectedOutcome(BinaryRelation.CONTAINS, "line protocol is down" + suffix))
+            .addResolvable(new ExpectedOutcome(BinaryRelation.MATCHES_REGEX, "eth[0-9]+ is administratively down" + suffix))
+            .addResolvable(new ExpectedOutcome(BinaryRelation.ENDS_WITH, "is up " + suffix))
+        );
+        benchmarkResolutions("execution condition", "", sessionFields, suffix -> new LogicalExpression<ExecutionCondition>()
+            .withLogicalCondition(LogicalCondition.OR)
+            .addResolvable(new ExecutionCondition("$var.test.count", BinaryRelation.GREATER_THAN, "100" + suffix))
+            .addResolvable(new ExecutionCondition("$var.test.field7", BinaryRelation.MATCHES_REGEX, "^other" + suffix))
+            .addResolvable(new ExecutionCondition("$var.test.field12", BinaryRelation.EQUALS, "value 12" + suffix))
+        );
+    }
+
+    /*Only the last leaf of each benchmarked expression is resolved, so every leaf is evaluated on every resolution
+     * The uncompiled expression is compiled with a suffix appended to it's expected values, which is then removed so all of it's leaves are modified*/
+    private void benchmarkResolutions(String expressionType, String commandOutput, Map<String, String> sessionFields, Function<String, LogicalExpression<? extends IFlowConnector>> expressionFactory){
+        int warmupCount = 20000;
+        int resolutionCount = 100000;
+        LogicalExpression<? extends IFlowConnector> compiled = expressionFactory.apply("");
+        LogicalExpression<? extends IFlowConnector> uncompiled = expressionFactory.apply("placeholder");
+        LogicalExpressionResolver.resolveLogicalExpression(commandOutput, sessionFields, uncompiled);
+        for(IResolvable leaf : uncompiled.getResolvableExpressions()){
+            if(leaf instanceof ExpectedOutcome){
+                ExpectedOutcome outcome = (ExpectedOutcome)leaf;
+                outcome.setExpectedValue(outcome.getExpectedValue().replace("placeholder", ""));
+            }else{
+                ExecutionCondition condition = (ExecutionCondition)leaf;
+                condition.setExpectedValue(condition.getExpectedValue().replace("placeholder", ""));
+            }
+        }
+
+        long[] compiledCost = measureResolutions(compiled, commandOutput, sessionFields, warmupCount, resolutionCount);
+        long[] uncompiledCost = measureResolutions(uncompiled, commandOutput, sessionFields, warmupCount, resolutionCount);
+        Assert.assertEquals(compiledCost[2], resolutionCount);
+        Assert.assertEquals(uncompiledCost[2], resolutionCount);
+        Assert.assertTrue(compiledCost[1] < resolutionCount, "Compiled " + expressionType + " allocated " + compiledCost[1] + " bytes in " + resolutionCount + " resolutions");
+        Assert.assertTrue(compiledCost[1] < uncompiledCost[1], "Compiled " + expressionType + " allocated " + compiledCost[1] + " bytes, uncompiled " + expressionType + " allocated " + uncompiledCost[1] + " bytes");
+
+        logger.info("Resolved a 3 leaf " + expressionType + " against " + sessionFields.size() + " session fields " + resolutionCount + " times: "
+            + String.format("%.1f", (double)compiledCost[0] / resolutionCount) + " ns and " + String.format("%.1f", (double)compiledCost[1] / resolutionCount) + " bytes per compiled resolution, "
+            + String.format("%.1f", (double)uncompiledCost[0] / resolutionCount) + " ns and " + String.format("%.1f", (double)uncompiledCost[1] / resolutionCount) + " bytes per uncompiled resolution");
+    }
+
+    //Returns the wall time (in nanoseconds) and the bytes allocated by this thread for all resolutions, along with the number of resolved resolutions
+    private long[] measureResolutions(LogicalExpression<? extends IFlowConnector> expression, String commandOutput, Map<String, String> sessionFields, int warmupCount, int resolutionCount){
+        for(int resolution = 0; resolution < warmupCount; resolution++){
+            LogicalExpressionResolver.resolveLogicalExpression(commandOutput, sessionFields, expression);
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long resolvedCount = 0;
+        long allocatedStart = threadBean.getThreadAllocatedBytes(threadId);
+        long wallStart = System.nanoTime();
+        for(int resolution = 0; resolution < resolutionCount; resolution++){
+            if(LogicalExpressionResolver.resolveLogicalExpression(commandOutput, sessionFields, expression).isResolved()){
+                resolvedCount++;
+            }
+        }
+        long wallTime = System.nanoTime() - wallStart;
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedStart;
+        return new long[]{wallTime, allocatedBytes, resolvedCount};
+    }
+}
@@ -0,0 +1,85 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.SessionVariableStore;
+import com.sixsense.model.retention.ResultRetention;
+import com.sixsense.utillity.CommandUtils;
+import com.sixsense.utillity.DynamicFieldTemplate;
+import com.sixsense.utillity.FieldNameTrie;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+@Test(groups = {"model"})
+public class DynamicFieldTests extends SixSenseBaseTest {
+
+    public void testLongestFieldNameWins(){
+        Map<String, String> dynamicFields = Map.of(
+            "var.scope.field", "foo",
+            "var.scope.field_with_long_name", "bar"
+        );
+
+        String evaluated = CommandUtils.evaluateAgainstDynamicFields("echo $var.scope.field_with_long_name $var.scope.field $var.scope.fieldless", dynamicFields);
+        Assert.assertEquals(evaluated, "echo bar foo fooless");
+    }
+
+    public void testUnknownFields(){
+        Map<String, String> dynamicFields = Map.of("var.scope.field", "foo");
+
+        Assert.assertEquals(CommandUtils.evaluateAgainstDynamicFields("echo $HOME $var.scope", dynamicFields), "echo $HOME $var.scope");
+        Assert.assertEquals(CommandUtils.evaluateAgainstDynamicFields("price: 5$", dynamicFields), "price: 5$");
+        Assert.assertEquals(CommandUtils.evaluateAgainstDynamicFields("$var.scope.field$var.scope.field", null), "$var.scope.field$var.scope.field");
+        Assert.assertEquals(CommandUtils.evaluateAgainstDynamicFields("$var.scope.field$var.scope.field", dynamicFields), "foofoo");
+    }
+
+    public void testSharedFieldNames(){
+        SessionVariableStore variables = new SessionVariableStore();
+        variables.bindGlobalLayer(Map.of("var.scope.field", "foo"));
+        variables.push(Map.of("var.scope.field_with_long_name", "bar"));
+        Map<String, String> firstSnapshot = variables.snapshot();
+        Assert.assertEquals(CommandUtils.evaluateAgainstDynamicFields("echo $var.scope.field_with_long_name", firstSnapshot), "echo bar");
+
+        //snapshots share the trie of their field names until a variable is added or removed
+        variables.retain(new ResultRetention().withName("var.scope.field_with_long_name").withValue("baz"));
+        Map<String, String> secondSnapshot = variables.snapshot();
+        Assert.assertNotSame(secondSnapshot, firstSnapshot);
+        Assert.assertSame(FieldNameTrie.forFields(secondSnapshot), FieldNameTrie.forFields(firstSnapshot));
+        Assert.assertEquals(CommandUtils.evaluateAgainstDynamicFields("echo $var.scope.field_with_long_name", secondSnapshot), "echo baz");
+
+        variables.push(Map.of("var.scope.other", "qux"));
+        Map<String, String> thirdSnapshot = variables.snapshot();
+        Assert.assertNotSame(FieldNameTrie.forFields(thirdSnapshot), FieldNameTrie.forFields(secondSnapshot));
+        Assert.assertEquals(CommandUtils.evaluateAgainstDynamicFields("echo $var.scope.other $var.scope.field", thirdSnapshot), "echo qux foo");
+
+        variables.pop(Set.of("var.scope.other"));
+        Assert.assertEquals(CommandUtils.evaluateAgainstDynamicFields("echo $var.scope.other", variables.snapshot()), "echo $var.scope.other");
+    }
+
+    public void testAlternatingFieldNames(){
+        Map<String, String> firstFields = Map.of("var.scope.field", "foo");
+        Map<String, String> secondFields = Map.of("var.scope.field", "foo", "var.scope.field_with_long_name", "bar");
+
+        //evaluating different sets of fields one after the other never uses the field names of the other set
+        for(int evaluation = 0; evaluation < 3; evaluation++){
+            Assert.assertEquals(CommandUtils.evaluateAgainstDynamicFields("echo $var.scope.field_with_long_name", firstFields), "echo foo_with_long_name");
+            Assert.assertEquals(CommandUtils.evaluateAgainstDynamicFields("echo $var.scope.field_with_long_name", secondFields), "echo bar");
+        }
+    }
+
+    public void testRecentlyCompiledTemplates(){
+        DynamicFieldTemplate frequentTemplate = DynamicFieldTemplate.compile("echo $var.scope.frequent");
+        DynamicFieldTemplate evictedTemplate = DynamicFieldTemplate.compile("echo $var.scope.evicted");
+
+        //templates are evicted least recently used first, so a frequently evaluated text is never compiled again
+        for(int textNum = 0; textNum < 5000; textNum++){
+            DynamicFieldTemplate.compile("echo $var.scope.field" + textNum);
+            if(textNum % 100 == 0){
+                Assert.assertSame(DynamicFieldTemplate.compile("echo $var.scope.frequent"), frequentTemplate);
+            }
+        }
+        Assert.assertSame(DynamicFieldTemplate.compile("echo $var.scope.frequent"), frequentTemplate);
+        Assert.assertNotSame(DynamicFieldTemplate.compile("echo $var.scope.evicted"), evictedTemplate);
+    }
+}
@@ -0,0 +1,143 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.model.threading.BackPressurePolicy;
+import com.sixsense.threading.EventRingBuffer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Test(groups = {"model"})
+public class EventRingBufferTests extends SixSenseBaseTest {
+    private static final int ProducerCount = 4;
+    private static final int EventsPerProducer = 20000;
+
+    public void testBlockingDispatchInOrder() throws InterruptedException {
+        List<Long> dispatchedEvents = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        CountDownLatch allDispatched = new CountDownLatch(ProducerCount * EventsPerProducer);
+
+        //A small ring, so the producers keep wrapping around it and waiting for the dispatcher
+        EventRingBuffer<AtomicLong> ringBuffer = new EventRingBuffer<>(Thread::new, AtomicLong::new, 64, 16, BackPressurePolicy.Block, batch -> {
+            batchSizes.add(batch.size());
+            for(AtomicLong slot : batch){
+                dispatchedEvents.add(slot.get());
+                allDispatched.countDown();
+            }
+        });
+
+        List<Thread> producers = new ArrayList<>();
+        for(int producerIdx = 0; producerIdx < ProducerCount; producerIdx++){
+            long producerId = producerIdx;
+            Thread producer = new Thread(() -> {
+                for(long eventIdx = 0; eventIdx < EventsPerProducer; eventIdx++){
+                    Assert.assertTrue(ringBuffer.publish(AtomicLong::set, producerId * EventsPerProducer + eventIdx));
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+
+        for(Thread producer : producers){
+            producer.join();
+        }
+        Assert.assertTrue(allDispatched.await(5, TimeUnit.SECONDS));
+        ringBuffer.close();
+
+        //Events of different producers interleave, but the events of each producer are dispatched in the order they were published
+        Assert.assertEquals(dispatchedEvents.size(), ProducerCount * EventsPerProducer);
+        long[] lastEventPerProducer = new long[ProducerCount];
+        for(long event : dispatchedEvents){
+            int producerIdx = (int)(event / EventsPerProducer);
+            Assert.assertEquals(event % EventsPerProducer, lastEventPerProducer[producerIdx]++);
+        }
+        for(int batchSize : batchSizes){
+            Assert.assertTrue(batchSize > 0 && batchSize <= 16);
+        }
+    }
+
+    public void testDropWhileFull() throws InterruptedException {
+        CountDownLatch dispatcherBlocked = new CountDownLatch(1);
+        CountDownLatch releaseDispatcher = new CountDownLatch(1);
+        AtomicLong dispatchedCount = new AtomicLong(0);
+
+        EventRingBuffer<AtomicLong> ringBuffer = new EventRingBuffer<>(Thread::new, AtomicLong::new, 8, 8, BackPressurePolicy.Drop, batch -> {
+            dispatcherBlocked.countDown();
+            try {
+                releaseDispatcher.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            dispatchedCount.addAndGet(batch.size());
+        });
+
+        //The first event keeps the dispatcher busy (and it's slot unconsumed), so the ring fills up behind it
+        Assert.assertTrue(ringBuffer.publish(AtomicLong::set, 0L));
+        Assert.assertTrue(dispatcherBlocked.await(5, TimeUnit.SECONDS));
+        int publishedCount = 1;
+        boolean isDropped = false;
+        for(long eventIdx = 1; eventIdx <= 20; eventIdx++){
+            if(ringBuffer.publish(AtomicLong::set, eventIdx)){
+                publishedCount++;
+            }else{
+                isDropped = true;
+            }
+        }
+
+        Assert.assertTrue(isDropped);
+        Assert.assertEquals(publishedCount, ringBuffer.getCapacity());
+        releaseDispatcher.countDown();
+
+        //Events published before closing are still dispatched
+        ringBuffer.close();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(dispatchedCount.get() < publishedCount && System.nanoTime() < deadline){
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(dispatchedCount.get(), publishedCount);
+    }
+
+    public void testCloseWhilePublishing() throws InterruptedException {
+        CountDownLatch slotClaimed = new CountDownLatch(1);
+        CountDownLatch ringClosed = new CountDownLatch(1);
+        List<Long> dispatchedEvents = new ArrayList<>();
+        List<Thread> dispatcher = new ArrayList<>();
+        EventRingBuffer<AtomicLong> ringBuffer = new EventRingBuffer<>(task -> {
+            dispatcher.add(new Thread(task));
+            return dispatcher.get(0);
+        }, AtomicLong::new, 8, 8, BackPressurePolicy.Block, batch -> {
+            for(AtomicLong slot : batch){
+                dispatchedEvents.add(slot.get());
+            }
+        });
+
+        //The producer claims it's slot before the ring buffer is closed, but only publishes it afterwards
+        Assert.assertTrue(ringBuffer.publish(AtomicLong::set, 1L));
+        Thread producer = new Thread(() -> ringBuffer.publish((slot, event) -> {
+            slotClaimed.countDown();
+            try {
+                ringClosed.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            slot.set(event);
+        }, 2L));
+        producer.start();
+        Assert.assertTrue(slotClaimed.await(5, TimeUnit.SECONDS));
+
+        ringBuffer.close();
+        Assert.assertFalse(ringBuffer.publish(AtomicLong::set, 3L));
+        ringClosed.countDown();
+        producer.join();
+
+        //Events claimed before closing are dispatched, and nothing claimed afterwards is
+        dispatcher.get(0).join(TimeUnit.SECONDS.toMillis(5));
+        Assert.assertFalse(dispatcher.get(0).isAlive());
+        Assert.assertEquals(dispatchedEvents, List.of(1L, 2L));
+    }
+}
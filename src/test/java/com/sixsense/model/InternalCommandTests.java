@@ -0,0 +1,59 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.utillity.InternalCommandInterpreter;
+import com.sixsense.utillity.InternalCommands;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {"model"})
+public class InternalCommandTests extends SixSenseBaseTest {
+
+    public void testArithmetic(){
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("expr 1 + 1"), "2");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("expr (2 + 3) \\* -4 % 7"), "-6");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("expr 7/2-10"), "-7");
+
+        boolean divisionThrowed = false;
+        try{
+            //this is expected to throw an IllegalArgumentException
+            InternalCommandInterpreter.evaluate("expr 1 / 0");
+        }catch (IllegalArgumentException e){
+            divisionThrowed = true;
+        }
+        Assert.assertTrue(divisionThrowed);
+    }
+
+    public void testTextFunctions(){
+        String chassis = "Chassis Serial  f5-abcd-1234 ";
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("field 3 " + chassis), "f5-abcd-1234");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("field -1 " + chassis), "f5-abcd-1234");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("field 4 " + chassis), "");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("split - 2 " + chassis), "abcd");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("slice 0 7 " + chassis), "Chassis");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("slice -5 -1 " + chassis), "1234");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("capture 'Serial\\s+(\\S+)' " + chassis), "f5-abcd-1234");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("capture [0-9]+ " + chassis), "5");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("capture x(y) " + chassis), "");
+    }
+
+    public void testQuotedArguments(){
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("capture 'it''s (\\w+)' it's here"), "here");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("split '''' 2 a'b'c"), "b");
+        Assert.assertEquals(InternalCommandInterpreter.evaluate("capture '' anything"), "");
+
+        boolean quoteThrowed = false;
+        try{
+            //this is expected to throw an IllegalArgumentException
+            InternalCommandInterpreter.evaluate("capture 'it''s here");
+        }catch (IllegalArgumentException e){
+            quoteThrowed = true;
+        }
+        Assert.assertTrue(quoteThrowed);
+
+        //Regexes containing quotes (or spaces) are quoted by the command builders, so they reach the interpreter as is
+        String regex = "name='([^']+)' id";
+        String commandText = InternalCommands.captureValue("var.name", regex, "user name='admin' id=1").getCommandText();
+        Assert.assertEquals(InternalCommandInterpreter.evaluate(commandText), "admin");
+    }
+}
@@ -0,0 +1,43 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.utillity.LatencyHistogram;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {"model"})
+public class LatencyHistogramTests extends SixSenseBaseTest {
+
+    public void testPercentiles(){
+        LatencyHistogram histogram = new LatencyHistogram(100000);
+        Assert.assertEquals(histogram.getPercentile(0.99), -1);
+
+        for(long latency = 1; latency <= 1000; latency++){
+            histogram.record(latency);
+        }
+
+        //percentiles are rounded up to the end of their bucket, which is never more than 12.5% above the exact percentile
+        long median = histogram.getPercentile(0.5);
+        long p99 = histogram.getPercentile(0.99);
+        Assert.assertTrue(median >= 500 && median <= 500 * 1.125, "Median was " + median);
+        Assert.assertTrue(p99 >= 990 && p99 <= 990 * 1.125, "99th percentile was " + p99);
+        Assert.assertEquals(histogram.getPercentile(0.001), 1);
+    }
+
+    public void testDecay(){
+        LatencyHistogram histogram = new LatencyHistogram(100);
+        for(int sample = 0; sample < 99; sample++){
+            histogram.record(10);
+        }
+        Assert.assertEquals(histogram.getSampleCount(), 99);
+
+        //reaching the maximal amount of samples halves the older ones, so newer latencies take over sooner
+        histogram.record(2000);
+        Assert.assertEquals(histogram.getSampleCount(), 51);
+        for(int sample = 0; sample < 59; sample++){
+            histogram.record(2000);
+        }
+        Assert.assertEquals(histogram.getSampleCount(), 60);
+        Assert.assertTrue(histogram.getPercentile(0.5) >= 2000);
+    }
+}
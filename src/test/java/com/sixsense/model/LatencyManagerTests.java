@@ -0,0 +1,44 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.config.SessionConfig;
+import com.sixsense.model.commands.Command;
+import com.sixsense.services.LatencyManager;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+@Test(groups = {"model"})
+public class LatencyManagerTests extends SixSenseBaseTest {
+
+    public void testTimeoutsGrowTheLearnedTimeout(){
+        SessionConfig.LatencyProperties latencyProperties = new SessionConfig.LatencyProperties(2, 20, 10000, Duration.ofMillis(100), Duration.ofSeconds(60));
+        LatencyManager latencyManager = new LatencyManager(new SessionConfig(Map.of(), "0", 10, null, null, latencyProperties, null));
+        Command command = new Command().withCommandText("show version").withTimeToTimeout(Duration.ofSeconds(30));
+
+        for(int sample = 0; sample < 100; sample++){
+            latencyManager.recordLatency("device", "vpv", command, 100);
+        }
+        long learnedTimeout = latencyManager.getTimeToTimeout("device", "vpv", command).toMillis();
+        Assert.assertTrue(learnedTimeout >= 200 && learnedTimeout <= 225, "Learned timeout was " + learnedTimeout);
+
+        //The device slowed down - every execution times out at the learned timeout, which must keep growing until commands respond again
+        long previousTimeout = learnedTimeout;
+        for(int execution = 0; execution < 5; execution++){
+            for(int sample = 0; sample < 2; sample++) {
+                latencyManager.recordTimeout("device", "vpv", command, previousTimeout);
+            }
+            long grownTimeout = latencyManager.getTimeToTimeout("device", "vpv", command).toMillis();
+            Assert.assertTrue(grownTimeout >= previousTimeout * 2, "Timeout did not grow past " + previousTimeout + " (was " + grownTimeout + ")");
+            previousTimeout = grownTimeout;
+        }
+
+        //But never past the maximum timeout
+        for(int execution = 0; execution < 10; execution++){
+            latencyManager.recordTimeout("device", "vpv", command, latencyManager.getTimeToTimeout("device", "vpv", command).toMillis());
+        }
+        Assert.assertEquals(latencyManager.getTimeToTimeout("device", "vpv", command), Duration.ofSeconds(60));
+    }
+}
@@ -0,0 +1,110 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.SixSenseBaseUtils;
+import com.sixsense.config.ThreadingConfig;
+import com.sixsense.model.commands.Command;
+import com.sixsense.model.events.*;
+import com.sixsense.model.logic.*;
+import com.sixsense.model.threading.BackPressurePolicy;
+import com.sixsense.services.LoggingManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+@Test(groups = {"model"})
+public class LoggingManagerTests extends SixSenseBaseTest {
+    private static final Logger logger = LogManager.getLogger(LoggingManagerTests.class);
+    private static final int SessionCount = 2;
+    private static final int CommandsPerSession = 5000;
+    private static final long CommandLatencyNanos = TimeUnit.MICROSECONDS.toNanos(200); //the time a command waits for it's device between logging it's events
+
+    /*Benchmarks the time session threads spend logging engine events, when logging on the session thread itself and when logging through the log ring buffer
+     * Each session thread emits the events of the same commands (start, input, output, outcome evaluation and end), pausing between commands as if waiting for the device.
+     * Logs the session thread time per event of each mode (as reported by the logging statistics) along with the cpu time of the session threads per event,
+     * and verifies that every event was counted and that session threads spend less cpu time when logging through the ring buffer
+     * (the reported time also counts any time the session threads were preempted while logging, so it is only logged)*/
+    public void testSessionThreadLoggingTime() throws InterruptedException {
+        LoggingManager synchronousLogging = newLoggingManager(false);
+        LoggingManager asynchronousLogging = newLoggingManager(true);
+
+        //Each mode is warmed up first, so both are measured after the logging path was compiled
+        for(LoggingManager loggingManager : List.of(synchronousLogging, asynchronousLogging)){
+            emitCommandEvents(loggingManager, CommandsPerSession / 5);
+            loggingManager.resetLoggingStatistics();
+        }
+
+        AtomicLong synchronousCpuTime = new AtomicLong();
+        AtomicLong asynchronousCpuTime = new AtomicLong();
+        Map<String, Long> synchronousStatistics = measureLogging(synchronousLogging, synchronousCpuTime);
+        Map<String, Long> asynchronousStatistics = measureLogging(asynchronousLogging, asynchronousCpuTime);
+        long expectedEvents = (long)SessionCount * CommandsPerSession * 5;
+        Assert.assertEquals((long)synchronousStatistics.get("events"), expectedEvents);
+        Assert.assertEquals((long)asynchronousStatistics.get("events"), expectedEvents);
+        Assert.assertTrue(asynchronousCpuTime.get() < synchronousCpuTime.get(), "Session threads spent " + asynchronousCpuTime.get() + " cpu ns logging through the ring buffer, and " + synchronousCpuTime.get() + " cpu ns logging synchronously");
+
+        logger.info("Logged " + expectedEvents + " engine events from " + SessionCount + " session threads: "
+            + String.format("%.1f", (double)synchronousStatistics.get("sessionThreadNanos") / expectedEvents) + " session thread ns and "
+            + String.format("%.1f", (double)synchronousCpuTime.get() / expectedEvents) + " session thread cpu ns per event logging synchronously, "
+            + String.format("%.1f", (double)asynchronousStatistics.get("sessionThreadNanos") / expectedEvents) + " session thread ns and "
+            + String.format("%.1f", (double)asynchronousCpuTime.get() / expectedEvents) + " session thread cpu ns per event logging through the ring buffer");
+    }
+
+    private LoggingManager newLoggingManager(boolean isAsynchronous){
+        //The logging manager only reads the event properties of the threading configuration
+        ThreadingConfig threadingConfig = new ThreadingConfig(null, null, null, new ThreadingConfig.EventProperties(0, 0, BackPressurePolicy.Block, isAsynchronous));
+        return new LoggingManager(SixSenseBaseUtils.getThreadingManager(), threadingConfig);
+    }
+
+    //Returns the logging statistics of the measured events, and adds the cpu time of all session threads to the given cpu time
+    private Map<String, Long> measureLogging(LoggingManager loggingManager, AtomicLong cpuTime) throws InterruptedException {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        List<Thread> sessionThreads = new ArrayList<>();
+        for(int sessionIdx = 0; sessionIdx < SessionCount; sessionIdx++){
+            Thread sessionThread = new Thread(() -> {
+                long cpuStart = threadBean.getCurrentThreadCpuTime();
+                emitCommandEvents(loggingManager, CommandsPerSession);
+                cpuTime.addAndGet(threadBean.getCurrentThreadCpuTime() - cpuStart);
+            });
+            sessionThreads.add(sessionThread);
+            sessionThread.start();
+        }
+
+        for(Thread sessionThread : sessionThreads){
+            sessionThread.join();
+        }
+        return loggingManager.getLoggingStatistics();
+    }
+
+    //Engine events are logged without a session, so no session has to be opened for the benchmark
+    private void emitCommandEvents(LoggingManager loggingManager, int commandCount){
+        ThreadContext.put("sessionID", "logging-benchmark-" + Thread.currentThread().getId());
+        Command command = new Command().withCommandText("show interfaces");
+        LogicalExpression<ExpectedOutcome> expectedOutcome = new LogicalExpression<ExpectedOutcome>()
+            .withLogicalCondition(LogicalCondition.OR)
+            .addResolvable(new ExpectedOutcome(BinaryRelation.CONTAINS, "line protocol is up"))
+            .addResolvable(new ExpectedOutcome(BinaryRelation.MATCHES_REGEX, "eth[0-9]+ is administratively down"));
+        ExpressionResult result = new ExpressionResult().withResolved(true).withOutcome(ResultStatus.SUCCESS);
+
+        for(int commandIdx = 0; commandIdx < commandCount; commandIdx++){
+            loggingManager.logEngineEvent(new CommandStartEvent(null, command));
+            loggingManager.logEngineEvent(new InputSentEvent(null, command, commandIdx, "show interfaces"));
+            loggingManager.logEngineEvent(new OutputReceivedEvent(null, command, commandIdx, "interface eth" + commandIdx + " is up, line protocol is up"));
+            loggingManager.logEngineEvent(new OutcomeEvaluationEvent(null, "interface eth" + commandIdx + " is up, line protocol is up", expectedOutcome));
+            loggingManager.logEngineEvent(new CommandEndEvent(null, command, result));
+            LockSupport.parkNanos(CommandLatencyNanos);
+        }
+        ThreadContext.remove("sessionID");
+    }
+}
@@ -0,0 +1,55 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.model.logic.BinaryRelation;
+import com.sixsense.model.logic.ExpectedOutcome;
+import com.sixsense.model.logic.LogicalExpression;
+import com.sixsense.utillity.StreamingOutcomeMatcher;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+@Test(groups = {"model"})
+public class OutcomeMatcherTests extends SixSenseBaseTest {
+
+    public void testOverlappingLiterals(){
+        LogicalExpression<ExpectedOutcome> expectedOutcome = new LogicalExpression<ExpectedOutcome>()
+            .addResolvable(new ExpectedOutcome(BinaryRelation.CONTAINS, "she"))
+            .addResolvable(new ExpectedOutcome(BinaryRelation.CONTAINS, "he"))
+            .addResolvable(new ExpectedOutcome(BinaryRelation.NOT_CONTAINS, "hers"))
+            .addResolvable(new ExpectedOutcome(BinaryRelation.EQUALS, "ushers"));
+
+        StreamingOutcomeMatcher matcher = StreamingOutcomeMatcher.compile(expectedOutcome, Collections.emptyMap());
+        Assert.assertFalse(matcher.isTracked("ushers")); //only CONTAINS/NOT_CONTAINS literals are compiled
+
+        matcher.feed("ushe", 4, 0);
+        Assert.assertTrue(matcher.contains("she"));
+        Assert.assertTrue(matcher.contains("he"));
+        Assert.assertFalse(matcher.contains("hers"));
+
+        matcher.feed("ushers", 6, 0);
+        Assert.assertTrue(matcher.contains("hers"));
+    }
+
+    public void testVolatileSuffix(){
+        LogicalExpression<ExpectedOutcome> expectedOutcome = new LogicalExpression<ExpectedOutcome>()
+            .addResolvable(new ExpectedOutcome(BinaryRelation.CONTAINS, "done"));
+
+        StreamingOutcomeMatcher matcher = StreamingOutcomeMatcher.compile(expectedOutcome, Collections.emptyMap());
+
+        //the partial last line may still change, so matches found in it are forgotten unless they appear again
+        matcher.feed("copying... do", 11, 0);
+        matcher.feed("copying... done", 11, 0);
+        Assert.assertTrue(matcher.contains("done"));
+        matcher.feed("copying... dot", 11, 0);
+        Assert.assertFalse(matcher.contains("done"));
+
+        //matches in the stable prefix are remembered for the rest of the revision, and forgotten once the revision changes
+        matcher.feed("copying... done", 15, 0);
+        matcher.feed("copying... done", 0, 0);
+        Assert.assertTrue(matcher.contains("done"));
+        matcher.feed("copying...", 0, 1);
+        Assert.assertFalse(matcher.contains("done"));
+    }
+}
@@ -0,0 +1,165 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.ChannelOutputBuffer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Test(groups = {"model"})
+public class OutputBufferTests extends SixSenseBaseTest {
+    private static final Logger logger = LogManager.getLogger(OutputBufferTests.class);
+
+    public void testAppendAcrossWrap(){
+        ChannelOutputBuffer buffer = new ChannelOutputBuffer();
+        for(int lineNum = 0; lineNum < 100; lineNum++){
+            buffer.add("line " + lineNum);
+        }
+
+        //trimming moves the head, so the next appends wrap around the underlying array before it grows again
+        buffer.trimHead(90);
+        for(int lineNum = 100; lineNum < 300; lineNum++){
+            buffer.add("line " + lineNum);
+        }
+
+        Assert.assertEquals(buffer.size(), 210);
+        Assert.assertEquals(buffer.getHeadOffset(), 90);
+        Assert.assertEquals(buffer.getTailOffset(), 300);
+        for(int index = 0; index < buffer.size(); index++){
+            Assert.assertEquals(buffer.get(index), "line " + (index + 90));
+        }
+    }
+
+    public void testCommandCursors(){
+        ChannelOutputBuffer buffer = new ChannelOutputBuffer();
+        buffer.addAll(Arrays.asList("old output", "prompt# echo foo", "foo", "prompt# "));
+
+        buffer.markCommandStart(1);
+        Assert.assertEquals(buffer.commandOutput(), Arrays.asList("prompt# echo foo", "foo", "prompt# "));
+
+        //absolute offsets remain valid after trimming the head
+        buffer.trimBefore(buffer.getCommandStart());
+        Assert.assertEquals(buffer.getHeadOffset(), 1);
+        Assert.assertEquals(buffer.commandOutput().get(0), "prompt# echo foo");
+
+        //once the command ends, lines printed afterwards are not part of it's output
+        buffer.markCommandEnd(buffer.getTailOffset());
+        buffer.add("late line");
+        Assert.assertEquals(buffer.commandOutput().size(), 3);
+        Assert.assertEquals(buffer.viewFrom(3), Arrays.asList("prompt# ", "late line"));
+    }
+
+    public void testRemoveThroughView(){
+        ChannelOutputBuffer buffer = new ChannelOutputBuffer();
+        buffer.addAll(Arrays.asList("a", "b", "c", "d", "e"));
+
+        //draining pipes remove lines through the command view, which must reach the underlying buffer
+        List<String> view = buffer.viewFrom(1);
+        Iterator<String> it = view.iterator();
+        while (it.hasNext()){
+            String nextLine = it.next();
+            if(nextLine.equals("b") || nextLine.equals("d")){
+                it.remove();
+            }
+        }
+
+        Assert.assertEquals(buffer, Arrays.asList("a", "c", "e"));
+        buffer.clear();
+        Assert.assertTrue(buffer.isEmpty());
+    }
+
+    /*Benchmarks the hand over from a process stream wrapper (the producer thread) to a session (this thread) through the inbox, with coalesced wakeups
+     * Logs the throughput of the channel and the cpu time per byte of each side, and verifies that every line arrived intact and in order*/
+    public void testInboxHandoff() throws InterruptedException {
+        int lineCount = 200000;
+        int chunkLength = 100; //chunks split most lines between them
+        StringBuilder text = new StringBuilder();
+        for(int lineNum = 0; lineNum < lineCount; lineNum++){
+            text.append("line ").append(lineNum).append('\n');
+        }
+        String output = text.toString();
+        int chunkCount = (output.length() + chunkLength - 1) / chunkLength;
+
+        ChannelOutputBuffer buffer = new ChannelOutputBuffer();
+        Lock commandLock = new ReentrantLock();
+        Condition newChunkReceived = commandLock.newCondition();
+        AtomicBoolean producerDone = new AtomicBoolean(false);
+        AtomicLong producerCpuTime = new AtomicLong();
+        AtomicLong wakeups = new AtomicLong();
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        Thread producer = new Thread(() -> {
+            long cpuStart = threadBean.getCurrentThreadCpuTime();
+            for(int chunkStart = 0; chunkStart < output.length(); chunkStart += chunkLength){
+                buffer.publish(output.substring(chunkStart, Math.min(chunkStart + chunkLength, output.length())));
+                if(buffer.claimWakeup()){
+                    wakeups.incrementAndGet();
+                    commandLock.lock();
+                    try {
+                        newChunkReceived.signalAll();
+                    }finally {
+                        commandLock.unlock();
+                    }
+                }
+            }
+            producerCpuTime.set(threadBean.getCurrentThreadCpuTime() - cpuStart);
+
+            commandLock.lock();
+            try {
+                producerDone.set(true);
+                newChunkReceived.signalAll();
+            }finally {
+                commandLock.unlock();
+            }
+        });
+
+        long wallStart = System.nanoTime();
+        long consumerCpuStart = threadBean.getCurrentThreadCpuTime();
+        int expectedLine = 0;
+        producer.start();
+        commandLock.lock();
+        try {
+            boolean isDone = false;
+            while (!isDone) {
+                isDone = producerDone.get(); //read before draining, so the last drain sees every chunk
+                synchronized (buffer) {
+                    buffer.drainInbox();
+                    while (buffer.size() > 1) {
+                        Assert.assertEquals(buffer.get(0), "line " + expectedLine++);
+                        buffer.trimHead(1);
+                    }
+                }
+                if(!isDone && !producerDone.get()){
+                    newChunkReceived.await();
+                }
+            }
+        }finally {
+            commandLock.unlock();
+        }
+        long consumerCpuTime = threadBean.getCurrentThreadCpuTime() - consumerCpuStart;
+        long wallTime = Math.max(1, System.nanoTime() - wallStart);
+        producer.join();
+
+        Assert.assertEquals(expectedLine, lineCount);
+        Assert.assertEquals(buffer.size(), 1);
+        Assert.assertEquals(buffer.get(0), "");
+        Assert.assertTrue(wakeups.get() <= chunkCount);
+
+        logger.info("Handed over " + output.length() + " bytes in " + chunkCount + " chunks with " + wakeups.get() + " wakeups: "
+            + (output.length() * 1000L / wallTime) + " MB/sec, "
+            + String.format("%.2f", (double)producerCpuTime.get() / output.length()) + " producer cpu ns/byte, "
+            + String.format("%.2f", (double)consumerCpuTime / output.length()) + " consumer cpu ns/byte");
+    }
+}
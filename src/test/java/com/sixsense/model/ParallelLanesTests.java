@@ -0,0 +1,96 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.threading.ParallelLanes;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Test(groups = {"model"})
+public class ParallelLanesTests extends SixSenseBaseTest {
+
+    public void testFirstLaneThrows() throws InterruptedException {
+        ExecutorService laneExecutor = Executors.newCachedThreadPool();
+        AtomicBoolean stopFlag = new AtomicBoolean(false);
+        AtomicBoolean slowLaneFinished = new AtomicBoolean(false);
+        AtomicInteger loopingLaneChildren = new AtomicInteger(0);
+        try {
+            List<ParallelLanes.LaneTask> laneTasks = List.of(
+                () -> { throw new IOException("first lane failed"); },
+                () -> { sleep(200); slowLaneFinished.set(true); },
+                () -> { while (!stopFlag.get()) { loopingLaneChildren.incrementAndGet(); sleep(5); } }
+            );
+
+            try {
+                ParallelLanes.execute(laneExecutor, laneTasks, stopFlag);
+                Assert.fail("The failure of the first lane should have been rethrown");
+            } catch (IOException e) {
+                Assert.assertEquals(e.getMessage(), "first lane failed");
+            }
+
+            //The other lanes must have stopped running before the failure was rethrown (or their branches would be joined mid flight)
+            Assert.assertTrue(stopFlag.get());
+            Assert.assertTrue(slowLaneFinished.get());
+            int stoppedChildren = loopingLaneChildren.get();
+            sleep(50);
+            Assert.assertEquals(loopingLaneChildren.get(), stoppedChildren);
+        }finally {
+            laneExecutor.shutdownNow();
+        }
+    }
+
+    public void testSubmittedLaneThrows() throws InterruptedException {
+        ExecutorService laneExecutor = Executors.newCachedThreadPool();
+        AtomicBoolean stopFlag = new AtomicBoolean(false);
+        AtomicBoolean slowLaneFinished = new AtomicBoolean(false);
+        try {
+            List<ParallelLanes.LaneTask> laneTasks = List.of(
+                () -> {},
+                () -> { throw new IOException("second lane failed"); },
+                () -> { sleep(200); slowLaneFinished.set(true); }
+            );
+
+            try {
+                ParallelLanes.execute(laneExecutor, laneTasks, stopFlag);
+                Assert.fail("The failure of the second lane should have been rethrown");
+            } catch (IOException e) {
+                Assert.assertEquals(e.getMessage(), "second lane failed");
+            }
+            Assert.assertTrue(stopFlag.get());
+            Assert.assertTrue(slowLaneFinished.get());
+        }finally {
+            laneExecutor.shutdownNow();
+        }
+    }
+
+    public void testRejectedLanes() throws IOException {
+        List<Integer> executedLanes = new CopyOnWriteArrayList<>();
+        AtomicBoolean stopFlag = new AtomicBoolean(false);
+        List<ParallelLanes.LaneTask> laneTasks = List.of(
+            () -> executedLanes.add(0),
+            () -> executedLanes.add(1),
+            () -> executedLanes.add(2)
+        );
+
+        //Rejected lanes run on the current thread after the first lane, in lane order
+        ParallelLanes.execute(task -> { throw new RejectedExecutionException("pool is full"); }, laneTasks, stopFlag);
+        Assert.assertEquals(executedLanes, List.of(0, 1, 2));
+        Assert.assertFalse(stopFlag.get());
+    }
+
+    private static void sleep(long millis){
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
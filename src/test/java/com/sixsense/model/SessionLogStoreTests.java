@@ -0,0 +1,142 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.logging.SessionLogStore;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Test(groups = {"model"})
+public class SessionLogStoreTests extends SixSenseBaseTest {
+
+    public void testInterleavedSessions() throws IOException {
+        Path directory = Files.createTempDirectory("session-log-store");
+        try {
+            //Small segments, so the lines of both sessions spread over several segments
+            try (SessionLogStore sessionLogStore = new SessionLogStore(directory, "session", 256, 100)) {
+                StringBuilder expectedFirst = new StringBuilder();
+                StringBuilder expectedSecond = new StringBuilder();
+                for (int lineIdx = 0; lineIdx < 50; lineIdx++) {
+                    String firstLine = "first session line " + lineIdx + "\n";
+                    String secondLine = "second session line " + lineIdx + "\n";
+                    sessionLogStore.append("first", firstLine.getBytes(StandardCharsets.UTF_8));
+                    sessionLogStore.append("second", secondLine.getBytes(StandardCharsets.UTF_8));
+                    expectedFirst.append(firstLine);
+                    expectedSecond.append(secondLine);
+                }
+
+                Assert.assertTrue(sessionLogStore.getSegmentCount() > 1);
+                Assert.assertEquals(sessionLogStore.read("first"), expectedFirst.toString());
+                Assert.assertEquals(sessionLogStore.read("second"), expectedSecond.toString());
+                Assert.assertEquals(sessionLogStore.read("third"), "");
+            }
+
+            //The segments (and their indexes) are picked up again when the store is reopened
+            try (SessionLogStore sessionLogStore = new SessionLogStore(directory, "session", 256, 100)) {
+                Assert.assertTrue(sessionLogStore.read("first").startsWith("first session line 0\n"));
+                Assert.assertTrue(sessionLogStore.read("second").endsWith("second session line 49\n"));
+            }
+        }finally {
+            StoreTestUtils.deleteDirectory(directory);
+        }
+    }
+
+    public void testSegmentExpiry() throws IOException {
+        Path directory = Files.createTempDirectory("session-log-store");
+        try (SessionLogStore sessionLogStore = new SessionLogStore(directory, "session", 128, 2)) {
+            sessionLogStore.append("expired", "a line which will expire\n".getBytes(StandardCharsets.UTF_8));
+            for (int lineIdx = 0; lineIdx < 20; lineIdx++) {
+                sessionLogStore.append("recent", ("a more recent line " + lineIdx + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+
+            Assert.assertEquals(sessionLogStore.getSegmentCount(), 2);
+            Assert.assertEquals(sessionLogStore.read("expired"), "");
+            Assert.assertTrue(sessionLogStore.read("recent").endsWith("a more recent line 19\n"));
+            try (Stream<Path> files = Files.list(directory)) {
+                Assert.assertTrue(files.count() <= 4); //two segments, and at most two indexes
+            }
+        }finally {
+            StoreTestUtils.deleteDirectory(directory);
+        }
+    }
+
+    public void testLongLinesAndRebuiltIndexes() throws IOException {
+        Path directory = Files.createTempDirectory("session-log-store");
+        try {
+            //Longer than both the write buffer and the chunks ranges are read in
+            String longLine = "long line ".repeat(20000) + "\n";
+            String expectedLines = "short line before\n" + longLine + "short line after\n";
+            try (SessionLogStore sessionLogStore = new SessionLogStore(directory, "session", 1024 * 1024, 100)) {
+                for (String line : expectedLines.split("(?<=\n)")) {
+                    sessionLogStore.append("long", line.getBytes(StandardCharsets.UTF_8));
+                    sessionLogStore.append("other", "line of another session\n".getBytes(StandardCharsets.UTF_8));
+                }
+                Assert.assertEquals(sessionLogStore.read("long"), expectedLines); //Read while some of the lines are still buffered
+            }
+
+            //Segments whose index is missing (as if the engine stopped before sealing them) are indexed again by scanning their records
+            StoreTestUtils.deleteIndexes(directory);
+            try (SessionLogStore sessionLogStore = new SessionLogStore(directory, "session", 1024 * 1024, 100)) {
+                Assert.assertEquals(sessionLogStore.read("long"), expectedLines);
+                Assert.assertEquals(sessionLogStore.read("other"), "line of another session\n".repeat(3));
+            }
+        }finally {
+            StoreTestUtils.deleteDirectory(directory);
+        }
+    }
+
+    public void testSparseIndexes() throws IOException {
+        Path directory = Files.createTempDirectory("session-log-store");
+        try {
+            //A quiet session, interleaved with a busy one which writes far more than the index interval between the lines of the quiet session
+            StringBuilder expectedQuiet = new StringBuilder();
+            StringBuilder expectedBusy = new StringBuilder();
+            try (SessionLogStore sessionLogStore = new SessionLogStore(directory, "session", 64 * 1024 * 1024, 100)) {
+                for (int quietIdx = 0; quietIdx < 10; quietIdx++) {
+                    String quietLine = "quiet session line " + quietIdx + "\n";
+                    sessionLogStore.append("quiet", quietLine.getBytes(StandardCharsets.UTF_8));
+                    expectedQuiet.append(quietLine);
+                    for (int busyIdx = 0; busyIdx < 1000; busyIdx++) {
+                        String busyLine = "busy session line " + quietIdx + "." + busyIdx + "\n";
+                        sessionLogStore.append("busy", busyLine.getBytes(StandardCharsets.UTF_8));
+                        expectedBusy.append(busyLine);
+                    }
+                }
+                Assert.assertEquals(sessionLogStore.read("quiet"), expectedQuiet.toString());
+            }
+
+            //Each line of the quiet session is indexed on it's own, so reading it skips the lines of the busy session
+            List<String> indexLines;
+            try (Stream<Path> files = Files.list(directory)) {
+                Path indexPath = files.filter(file -> file.toString().endsWith(".idx")).findFirst().orElseThrow();
+                indexLines = Files.readAllLines(indexPath, StandardCharsets.UTF_8);
+            }
+            String[] quietIndex = indexLines.stream().filter(indexLine -> indexLine.startsWith("quiet ")).findFirst().orElseThrow().split(" ");
+            Assert.assertEquals(quietIndex.length, 1 + 2 * 10);
+            long indexedBytes = 0;
+            for (int offsetIdx = 1; offsetIdx < quietIndex.length; offsetIdx += 2) {
+                indexedBytes += Long.parseLong(quietIndex[offsetIdx + 1]) - Long.parseLong(quietIndex[offsetIdx]);
+            }
+            Assert.assertTrue(indexedBytes < 1024, "The quiet session is indexed over " + indexedBytes + " bytes");
+
+            //Both sessions are read from the saved index, as well as from an index rebuilt by scanning the segment
+            try (SessionLogStore sessionLogStore = new SessionLogStore(directory, "session", 64 * 1024 * 1024, 100)) {
+                Assert.assertEquals(sessionLogStore.read("quiet"), expectedQuiet.toString());
+                Assert.assertEquals(sessionLogStore.read("busy"), expectedBusy.toString());
+            }
+            StoreTestUtils.deleteIndexes(directory);
+            try (SessionLogStore sessionLogStore = new SessionLogStore(directory, "session", 64 * 1024 * 1024, 100)) {
+                Assert.assertEquals(sessionLogStore.read("quiet"), expectedQuiet.toString());
+                Assert.assertEquals(sessionLogStore.read("busy"), expectedBusy.toString());
+            }
+        }finally {
+            StoreTestUtils.deleteDirectory(directory);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.SessionVariableStore;
+import com.sixsense.model.retention.ResultRetention;
+import com.sixsense.model.retention.RetentionMode;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+@Test(groups = {"model"})
+public class SessionVariableTests extends SixSenseBaseTest {
+
+    public void testScopedOverlays(){
+        SessionVariableStore variables = new SessionVariableStore();
+        variables.bindGlobalLayer(Map.of("var.global", "global", "var.scope.field", "global field"));
+        Assert.assertEquals(variables.get("var.scope.field"), "global field");
+
+        variables.push(Map.of("var.scope.field", "outer"));
+        variables.push(Map.of("var.scope.field", "inner"));
+        Map<String, String> innerSnapshot = variables.snapshot();
+        Assert.assertEquals(innerSnapshot, Map.of("var.global", "global", "var.scope.field", "inner"));
+
+        variables.pop(Set.of("var.scope.field"));
+        Assert.assertEquals(variables.get("var.scope.field"), "outer");
+        Assert.assertEquals(innerSnapshot.get("var.scope.field"), "inner");
+
+        variables.pop(Set.of("var.scope.field"));
+        Assert.assertEquals(variables.get("var.scope.field"), "global field");
+        Assert.assertNull(variables.get("var.missing"));
+    }
+
+    public void testRetainedVariables(){
+        SessionVariableStore variables = new SessionVariableStore();
+        variables.push(Map.of("var.scope.field", "outer"));
+        variables.push(Map.of("var.scope.field", "inner"));
+        variables.retain(new ResultRetention()
+            .withName("var.scope.field")
+            .withValue("retained")
+            .withRetentionMode(RetentionMode.Variable)
+            .withOverwriteParent(true)
+        );
+        Assert.assertEquals(variables.get("var.scope.field"), "retained");
+
+        variables.pop(Set.of("var.scope.field"));
+        Assert.assertEquals(variables.get("var.scope.field"), "retained");
+        Assert.assertSame(variables.snapshot(), variables.snapshot());
+    }
+
+    public void testMergedBranches(){
+        SessionVariableStore variables = new SessionVariableStore();
+        variables.push(Map.of("var.block.field", "block"));
+
+        //Each branch starts with a snapshot of it's parent, and only the variables it has retained are merged back
+        SessionVariableStore firstBranch = new SessionVariableStore();
+        firstBranch.bindGlobalLayer(variables.snapshot());
+        firstBranch.retain(new ResultRetention().withName("var.shared").withValue("first").withRetentionMode(RetentionMode.Variable));
+        firstBranch.retain(new ResultRetention().withName("var.block.field").withValue("first field").withRetentionMode(RetentionMode.Variable));
+        firstBranch.push(Map.of("var.command.field", "command"));
+        firstBranch.pop(Set.of("var.command.field"));
+
+        SessionVariableStore secondBranch = new SessionVariableStore();
+        secondBranch.bindGlobalLayer(variables.snapshot());
+        secondBranch.retain(new ResultRetention().withName("var.shared").withValue("second").withRetentionMode(RetentionMode.Variable));
+
+        variables.merge(firstBranch);
+        variables.merge(secondBranch);
+        Assert.assertEquals(variables.snapshot(), Map.of("var.block.field", "first field", "var.shared", "second"));
+
+        //Retained values replace the scoped value they have hidden in the branch, so they go out of scope with it
+        variables.pop(Set.of("var.block.field"));
+        Assert.assertNull(variables.get("var.block.field"));
+    }
+}
@@ -0,0 +1,28 @@
+package com.sixsense.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+//Shared by the tests of the segmented stores (SessionLogStoreTests and TerminalRecordingStoreTests)
+public class StoreTestUtils {
+
+    private StoreTestUtils(){
+        /*Empty private constructor - no instances of this class should be created */
+    }
+
+    public static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    //Deletes the saved indexes of all segments in the directory, as if the engine stopped before sealing them
+    public static void deleteIndexes(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.toString().endsWith(".idx")).forEach(file -> file.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.TerminalOutputNormalizer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+@Test(groups = {"model"})
+public class TerminalNormalizerTests extends SixSenseBaseTest {
+
+    public void testSplitCharactersAndSequences(){
+        String terminalOutput = "h\u00e9llo \u001B[1;31mw\u00f6rld\u001B[0m\r\n  \u001B]0;title\u0007next \u20ac";
+        byte[] rawBytes = terminalOutput.getBytes(StandardCharsets.UTF_8);
+
+        //wherever the bytes are split between two reads, multi-byte characters and escape sequences are handled as if they were read at once
+        for(int splitIdx = 0; splitIdx <= rawBytes.length; splitIdx++){
+            TerminalOutputNormalizer normalizer = new TerminalOutputNormalizer(StandardCharsets.UTF_8);
+            ByteBuffer rawDataBuffer = ByteBuffer.allocate(rawBytes.length);
+            StringBuilder normalizedOutput = new StringBuilder();
+
+            rawDataBuffer.put(rawBytes, 0, splitIdx).flip();
+            normalizer.normalize(rawDataBuffer);
+            normalizedOutput.append(normalizer.getNormalizedText());
+
+            rawDataBuffer.compact().put(rawBytes, splitIdx, rawBytes.length - splitIdx).flip();
+            normalizer.normalize(rawDataBuffer);
+            normalizedOutput.append(normalizer.getNormalizedText());
+
+            Assert.assertEquals(normalizedOutput.toString(), "h\u00e9llo w\u00f6rld\nnext \u20ac", "Split at byte " + splitIdx);
+        }
+    }
+
+    public void testLineBreaksAndSubstitutions(){
+        TerminalOutputNormalizer normalizer = new TerminalOutputNormalizer(StandardCharsets.UTF_8)
+            .addSubstitutionCriteria("[0-9]+", "#");
+        normalizer.normalize(ByteBuffer.wrap("first 1 \r\nsecond 22\r \n user@host:~$ ".getBytes(StandardCharsets.UTF_8)));
+
+        //spaces around carriage returns and line breaks are trimmed, but trailing spaces of the last line are kept (it may be a prompt)
+        Assert.assertEquals(normalizer.getNormalizedText().toString(), "first #\nsecond #\nuser@host:~$ ");
+        Assert.assertEquals(normalizer.getLineBreakCount(), 2);
+        Assert.assertEquals(normalizer.getLineBreakPosition(0), 7);
+        Assert.assertEquals(normalizer.getLineBreakPosition(1), 16);
+    }
+}
@@ -0,0 +1,144 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.io.logging.TerminalRecordingStore;
+import com.sixsense.model.logging.TerminalRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+@Test(groups = {"model"})
+public class TerminalRecordingStoreTests extends SixSenseBaseTest {
+
+    public void testRecordAndReplay() throws IOException {
+        Path directory = Files.createTempDirectory("terminal-recording-store");
+        try {
+            StringBuilder expectedOutput = new StringBuilder();
+            try (TerminalRecordingStore recordingStore = new TerminalRecordingStore(directory, "terminal", 0, 100)) {
+                //Only the range between the offset and the length should be recorded
+                for (int chunkIdx = 0; chunkIdx < 100; chunkIdx++) {
+                    String chunk = "[SixSensePrompt ~]# echo " + chunkIdx + "\n" + chunkIdx + "\n";
+                    ByteBuffer rawBytes = ByteBuffer.wrap(("garbage" + chunk + "garbage").getBytes(StandardCharsets.UTF_8));
+                    recordingStore.record("recorded", "LOCAL", 1000L + chunkIdx, rawBytes, "garbage".length(), chunk.length());
+                    recordingStore.record("other", "REMOTE", 1000L + chunkIdx, ByteBuffer.wrap("other output\n".getBytes(StandardCharsets.UTF_8)), 0, 13);
+                    expectedOutput.append(chunk);
+                }
+
+                List<TerminalRecord> terminalRecords = recordingStore.replay("recorded");
+                Assert.assertEquals(terminalRecords.size(), 100);
+                Assert.assertEquals(terminalRecords.get(0).getRecordedAt().toEpochMilli(), 1000L);
+                Assert.assertEquals(terminalRecords.get(0).getChannelName(), "LOCAL");
+                Assert.assertEquals(joinOutput(terminalRecords), expectedOutput.toString());
+                Assert.assertTrue(recordingStore.replay("missing").isEmpty());
+            }
+
+            //The recordings are picked up again when the store is reopened
+            try (TerminalRecordingStore recordingStore = new TerminalRecordingStore(directory, "terminal", 0, 100)) {
+                Assert.assertEquals(joinOutput(recordingStore.replay("recorded")), expectedOutput.toString());
+                Assert.assertEquals(recordingStore.replay("other").size(), 100);
+            }
+        }finally {
+            StoreTestUtils.deleteDirectory(directory);
+        }
+    }
+
+    public void testSegmentExpiry() throws IOException {
+        Path directory = Files.createTempDirectory("terminal-recording-store");
+        try (TerminalRecordingStore recordingStore = new TerminalRecordingStore(directory, "terminal", 0, 2)) {
+            //Random bytes barely compress, so a few hundred 8KB chunks fill several of the (minimal) 1MB segments
+            byte[] rawBytes = new byte[8192];
+            new Random(0).nextBytes(rawBytes);
+            recordingStore.record("expired", "LOCAL", System.currentTimeMillis(), ByteBuffer.wrap(rawBytes), 0, rawBytes.length);
+            for (int chunkIdx = 0; chunkIdx < 400; chunkIdx++) {
+                recordingStore.record("recent", "LOCAL", System.currentTimeMillis(), ByteBuffer.wrap(rawBytes), 0, rawBytes.length);
+            }
+
+            Assert.assertEquals(recordingStore.getSegmentCount(), 2);
+            Assert.assertTrue(recordingStore.replay("expired").isEmpty());
+            Assert.assertFalse(recordingStore.replay("recent").isEmpty());
+        }finally {
+            StoreTestUtils.deleteDirectory(directory);
+        }
+    }
+
+    public void testSplitCharacters() throws IOException {
+        Path directory = Files.createTempDirectory("terminal-recording-store");
+        try {
+            //Every multi-byte character is split between two reads, while another channel of the session is recorded in between
+            String output = "h\u00e9llo \u2713 w\u00f6rld \ud83d\ude00\n";
+            byte[] outputBytes = output.getBytes(StandardCharsets.UTF_8);
+            try (TerminalRecordingStore recordingStore = new TerminalRecordingStore(directory, "terminal", 0, 100)) {
+                for (int byteIdx = 0; byteIdx < outputBytes.length; byteIdx++) {
+                    recordingStore.record("split", "LOCAL", 1000L + byteIdx, ByteBuffer.wrap(outputBytes), byteIdx, 1);
+                    recordingStore.record("split", "REMOTE", 1000L + byteIdx, ByteBuffer.wrap("r".getBytes(StandardCharsets.UTF_8)), 0, 1);
+                }
+                recordingStore.record("split", "LOCAL", 2000L, ByteBuffer.wrap(outputBytes), 0, 2); //Ends in the middle of a character
+
+                List<TerminalRecord> terminalRecords = recordingStore.replay("split");
+                String localOutput = terminalRecords.stream().filter(record -> record.getChannelName().equals("LOCAL")).map(TerminalRecord::getOutput).collect(Collectors.joining());
+                Assert.assertEquals(localOutput, output + "h\ufffd");
+                Assert.assertEquals(terminalRecords.stream().filter(record -> record.getChannelName().equals("REMOTE")).count(), outputBytes.length);
+            }
+
+            //Segments whose index is missing are indexed again by scanning their records
+            StoreTestUtils.deleteIndexes(directory);
+            try (TerminalRecordingStore recordingStore = new TerminalRecordingStore(directory, "terminal", 0, 100)) {
+                Assert.assertEquals(recordingStore.replay("split").size(), outputBytes.length * 2 + 1);
+            }
+        }finally {
+            StoreTestUtils.deleteDirectory(directory);
+        }
+    }
+
+    public void testConcurrentRecording() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("terminal-recording-store");
+        ExecutorService recordingThreads = Executors.newFixedThreadPool(4);
+        try (TerminalRecordingStore recordingStore = new TerminalRecordingStore(directory, "terminal", 0, 100)) {
+            List<Future<?>> recordings = new ArrayList<>();
+            for (int sessionIdx = 0; sessionIdx < 4; sessionIdx++) {
+                String sessionId = "session-" + sessionIdx;
+                recordings.add(recordingThreads.submit(() -> {
+                    for (int chunkIdx = 0; chunkIdx < 2000; chunkIdx++) {
+                        byte[] chunk = (sessionId + " chunk " + chunkIdx + "\n").getBytes(StandardCharsets.UTF_8);
+                        recordingStore.record(sessionId, "LOCAL", System.currentTimeMillis(), ByteBuffer.wrap(chunk), 0, chunk.length);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> recording : recordings) {
+                recording.get();
+            }
+
+            //Records of each session are replayed in the order they were recorded, and no record is torn by the other threads
+            for (int sessionIdx = 0; sessionIdx < 4; sessionIdx++) {
+                List<TerminalRecord> terminalRecords = recordingStore.replay("session-" + sessionIdx);
+                Assert.assertEquals(terminalRecords.size(), 2000);
+                for (int chunkIdx = 0; chunkIdx < 2000; chunkIdx++) {
+                    Assert.assertEquals(terminalRecords.get(chunkIdx).getOutput(), "session-" + sessionIdx + " chunk " + chunkIdx + "\n");
+                }
+            }
+        } catch (ExecutionException e) {
+            Assert.fail("Recording thread failed", e.getCause());
+        }finally {
+            recordingThreads.shutdownNow();
+            StoreTestUtils.deleteDirectory(directory);
+        }
+    }
+
+    private String joinOutput(List<TerminalRecord> terminalRecords){
+        return terminalRecords.stream().map(TerminalRecord::getOutput).collect(Collectors.joining());
+    }
+}
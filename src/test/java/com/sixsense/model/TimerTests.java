@@ -0,0 +1,39 @@
+package com.sixsense.model;
+
+import com.sixsense.SixSenseBaseTest;
+import com.sixsense.threading.HashedWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@Test(groups = {"model"})
+public class TimerTests extends SixSenseBaseTest {
+
+    public void testExpirationOrderAndCancellation() throws InterruptedException {
+        //A small wheel, so the longer timeouts need more than one turn to expire
+        HashedWheelTimer timer = new HashedWheelTimer(Thread::new, Runnable::run, Duration.ofMillis(1), 8);
+        List<Integer> expiredTimeouts = new CopyOnWriteArrayList<>();
+        CountDownLatch allExpired = new CountDownLatch(3);
+
+        long startTime = System.nanoTime();
+        timer.schedule(() -> { expiredTimeouts.add(30); allExpired.countDown(); }, 30, TimeUnit.MILLISECONDS);
+        HashedWheelTimer.Timeout cancelledTimeout = timer.schedule(() -> expiredTimeouts.add(20), 20, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> { expiredTimeouts.add(5); allExpired.countDown(); }, 5, TimeUnit.MILLISECONDS);
+        HashedWheelTimer.Timeout lastTimeout = timer.schedule(() -> { expiredTimeouts.add(12); allExpired.countDown(); }, 12, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(cancelledTimeout.cancel());
+
+        Assert.assertTrue(allExpired.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(30), "Timeouts must not expire before their deadline");
+        Assert.assertEquals(expiredTimeouts, List.of(5, 12, 30));
+        Assert.assertTrue(lastTimeout.isExpired());
+        Assert.assertFalse(lastTimeout.cancel());
+        Assert.assertTrue(cancelledTimeout.isCancelled());
+        Assert.assertEquals(timer.getPendingTimeouts(), 0);
+        timer.close();
+    }
+}
@@ -42,6 +42,8 @@ public class InputOutputTests extends SixSenseBaseTest {
         List<String> afterParse = new ArrayList<>();
 
         for(String chunk : rawChunks){
+            //the output normalizer trims all space characters around carriage returns (while retaining the line breaks) before applying any added criteria
+            chunk = chunk.replaceAll(" *" + Literals.CarriageReturn + " *", "").replaceAll(" *" + Literals.LineBreak + " *", Literals.LineBreak);
             for(Map.Entry<String, String> criterion: substitutionCriteria.entrySet()) {
                 String pattern = criterion.getKey();
                 String replacement = criterion.getValue();